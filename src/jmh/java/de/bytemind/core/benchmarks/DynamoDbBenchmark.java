@@ -0,0 +1,101 @@
+package de.bytemind.core.benchmarks;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.json.simple.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.bytemind.core.databases.DynamoDB;
+import de.bytemind.core.databases.DynamoDbConfig;
+import de.bytemind.core.tools.Connectors;
+import de.bytemind.core.tools.JSON;
+
+/**
+ * DynamoDB type conversion and the full request path (JSON, SigV4 signing, HTTP handling) with a stubbed network.
+ * 
+ * @author Florian Quirin
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DynamoDbBenchmark {
+	
+	static final String ITEM_RESPONSE = "{\"Item\":{"
+			+ "\"Guuid\":{\"S\":\"uid1001\"},\"Email\":{\"S\":\"user@example.com\"},\"language\":{\"S\":\"en\"},"
+			+ "\"name\":{\"M\":{\"first\":{\"S\":\"James\"},\"last\":{\"S\":\"Last\"},\"nick\":{\"S\":\"Jim\"}}},"
+			+ "\"roles\":{\"L\":[{\"S\":\"user\"},{\"S\":\"tester\"}]},"
+			+ "\"statistics\":{\"M\":{\"logins\":{\"N\":\"42\"},\"active\":{\"BOOL\":true},"
+			+ "\"devices\":{\"L\":[{\"M\":{\"type\":{\"S\":\"desktop\"},\"count\":{\"N\":\"3\"}}},{\"M\":{\"type\":{\"S\":\"mobile\"},\"count\":{\"N\":\"1\"}}}]}}}"
+			+ "}}";
+	
+	JSONObject dynamoItem;
+	HashMap<String, Object> javaItem;
+	String requestBody;
+	
+	@Setup
+	public void setup(){
+		JSONObject item = (JSONObject) JSON.parseString(ITEM_RESPONSE).get("Item");
+		dynamoItem = JSON.make("M", item);
+		
+		javaItem = new HashMap<>();
+		javaItem.put("Guuid", "uid1001");
+		javaItem.put("Email", "user@example.com");
+		javaItem.put("logins", 42);
+		javaItem.put("active", true);
+		HashMap<String, Object> name = new HashMap<>();
+		name.put("first", "James");
+		name.put("last", "Last");
+		javaItem.put("name", name);
+		List<Object> roles = new ArrayList<>();
+		roles.add("user");
+		roles.add("tester");
+		javaItem.put("roles", roles);
+		
+		requestBody = JSON.make("TableName", "Users", "Key", DynamoDB.getPrimaryUserKey("uid1001")).toJSONString();
+		
+		DynamoDbConfig.setAccess("AKIDEXAMPLE");
+		DynamoDbConfig.setSecret("wJalrXUtnFEMI/K7MDENG+bPxRfiCYEXAMPLEKEY");
+		Connectors.setTransport(new StubHttpTransport(200, ITEM_RESPONSE));
+	}
+	
+	@TearDown
+	public void tearDown(){
+		Connectors.setTransport(null);
+	}
+	
+	@Benchmark
+	public Object typeConversion(){
+		return DynamoDB.typeConversion(dynamoItem);
+	}
+	
+	@Benchmark
+	public JSONObject typeConversionDynamoDB(){
+		return DynamoDB.typeConversionDynamoDB(javaItem);
+	}
+	
+	/**
+	 * Signing, POST via the stub transport and parsing of the response.
+	 */
+	@Benchmark
+	public JSONObject request(){
+		return DynamoDB.request("GetItem", requestBody);
+	}
+
+}
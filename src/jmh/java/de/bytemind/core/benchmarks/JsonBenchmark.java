@@ -0,0 +1,139 @@
+package de.bytemind.core.benchmarks;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.json.simple.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.bytemind.core.tools.Converters;
+import de.bytemind.core.tools.FastJsonCodec;
+import de.bytemind.core.tools.JSON;
+import de.bytemind.core.tools.JsonBody;
+import de.bytemind.core.tools.JsonCodec;
+import de.bytemind.core.tools.JsonFlattener;
+import de.bytemind.core.tools.JsonSimpleCodec;
+
+/**
+ * JSON parsing, writing (json-simple and fast codec), request bodies and conversion to maps with a search result of 20 documents, flattening and unflattening with one of the documents.
+ * 
+ * @author Florian Quirin
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JsonBenchmark {
+	
+	String json;
+	JSONObject obj;
+	JSONObject doc;
+	JSONObject flatDoc;
+	JsonFlattener arrayFlattener = new JsonFlattener().setArrayIndexing(true);
+	JsonCodec simpleCodec = new JsonSimpleCodec();
+	JsonCodec fastCodec = new FastJsonCodec();
+	
+	@Setup
+	public void setup(){
+		json = makeSearchResult(20);
+		obj = JSON.parseString(json);
+		doc = JSON.getJObject(JSON.getJObject(JSON.getJArray(obj, new String[]{"hits", "hits"}), 0), "_source");
+		flatDoc = JSON.makeFlat(doc, "", null);
+	}
+	
+	/**
+	 * Elasticsearch-like result with 'hits' documents, each with nested objects and arrays.
+	 */
+	static String makeSearchResult(int hits){
+		StringBuilder sb = new StringBuilder();
+		sb.append("{\"took\":3,\"timed_out\":false,\"_shards\":{\"total\":5,\"successful\":5,\"failed\":0},");
+		sb.append("\"hits\":{\"total\":").append(hits).append(",\"max_score\":1.0,\"hits\":[");
+		for (int i=0; i<hits; i++){
+			if (i > 0) sb.append(',');
+			sb.append("{\"_index\":\"users\",\"_type\":\"all\",\"_id\":\"uid").append(1000 + i).append("\",\"_score\":1.0,");
+			sb.append("\"_source\":{\"Guuid\":\"uid").append(1000 + i).append("\",\"Email\":\"user").append(i).append("@example.com\",");
+			sb.append("\"name\":{\"first\":\"James\",\"last\":\"Last\",\"nick\":\"Jim\"},\"language\":\"en\",");
+			sb.append("\"roles\":[\"user\",\"tester\"],\"statistics\":{\"logins\":").append(i * 7).append(",\"last\":1500000000000,");
+			sb.append("\"devices\":{\"desktop\":{\"count\":3,\"ok\":true},\"mobile\":{\"count\":1,\"ok\":false}}},");
+			sb.append("\"text\":\"Some longer text with \\\"quotes\\\" and unicode \\u00e4\\u00f6\\u00fc to parse.\"}}");
+		}
+		sb.append("]}}");
+		return sb.toString();
+	}
+	
+	@Benchmark
+	public JSONObject parseString(){
+		return JSON.parseString(json);
+	}
+	
+	@Benchmark
+	public Object parseSimpleCodec() throws Exception {
+		return simpleCodec.parse(json);
+	}
+	
+	@Benchmark
+	public Object parseFastCodec() throws Exception {
+		return fastCodec.parse(json);
+	}
+	
+	@Benchmark
+	public String writeSimpleCodec(){
+		return simpleCodec.write(obj);
+	}
+	
+	@Benchmark
+	public String writeFastCodec(){
+		return fastCodec.write(obj);
+	}
+	
+	/**
+	 * Request body the old way: string for the "Content-Length", string again for the body and a copy to bytes.
+	 */
+	@Benchmark
+	public int requestBodyString(){
+		int contentLength = JSON.toJSONString(obj).getBytes().length;
+		byte[] body = JSON.toJSONString(obj).getBytes(StandardCharsets.UTF_8);
+		return contentLength + body.length;
+	}
+	
+	@Benchmark
+	public int requestBodyPooled(){
+		try (JsonBody body = JsonBody.of(obj)){
+			return body.getLength() + body.getBuffer().length;
+		}
+	}
+	
+	@Benchmark
+	public JSONObject makeFlat(){
+		return JSON.makeFlat(doc, "", null);
+	}
+	
+	@Benchmark
+	public JSONObject flattenWithArrays(){
+		return arrayFlattener.flatten(doc);
+	}
+	
+	@Benchmark
+	public JSONObject unflatten(){
+		return JSON.unflatten(flatDoc);
+	}
+	
+	@Benchmark
+	public Map<String, Object> json2HashMap(){
+		return Converters.json2HashMap(obj);
+	}
+
+}
@@ -0,0 +1,83 @@
+package de.bytemind.core.benchmarks;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.bytemind.core.tools.Security;
+
+/**
+ * Hashing used for passwords and request signing.
+ * 
+ * @author Florian Quirin
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SecurityBenchmark {
+	
+	@Param({"64", "4096"})
+	int size;
+	
+	String data;
+	byte[] dataBytes;
+	byte[] key;
+	byte[] salt;
+	
+	@Setup
+	public void setup(){
+		StringBuilder sb = new StringBuilder(size);
+		for (int i=0; i<size; i++){
+			sb.append((char) ('a' + (i % 26)));
+		}
+		data = sb.toString();
+		dataBytes = data.getBytes(StandardCharsets.UTF_8);
+		key = Security.getRandomSalt(32);
+		salt = Security.getRandomSalt(32);
+	}
+	
+	@Benchmark
+	public byte[] getSha256String() throws Exception {
+		return Security.getSha256(data);
+	}
+	
+	@Benchmark
+	public byte[] getSha256Bytes(){
+		return Security.getSha256(dataBytes);
+	}
+	
+	@Benchmark
+	public byte[] hmacSHA256() throws Exception {
+		return Security.HmacSHA256(dataBytes, key);
+	}
+	
+	@Benchmark
+	public String hashPasswordClient(){
+		return Security.hashPassword_client(data);
+	}
+	
+	/**
+	 * PBKDF2 with 1000 iterations (independent of 'size' except for the password length).
+	 */
+	@Benchmark
+	@OutputTimeUnit(TimeUnit.MICROSECONDS)
+	public byte[] getEncryptedPassword() throws Exception {
+		return Security.getEncryptedPassword(data, salt, 1000, 32);
+	}
+
+}
@@ -0,0 +1,80 @@
+package de.bytemind.core.benchmarks;
+
+import java.util.Collections;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.json.simple.JSONArray;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.bytemind.core.tools.Comparators;
+import de.bytemind.core.tools.JSON;
+import de.bytemind.core.tools.JsonArraySorter;
+
+/**
+ * Sorting search hits by two keys: comparator sort vs. key extraction sort vs. top 20.
+ * 
+ * @author Florian Quirin
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SortBenchmark {
+	
+	@Param({"1000", "50000"})
+	int size;
+	
+	JSONArray hits;
+	JsonArraySorter sorter;
+	
+	@Setup
+	@SuppressWarnings("unchecked")
+	public void setup(){
+		Random random = new Random(42);
+		hits = new JSONArray();
+		for (int i=0; i<size; i++){
+			hits.add(JSON.make("_id", "uid" + i, "rank", (long) random.nextInt(100), "date", (long) random.nextInt(1000000)));
+		}
+		sorter = new JsonArraySorter().byLong("rank", true).byLong("date", true);
+	}
+	
+	@SuppressWarnings("unchecked")
+	private JSONArray copy(){
+		JSONArray a = new JSONArray();
+		a.addAll(hits);
+		return a;
+	}
+	
+	@Benchmark
+	@SuppressWarnings("unchecked")
+	public JSONArray comparatorSort(){
+		JSONArray a = copy();
+		Collections.sort(a, Collections.reverseOrder(new Comparators.JsonLongValues("rank", "date")));
+		return a;
+	}
+	
+	@Benchmark
+	public JSONArray sorterSort(){
+		return sorter.sort(copy());
+	}
+	
+	@Benchmark
+	public JSONArray sorterTop20(){
+		return sorter.top(hits, 20);
+	}
+
+}
@@ -0,0 +1,54 @@
+package de.bytemind.core.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+import de.bytemind.core.tools.HttpTransport;
+
+/**
+ * HTTP transport that never touches the network and answers every request with the same body, so benchmarks only measure
+ * the request building and response handling in this library.
+ * 
+ * @author Florian Quirin
+ *
+ */
+public class StubHttpTransport implements HttpTransport {
+	
+	private final int statusCode;
+	private final byte[] body;
+	
+	/**
+	 * @param statusCode - e.g. 200
+	 * @param body - response body returned for every request
+	 */
+	public StubHttpTransport(int statusCode, String body){
+		this.statusCode = statusCode;
+		this.body = body.getBytes(StandardCharsets.UTF_8);
+	}
+
+	@Override
+	public Response execute(String method, String url, Map<String, String> headers, byte[] requestBody){
+		return new Response(){
+			@Override
+			public int getStatusCode(){
+				return statusCode;
+			}
+			@Override
+			public String getHeader(String name){
+				return ("Content-Type".equalsIgnoreCase(name))? "application/x-amz-json-1.0" : null;
+			}
+			@Override
+			public InputStream getContent(){
+				return new ByteArrayInputStream(body);
+			}
+			@Override
+			public void close(){}
+		};
+	}
+
+	@Override
+	public void close(){}
+
+}
@@ -13,5 +13,7 @@ public class ClientDefaults {
 	public static final String client_info = "desktop_browser_v1.0";			//in case the client does not submit the info behave like this.
 	public static String authentication_module = RemoteAuthentication.class.getCanonicalName();		//default authentication module
 	public static String auth_endpoint_url = "http://localhost:8001/authentication";				//default authentication end-point
+	public static long auth_cache_ttl = 10000;							//ms a successful authentication is cached (0 = no cache), see AuthenticationCache
+	public static long auth_cache_max_size = 10000;						//max. number of cached authentications
 
 }
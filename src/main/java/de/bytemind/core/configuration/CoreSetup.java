@@ -5,7 +5,12 @@ import org.json.simple.JSONObject;
 import de.bytemind.core.client.ClientDefaults;
 import de.bytemind.core.databases.DynamoDbConfig;
 import de.bytemind.core.databases.ElasticSearchConfig;
+import de.bytemind.core.server.MetricsServer;
+import de.bytemind.core.tools.Connectors;
+import de.bytemind.core.tools.ConnectorsConfig;
+import de.bytemind.core.tools.Debugger;
 import de.bytemind.core.tools.JSON;
+import de.bytemind.core.tools.JsonCodec;
 import de.bytemind.core.users.IdHandler;
 
 /**
@@ -22,16 +27,62 @@ public class CoreSetup {
 	public static void load(JSONObject newSettings){
 		settings = newSettings;
 		
+		//JSON parser and writer - "fast" or "simple" (default)
+		if (settings.containsKey("json_codec")){
+			JsonCodec codec = JSON.getCodecByName(JSON.getString(settings, "json_codec"));
+			if (codec != null){
+				JSON.setCodec(codec);
+			}else{
+				Debugger.println("CoreSetup - unknown json_codec '" + JSON.getString(settings, "json_codec") + "', keeping '" + JSON.getCodec().getName() + "'", 1);
+			}
+		}
+		
 		if (settings.containsKey("authentication_module"))	ClientDefaults.authentication_module = JSON.getString(settings, "authentication_module");
 		if (settings.containsKey("auth_endpoint_url"))		ClientDefaults.auth_endpoint_url = JSON.getString(settings, "auth_endpoint_url");
+		if (settings.containsKey("auth_cache_ttl_ms"))		ClientDefaults.auth_cache_ttl = JSON.getLongOrDefault(settings, "auth_cache_ttl_ms", ClientDefaults.auth_cache_ttl);
+		if (settings.containsKey("auth_cache_max_size"))	ClientDefaults.auth_cache_max_size = JSON.getLongOrDefault(settings, "auth_cache_max_size", ClientDefaults.auth_cache_max_size);
 		
 		if (settings.containsKey("db_dynamo_region"))		DynamoDbConfig.setRegion(JSON.getString(settings, "db_dynamo_region"));
 		if (settings.containsKey("amazon_dynamoDB_access"))	DynamoDbConfig.setAccess(JSON.getString(settings, "amazon_dynamoDB_access"));
 		if (settings.containsKey("amazon_dynamoDB_secret"))	DynamoDbConfig.setSecret(JSON.getString(settings, "amazon_dynamoDB_secret"));
 		
 		if (settings.containsKey("db_elastic_endpoint"))	ElasticSearchConfig.setEndpoint(JSON.getString(settings, "db_elastic_endpoint"));
+		if (settings.containsKey("db_elastic_compress_requests"))	ElasticSearchConfig.setCompressRequests(JSON.getBoolean(settings, "db_elastic_compress_requests"));
+		
+		if (settings.containsKey("user_id_prefix"))			IdHandler.setUserIdPrefix(JSON.getString(settings, "user_id_prefix"));
+		
+		//HTTP connection pool - changes require a new transport
+		boolean httpChanged = false;
+		if (settings.containsKey("http_max_connections")){			ConnectorsConfig.setMaxConnections(JSON.getIntegerOrDefault(settings, "http_max_connections", ConnectorsConfig.getMaxConnections()));	httpChanged = true;	}
+		if (settings.containsKey("http_max_connections_per_route")){	ConnectorsConfig.setMaxConnectionsPerRoute(JSON.getIntegerOrDefault(settings, "http_max_connections_per_route", ConnectorsConfig.getMaxConnectionsPerRoute()));	httpChanged = true;	}
+		if (settings.containsKey("http_idle_timeout_ms")){			ConnectorsConfig.setIdleConnectionTimeout(JSON.getLongOrDefault(settings, "http_idle_timeout_ms", ConnectorsConfig.getIdleConnectionTimeout()));	httpChanged = true;	}
+		if (settings.containsKey("http_connect_timeout_ms")){		ConnectorsConfig.setConnectTimeout(JSON.getIntegerOrDefault(settings, "http_connect_timeout_ms", ConnectorsConfig.getConnectTimeout()));	httpChanged = true;	}
+		if (settings.containsKey("http_socket_timeout_ms")){			ConnectorsConfig.setSocketTimeout(JSON.getIntegerOrDefault(settings, "http_socket_timeout_ms", ConnectorsConfig.getSocketTimeout()));	httpChanged = true;	}
+		if (settings.containsKey("http_pool_timeout_ms")){			ConnectorsConfig.setPoolTimeout(JSON.getIntegerOrDefault(settings, "http_pool_timeout_ms", ConnectorsConfig.getPoolTimeout()));	httpChanged = true;	}
+		if (settings.containsKey("http_async_max_in_flight")){		ConnectorsConfig.setMaxAsyncInFlight(JSON.getIntegerOrDefault(settings, "http_async_max_in_flight", ConnectorsConfig.getMaxAsyncInFlight()));	httpChanged = true;	}
+		if (settings.containsKey("http_async_max_queued")){			ConnectorsConfig.setMaxAsyncQueued(JSON.getIntegerOrDefault(settings, "http_async_max_queued", ConnectorsConfig.getMaxAsyncQueued()));	httpChanged = true;	}
+		if (settings.containsKey("http_max_response_bytes"))		ConnectorsConfig.setMaxResponseSize(JSON.getLongOrDefault(settings, "http_max_response_bytes", ConnectorsConfig.getMaxResponseSize()));
+		if (settings.containsKey("http_accept_compression")){		ConnectorsConfig.setAcceptCompression(JSON.getBoolean(settings, "http_accept_compression"));	httpChanged = true;	}
+		if (settings.containsKey("http_request_compression_threshold")){	ConnectorsConfig.setRequestCompressionThreshold(JSON.getIntegerOrDefault(settings, "http_request_compression_threshold", ConnectorsConfig.getRequestCompressionThreshold()));	httpChanged = true;	}
+		if (settings.containsKey("http_transport_close_delay_ms"))	ConnectorsConfig.setTransportCloseDelay(JSON.getLongOrDefault(settings, "http_transport_close_delay_ms", ConnectorsConfig.getTransportCloseDelay()));
+		if (httpChanged){
+			Connectors.setTransport(null);			//re-created with new config on next use, the old ones finish their requests first
+			Connectors.setAsyncTransport(null);
+		}
 		
-		if (settings.containsKey("user_id_prefix"))			IdHandler.user_id_prefix = JSON.getString(settings, "user_id_prefix");
+		//Metrics end-point (Prometheus) - port 0 or less means off
+		if (settings.containsKey("metrics_port")){
+			int port = JSON.getIntegerOrDefault(settings, "metrics_port", -1);
+			if (port > 0){
+				try{
+					MetricsServer.start(JSON.getStringOrDefault(settings, "metrics_host", null), port);
+				}catch (Exception e){
+					Debugger.println("CoreSetup - failed to start metrics server at port " + port + " - e: " + e.getMessage(), 1);
+				}
+			}else{
+				MetricsServer.stop();
+			}
+		}
 	}
 
 }
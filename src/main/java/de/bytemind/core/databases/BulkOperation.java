@@ -0,0 +1,114 @@
+package de.bytemind.core.databases;
+
+import java.nio.charset.StandardCharsets;
+
+import org.json.simple.JSONObject;
+
+import de.bytemind.core.tools.JSON;
+
+/**
+ * A single write operation (index, update or delete) of a bulk request to a knowledge database.
+ * The request lines are built once and cached, so size checks and sending don't serialize the data twice.
+ *
+ * @author Florian Quirin
+ *
+ */
+public class BulkOperation {
+
+	public enum Action {
+		index, update, delete
+	}
+
+	private final Action action;
+	private final String index;
+	private final String type;
+	private final String id;
+	private final JSONObject data;
+
+	private String lines;		//cached request lines
+
+	private BulkOperation(Action action, String index, String type, String id, JSONObject data){
+		this.action = action;
+		this.index = index;
+		this.type = type;
+		this.id = id;
+		this.data = data;
+	}
+
+	/**
+	 * Write (or overwrite) document at "index/type/id". If 'id' is null or empty it is generated by the database.
+	 */
+	public static BulkOperation index(String index, String type, String id, JSONObject data){
+		return new BulkOperation(Action.index, index, type, id, data);
+	}
+	/**
+	 * Update or create document at "index/type/id" (same behavior as 'updateItemData').
+	 */
+	public static BulkOperation update(String index, String type, String id, JSONObject data){
+		return new BulkOperation(Action.update, index, type, id, data);
+	}
+	/**
+	 * Delete document at "index/type/id".
+	 */
+	public static BulkOperation delete(String index, String type, String id){
+		return new BulkOperation(Action.delete, index, type, id, null);
+	}
+
+	public Action getAction(){
+		return action;
+	}
+	public String getIndex(){
+		return index;
+	}
+	public String getType(){
+		return type;
+	}
+	public String getId(){
+		return id;
+	}
+	public JSONObject getData(){
+		return data;
+	}
+
+	/**
+	 * Get the lines of this operation for an Elasticsearch "_bulk" request (newline delimited JSON including the last newline).
+	 */
+	public String getBulkLines(){
+		if (lines == null){
+			JSONObject meta = new JSONObject();
+			JSON.put(meta, "_index", index);
+			JSON.put(meta, "_type", type);
+			if (id != null && !id.isEmpty()){
+				JSON.put(meta, "_id", id);
+			}
+			StringBuilder sb = new StringBuilder();
+			sb.append(JSON.toJSONString(JSON.make(action.name(), meta))).append('\n');
+			if (action == Action.index){
+				sb.append(JSON.toJSONString(data)).append('\n');
+			}else if (action == Action.update){
+				//Check data for script and upsert to get update or create behavior
+				JSONObject dataUpdate = data;
+				if (!data.containsKey("script") && !data.containsKey("doc_as_upsert")){
+					dataUpdate = JSON.make("doc", data, "doc_as_upsert", new Boolean(true));
+				}
+				sb.append(JSON.toJSONString(dataUpdate)).append('\n');
+			}
+			lines = sb.toString();
+		}
+		return lines;
+	}
+	/**
+	 * Size of the request lines in bytes (UTF-8).
+	 */
+	public long getSize(){
+		String l = getBulkLines();
+		//fast path for ASCII
+		for (int i=0; i<l.length(); i++){
+			if (l.charAt(i) >= 0x80){
+				return l.getBytes(StandardCharsets.UTF_8).length;
+			}
+		}
+		return l.length();
+	}
+
+}
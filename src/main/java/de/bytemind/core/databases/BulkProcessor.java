@@ -0,0 +1,282 @@
+package de.bytemind.core.databases;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+
+import de.bytemind.core.tools.Debugger;
+
+/**
+ * Collects write operations for a knowledge database and sends them via {@link KnowledgeDatabase#bulk(List)} as soon as
+ * a size or count limit is reached or the flush interval is over. Requests are sent one after another by a background thread
+ * in the order the operations were added.<br>
+ * If too many operations are waiting (buffered or in flight) 'add' blocks until a request is done (backpressure).
+ * Per-item results are reported to the {@link Listener}.
+ *
+ * @author Florian Quirin
+ *
+ */
+public class BulkProcessor implements Closeable {
+
+	/**
+	 * Receives the result of each bulk request.
+	 */
+	public interface Listener {
+		/**
+		 * Called by the sender thread after each request.
+		 * @param operations - operations of the request
+		 * @param result - result of {@link KnowledgeDatabase#bulk(List)}, "items" have the same order as 'operations'
+		 */
+		public void afterBulk(List<BulkOperation> operations, JSONObject result);
+	}
+
+	private final KnowledgeDatabase db;
+	private final int maxActions;
+	private final int maxBuffered;
+	private final long maxBytes;
+	private final Listener listener;
+
+	private final Semaphore capacity;			//free slots for buffered or in-flight operations
+	private final ExecutorService sender;
+	private final ScheduledExecutorService timer;
+
+	private final Object lock = new Object();
+	private List<BulkOperation> buffer;
+	private long bufferBytes = 0;
+	private volatile boolean closed = false;
+
+	private final AtomicLong requests = new AtomicLong();
+	private final AtomicLong sentOperations = new AtomicLong();
+	private final AtomicLong failedOperations = new AtomicLong();
+
+	/**
+	 * Default constructor. Reads limits from 'ElasticSearchConfig'.
+	 * @param db - database to send operations to, e.g. Elasticsearch
+	 * @param listener - receives results or null
+	 */
+	public BulkProcessor(KnowledgeDatabase db, Listener listener){
+		this(db, ElasticSearchConfig.getBulkMaxActions(), ElasticSearchConfig.getBulkMaxBytes(), ElasticSearchConfig.getBulkFlushInterval(),
+				ElasticSearchConfig.getBulkMaxBuffered(), listener);
+	}
+	/**
+	 * Manual constructor.
+	 * @param db - database to send operations to, e.g. Elasticsearch
+	 * @param maxActions - max. operations per request
+	 * @param maxBytes - max. bytes per request (a single bigger operation is sent alone)
+	 * @param flushInterval - ms until buffered operations are sent anyway, 0 to only send when limits are reached or on 'flush'
+	 * @param maxBuffered - max. operations buffered or in flight before 'add' blocks, at least 'maxActions'
+	 * @param listener - receives results or null
+	 */
+	public BulkProcessor(KnowledgeDatabase db, int maxActions, long maxBytes, long flushInterval, int maxBuffered, Listener listener){
+		this.db = db;
+		this.maxActions = Math.max(1, maxActions);
+		this.maxBytes = maxBytes;
+		this.listener = listener;
+		this.maxBuffered = Math.max(this.maxActions, maxBuffered);
+		this.capacity = new Semaphore(this.maxBuffered);
+		this.buffer = new ArrayList<>(this.maxActions);
+
+		sender = Executors.newSingleThreadExecutor(r -> {
+			Thread t = new Thread(r, "bulk-sender");
+			t.setDaemon(true);
+			return t;
+		});
+		if (flushInterval > 0){
+			timer = Executors.newSingleThreadScheduledExecutor(r -> {
+				Thread t = new Thread(r, "bulk-flush-timer");
+				t.setDaemon(true);
+				return t;
+			});
+			timer.scheduleWithFixedDelay(() -> flushBuffer(), flushInterval, flushInterval, TimeUnit.MILLISECONDS);
+		}else{
+			timer = null;
+		}
+	}
+
+	/**
+	 * Add an operation. Blocks while the buffer is full.
+	 * @return true if the operation was added, false if the thread was interrupted while waiting
+	 * @throws IllegalStateException if the processor is closed (before or while waiting)
+	 */
+	public boolean add(BulkOperation op){
+		if (closed){
+			throw new IllegalStateException("BulkProcessor is closed");
+		}
+		try{
+			capacity.acquire();
+		}catch (InterruptedException e){
+			Thread.currentThread().interrupt();
+			return false;
+		}
+		append(op);
+		return true;
+	}
+	/**
+	 * Add an operation. Waits at most 'timeout' ms while the buffer is full.
+	 * @return true if the operation was added, false if there was no free space in time
+	 * @throws IllegalStateException if the processor is closed (before or while waiting)
+	 */
+	public boolean add(BulkOperation op, long timeout){
+		if (closed){
+			throw new IllegalStateException("BulkProcessor is closed");
+		}
+		try{
+			if (!capacity.tryAcquire(timeout, TimeUnit.MILLISECONDS)){
+				return false;
+			}
+		}catch (InterruptedException e){
+			Thread.currentThread().interrupt();
+			return false;
+		}
+		append(op);
+		return true;
+	}
+
+	//call with a permit of 'capacity'
+	private void append(BulkOperation op){
+		long size = op.getSize();		//builds the request lines outside of the lock
+		synchronized (lock){
+			//closed while waiting for capacity - the sender might be gone already
+			if (closed){
+				capacity.release();
+				throw new IllegalStateException("BulkProcessor is closed");
+			}
+			//operation would exceed the byte limit: send what we have first
+			if (!buffer.isEmpty() && maxBytes > 0 && bufferBytes + size > maxBytes){
+				submit(swap());
+			}
+			buffer.add(op);
+			bufferBytes += size;
+			if (buffer.size() >= maxActions || (maxBytes > 0 && bufferBytes >= maxBytes)){
+				submit(swap());
+			}
+		}
+	}
+
+	//call with lock
+	private List<BulkOperation> swap(){
+		List<BulkOperation> ops = buffer;
+		buffer = new ArrayList<>(maxActions);
+		bufferBytes = 0;
+		return ops;
+	}
+
+	private Future<?> flushBuffer(){
+		synchronized (lock){
+			return buffer.isEmpty()? null : submit(swap());
+		}
+	}
+
+	//call with lock to keep the order of requests
+	private Future<?> submit(List<BulkOperation> ops){
+		return sender.submit(() -> send(ops));
+	}
+
+	private void send(List<BulkOperation> ops){
+		try{
+			JSONObject result = db.bulk(ops);
+			requests.incrementAndGet();
+			sentOperations.addAndGet(ops.size());
+			JSONArray items = (JSONArray) result.get("items");
+			if (items != null){
+				for (Object o : items){
+					if (!Integer.valueOf(0).equals(((JSONObject) o).get("code"))){
+						failedOperations.incrementAndGet();
+					}
+				}
+			}
+			if (listener != null){
+				listener.afterBulk(ops, result);
+			}
+		}catch (Exception e){
+			Debugger.println("BulkProcessor - failed to send " + ops.size() + " operations - e: " + e.getMessage(), 1);
+			failedOperations.addAndGet(ops.size());
+		}finally{
+			capacity.release(ops.size());
+		}
+	}
+
+	/**
+	 * Send all buffered operations now and wait until every request (including earlier ones) is done.
+	 */
+	public void flush(){
+		Future<?> f = flushBuffer();
+		if (f == null){
+			//nothing buffered, but wait for requests in flight
+			try{
+				f = sender.submit(() -> {});
+			}catch (RejectedExecutionException e){
+				//closed, nothing left to wait for
+				return;
+			}
+		}
+		try{
+			f.get();
+		}catch (InterruptedException e){
+			Thread.currentThread().interrupt();
+		}catch (Exception e){
+			Debugger.println("BulkProcessor - flush failed - e: " + e.getMessage(), 1);
+		}
+	}
+
+	/**
+	 * Send remaining operations and stop the background threads. Operations added afterwards are rejected, including those of threads
+	 * that are blocked in 'add' right now.
+	 */
+	@Override
+	public void close(){
+		synchronized (lock){
+			if (closed){
+				return;
+			}
+			//from now on 'append' rejects operations, so nothing is submitted after the sender is shut down
+			closed = true;
+		}
+		if (timer != null){
+			timer.shutdownNow();
+		}
+		flush();
+		sender.shutdown();
+		//wake up blocked adders, each one gives its permit back after the 'closed' check so the next one wakes up as well
+		capacity.release(maxBuffered);
+	}
+
+	/**
+	 * Number of operations that are buffered right now (not counting requests in flight).
+	 */
+	public int getBufferedOperations(){
+		synchronized (lock){
+			return buffer.size();
+		}
+	}
+	/**
+	 * Number of "_bulk" requests sent so far.
+	 */
+	public long getRequests(){
+		return requests.get();
+	}
+	/**
+	 * Number of operations sent so far (successful or not).
+	 */
+	public long getSentOperations(){
+		return sentOperations.get();
+	}
+	/**
+	 * Number of operations that failed so far.
+	 */
+	public long getFailedOperations(){
+		return failedOperations.get();
+	}
+
+}
@@ -0,0 +1,256 @@
+package de.bytemind.core.databases;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.json.simple.JSONObject;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+import de.bytemind.core.server.Statistics;
+import de.bytemind.core.tools.Connectors;
+
+/**
+ * Read-through cache in front of a key-value database (e.g. DynamoDB for account look-ups). Results of 'getValues' are kept
+ * for a short time (TTL) in a size-bounded cache. Concurrent misses of the same look-up wait for a single database call.<br>
+ * Every write through this class (setValue, deleteKey, deleteIndex and the batch writes) invalidates all cached look-ups of the item,
+ * writes that bypass this class are only visible after the TTL. Secondary index and batch reads are not cached.<br>
+ * Hits and misses are counted in {@link Statistics} as "KeyValueCache:hit", "KeyValueCache:miss" and "KeyValueCache:error".<br>
+ * NOTE: results are shared between callers, don't modify them.
+ *
+ * @author Florian Quirin
+ *
+ */
+public class CachedKeyValueDatabase implements KeyValueDatabase {
+
+	public static final long DEFAULT_MAX_SIZE = 10000;
+	public static final long DEFAULT_TTL = 5000;
+	private static final String STATS_NAME = "KeyValueCache";
+
+	private final KeyValueDatabase db;
+	private final Cache<String, Entry> cache;
+	//version of the last write per item, entries loaded with an older version are stale
+	private final Cache<String, Long> versions;
+	//version of entries that were loaded while the item changed, they never match
+	private static final long STALE = -1;
+	private final AtomicLong versionCounter = new AtomicLong();
+
+	private static class Entry {
+		final long version;
+		final JSONObject value;
+		Entry(long version, JSONObject value){
+			this.version = version;
+			this.value = value;
+		}
+	}
+	//used to hand failed results back without caching them
+	private static class NotCacheableException extends Exception {
+		private static final long serialVersionUID = 1L;
+		final JSONObject result;
+		NotCacheableException(JSONObject result){
+			super(null, null, false, false);
+			this.result = result;
+		}
+	}
+
+	/**
+	 * Cache with default size and TTL.
+	 * @param db - the real database, e.g. DynamoDB
+	 */
+	public CachedKeyValueDatabase(KeyValueDatabase db){
+		this(db, DEFAULT_MAX_SIZE, DEFAULT_TTL);
+	}
+	/**
+	 * Cache with custom size and TTL.
+	 * @param db - the real database, e.g. DynamoDB
+	 * @param maxSize - max. number of cached look-ups
+	 * @param ttl - ms a result stays in the cache
+	 */
+	public CachedKeyValueDatabase(KeyValueDatabase db, long maxSize, long ttl){
+		this.db = db;
+		this.cache = CacheBuilder.newBuilder()
+				.maximumSize(maxSize)
+				.expireAfterWrite(ttl, TimeUnit.MILLISECONDS)
+				.build();
+		//versions must live at least as long as the entries they protect, so they are only bounded by time.
+		//Entries loaded before a write are marked stale when they are stored (see 'getValues'), 2*ttl leaves room for the store itself
+		this.versions = CacheBuilder.newBuilder()
+				.expireAfterWrite(2 * ttl, TimeUnit.MILLISECONDS)
+				.build();
+	}
+
+	/**
+	 * Remove everything from the cache.
+	 */
+	public void invalidateAll(){
+		cache.invalidateAll();
+	}
+	/**
+	 * Remove all cached look-ups of an item, e.g. after it was changed without this class.
+	 */
+	public void invalidate(String table, String primeIndexName, String primeIndexValue){
+		versions.put(itemKey(table, primeIndexName, primeIndexValue), versionCounter.incrementAndGet());
+	}
+
+	/**
+	 * Number of cached look-ups (approximately).
+	 */
+	public long size(){
+		return cache.size();
+	}
+
+	private static String itemKey(String table, String primeIndexName, String primeIndexValue){
+		return table + '\u0000' + primeIndexName + '\u0000' + primeIndexValue.toLowerCase().trim();		//IDs are always lowerCase
+	}
+	private static String lookUpKey(String itemKey, String... keys){
+		StringBuilder sb = new StringBuilder(itemKey);
+		for (String k : keys){
+			sb.append('\u0000').append(k);
+		}
+		return sb.toString();
+	}
+	private long currentVersion(String itemKey){
+		Long v = versions.getIfPresent(itemKey);
+		return (v == null)? 0 : v;
+	}
+
+	//-------INTERFACE IMPLEMENTATIONS---------
+
+	@Override
+	public boolean testConnection() {
+		return db.testConnection();
+	}
+
+	@Override
+	public JSONObject getValues(String table, String primeIndexName, String primeIndexValue, String... keys) {
+		String item = itemKey(table, primeIndexName, primeIndexValue);
+		String key = lookUpKey(item, keys);
+
+		Entry e = cache.getIfPresent(key);
+		if (e != null){
+			if (e.version == currentVersion(item)){
+				Statistics.addCount(STATS_NAME + ":hit", 1);
+				return e.value;
+			}
+			cache.invalidate(key);
+		}
+		//load - Guava makes sure only one thread calls the database per key, the others wait for the result
+		boolean[] loaded = new boolean[]{ false };
+		try{
+			e = cache.get(key, () -> {
+				loaded[0] = true;
+				long version = currentVersion(item);
+				JSONObject res = db.getValues(table, primeIndexName, primeIndexValue, keys);
+				if (res == null || !Connectors.httpSuccess(res)){
+					throw new NotCacheableException(res);
+				}
+				Statistics.addCount(STATS_NAME + ":miss", 1);
+				//changed during the call: the result might be old, it is returned but must not be served from the cache
+				//(it would outlive the version that marks it as old)
+				return new Entry((currentVersion(item) == version)? version : STALE, res);
+			});
+			if (!loaded[0]){
+				Statistics.addCount(STATS_NAME + ":hit", 1);		//got the result of another thread's call
+			}
+			return e.value;
+		}catch (ExecutionException | UncheckedExecutionException ex){
+			Statistics.addCount(STATS_NAME + ":error", 1);
+			if (ex.getCause() instanceof NotCacheableException){
+				return ((NotCacheableException) ex.getCause()).result;
+			}
+			throw new RuntimeException("CachedKeyValueDatabase - failed to load '" + primeIndexValue + "'", ex.getCause());
+		}
+	}
+
+	@Override
+	public JSONObject getValuesBySecondayIndex(String table, String secIndexName, String secIndexValue, String... keys) {
+		return db.getValuesBySecondayIndex(table, secIndexName, secIndexValue, keys);
+	}
+
+	@Override
+	public JSONObject getValuesBatch(String table, String primeIndexName, List<String> primeIndexValues, String... keys) {
+		return db.getValuesBatch(table, primeIndexName, primeIndexValues, keys);
+	}
+
+	@Override
+	public JSONObject setValue(String table, String primeIndexName, String primeIndexValue, String key, String value) {
+		try{
+			return db.setValue(table, primeIndexName, primeIndexValue, key, value);
+		}finally{
+			invalidate(table, primeIndexName, primeIndexValue);
+		}
+	}
+
+	@Override
+	public JSONObject setValue(String table, String primeIndexName, String primeIndexValue, String key, long value) {
+		try{
+			return db.setValue(table, primeIndexName, primeIndexValue, key, value);
+		}finally{
+			invalidate(table, primeIndexName, primeIndexValue);
+		}
+	}
+
+	@Override
+	public JSONObject setValue(String table, String primeIndexName, String primeIndexValue, String key, Map<String, Object> value) {
+		try{
+			return db.setValue(table, primeIndexName, primeIndexValue, key, value);
+		}finally{
+			invalidate(table, primeIndexName, primeIndexValue);
+		}
+	}
+
+	@Override
+	public JSONObject setValue(String table, String primeIndexName, String primeIndexValue, String key, List<Object> value) {
+		try{
+			return db.setValue(table, primeIndexName, primeIndexValue, key, value);
+		}finally{
+			invalidate(table, primeIndexName, primeIndexValue);
+		}
+	}
+
+	@Override
+	public JSONObject deleteKey(String table, String primeIndexName, String primeIndexValue, String key) {
+		try{
+			return db.deleteKey(table, primeIndexName, primeIndexValue, key);
+		}finally{
+			invalidate(table, primeIndexName, primeIndexValue);
+		}
+	}
+
+	@Override
+	public JSONObject deleteIndex(String table, String primeIndexName, String primeIndexValue) {
+		try{
+			return db.deleteIndex(table, primeIndexName, primeIndexValue);
+		}finally{
+			invalidate(table, primeIndexName, primeIndexValue);
+		}
+	}
+
+	@Override
+	public JSONObject setItemsBatch(String table, String primeIndexName, Map<String, Map<String, Object>> items) {
+		try{
+			return db.setItemsBatch(table, primeIndexName, items);
+		}finally{
+			for (String id : items.keySet()){
+				invalidate(table, primeIndexName, id);
+			}
+		}
+	}
+
+	@Override
+	public JSONObject deleteIndicesBatch(String table, String primeIndexName, List<String> primeIndexValues) {
+		try{
+			return db.deleteIndicesBatch(table, primeIndexName, primeIndexValues);
+		}finally{
+			for (String id : primeIndexValues){
+				invalidate(table, primeIndexName, id);
+			}
+		}
+	}
+
+}
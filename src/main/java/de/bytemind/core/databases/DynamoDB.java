@@ -1,21 +1,28 @@
 package de.bytemind.core.databases;
 
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
-import java.util.Date;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
 
 import org.json.simple.JSONArray;
 import org.json.simple.JSONObject;
 
 import de.bytemind.core.server.Statistics;
+import de.bytemind.core.tools.AwsV4Signer;
 import de.bytemind.core.tools.Connectors;
-import de.bytemind.core.tools.DateTime;
+import de.bytemind.core.tools.Converters;
 import de.bytemind.core.tools.Debugger;
 import de.bytemind.core.tools.Is;
 import de.bytemind.core.tools.JSON;
-import de.bytemind.core.tools.Security;
+import de.bytemind.core.tools.Timer;
 
 /**
  * Class to access DynamoDB. Implements the keyValue database interface.
@@ -29,6 +36,12 @@ public class DynamoDB implements KeyValueDatabase {
 	public static String PRIMARY_USER_KEY = "Guuid";			//global unique user id 
 	public static String PRIMARY_TICKET_KEY = "guid";			//global unique id for temporary tickets of any kind
 	
+	public static final int BATCH_GET_MAX_KEYS = 100;			//DynamoDB limit for keys per BatchGetItem
+	public static final int BATCH_WRITE_MAX_ITEMS = 25;			//DynamoDB limit for requests per BatchWriteItem
+	public static int batchMaxRetries = 5;						//retries for unprocessed keys/items of batch operations
+	private static final long BATCH_BACKOFF_BASE = 50;			//ms, doubled with every retry
+	private static final long BATCH_BACKOFF_MAX = 3000;			//ms
+	
 	//------------------------Interface----------------------------
 	
 	@Override
@@ -52,6 +65,11 @@ public class DynamoDB implements KeyValueDatabase {
 		JSONObject res = queryIndex(table, secIndexName, secIndexValue, keys);
 		return res;
 	}
+	@Override
+	public JSONObject getValuesBatch(String table, String primeIndexName, List<String> primeIndexValues, String... keys) {
+		JSONObject res = batchGetItem(table, primeIndexName, primeIndexValues, keys);
+		return res;
+	}
 	
 	//SET VALUE(S)
 	@Override
@@ -109,6 +127,16 @@ public class DynamoDB implements KeyValueDatabase {
 		return res;
 	}
 	
+	//BATCH
+	@Override
+	public JSONObject setItemsBatch(String table, String primeIndexName, Map<String, Map<String, Object>> items) {
+		return batchWriteItem(table, primeIndexName, items, null);
+	}
+	@Override
+	public JSONObject deleteIndicesBatch(String table, String primeIndexName, List<String> primeIndexValues) {
+		return batchWriteItem(table, primeIndexName, null, primeIndexValues);
+	}
+	
 	//------------------------Connection---------------------------
 	
 	private static String makeExpressionAttributeName(String keyIn, JSONObject expressionAttributeNames){
@@ -161,8 +189,120 @@ public class DynamoDB implements KeyValueDatabase {
 			JSON.add(request, "ExpressionAttributeNames", expressionAttributeNames);
 		}
 		
-		return request(operation, request.toJSONString());
+		return request(operation, JSON.toJSONString(request));
 	}
+	/**
+	 * Get many items of a table by primaryKey via BatchGetItem. Keys are sent in chunks of {@link #BATCH_GET_MAX_KEYS},
+	 * "UnprocessedKeys" are retried with backoff (see {@link #batchMaxRetries}). The primaryKey is always added to the look-up
+	 * to be able to map the items.
+	 * @param tableName - name of the table to check, usually "users"
+	 * @param primaryKey - primary key to search for, e.g. "Guuid"
+	 * @param keyValues - values of the primary key to get, e.g. a list of user IDs
+	 * @param lookUp - array of strings to look up in each item
+	 * @return JSONObject with "Items" (value of primaryKey to item) and Connectors.httpSuccess(result) true if all keys were processed.
+	 * On fail "error" is set and "UnprocessedKeys" lists the IDs that could not be loaded.
+	 */
+	public static JSONObject batchGetItem(String tableName, String primaryKey, List<String> keyValues, String... lookUp){
+		if (lookUp == null || lookUp.length <= 0){
+			JSONObject result =	new JSONObject();
+			JSON.add(result, Connectors.HTTP_REST_SUCCESS, new Boolean(false));
+			JSON.add(result, "error", "no data to lookup!");
+			return result;
+		}
+		
+		//operation:
+		String operation = "BatchGetItem";
+		
+		JSONObject expressionAttributeNames = new JSONObject();
+		
+		//projection incl. primary key to map the results:
+		String lookFor = makeExpressionAttributeName(primaryKey, expressionAttributeNames) + ", ";
+		for (String s : lookUp){
+			lookFor += makeExpressionAttributeName(s, expressionAttributeNames) + ", ";
+		}
+		lookFor = lookFor.trim().replaceFirst(",$", "");
+		
+		//duplicates are not allowed in one request - IDs are always lowerCase
+		Set<String> ids = new LinkedHashSet<>();
+		for (String v : keyValues){
+			ids.add(v.toLowerCase().trim());
+		}
+		
+		JSONObject items = new JSONObject();
+		JSONArray unprocessed = new JSONArray();
+		String error = null;
+		List<String> idList = new ArrayList<>(ids);
+		for (int i=0; i<idList.size(); i+=BATCH_GET_MAX_KEYS){
+			JSONArray keys = new JSONArray();
+			for (String id : idList.subList(i, Math.min(i + BATCH_GET_MAX_KEYS, idList.size()))){
+				JSON.add(keys, getSearchKey(primaryKey, id));
+			}
+			int attempt = 0;
+			while (!keys.isEmpty()){
+				//JSON request:
+				JSONObject tableRequest = new JSONObject();
+				JSON.add(tableRequest, "Keys", keys);
+				JSON.add(tableRequest, "ConsistentRead", new Boolean(false));	//eventually consistent should be enough
+				JSON.add(tableRequest, "ProjectionExpression", lookFor);
+				JSON.add(tableRequest, "ExpressionAttributeNames", expressionAttributeNames);
+				JSONObject request = new JSONObject();
+				JSON.add(request, "RequestItems", JSON.make(tableName, tableRequest));
+				JSON.add(request, "ReturnConsumedCapacity", "NONE");
+				
+				JSONObject response = request(operation, JSON.toJSONString(request));
+				if (!Connectors.httpSuccess(response)){
+					if (isRetryable(response) && attempt < batchMaxRetries){
+						batchBackoff(attempt++);
+						continue;
+					}
+					error = Connectors.httpError(response);
+					break;
+				}
+				//collect
+				JSONArray found = JSON.getJArray(response, new String[]{"Responses", tableName});
+				if (found != null){
+					for (Object o : found){
+						JSONObject item = (JSONObject) o;
+						JSON.add(items, (String) typeConversion((JSONObject) item.get(primaryKey)), item);
+					}
+				}
+				//retry what is left
+				JSONArray left = JSON.getJArray(response, new String[]{"UnprocessedKeys", tableName, "Keys"});
+				if (left == null || left.isEmpty()){
+					keys = new JSONArray();
+				}else if (attempt < batchMaxRetries){
+					keys = left;
+					batchBackoff(attempt++);
+				}else{
+					keys = left;
+					error = "unprocessed keys left after " + attempt + " retries";
+					break;
+				}
+			}
+			if (error != null){
+				for (Object k : keys){
+					JSON.add(unprocessed, typeConversion((JSONObject) ((JSONObject) k).get(primaryKey)));
+				}
+				for (String id : idList.subList(Math.min(i + BATCH_GET_MAX_KEYS, idList.size()), idList.size())){
+					JSON.add(unprocessed, id);
+				}
+				break;
+			}
+		}
+		
+		JSONObject result = new JSONObject();
+		JSON.add(result, "Items", items);
+		if (error == null){
+			JSON.add(result, Connectors.HTTP_REST_SUCCESS, new Boolean(true));
+		}else{
+			Debugger.println("DynamoDB.batchGetItem - " + error, 1);
+			JSON.add(result, Connectors.HTTP_REST_SUCCESS, new Boolean(false));
+			JSON.add(result, "error", error);
+			JSON.add(result, "UnprocessedKeys", unprocessed);
+		}
+		return result;
+	}
+	
 	/**
 	 * Get item inside table by using secondary indices. Note that indexName must be attributName here.  
 	 * @param tableName - name of the table to check, usually "users"
@@ -210,7 +350,7 @@ public class DynamoDB implements KeyValueDatabase {
 			JSON.add(request, "ExpressionAttributeNames", expressionAttributeNames);
 		}
 		
-		return request(operation, request.toJSONString());
+		return request(operation, JSON.toJSONString(request));
 	}
 	
 	/**
@@ -284,7 +424,7 @@ public class DynamoDB implements KeyValueDatabase {
 		//System.out.println("REQUEST: " + request.toJSONString());		//debug
 		
 		//Connect
-		JSONObject response = request(operation, request.toJSONString());
+		JSONObject response = request(operation, JSON.toJSONString(request));
 		//System.out.println("RESPONSE: " + response.toJSONString());			//debug
 		
 		if (!Connectors.httpSuccess(response)){
@@ -296,6 +436,129 @@ public class DynamoDB implements KeyValueDatabase {
 		}	
 	}
 	
+	/**
+	 * Put and/or delete many items of a table via BatchWriteItem. Requests are sent in chunks of {@link #BATCH_WRITE_MAX_ITEMS},
+	 * "UnprocessedItems" and throttled requests are retried with backoff (see {@link #batchMaxRetries}).<br>
+	 * Note: a put replaces the whole item (other than writeAny) and empty strings are skipped. If the same key is in puts and deletes
+	 * the delete wins.
+	 * @param tableName - name of the table, e.g. "tickets"
+	 * @param primaryKey - primary key of the table, e.g. "guid"
+	 * @param puts - map of primary key value to the item's keys and values (can be null)
+	 * @param deletes - primary key values of items to delete (can be null)
+	 * @return JSONObject with "Results" mapping each key value to an error code (0 - all good, 3 - DB connection error or not processed)
+	 * and Connectors.httpSuccess(result) true if all items were processed
+	 */
+	public static JSONObject batchWriteItem(String tableName, String primaryKey, Map<String, Map<String, Object>> puts, List<String> deletes){
+		
+		//operation:
+		String operation = "BatchWriteItem";
+		
+		//write requests - duplicate keys are not allowed in one request - IDs are always lowerCase
+		Map<String, JSONObject> writeRequests = new LinkedHashMap<>();
+		if (puts != null){
+			for (Map.Entry<String, Map<String, Object>> entry : puts.entrySet()){
+				String id = entry.getKey().toLowerCase().trim();
+				JSONObject item = new JSONObject();
+				for (Map.Entry<String, Object> kv : entry.getValue().entrySet()){
+					Object o = kv.getValue();
+					if (o == null || o.toString().isEmpty()){
+						continue;
+					}
+					if (o.getClass().equals(JSONObject.class)){
+						JSON.add(item, kv.getKey(), o);
+					}else{
+						JSON.add(item, kv.getKey(), DynamoDB.typeConversionDynamoDB(o));
+					}
+				}
+				JSON.putAll(item, getSearchKey(primaryKey, id));
+				writeRequests.put(id, JSON.make("PutRequest", JSON.make("Item", item)));
+			}
+		}
+		if (deletes != null){
+			for (String v : deletes){
+				String id = v.toLowerCase().trim();
+				writeRequests.put(id, JSON.make("DeleteRequest", JSON.make("Key", getSearchKey(primaryKey, id))));
+			}
+		}
+		
+		JSONObject results = new JSONObject();
+		boolean allGood = true;
+		List<JSONObject> requestList = new ArrayList<>(writeRequests.values());
+		for (int i=0; i<requestList.size(); i+=BATCH_WRITE_MAX_ITEMS){
+			JSONArray chunk = new JSONArray();
+			for (JSONObject wr : requestList.subList(i, Math.min(i + BATCH_WRITE_MAX_ITEMS, requestList.size()))){
+				JSON.add(chunk, wr);
+			}
+			int attempt = 0;
+			while (!chunk.isEmpty()){
+				//JSON request:
+				JSONObject request = new JSONObject();
+				JSON.add(request, "RequestItems", JSON.make(tableName, chunk));
+				JSON.add(request, "ReturnConsumedCapacity", "NONE");
+				
+				JSONObject response = request(operation, JSON.toJSONString(request));
+				JSONArray left;
+				if (!Connectors.httpSuccess(response)){
+					if (isRetryable(response) && attempt < batchMaxRetries){
+						batchBackoff(attempt++);
+						continue;
+					}
+					left = chunk;
+				}else{
+					left = JSON.getJArray(response, new String[]{"UnprocessedItems", tableName});
+					if (left != null && !left.isEmpty() && attempt < batchMaxRetries){
+						//mark the processed ones and try the rest again
+						markWriteResults(results, chunk, left, primaryKey);
+						chunk = left;
+						batchBackoff(attempt++);
+						continue;
+					}
+				}
+				markWriteResults(results, chunk, left, primaryKey);
+				if (left != null && !left.isEmpty()){
+					allGood = false;
+				}
+				chunk = new JSONArray();
+			}
+		}
+		
+		JSONObject result = new JSONObject();
+		JSON.add(result, "Results", results);
+		JSON.add(result, Connectors.HTTP_REST_SUCCESS, new Boolean(allGood));
+		if (!allGood){
+			JSON.add(result, "error", "not all items could be processed");
+			Debugger.println("DynamoDB.batchWriteItem - not all items could be processed in table: " + tableName, 1);
+		}
+		return result;
+	}
+	/**
+	 * Set the result code of all write requests in 'sent': 3 if part of 'failed', else 0.
+	 */
+	private static void markWriteResults(JSONObject results, JSONArray sent, JSONArray failed, String primaryKey){
+		Set<String> failedIds = new HashSet<>();
+		if (failed != null){
+			for (Object wr : failed){
+				failedIds.add(getWriteRequestId((JSONObject) wr, primaryKey));
+			}
+		}
+		for (Object wr : sent){
+			String id = getWriteRequestId((JSONObject) wr, primaryKey);
+			JSON.put(results, id, failedIds.contains(id)? 3 : 0);
+		}
+	}
+	/**
+	 * Get the primary key value of a "PutRequest" or "DeleteRequest".
+	 */
+	private static String getWriteRequestId(JSONObject writeRequest, String primaryKey){
+		JSONObject key;
+		if (writeRequest.containsKey("PutRequest")){
+			key = JSON.getJObject(writeRequest, new String[]{"PutRequest", "Item", primaryKey});
+		}else{
+			key = JSON.getJObject(writeRequest, new String[]{"DeleteRequest", "Key", primaryKey});
+		}
+		return (String) typeConversion(key);
+	}
+	
 	/**
 	 * Delete whole item of a table by primaryKey.
 	 * @param tableName - name of the table to check, usually "users"
@@ -327,7 +590,7 @@ public class DynamoDB implements KeyValueDatabase {
 		//System.out.println("REQUEST: " + request.toJSONString());		//debug
 		
 		//Connect
-		JSONObject response = DynamoDB.request(operation, request.toJSONString());
+		JSONObject response = DynamoDB.request(operation, JSON.toJSONString(request));
 		//System.out.println("RESPONSE: " + response.toJSONString());			//debug
 		
 		if (!Connectors.httpSuccess(response)){
@@ -379,29 +642,43 @@ public class DynamoDB implements KeyValueDatabase {
 			JSON.put(request, "GlobalSecondaryIndexes", globalSecondaryIndexes);
 		}
 		
-		return request("CreateTable", request.toJSONString());
+		return request("CreateTable", JSON.toJSONString(request));
 	}
 	/**
 	 * Delete table and return JSON answer to request.
 	 */
 	public static JSONObject deleteTable(String tableName){
-		return request("DeleteTable", (JSON.make("TableName", tableName)).toJSONString());
+		return request("DeleteTable", JSON.toJSONString(JSON.make("TableName", tableName)));
 	}
 	/**
 	 * Request table info and return JSON answer.
 	 */
 	public static JSONObject describeTable(String tableName){
-		return request("DescribeTable", (JSON.make("TableName", tableName)).toJSONString());
+		return request("DescribeTable", JSON.toJSONString(JSON.make("TableName", tableName)));
 	}
 	/**
 	 * Request table list and return first 10 tables.
 	 */
 	public static JSONObject listTables(){
-		return request("ListTables", (JSON.make("Limit", 10)).toJSONString());
+		return request("ListTables", JSON.toJSONString(JSON.make("Limit", 10)));
 	}
 	
 	//---------most basic stuff----------
 	
+	private static volatile AwsV4Signer signer;
+	
+	/**
+	 * Get the request signer for region and service. A new one is created when the configuration changed.
+	 */
+	private static AwsV4Signer getSigner(String region, String service){
+		AwsV4Signer s = signer;
+		if (s == null || !s.getRegion().equals(region) || !s.getService().equals(service)){
+			s = new AwsV4Signer(region, service);
+			signer = s;
+		}
+		return s;
+	}
+	
 	/**
 	 * Request stuff from AWS DynamoDB via HTTP POST, Connectors.httpSuccess(result) can be used for POST status.
 	 * @param operation - database operation (http://docs.aws.amazon.com/amazondynamodb/latest/APIReference/API_Operations.html)
@@ -415,7 +692,6 @@ public class DynamoDB implements KeyValueDatabase {
 		
 		try{
 			//method and connection
-			String method = "POST";
 			String service = DynamoDbConfig.getService();
 			String region = DynamoDbConfig.getRegion();
 			String host = DynamoDbConfig.getHost();
@@ -426,54 +702,14 @@ public class DynamoDB implements KeyValueDatabase {
 			//String amz_target = "DynamoDB_20120810.DescribeTable";		//DynamoDB_<API version>.<operationName>
 			String amz_target = "DynamoDB_20120810." + operation;
 			//String request_parameters = "{\"TableName\": \"Users\"}";		//JSON formatted request according to operation
-			String payload_hash = Security.bytearrayToHexString(Security.getSha256(requestBody));
-			String content_length = Integer.toString(requestBody.getBytes("UTF-8").length);
-
-			//time stamps
-			Date date = new Date();
-			String amz_date = DateTime.getGMT(date, "yyyyMMdd'T'HHmmss'Z'");		//TODO: is GMT universally valid here?
-			String date_stamp = DateTime.getGMT(date, "yyyyMMdd");
-			
-			//*Debug
-			//System.out.println(method);		System.out.println(endpoint);	System.out.println(request_parameters);
-			//*/
-			
-			//canonicals
-			String canonical_uri = "/";				
-			String canonical_querystring = "";
-			String canonical_headers = "content-length:" + content_length + "\n" + "content-type:" + content_type + "\n" + "host:" + host + "\n" + "x-amz-date:" + amz_date + "\n" + "x-amz-target:" + amz_target + "\n";
-			String signed_headers = "content-length;content-type;host;x-amz-date;x-amz-target";
-			String canonical_request = method + "\n" + canonical_uri + "\n" + canonical_querystring + "\n" + canonical_headers + "\n" + signed_headers + "\n" + payload_hash;
-
-			//*Debug
-			//System.out.println("---canonical req.---");		System.out.println(canonical_request);
-			//*/
-			
-			//String to sign
-			String algorithm = "AWS4-HMAC-SHA256";
-			String credential_scope = date_stamp + "/" + region + "/" + service + "/" + "aws4_request";
-			String string_to_sign = algorithm + "\n" +  amz_date + "\n" +  credential_scope + "\n" +  Security.bytearrayToHexString(Security.getSha256(canonical_request));
-			
-			//*Debug
-			//System.out.println("---string to sign---");		System.out.println(string_to_sign);
-			//*/
 			
-			byte[] signing_key = Security.getAwsSignatureKey(DynamoDbConfig.getSecret(), date_stamp, region, service);
-			String signature = Security.bytearrayToHexString(Security.HmacSHA256(string_to_sign, signing_key));
-			
-			//prepare headers for POST
-			String authorization_header = algorithm + " " + "Credential=" + DynamoDbConfig.getAccess() + "/" + credential_scope + ", " +  "SignedHeaders=" + signed_headers + ", " + "Signature=" + signature;
-			
-			HashMap<String, String> headers = new HashMap<String, String>();
-			headers.put("Content-Type", content_type);
-			headers.put("Content-Length", content_length);
-			headers.put("X-Amz-Date", amz_date);
-			headers.put("X-Amz-Target", amz_target);
-			headers.put("Authorization", authorization_header);
+			//sign - the signer caches the derived key of the day and builds the canonical request
+			HashMap<String, String> headers = getSigner(region, service).signPost(DynamoDbConfig.getAccess(), DynamoDbConfig.getSecret(),
+					host, content_type, amz_target, requestBody.getBytes(StandardCharsets.UTF_8), System.currentTimeMillis());
 					
 			//POST request
-			long tic = System.currentTimeMillis();
-			//System.out.println("time before POST: " + (System.currentTimeMillis()-tic) + "ms");		//debug
+			long tic = System.nanoTime();
+			//System.out.println("time before POST: " + (System.nanoTime()-tic)/1000000 + "ms");		//debug
 			JSONObject response = Connectors.httpPOST(endpoint, requestBody, headers);
 			//System.out.println("RESPONSE - read_basics: " + response.toJSONString());		//debug
 			
@@ -481,9 +717,9 @@ public class DynamoDB implements KeyValueDatabase {
 				Debugger.println("DynamoDB.request - DynamoDB Response: " + response.toJSONString(), 1);		//debug
 				Debugger.println("DynamoDB.request - DynamoDB Request body was: " + requestBody, 1);			//debug
 				
-				Statistics.addInternalApiHit(API_NAME + ":" + operation + "-error", tic);
+				Statistics.addInternalApiHitNanos(API_NAME + ":" + operation + "-error", tic);
 			}else{
-				Statistics.addInternalApiHit(API_NAME + ":" + operation, tic);
+				Statistics.addInternalApiHitNanos(API_NAME + ":" + operation, tic);
 			}
 			return response;
 			
@@ -498,6 +734,46 @@ public class DynamoDB implements KeyValueDatabase {
 	
 //------------------------------------Tools---------------------------------------
 	
+	/**
+	 * Wait before the next try of a batch operation. Exponential backoff with "full jitter", i.e. a random time between 0 and
+	 * base * 2^attempt (capped).
+	 * @param attempt - number of tries so far, starting at 0
+	 */
+	static void batchBackoff(int attempt){
+		long max = Math.min(BATCH_BACKOFF_MAX, BATCH_BACKOFF_BASE << Math.min(attempt, 16));
+		Timer.threadSleep(ThreadLocalRandom.current().nextLong(max + 1));
+	}
+	//exceptions (simple class names) of failed requests that are worth another try: timeouts and broken or refused connections.
+	//Others like UnknownHostException, URISyntaxException or SSL errors will fail again.
+	private static final Set<String> RETRYABLE_EXCEPTIONS = new HashSet<>(Arrays.asList(
+			"SocketTimeoutException", "ConnectTimeoutException", "ConnectionPoolTimeoutException", "TimeoutException",
+			"ConnectException", "HttpHostConnectException", "NoRouteToHostException", "NoHttpResponseException",
+			"SocketException", "EOFException", "ConnectionClosedException", "TruncatedChunkException"
+	));
+	
+	/**
+	 * Check if a failed request is worth another try (throttling, server errors or temporary connection problems).
+	 */
+	static boolean isRetryable(JSONObject response){
+		int code = Converters.obj2int(response.get("code"), -1);
+		if (code >= 500){
+			return true;
+		}
+		Object errorObj = response.get("error");
+		if (errorObj == null){
+			return false;
+		}
+		String error = errorObj.toString();
+		if (code == -1){
+			//no response, error is the exception, e.g. "java.net.SocketTimeoutException: Read timed out"
+			int end = error.indexOf(':');
+			String name = (end < 0)? error : error.substring(0, end);
+			return RETRYABLE_EXCEPTIONS.contains(name.substring(name.lastIndexOf('.') + 1).trim());
+		}
+		return (error.contains("ProvisionedThroughputExceededException") || error.contains("ThrottlingException") 
+				|| error.contains("RequestLimitExceeded"));
+	}
+	
 	/**
 	 * Build the JSONObject used as primary key for user account requests.
 	 * @param userID - user to lookup
@@ -11,6 +11,23 @@ public class ElasticSearchConfig {
 	//Cluster endpoint
 	public static String endpoint = "http://localhost:8011";
 	
+	//Bulk processor defaults
+	public static int bulkMaxActions = 1000;				//operations per "_bulk" request
+	public static long bulkMaxBytes = 5*1024*1024;			//bytes per "_bulk" request
+	public static long bulkFlushInterval = 1000;			//ms until buffered operations are sent anyway, 0 is never
+	public static int bulkMaxBuffered = 10000;				//operations buffered or in flight before 'add' blocks
+	
+	//Search iterator defaults
+	public static int searchPageSize = 1000;				//hits per page when iterating over all hits
+	public static String scrollKeepAlive = "1m";			//time a scroll context is kept between pages
+	
+	//Search batching (searchByJson via "_msearch")
+	public static long searchBatchWindow = 0;				//ms to collect concurrent searches for one request, 0 is off
+	public static int searchBatchMaxQueries = 50;			//searches per "_msearch" request
+	
+	//Compression of request bodies (responses are handled by ConnectorsConfig)
+	public static boolean compressRequests = false;			//gzip bodies larger than 'ConnectorsConfig.requestCompressionThreshold'
+	
 	public static String getEndpoint(){
 		return endpoint;
 	}
@@ -18,4 +35,74 @@ public class ElasticSearchConfig {
 		endpoint = newEndpoint;
 	}
 	
-}
+	public static int getBulkMaxActions(){
+		return bulkMaxActions;
+	}
+	public static void setBulkMaxActions(int max){
+		bulkMaxActions = max;
+	}
+	
+	public static long getBulkMaxBytes(){
+		return bulkMaxBytes;
+	}
+	public static void setBulkMaxBytes(long bytes){
+		bulkMaxBytes = bytes;
+	}
+	
+	public static long getBulkFlushInterval(){
+		return bulkFlushInterval;
+	}
+	public static void setBulkFlushInterval(long ms){
+		bulkFlushInterval = ms;
+	}
+	
+	public static int getBulkMaxBuffered(){
+		return bulkMaxBuffered;
+	}
+	public static void setBulkMaxBuffered(int max){
+		bulkMaxBuffered = max;
+	}
+	
+	public static int getSearchPageSize(){
+		return searchPageSize;
+	}
+	public static void setSearchPageSize(int size){
+		searchPageSize = size;
+	}
+	
+	public static String getScrollKeepAlive(){
+		return scrollKeepAlive;
+	}
+	public static void setScrollKeepAlive(String keepAlive){
+		scrollKeepAlive = keepAlive;
+	}
+	
+	public static long getSearchBatchWindow(){
+		return searchBatchWindow;
+	}
+	/**
+	 * Collect searches of 'searchByJson' for up to 'ms' and send them as one "_msearch" request. Use 0 to switch off (default).
+	 */
+	public static void setSearchBatchWindow(long ms){
+		searchBatchWindow = ms;
+	}
+	
+	public static int getSearchBatchMaxQueries(){
+		return searchBatchMaxQueries;
+	}
+	public static void setSearchBatchMaxQueries(int max){
+		searchBatchMaxQueries = max;
+	}
+	
+	public static boolean isCompressRequests(){
+		return compressRequests;
+	}
+	/**
+	 * Gzip large request bodies (e.g. bulk requests and big documents), see {@code ConnectorsConfig.setRequestCompressionThreshold(int)}.
+	 * The cluster accepts compressed requests by default.
+	 */
+	public static void setCompressRequests(boolean compress){
+		compressRequests = compress;
+	}
+	
+}
\ No newline at end of file
@@ -2,6 +2,11 @@ package de.bytemind.core.databases;
 
 import java.net.URLEncoder;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
 
 import org.json.simple.JSONArray;
 import org.json.simple.JSONObject;
@@ -76,6 +81,12 @@ public class Elasticsearch implements KnowledgeDatabase {
 		sources = sources.replaceFirst(",$", "").trim();
 		return getDocument(index, type, item_id, sources);
 	}
+	public JSONObject getItems(String index, String type, List<String> item_ids) {
+		return getDocuments(index, type, item_ids, null);
+	}
+	public JSONObject getItemsFiltered(String index, String type, List<String> item_ids, String[] filters) {
+		return getDocuments(index, type, item_ids, filters);
+	}
 	//UPDATE
 	public JSONObject updateItemData(String index, String type, String item_id, JSONObject data) {
 		int resCode = updateDocument(index, type, item_id, data);
@@ -97,18 +108,18 @@ public class Elasticsearch implements KnowledgeDatabase {
 		try{
 			String url = server + "/" + path + "_search?q=" + URLEncoder.encode(search_term, "UTF-8");
 		
-			long tic = System.currentTimeMillis();
+			long tic = System.nanoTime();
 			JSONObject result = Connectors.httpGET(url);
 			//System.out.println(result.toJSONString()); 		//debug
 			
 			//success?
 			if (Connectors.httpSuccess(result)){
-				Statistics.addInternalApiHit(API_NAME + ":" + "searchSimple", tic);
+				Statistics.addInternalApiHitNanos(API_NAME + ":" + "searchSimple", tic);
 				return result;
 			}
 			//error
 			else{
-				Statistics.addInternalApiHit(API_NAME + ":" + "searchSimple" + "-error", tic);
+				Statistics.addInternalApiHitNanos(API_NAME + ":" + "searchSimple" + "-error", tic);
 				return result;
 			}
 		//error
@@ -126,18 +137,23 @@ public class Elasticsearch implements KnowledgeDatabase {
 			String url = server + "/" + path + "_search";
 			//System.out.println("url: " + url); 		//debug
 			//System.out.println("query: " + jsonQuery); 		//debug
-			long tic = System.currentTimeMillis();
-			JSONObject result = Connectors.httpPOST(url, jsonQuery);
+			long tic = System.nanoTime();
+			JSONObject result;
+			if (ElasticSearchConfig.getSearchBatchWindow() > 0){
+				result = getSearchBatcher(server).search(path, jsonQuery).join();
+			}else{
+				result = Connectors.httpPOST(url, jsonQuery);
+			}
 			//System.out.println(result.toJSONString()); 		//debug
 			
 			//success?
 			if (Connectors.httpSuccess(result)){
-				Statistics.addInternalApiHit(API_NAME + ":" + "searchByJson", tic);
+				Statistics.addInternalApiHitNanos(API_NAME + ":" + "searchByJson", tic);
 				return result;
 			}
 			//error
 			else{
-				Statistics.addInternalApiHit(API_NAME + ":" + "searchByJson" + "-error", tic);
+				Statistics.addInternalApiHitNanos(API_NAME + ":" + "searchByJson" + "-error", tic);
 				return result;
 			}
 		//error
@@ -148,6 +164,65 @@ public class Elasticsearch implements KnowledgeDatabase {
 			return res;
 		}
 	}
+	/**
+	 * Non-blocking version of {@link #searchByJson(String, String)}. If 'ElasticSearchConfig.searchBatchWindow' is set the search
+	 * is sent together with other searches via "_msearch".
+	 * @param path - can be index, type or item, e.g. "index/type/item_id" or only "index/"
+	 * @param jsonQuery - query as JSON string
+	 * @return future with the search result, check with {@code Connectors.httpSuccess(...)}. The future never fails.
+	 */
+	public CompletableFuture<JSONObject> searchByJsonAsync(String path, String jsonQuery) {
+		if (!path.endsWith("/")) { path = path + "/"; }
+		long tic = System.nanoTime();
+		CompletableFuture<JSONObject> future;
+		if (ElasticSearchConfig.getSearchBatchWindow() > 0){
+			future = getSearchBatcher(server).search(path, jsonQuery);
+		}else{
+			future = Connectors.httpPOSTAsync(server + "/" + path + "_search", jsonQuery);
+		}
+		return future.thenApply(result -> {
+			if (Connectors.httpSuccess(result)){
+				Statistics.addInternalApiHitNanos(API_NAME + ":" + "searchByJson", tic);
+			}else{
+				Statistics.addInternalApiHitNanos(API_NAME + ":" + "searchByJson" + "-error", tic);
+			}
+			return result;
+		});
+	}
+	
+	//SEARCH ALL HITS
+	/**
+	 * Iterate over all hits of a query with a scroll. Pages are loaded lazily (and prefetched) with the page size of 'ElasticSearchConfig'.
+	 * Close the iterator if you stop early.
+	 * @param path - index or index/type, e.g. "storage/" or "storage/userData"
+	 * @param jsonQuery - query as JSON string ("size" and "from" are ignored)
+	 * @return iterator over the hits, throws a RuntimeException if a request fails
+	 */
+	public SearchHitIterator searchIterator(String path, String jsonQuery){
+		return searchIterator(path, jsonQuery, ElasticSearchConfig.getSearchPageSize(), false);
+	}
+	/**
+	 * Iterate over all hits of a query. Pages are loaded lazily and the next page is requested while the current one is processed.
+	 * Close the iterator if you stop early.
+	 * @param path - index or index/type, e.g. "storage/" or "storage/userData"
+	 * @param jsonQuery - query as JSON string ("size" and "from" are ignored)
+	 * @param pageSize - hits per request
+	 * @param searchAfter - use "search_after" instead of a scroll, requires a "sort" in the query that ends with a unique field
+	 * @return iterator over the hits, throws a RuntimeException if a request fails
+	 */
+	public SearchHitIterator searchIterator(String path, String jsonQuery, int pageSize, boolean searchAfter){
+		return new SearchHitIterator(server, path, JSON.parseStringOrFail(jsonQuery), pageSize, ElasticSearchConfig.getScrollKeepAlive(), searchAfter);
+	}
+	/**
+	 * Stream of all hits of a query, see {@link #searchIterator(String, String)}. Use try-with-resources to release the scroll if you stop early.
+	 * @param path - index or index/type, e.g. "storage/" or "storage/userData"
+	 * @param jsonQuery - query as JSON string ("size" and "from" are ignored)
+	 * @return sequential stream of hits
+	 */
+	public Stream<JSONObject> searchStream(String path, String jsonQuery){
+		return searchIterator(path, jsonQuery).stream();
+	}
+	
 	//DELETE
 	public JSONObject deleteItem(String index, String type, String item_id) {
 		int resCode = deleteDocument(index, type, item_id);
@@ -182,18 +257,18 @@ public class Elasticsearch implements KnowledgeDatabase {
 			String url = server + "/" + path + "_delete_by_query";
 			//System.out.println("url: " + url); 		//debug
 			//System.out.println("query: " + jsonQuery); 		//debug
-			long tic = System.currentTimeMillis();
+			long tic = System.nanoTime();
 			JSONObject result = Connectors.httpPOST(url, jsonQuery);
 			//System.out.println(result.toJSONString()); 		//debug
 			
 			//success?
 			if (Connectors.httpSuccess(result)){
-				Statistics.addInternalApiHit(API_NAME + ":" + "deleteByJson", tic);
+				Statistics.addInternalApiHitNanos(API_NAME + ":" + "deleteByJson", tic);
 				return result;
 			}
 			//error
 			else{
-				Statistics.addInternalApiHit(API_NAME + ":" + "deleteByJson" + "-error", tic);
+				Statistics.addInternalApiHitNanos(API_NAME + ":" + "deleteByJson" + "-error", tic);
 				return result;
 			}
 		//error
@@ -205,8 +280,94 @@ public class Elasticsearch implements KnowledgeDatabase {
 		}
 	}
 	
+	//BULK
+	public JSONObject bulk(List<BulkOperation> operations){
+		JSONArray items = new JSONArray();
+		if (operations == null || operations.isEmpty()){
+			return JSON.make("code", 0, "items", items);
+		}
+		//Build body - each operation is "action\n[source\n]"
+		long size = 0;
+		for (BulkOperation op : operations){
+			size += op.getSize();
+		}
+		StringBuilder body = new StringBuilder((int) Math.min(size, Integer.MAX_VALUE - 8));
+		for (BulkOperation op : operations){
+			body.append(op.getBulkLines());
+		}
+		
+		HashMap<String, String> headers = makeHeaders("application/x-ndjson");
+		
+		String url = server + "/_bulk";
+		
+		long tic = System.nanoTime();
+		JSONObject result = Connectors.httpPOST(url, body.toString(), headers);
+		
+		//request error
+		if (!Connectors.httpSuccess(result)){
+			Debugger.println("bulk - ElasticSearch - error in request with " + operations.size() + " operations: " + result.toJSONString(), 1);
+			Statistics.addInternalApiHitNanos(API_NAME + ":" + "bulk" + "-error", tic);
+			//HTTP status of the whole request or -1 (no connection etc.)
+			int status = JSON.getIntegerOrDefault(result, "code", -1);
+			for (BulkOperation op : operations){
+				JSONObject item = JSON.make("_id", op.getId(), "status", status, "code", 1, "error", "request failed");
+				JSON.add(items, item);
+			}
+			return JSON.make("code", 1, "items", items, "error", result.get("error"));
+		}
+		
+		//per item results - ES keeps the order of the request
+		JSONArray resItems = (JSONArray) result.get("items");
+		int failed = 0;
+		for (int i=0; i<operations.size(); i++){
+			BulkOperation op = operations.get(i);
+			JSONObject resItem = null;
+			if (resItems != null && i < resItems.size()){
+				resItem = (JSONObject) ((JSONObject) resItems.get(i)).get(op.getAction().name());
+			}
+			JSONObject item;
+			if (resItem == null){
+				item = JSON.make("_id", op.getId(), "status", -1, "code", 1, "error", "missing item result");
+			}else{
+				int status = (resItem.get("status") == null)? 500 : ((Number) resItem.get("status")).intValue();
+				//deleting something that is not there is fine
+				boolean ok = (status >= 200 && status < 300) || (status == 404 && op.getAction() == BulkOperation.Action.delete);
+				item = JSON.make("_id", resItem.get("_id"), "status", status, "code", (ok? 0 : 1));
+				if (!ok){
+					JSON.put(item, "error", resItem.get("error"));
+				}
+			}
+			if (!item.get("code").equals(0)){
+				failed++;
+			}
+			JSON.add(items, item);
+		}
+		if (failed == 0){
+			Statistics.addInternalApiHitNanos(API_NAME + ":" + "bulk", tic);
+			return JSON.make("code", 0, "items", items);
+		}else{
+			Debugger.println("bulk - ElasticSearch - " + failed + " of " + operations.size() + " operations failed", 1);
+			Statistics.addInternalApiHitNanos(API_NAME + ":" + "bulk" + "-error", tic);
+			return JSON.make("code", 2, "items", items);
+		}
+	}
+	
 	//--------ELASTICSEARCH METHODS---------
 	
+	/**
+	 * Request headers with the content type and "Content-Encoding: gzip" if {@link ElasticSearchConfig#setCompressRequests(boolean)} is on.
+	 * Connectors only compresses bodies above the threshold of ConnectorsConfig.
+	 * @param contentType - e.g. "application/json"
+	 */
+	static HashMap<String, String> makeHeaders(String contentType){
+		HashMap<String, String> headers = new HashMap<String, String>();
+		headers.put("Content-Type", contentType);
+		if (ElasticSearchConfig.isCompressRequests()){
+			headers.put("Content-Encoding", "gzip");
+		}
+		return headers;
+	}
+	
 	/**
 	 * Write document at "id" of "type" in "index".
 	 * @param index - index name, e.g. "account"
@@ -217,26 +378,24 @@ public class Elasticsearch implements KnowledgeDatabase {
 	 */
 	public int writeDocument(String index, String type, String id, JSONObject data){		
 		//PUT headers
-		HashMap<String, String> headers = new HashMap<String, String>();
-		headers.put("Content-Type", "application/json");
-		headers.put("Content-Length", Integer.toString(data.toJSONString().getBytes().length));
+		HashMap<String, String> headers = makeHeaders("application/json");
 		
 		//Build URL
 		String url = server + "/" + index + "/" + type + "/" + id;
 		
-		long tic = System.currentTimeMillis();
-		JSONObject result = Connectors.httpPUT(url, data.toJSONString(), headers);
+		long tic = System.nanoTime();
+		JSONObject result = Connectors.httpPUTJson(url, data, headers);
 		//System.out.println(result.toJSONString()); 		//debug
 		
 		//success?
 		if (Connectors.httpSuccess(result)){
-			Statistics.addInternalApiHit(API_NAME + ":" + "writeDocument", tic);
+			Statistics.addInternalApiHitNanos(API_NAME + ":" + "writeDocument", tic);
 			return 0;
 		}
 		//error
 		else{
 			Debugger.println("writeDocument - ElasticSearch - error in '" + index + "/" + type + "': " + result.toJSONString(), 1);
-			Statistics.addInternalApiHit(API_NAME + ":" + "writeDocument" + "-error", tic);
+			Statistics.addInternalApiHitNanos(API_NAME + ":" + "writeDocument" + "-error", tic);
 			return 1;
 		}
 	}
@@ -249,27 +408,25 @@ public class Elasticsearch implements KnowledgeDatabase {
 	 */
 	public JSONObject writeDocument(String index, String type, JSONObject data){		
 		//POST headers
-		HashMap<String, String> headers = new HashMap<String, String>();
-		headers.put("Content-Type", "application/json");
-		headers.put("Content-Length", Integer.toString(data.toJSONString().getBytes().length));
+		HashMap<String, String> headers = makeHeaders("application/json");
 		
 		//Build URL
 		String url = server + "/" + index + "/" + type;
 		//System.out.println("writeDocument URL: " + url); 		//debug
 		
-		long tic = System.currentTimeMillis();
-		JSONObject result = Connectors.httpPOST(url, data.toJSONString(), headers);
+		long tic = System.nanoTime();
+		JSONObject result = Connectors.httpPOSTJson(url, data, headers);
 		//System.out.println("writeDocument Result: " + result.toJSONString()); 				//debug
 		
 		//success?
 		if (Connectors.httpSuccess(result)){
-			Statistics.addInternalApiHit(API_NAME + ":" + "writeDocument", tic);
+			Statistics.addInternalApiHitNanos(API_NAME + ":" + "writeDocument", tic);
 			return JSON.make("code", 0, "_id", result.get("_id"));
 		}
 		//error
 		else{
 			Debugger.println("writeDocument - ElasticSearch - error in '" + index + "/" + type + "': " + result.toJSONString(), 1);
-			Statistics.addInternalApiHit(API_NAME + ":" + "writeDocument" + "-error", tic);
+			Statistics.addInternalApiHitNanos(API_NAME + ":" + "writeDocument" + "-error", tic);
 			return JSON.make("code", 1);
 		}
 	}
@@ -284,9 +441,7 @@ public class Elasticsearch implements KnowledgeDatabase {
 	 */
 	public int updateDocument(String index, String type, String id, JSONObject data){		
 		//POST headers
-		HashMap<String, String> headers = new HashMap<String, String>();
-		headers.put("Content-Type", "application/json");
-		headers.put("Content-Length", Integer.toString(data.toJSONString().getBytes().length));
+		HashMap<String, String> headers = makeHeaders("application/json");
 		
 		//Build URL
 		String url = server + "/" + index + "/" + type + "/" + id + "/_update";
@@ -299,19 +454,19 @@ public class Elasticsearch implements KnowledgeDatabase {
 			data = dataUpdate;
 		}
 		
-		long tic = System.currentTimeMillis();
-		JSONObject result = Connectors.httpPOST(url, data.toJSONString(), headers);
+		long tic = System.nanoTime();
+		JSONObject result = Connectors.httpPOSTJson(url, data, headers);
 		//System.out.println(result.toJSONString()); 		//debug
 		
 		//success?
 		if (Connectors.httpSuccess(result)){
-			Statistics.addInternalApiHit(API_NAME + ":" + "updateDocument", tic);
+			Statistics.addInternalApiHitNanos(API_NAME + ":" + "updateDocument", tic);
 			return 0;
 		}
 		//error
 		else{
 			Debugger.println("updateDocument - ElasticSearch - error in '" + index + "/" + type + "': " + result.toJSONString(), 1);
-			Statistics.addInternalApiHit(API_NAME + ":" + "updateDocument" + "-error", tic);
+			Statistics.addInternalApiHitNanos(API_NAME + ":" + "updateDocument" + "-error", tic);
 			return 1;
 		}
 	}
@@ -327,19 +482,19 @@ public class Elasticsearch implements KnowledgeDatabase {
 		//Build URL
 		String url = server + "/" + index + "/" + type + "/" + id;
 		
-		long tic = System.currentTimeMillis();
+		long tic = System.nanoTime();
 		JSONObject result = Connectors.httpGET(url);
 		//System.out.println(result.toJSONString()); 		//debug
 		
 		//success?
 		if (Connectors.httpSuccess(result)){
-			Statistics.addInternalApiHit(API_NAME + ":" + "getDocument", tic);
+			Statistics.addInternalApiHitNanos(API_NAME + ":" + "getDocument", tic);
 			return result;
 		}
 		//error
 		else{
 			Debugger.println("getDocument - ElasticSearch - error in '" + index + "/" + type + "': " + result.toJSONString(), 1);
-			Statistics.addInternalApiHit(API_NAME + ":" + "getDocument" + "-error", tic);
+			Statistics.addInternalApiHitNanos(API_NAME + ":" + "getDocument" + "-error", tic);
 			return result;
 		}
 	}
@@ -355,6 +510,55 @@ public class Elasticsearch implements KnowledgeDatabase {
 		return getDocument(index, type, id + "?_source=" + sources.replaceAll("\\s+", "").trim());
 	}
 	
+	/**
+	 * Get many documents of "index/type" with one "_mget" request.
+	 * @param index - index name, e.g. "account"
+	 * @param type - type name, e.g. "user"
+	 * @param ids - document IDs, duplicates are allowed
+	 * @param sources - entries in the documents you want to retrieve, e.g. {"name", "email"}, or null for all
+	 * @return JSONObject with "code" (0 - no error, 1 - request failed) and "docs" array in the order of 'ids'. Each doc has "_id" and "found"
+	 * (plus "_source") or "error".
+	 */
+	public JSONObject getDocuments(String index, String type, List<String> ids, String[] sources){
+		if (ids == null || ids.isEmpty()){
+			return JSON.make("code", 0, "docs", new JSONArray());
+		}
+		//Build body - filters per doc so every ES version accepts them
+		JSONArray sourceFilter = null;
+		if (sources != null){
+			sourceFilter = new JSONArray();
+			for (String f : sources){
+				JSON.add(sourceFilter, f.trim());
+			}
+		}
+		JSONArray docs = new JSONArray();
+		for (String id : ids){
+			JSONObject doc = JSON.make("_id", id);
+			if (sourceFilter != null){
+				JSON.put(doc, "_source", sourceFilter);
+			}
+			JSON.add(docs, doc);
+		}
+		HashMap<String, String> headers = makeHeaders("application/json");
+		
+		String url = server + "/" + index + "/" + type + "/_mget";
+		
+		long tic = System.nanoTime();
+		JSONObject result = Connectors.httpPOSTJson(url, JSON.make("docs", docs), headers);
+		
+		//success? - ES keeps the order of the request
+		if (Connectors.httpSuccess(result) && result.get("docs") instanceof JSONArray){
+			Statistics.addInternalApiHitNanos(API_NAME + ":" + "getDocuments", tic);
+			return JSON.make("code", 0, "docs", result.get("docs"));
+		}
+		//error
+		else{
+			Debugger.println("getDocuments - ElasticSearch - error in '" + index + "/" + type + "' with " + ids.size() + " IDs: " + result.toJSONString(), 1);
+			Statistics.addInternalApiHitNanos(API_NAME + ":" + "getDocuments" + "-error", tic);
+			return JSON.make("code", 1, "docs", new JSONArray(), "error", result.get("error"));
+		}
+	}
+	
 	/**
 	 * Delete document at "index/type/id".
 	 * @param index - index name, e.g. "account"
@@ -366,19 +570,19 @@ public class Elasticsearch implements KnowledgeDatabase {
 		//Build URL
 		String url = server + "/" + index + "/" + type + "/" + id;
 		
-		long tic = System.currentTimeMillis();
+		long tic = System.nanoTime();
 		JSONObject result = Connectors.httpDELETE(url);
 		//System.out.println(result.toJSONString()); 		//debug
 		
 		//success?
 		if (Connectors.httpSuccess(result)){
-			Statistics.addInternalApiHit(API_NAME + ":" + "deleteDocument", tic);
+			Statistics.addInternalApiHitNanos(API_NAME + ":" + "deleteDocument", tic);
 			return 0;
 		}
 		//error
 		else{
 			Debugger.println("deleteDocument - ElasticSearch - error in '" + index + "/" + type + "': " + result.toJSONString(), 1);
-			Statistics.addInternalApiHit(API_NAME + ":" + "deleteDocument" + "-error", tic);
+			Statistics.addInternalApiHitNanos(API_NAME + ":" + "deleteDocument" + "-error", tic);
 			return 1;
 		}
 	}
@@ -391,19 +595,19 @@ public class Elasticsearch implements KnowledgeDatabase {
 		//Build URL
 		String url = server + "/" + path;
 		
-		long tic = System.currentTimeMillis();
+		long tic = System.nanoTime();
 		JSONObject result = Connectors.httpDELETE(url);
 		//System.out.println(result.toJSONString()); 		//debug
 		
 		//success?
 		if (Connectors.httpSuccess(result)){
-			Statistics.addInternalApiHit(API_NAME + ":" + "deleteAny", tic);
+			Statistics.addInternalApiHitNanos(API_NAME + ":" + "deleteAny", tic);
 			return 0;
 
 		//error
 		}else{
 			Debugger.println("deleteAny - ElasticSearch - error in '" + path + "': " + result.toJSONString(), 1);
-			Statistics.addInternalApiHit(API_NAME + ":" + "deleteAny" + "-error", tic);
+			Statistics.addInternalApiHitNanos(API_NAME + ":" + "deleteAny" + "-error", tic);
 			return 1;
 		}
 	}
@@ -417,12 +621,11 @@ public class Elasticsearch implements KnowledgeDatabase {
 	 */
 	public int deleteFromDocument(String index, String type, String id, String field){		
 		//headers
-		HashMap<String, String> headers = new HashMap<String, String>();
-		headers.put("Content-Type", "application/json");
+		HashMap<String, String> headers = makeHeaders("application/json");
 		
 		//Build URL
 		String url = server + "/" + index + "/" + type + "/" + id + "/_update";
-		long tic = System.currentTimeMillis();
+		long tic = System.nanoTime();
 		
 		JSONObject data;
 		if (field.contains(".")){
@@ -454,18 +657,18 @@ public class Elasticsearch implements KnowledgeDatabase {
 			);
 		}
 		
-		JSONObject result = Connectors.httpPOST(url, data.toJSONString(), headers);
+		JSONObject result = Connectors.httpPOSTJson(url, data, headers);
 		//System.out.println(result.toJSONString()); 		//debug
 		
 		//success?
 		if (Connectors.httpSuccess(result)){
-			Statistics.addInternalApiHit(API_NAME + ":" + "deleteFromDocument", tic);
+			Statistics.addInternalApiHitNanos(API_NAME + ":" + "deleteFromDocument", tic);
 			return 0;
 		}
 		//error
 		else{
 			Debugger.println("deleteFromDocument - ElasticSearch - error in '" + index + "/" + type + "': " + result.toJSONString(), 1);
-			Statistics.addInternalApiHit(API_NAME + ":" + "deleteFromDocument" + "-error", tic);
+			Statistics.addInternalApiHitNanos(API_NAME + ":" + "deleteFromDocument" + "-error", tic);
 			return 1;
 		}
 	}
@@ -477,26 +680,24 @@ public class Elasticsearch implements KnowledgeDatabase {
 	 * @return JSON response with error code.
 	 */
 	public static JSONObject putMapping(String server, String index, JSONObject data){
-		HashMap<String, String> headers = new HashMap<String, String>();
-		headers.put("Content-Type", "application/json");
-		headers.put("Content-Length", Integer.toString(data.toJSONString().getBytes().length));
+		HashMap<String, String> headers = makeHeaders("application/json");
 		
 		//Build URL
 		String url = server + "/" + index;
 		
-		long tic = System.currentTimeMillis();
-		JSONObject result = Connectors.httpPUT(url, data.toJSONString(), headers);
+		long tic = System.nanoTime();
+		JSONObject result = Connectors.httpPUTJson(url, data, headers);
 		//System.out.println(result.toJSONString()); 		//debug
 		
 		//success?
 		if (Connectors.httpSuccess(result)){
-			Statistics.addInternalApiHit(API_NAME + ":" + "putMapping", tic);
+			Statistics.addInternalApiHitNanos(API_NAME + ":" + "putMapping", tic);
 			return JSON.make("code", 0);
 		}
 		//error
 		else{
 			Debugger.println("putMapping - ElasticSearch - error in '" + index + "': " + result.toJSONString(), 1);
-			Statistics.addInternalApiHit(API_NAME + ":" + "putMapping" + "-error", tic);
+			Statistics.addInternalApiHitNanos(API_NAME + ":" + "putMapping" + "-error", tic);
 			return JSON.make("code", 1);
 		}
 	}
@@ -517,19 +718,19 @@ public class Elasticsearch implements KnowledgeDatabase {
 		try{
 			String url = server + "/" + path.trim() + api.trim() + urlParameters.trim();
 		
-			long tic = System.currentTimeMillis();
+			long tic = System.nanoTime();
 			JSONObject result = Connectors.httpGET(url);
 			//System.out.println(result.toJSONString()); 		//debug
 			
 			//success?
 			if (Connectors.httpSuccess(result)){
-				Statistics.addInternalApiHit(API_NAME + ":" + "customGET", tic);
+				Statistics.addInternalApiHitNanos(API_NAME + ":" + "customGET", tic);
 				return result;
 
 			//error
 			}else{
 				Debugger.println("customGET - ElasticSearch - error in '" + path + api + "': " + result.toJSONString(), 1);
-				Statistics.addInternalApiHit(API_NAME + ":" + "customGET" + "-error", tic);
+				Statistics.addInternalApiHitNanos(API_NAME + ":" + "customGET" + "-error", tic);
 				return result;
 			}
 		//error
@@ -551,26 +752,24 @@ public class Elasticsearch implements KnowledgeDatabase {
 	public static JSONObject customPUT(String server, String path, JSONObject data){	
 		try{
 			//PUT headers
-			HashMap<String, String> headers = new HashMap<String, String>();
-			headers.put("Content-Type", "application/json");
-			headers.put("Content-Length", Integer.toString(data.toJSONString().getBytes().length));
+			HashMap<String, String> headers = makeHeaders("application/json");
 			
 			//Build URL
 			String url = server + "/" + path.trim();
 			
-			long tic = System.currentTimeMillis();
-			JSONObject result = Connectors.httpPUT(url, data.toJSONString(), headers);
+			long tic = System.nanoTime();
+			JSONObject result = Connectors.httpPUTJson(url, data, headers);
 			//System.out.println(result.toJSONString()); 		//debug
 			
 			//success?
 			if (Connectors.httpSuccess(result)){
-				Statistics.addInternalApiHit(API_NAME + ":" + "customPUT", tic);
+				Statistics.addInternalApiHitNanos(API_NAME + ":" + "customPUT", tic);
 				return result;
 			
 			//error
 			}else{
 				Debugger.println("customPUT - ElasticSearch - error in '" + path + "': " + result.toJSONString(), 1);
-				Statistics.addInternalApiHit(API_NAME + ":" + "customPUT" + "-error", tic);
+				Statistics.addInternalApiHitNanos(API_NAME + ":" + "customPUT" + "-error", tic);
 				return result;
 			}
 		//error
@@ -593,19 +792,19 @@ public class Elasticsearch implements KnowledgeDatabase {
 		if (!path.endsWith("/") && !path.isEmpty()) { path = path + "/"; }
 		String url = server + "/" + path;
 		try{
-			long tic = System.currentTimeMillis();
+			long tic = System.nanoTime();
 			JSONObject result = Connectors.httpDELETE(url);
 			//System.out.println(result.toJSONString()); 		//debug
 			
 			//success?
 			if (Connectors.httpSuccess(result)){
-				Statistics.addInternalApiHit(API_NAME + ":" + "customDELETE", tic);
+				Statistics.addInternalApiHitNanos(API_NAME + ":" + "customDELETE", tic);
 				return result;
 	
 			//error
 			}else{
 				Debugger.println("customDELETE - ElasticSearch - error in '" + path + "': " + result.toJSONString(), 1);
-				Statistics.addInternalApiHit(API_NAME + ":" + "customDELETE" + "-error", tic);
+				Statistics.addInternalApiHitNanos(API_NAME + ":" + "customDELETE" + "-error", tic);
 				return result;
 			}
 		//error
@@ -619,6 +818,33 @@ public class Elasticsearch implements KnowledgeDatabase {
 	
 	//-------- Helpers ---------
 	
+	//one search batcher per cluster, shared by all instances
+	private static final Map<String, SearchBatcher> searchBatchers = new ConcurrentHashMap<>();
+	
+	/**
+	 * Get the batcher used for searches to 'server' when 'ElasticSearchConfig.searchBatchWindow' is set.
+	 * A new one is created when the configuration changed.
+	 */
+	public static SearchBatcher getSearchBatcher(String server){
+		long window = ElasticSearchConfig.getSearchBatchWindow();
+		int maxQueries = ElasticSearchConfig.getSearchBatchMaxQueries();
+		SearchBatcher batcher = searchBatchers.get(server);
+		if (batcher == null || batcher.getWindow() != window || batcher.getMaxQueries() != maxQueries){
+			synchronized (searchBatchers){
+				batcher = searchBatchers.get(server);
+				if (batcher == null || batcher.getWindow() != window || batcher.getMaxQueries() != maxQueries){
+					SearchBatcher old = batcher;
+					batcher = new SearchBatcher(server, window, maxQueries);
+					searchBatchers.put(server, batcher);
+					if (old != null){
+						old.close();
+					}
+				}
+			}
+		}
+		return batcher;
+	}
+	
 	/**
 	 * Get "hits" of a search query. If the query had no results return empty array.
 	 */
@@ -22,6 +22,16 @@ public interface KeyValueDatabase {
 	
 	public JSONObject getValuesBySecondayIndex(String table, String secIndexName, String secIndexValue, String... keys);
 	
+	/**
+	 * Get the values of many items at once (one item per primary index value). Use this instead of calling getValues in a loop.
+	 * @param table - table name, e.g. "users"
+	 * @param primeIndexName - primary index, e.g. "Guuid"
+	 * @param primeIndexValues - values of the primary index to load, e.g. a page of user IDs
+	 * @param keys - keys to get for each item
+	 * @return JSONObject with "Items" mapping each found primary index value to its item (missing ones are not included)
+	 */
+	public JSONObject getValuesBatch(String table, String primeIndexName, List<String> primeIndexValues, String... keys);
+	
 	
 	public JSONObject setValue(String table, String primeIndexName, String primeIndexValue, String key, String value);
 	
@@ -35,5 +45,23 @@ public interface KeyValueDatabase {
 	public JSONObject deleteKey(String table, String primeIndexName, String primeIndexValue, String key);
 	
 	public JSONObject deleteIndex(String table, String primeIndexName, String primeIndexValue);
+	
+	/**
+	 * Write many items at once. Other than setValue this replaces the whole item with the given values.
+	 * @param table - table name, e.g. "users"
+	 * @param primeIndexName - primary index, e.g. "Guuid"
+	 * @param items - map of primary index value to the item's keys and values
+	 * @return JSONObject with "Results" mapping each primary index value to its error code (0 - all good)
+	 */
+	public JSONObject setItemsBatch(String table, String primeIndexName, Map<String, Map<String, Object>> items);
+	
+	/**
+	 * Delete many items at once.
+	 * @param table - table name, e.g. "tickets"
+	 * @param primeIndexName - primary index, e.g. "guid"
+	 * @param primeIndexValues - values of the primary index to delete
+	 * @return JSONObject with "Results" mapping each primary index value to its error code (0 - all good)
+	 */
+	public JSONObject deleteIndicesBatch(String table, String primeIndexName, List<String> primeIndexValues);
 
 }
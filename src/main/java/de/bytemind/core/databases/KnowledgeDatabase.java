@@ -1,5 +1,7 @@
 package de.bytemind.core.databases;
 
+import java.util.List;
+
 import org.json.simple.JSONObject;
 
 /**
@@ -55,6 +57,25 @@ public interface KnowledgeDatabase {
 	 */
 	public JSONObject getItemFiltered(String index, String type, String item_id, String[] filters);
 	
+	/**
+	 * Get many items of "type" at "index" with one request.
+	 * @param index - index or table name like e.g. "account" or "knowledge"
+	 * @param type - subclass name, e.g. "user", "lists", "banking" (for account) or "geodata" and "dictionary" (for knowledge) 
+	 * @param item_ids - unique item/id names, e.g. list IDs of a user
+	 * @return JSON with error "code" (0 - no error, 1 - request failed) and "docs" array with one result per ID (same order, check "found")
+	 */
+	public JSONObject getItems(String index, String type, List<String> item_ids);
+	
+	/**
+	 * Get filtered entries of many items of "type" at "index" with one request.
+	 * @param index - index or table name like e.g. "account" or "knowledge"
+	 * @param type - subclass name, e.g. "user", "lists", "banking" (for account) or "geodata" and "dictionary" (for knowledge) 
+	 * @param item_ids - unique item/id names, e.g. list IDs of a user
+	 * @param filters - String array with filters like {"name", "address", "language", "age"}
+	 * @return JSON with error "code" (0 - no error, 1 - request failed) and "docs" array with one result per ID (same order, check "found")
+	 */
+	public JSONObject getItemsFiltered(String index, String type, List<String> item_ids, String[] filters);
+	
 	/**
 	 * Update or create the data/properties/values of an item of "type" at "index". 
 	 * @param index - index or table name like e.g. "account" or "knowledge"
@@ -104,5 +125,14 @@ public interface KnowledgeDatabase {
 	 * @return JSONObject with delete result or error description
 	 */
 	public JSONObject deleteByJson(String path, String jsonQuery);
+	
+	/**
+	 * Execute many write operations (index, update, delete) with one request. Use {@link BulkProcessor} to collect operations 
+	 * in the background and send them automatically.
+	 * @param operations - list of operations, e.g. BulkOperation.index(...), BulkOperation.delete(...)
+	 * @return JSON with error "code" (0 - all fine, 1 - request failed, 2 - some items failed) and "items" array with one result
+	 * per operation (same order) containing "_id", "status" and "code" (0 - no error, 1 - fail) plus "error" if something went wrong.
+	 */
+	public JSONObject bulk(List<BulkOperation> operations);
 
 }
@@ -0,0 +1,254 @@
+package de.bytemind.core.databases;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+
+import de.bytemind.core.server.Statistics;
+import de.bytemind.core.tools.Connectors;
+import de.bytemind.core.tools.Debugger;
+import de.bytemind.core.tools.JSON;
+
+/**
+ * Collects searches that are issued within a short time window (or until a max. number of queries is reached) and sends them
+ * with one "_msearch" request. Each caller gets a future with its own response in the same format as {@link Elasticsearch#searchByJson}.
+ * This adds up to 'window' ms of delay to a search but saves a lot of requests and connections when many threads search at the same time.<br>
+ * Usually you don't use this class directly, set {@link ElasticSearchConfig#setSearchBatchWindow(long)} to let
+ * Elasticsearch.searchByJson use it. Batches are counted in {@link Statistics} as "Elasticsearch:msearch".
+ *
+ * @author Florian Quirin
+ *
+ */
+public class SearchBatcher implements Closeable {
+	final private static String API_NAME = "Elasticsearch";
+
+	private static class Pending {
+		final String header;
+		final String query;
+		final CompletableFuture<JSONObject> future = new CompletableFuture<>();
+		Pending(String header, String query){
+			this.header = header;
+			this.query = query;
+		}
+	}
+
+	private final String server;
+	private final long window;
+	private final int maxQueries;
+	private final ScheduledExecutorService timer;
+
+	private final Object lock = new Object();
+	private List<Pending> batch = new ArrayList<>();
+	private ScheduledFuture<?> scheduledFlush;
+	private volatile boolean closed = false;
+
+	private final AtomicLong requests = new AtomicLong();
+	private final AtomicLong queries = new AtomicLong();
+
+	/**
+	 * Create a batcher for a cluster.
+	 * @param server - Elasticsearch URL
+	 * @param window - ms to wait for more searches after the first one of a batch arrived
+	 * @param maxQueries - a batch is sent at once when it has this many searches
+	 */
+	public SearchBatcher(String server, long window, int maxQueries){
+		this.server = server;
+		this.window = Math.max(0, window);
+		this.maxQueries = Math.max(1, maxQueries);
+		this.timer = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread t = new Thread(r, "es-search-batcher");
+			t.setDaemon(true);
+			return t;
+		});
+	}
+
+	public long getWindow(){
+		return window;
+	}
+	public int getMaxQueries(){
+		return maxQueries;
+	}
+	/**
+	 * Number of HTTP requests sent so far.
+	 */
+	public long getRequestCount(){
+		return requests.get();
+	}
+	/**
+	 * Number of searches sent so far.
+	 */
+	public long getQueryCount(){
+		return queries.get();
+	}
+
+	/**
+	 * Add a search to the current batch.
+	 * @param path - index or index/type, e.g. "storage/" or "storage/userData"
+	 * @param jsonQuery - query as JSON string
+	 * @return future with the search result, check with {@code Connectors.httpSuccess(...)}. The future never fails.
+	 */
+	public CompletableFuture<JSONObject> search(String path, String jsonQuery){
+		Pending p = new Pending(makeHeader(path), toSingleLine(jsonQuery));
+		List<Pending> full = null;
+		synchronized (lock){
+			if (closed){
+				//e.g. replaced after a config change while a caller still had it
+				full = new ArrayList<>();
+				full.add(p);
+			}else{
+				batch.add(p);
+				if (batch.size() >= maxQueries){
+					full = takeBatch();
+				}else if (batch.size() == 1){
+					scheduledFlush = timer.schedule(this::flush, window, TimeUnit.MILLISECONDS);
+				}
+			}
+		}
+		if (full != null){
+			send(full);
+		}
+		return p.future;
+	}
+
+	/**
+	 * Send the current batch now.
+	 */
+	public void flush(){
+		List<Pending> list;
+		synchronized (lock){
+			list = takeBatch();
+		}
+		send(list);
+	}
+
+	/**
+	 * Send what is left and stop the timer. Searches added afterwards are sent one by one.
+	 */
+	@Override
+	public void close(){
+		synchronized (lock){
+			closed = true;
+		}
+		flush();
+		timer.shutdown();
+	}
+
+	//--- helpers ---
+
+	//call with lock
+	private List<Pending> takeBatch(){
+		List<Pending> list = batch;
+		batch = new ArrayList<>();
+		if (scheduledFlush != null){
+			scheduledFlush.cancel(false);
+			scheduledFlush = null;
+		}
+		return list;
+	}
+
+	private void send(List<Pending> list){
+		if (list.isEmpty()){
+			return;
+		}
+		requests.incrementAndGet();
+		queries.addAndGet(list.size());
+
+		//Build body - each search is "header\nquery\n"
+		int size = 0;
+		for (Pending p : list){
+			size += p.header.length() + p.query.length() + 2;
+		}
+		StringBuilder body = new StringBuilder(size);
+		for (Pending p : list){
+			body.append(p.header).append('\n').append(p.query).append('\n');
+		}
+		HashMap<String, String> headers = Elasticsearch.makeHeaders("application/x-ndjson");
+
+		long tic = System.nanoTime();
+		Connectors.httpPOSTAsync(server + "/_msearch", body.toString(), headers).whenComplete((result, ex) -> {
+			try{
+				if (ex != null){
+					result = makeError(-1, ex.toString());
+				}
+				distribute(list, result, tic);
+			}catch (Exception e){
+				JSONObject error = makeError(-1, "failed to read msearch result - e: " + e.getMessage());
+				for (Pending p : list){
+					p.future.complete(error);
+				}
+			}
+		});
+	}
+
+	private static void distribute(List<Pending> list, JSONObject result, long tic){
+		JSONArray responses = (result == null)? null : JSON.getJArray(result, "responses");
+		if (!Connectors.httpSuccess(result) || responses == null || responses.size() != list.size()){
+			Debugger.println("msearch - ElasticSearch - error in request with " + list.size() + " searches: "
+					+ ((result == null)? "no result" : result.toJSONString()), 1);
+			Statistics.addInternalApiHitNanos(API_NAME + ":" + "msearch" + "-error", tic);
+			for (Pending p : list){
+				if (Connectors.httpSuccess(result)){
+					p.future.complete(makeError(-1, "invalid msearch result"));
+				}else{
+					//each caller gets its own copy
+					p.future.complete(JSON.putAll(new JSONObject(), result));
+				}
+			}
+			return;
+		}
+		Statistics.addInternalApiHitNanos(API_NAME + ":" + "msearch", tic);
+		//ES keeps the order of the request
+		for (int i=0; i<list.size(); i++){
+			JSONObject res = (JSONObject) responses.get(i);
+			if (res.containsKey("error")){
+				int status = (res.get("status") instanceof Number)? ((Number) res.get("status")).intValue() : 500;
+				Object error = res.get("error");
+				list.get(i).future.complete(makeError(status, (error instanceof JSONObject)? ((JSONObject) error).toJSONString() : String.valueOf(error)));
+			}else{
+				JSON.put(res, Connectors.HTTP_REST_SUCCESS, true);
+				list.get(i).future.complete(res);
+			}
+		}
+	}
+
+	//same format as failed Connectors requests
+	private static JSONObject makeError(int code, String error){
+		return JSON.make(Connectors.HTTP_REST_SUCCESS, false, "code", code, "error", error);
+	}
+
+	//header line with index and type of a path like "index/type/"
+	private static String makeHeader(String path){
+		int start = 0;
+		int end = path.length();
+		while (start < end && path.charAt(start) == '/') start++;
+		while (end > start && path.charAt(end - 1) == '/') end--;
+		String[] parts = path.substring(start, end).split("/");
+		JSONObject header = new JSONObject();
+		if (parts.length > 0 && !parts[0].isEmpty()){
+			JSON.put(header, "index", parts[0]);
+		}
+		if (parts.length > 1 && !parts[1].isEmpty()){
+			JSON.put(header, "type", parts[1]);
+		}
+		return JSON.toJSONString(header);
+	}
+
+	//line breaks in valid JSON can only be white-space, but the ndjson format needs one line per query
+	private static String toSingleLine(String json){
+		if (json.indexOf('\n') < 0 && json.indexOf('\r') < 0){
+			return json;
+		}
+		return json.replace('\n', ' ').replace('\r', ' ');
+	}
+
+}
@@ -0,0 +1,230 @@
+package de.bytemind.core.databases;
+
+import java.io.Closeable;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+
+import de.bytemind.core.server.Statistics;
+import de.bytemind.core.tools.Connectors;
+import de.bytemind.core.tools.Debugger;
+import de.bytemind.core.tools.JSON;
+
+/**
+ * Lazy iterator over all hits of an Elasticsearch query. Hits are loaded page by page and the next page is requested in the background
+ * as soon as the current one arrives, so only two pages are in memory at any time.<br>
+ * Two modes:<br>
+ * - scroll (default): works for any query, the scroll context is cleared automatically when all hits are read or on 'close'.<br>
+ * - search_after: no server-side context, but the query must have a "sort" that ends with a unique field (tiebreaker),
+ * otherwise hits with equal sort values can be skipped.<br>
+ * Requests that fail throw a RuntimeException in 'hasNext'. Always close the iterator (or the stream) if you stop early.
+ * Pages are counted in {@link Statistics} as "Elasticsearch:searchPage".
+ *
+ * @author Florian Quirin
+ *
+ */
+public class SearchHitIterator implements Iterator<JSONObject>, Closeable {
+	final private static String API_NAME = "Elasticsearch";
+
+	private final String server;
+	private final String path;
+	private final JSONObject query;
+	private final int pageSize;
+	private final String keepAlive;
+	private final boolean searchAfter;
+
+	private JSONArray page;
+	private int pos = 0;
+	private CompletableFuture<JSONObject> nextPage;
+	private String scrollId;
+	private long total = -1;
+	private long received = 0;
+	private boolean lastPage = false;
+	private boolean closed = false;
+
+	/**
+	 * Start a search, the first page is requested at once. Use {@link Elasticsearch#searchIterator(String, String, int, boolean)}.
+	 * @param server - Elasticsearch URL
+	 * @param path - index or index/type, e.g. "storage/userData"
+	 * @param query - query, e.g. {"query":{...}, "_source":[...]}, "size" and "from" are ignored
+	 * @param pageSize - hits per request
+	 * @param keepAlive - time the server keeps the scroll context between pages, e.g. "1m"
+	 * @param searchAfter - use "search_after" instead of a scroll (query must have a unique "sort")
+	 */
+	@SuppressWarnings("unchecked")
+	SearchHitIterator(String server, String path, JSONObject query, int pageSize, String keepAlive, boolean searchAfter){
+		if (searchAfter && !query.containsKey("sort")){
+			throw new IllegalArgumentException("search_after requires a 'sort' with a unique tiebreaker field");
+		}
+		this.server = server;
+		this.path = (path.endsWith("/"))? path : (path + "/");
+		this.pageSize = Math.max(1, pageSize);
+		this.keepAlive = keepAlive;
+		this.searchAfter = searchAfter;
+
+		//shallow copy so we can set paging fields
+		this.query = new JSONObject();
+		this.query.putAll(query);
+		this.query.remove("from");
+		JSON.put(this.query, "size", this.pageSize);
+		if (!searchAfter && !this.query.containsKey("sort")){
+			//cheapest order for scrolls
+			JSON.put(this.query, "sort", JSON.makeArray("_doc"));
+		}
+
+		if (searchAfter){
+			nextPage = request(server + "/" + this.path + "_search", this.query);
+		}else{
+			nextPage = request(server + "/" + this.path + "_search?scroll=" + keepAlive, this.query);
+		}
+	}
+
+	@Override
+	public boolean hasNext(){
+		while (page == null || pos >= page.size()){
+			if (closed || nextPage == null){
+				return false;
+			}
+			JSONObject result = nextPage.join();
+			nextPage = null;
+			if (!Connectors.httpSuccess(result)){
+				close();
+				Debugger.println("searchIterator - ElasticSearch - request for '" + path + "' failed: " + result.toJSONString(), 1);
+				throw new RuntimeException("Elasticsearch search request failed with code " + result.get("code") + ": " + result.get("error"));
+			}
+			readPage(result);
+			if (lastPage){
+				clearScroll();
+			}else{
+				//prefetch while the caller works on this page
+				nextPage = requestNextPage();
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public JSONObject next(){
+		if (!hasNext()){
+			throw new NoSuchElementException();
+		}
+		return (JSONObject) page.get(pos++);
+	}
+
+	/**
+	 * Total number of hits as reported by the first page or -1 if the first page did not arrive yet.
+	 */
+	public long getTotal(){
+		return total;
+	}
+
+	/**
+	 * Sequential stream of the hits. Closing the stream closes the iterator.
+	 */
+	public Stream<JSONObject> stream(){
+		return StreamSupport.stream(Spliterators.spliteratorUnknownSize(this, Spliterator.ORDERED | Spliterator.NONNULL), false)
+				.onClose(this::close);
+	}
+
+	/**
+	 * Stop the iteration and release the scroll context (if any).
+	 */
+	@Override
+	public void close(){
+		if (closed){
+			return;
+		}
+		closed = true;
+		page = null;
+		CompletableFuture<JSONObject> pending = nextPage;
+		nextPage = null;
+		String knownId = scrollId;
+		if (!searchAfter && pending != null){
+			//the request in flight can carry a new scroll ID, clear that one too when it arrives
+			pending.thenAccept(res -> {
+				String id = JSON.getString(res, "_scroll_id");
+				if (!id.isEmpty() && !id.equals(knownId)){
+					clearScroll(id);
+				}
+			});
+		}
+		clearScroll();
+	}
+
+	//--- helpers ---
+
+	private void readPage(JSONObject result){
+		if (total < 0){
+			//ES 7 reports an object with "value"
+			JSONObject hits = (JSONObject) result.get("hits");
+			Object t = (hits == null)? null : hits.get("total");
+			if (t instanceof Number){
+				total = ((Number) t).longValue();
+			}else if (t instanceof JSONObject && ((JSONObject) t).get("value") instanceof Number){
+				total = ((Number) ((JSONObject) t).get("value")).longValue();
+			}
+		}
+		String id = JSON.getString(result, "_scroll_id");
+		if (!id.isEmpty()){
+			scrollId = id;
+		}
+		page = Elasticsearch.getHits(result);
+		pos = 0;
+		received += page.size();
+		if (searchAfter){
+			//a page that is not full is the last one, no need to ask again
+			lastPage = page.size() < pageSize;
+		}else{
+			lastPage = page.isEmpty() || (total >= 0 && received >= total);
+		}
+	}
+
+	private CompletableFuture<JSONObject> requestNextPage(){
+		if (searchAfter){
+			JSONObject lastHit = (JSONObject) page.get(page.size() - 1);
+			JSON.put(query, "search_after", lastHit.get("sort"));
+			return request(server + "/" + path + "_search", query);
+		}else{
+			return request(server + "/_search/scroll", JSON.make("scroll", keepAlive, "scroll_id", scrollId));
+		}
+	}
+
+	private static CompletableFuture<JSONObject> request(String url, JSONObject body){
+		HashMap<String, String> headers = Elasticsearch.makeHeaders("application/json");
+		long tic = System.nanoTime();
+		return Connectors.httpPOSTJsonAsync(url, body, headers).thenApply(res -> {
+			if (Connectors.httpSuccess(res)){
+				Statistics.addInternalApiHitNanos(API_NAME + ":" + "searchPage", tic);
+			}else{
+				Statistics.addInternalApiHitNanos(API_NAME + ":" + "searchPage" + "-error", tic);
+			}
+			return res;
+		});
+	}
+
+	private void clearScroll(){
+		String id = scrollId;
+		scrollId = null;
+		if (!searchAfter && id != null){
+			clearScroll(id);
+		}
+	}
+
+	private void clearScroll(String id){
+		HashMap<String, String> headers = Elasticsearch.makeHeaders("application/json");
+		JSONObject res = Connectors.httpDELETE(server + "/_search/scroll", JSON.toJSONString(JSON.make("scroll_id", JSON.makeArray(id))), headers);
+		if (!Connectors.httpSuccess(res)){
+			//expires anyway after 'keepAlive'
+			Debugger.println("searchIterator - ElasticSearch - failed to clear scroll: " + res.toJSONString(), 1);
+		}
+	}
+
+}
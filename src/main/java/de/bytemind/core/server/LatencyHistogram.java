@@ -0,0 +1,220 @@
+package de.bytemind.core.server;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free histogram of latencies in nanoseconds. Buckets grow logarithmically (like HdrHistogram), each power of 2 is split
+ * into 32 sub-buckets so any recorded value is off by at most ~3%. Values up to ~4.9h are resolved, larger ones land in the last bucket.<br>
+ * Recording only does a few atomic adds, so it can be called from every request thread. Use {@link #snapshot()} for totals
+ * and {@link #intervalSnapshot()} for the values since the last interval snapshot (e.g. per minute).
+ *
+ * @author Florian Quirin
+ *
+ */
+public class LatencyHistogram {
+
+	private static final int SUB_BITS = 5;
+	private static final int SUB_COUNT = 1 << SUB_BITS;
+	private static final int MAX_EXP = 44;										//2^44 ns = ~4.9h
+	static final int BUCKETS = SUB_COUNT + (MAX_EXP - SUB_BITS + 1) * SUB_COUNT;
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+	private final LongAdder sum = new LongAdder();
+	private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+	private final LongAccumulator intervalMax = new LongAccumulator(Math::max, 0);
+
+	//state of the last interval snapshot
+	private long[] lastCounts = new long[BUCKETS];
+	private long lastSum = 0;
+
+	/**
+	 * Record one value.
+	 * @param nanos - latency in nanoseconds, negative values count as 0
+	 */
+	public void record(long nanos){
+		if (nanos < 0){
+			nanos = 0;
+		}
+		counts.incrementAndGet(index(nanos));
+		sum.add(nanos);
+		max.accumulate(nanos);
+		intervalMax.accumulate(nanos);
+	}
+
+	/**
+	 * Bucket of a value.
+	 */
+	static int index(long v){
+		if (v < SUB_COUNT){
+			return (int) v;
+		}
+		int exp = 63 - Long.numberOfLeadingZeros(v);
+		if (exp > MAX_EXP){
+			return BUCKETS - 1;
+		}
+		int shift = exp - SUB_BITS;
+		int sub = (int) (v >>> shift) & (SUB_COUNT - 1);
+		return SUB_COUNT + shift * SUB_COUNT + sub;
+	}
+	/**
+	 * Highest value that falls into a bucket.
+	 */
+	static long upperBound(int index){
+		if (index < SUB_COUNT){
+			return index;
+		}
+		int shift = (index - SUB_COUNT) / SUB_COUNT;
+		int sub = (index - SUB_COUNT) % SUB_COUNT;
+		long lower = ((long) (SUB_COUNT + sub)) << shift;
+		return lower + (1L << shift) - 1;
+	}
+
+	/**
+	 * Largest value (ns) recorded since start (or last reset).
+	 */
+	public long getMax(){
+		return max.get();
+	}
+
+	/**
+	 * All values recorded since start (or last reset).
+	 */
+	public Snapshot snapshot(){
+		long[] c = new long[BUCKETS];
+		for (int i=0; i<BUCKETS; i++){
+			c[i] = counts.get(i);
+		}
+		return new Snapshot(c, sum.sum(), max.get());
+	}
+
+	/**
+	 * Values recorded since the last call of this method (or since start/reset for the first call).
+	 */
+	public synchronized Snapshot intervalSnapshot(){
+		long[] c = new long[BUCKETS];
+		long[] now = new long[BUCKETS];
+		for (int i=0; i<BUCKETS; i++){
+			now[i] = counts.get(i);
+			c[i] = now[i] - lastCounts[i];
+		}
+		long s = sum.sum();
+		Snapshot snap = new Snapshot(c, s - lastSum, intervalMax.getThenReset());
+		lastCounts = now;
+		lastSum = s;
+		return snap;
+	}
+
+	/**
+	 * Set everything back to zero. Values recorded at the same time might get lost.
+	 */
+	public synchronized void reset(){
+		for (int i=0; i<BUCKETS; i++){
+			counts.set(i, 0);
+		}
+		sum.reset();
+		max.reset();
+		intervalMax.reset();
+		lastCounts = new long[BUCKETS];
+		lastSum = 0;
+	}
+
+	/**
+	 * Immutable state of a histogram at some point in time.
+	 */
+	public static class Snapshot {
+		private final long[] counts;
+		private final long count;
+		private final long sum;
+		private final long max;
+
+		Snapshot(long[] counts, long sum, long max){
+			this.counts = counts;
+			long n = 0;
+			for (long c : counts){
+				n += c;
+			}
+			this.count = n;
+			this.sum = sum;
+			this.max = max;
+		}
+
+		/**
+		 * Number of recorded values.
+		 */
+		public long getCount(){
+			return count;
+		}
+		/**
+		 * Sum of all values in ns.
+		 */
+		public long getSum(){
+			return sum;
+		}
+		/**
+		 * Largest value in ns.
+		 */
+		public long getMax(){
+			return max;
+		}
+		/**
+		 * Average in ns or 0 if empty.
+		 */
+		public double getMean(){
+			return (count == 0)? 0 : ((double) sum / count);
+		}
+
+		/**
+		 * Value (ns) below or equal to which the given share of all values lies.
+		 * @param percentile - e.g. 99.0 or 99.9
+		 * @return value in ns (upper bound of the bucket, at most max) or 0 if empty
+		 */
+		public long getPercentile(double percentile){
+			if (count == 0){
+				return 0;
+			}
+			long rank = (long) Math.ceil((percentile / 100.0) * count);
+			if (rank < 1){
+				rank = 1;
+			}
+			long seen = 0;
+			for (int i=0; i<counts.length; i++){
+				seen += counts[i];
+				if (seen >= rank){
+					return Math.min(upperBound(i), max);
+				}
+			}
+			return max;
+		}
+		public long getP50(){
+			return getPercentile(50.0);
+		}
+		public long getP90(){
+			return getPercentile(90.0);
+		}
+		public long getP99(){
+			return getPercentile(99.0);
+		}
+		public long getP999(){
+			return getPercentile(99.9);
+		}
+
+		/**
+		 * Number of values below or equal to 'nanos' (within bucket precision), e.g. for cumulative export buckets.
+		 */
+		public long getCountAtOrBelow(long nanos){
+			int last = index(Math.max(0, nanos));
+			//only count a bucket if all its values are <= nanos
+			if (upperBound(last) > nanos){
+				last--;
+			}
+			long n = 0;
+			for (int i=0; i<=last; i++){
+				n += counts[i];
+			}
+			return n;
+		}
+	}
+
+}
@@ -0,0 +1,195 @@
+package de.bytemind.core.server;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Thread-safe registry of named metrics. Metrics are created on first use and recorded without locks, so it can be called
+ * from any request thread. Used by {@link Statistics}.
+ *
+ * @author Florian Quirin
+ *
+ */
+public class MetricsRegistry {
+
+	private final long slowThreshold;
+	private final ConcurrentHashMap<String, ApiMetric> apis = new ConcurrentHashMap<>();
+	private final ConcurrentHashMap<String, LongAdder> counters = new ConcurrentHashMap<>();
+
+	/**
+	 * Hits, time and latency histogram of one API (or API operation). Calls that take longer than the threshold of the registry are
+	 * counted separately as (possible) errors, the histogram contains all calls.
+	 */
+	public static class ApiMetric {
+		private final long slowThresholdNanos;
+		private final LongAdder hits = new LongAdder();
+		private final LongAdder time = new LongAdder();			//ns
+		private final LongAdder slowHits = new LongAdder();
+		private final LongAdder slowTime = new LongAdder();		//ns
+		private final LatencyHistogram histogram = new LatencyHistogram();
+
+		ApiMetric(long slowThreshold){
+			this.slowThresholdNanos = slowThreshold * 1000000L;
+		}
+
+		/**
+		 * Record one call.
+		 * @param ms - duration of the call in milliseconds
+		 */
+		public void record(long ms){
+			recordNanos(ms * 1000000L);
+		}
+		/**
+		 * Record one call.
+		 * @param nanos - duration of the call in nanoseconds (e.g. difference of two System.nanoTime() calls)
+		 */
+		public void recordNanos(long nanos){
+			if (nanos > slowThresholdNanos){
+				slowHits.increment();
+				slowTime.add(nanos);
+			}else{
+				hits.increment();
+				time.add(nanos);
+			}
+			histogram.record(nanos);
+		}
+
+		/**
+		 * Number of calls below or equal to the threshold.
+		 */
+		public long getHits(){
+			return hits.sum();
+		}
+		/**
+		 * Summed time (ms) of calls below or equal to the threshold.
+		 */
+		public long getTime(){
+			return time.sum() / 1000000L;
+		}
+		/**
+		 * Summed time (ns) of calls below or equal to the threshold.
+		 */
+		public long getTimeNanos(){
+			return time.sum();
+		}
+		/**
+		 * Number of calls above the threshold.
+		 */
+		public long getSlowHits(){
+			return slowHits.sum();
+		}
+		/**
+		 * Summed time (ms) of calls above the threshold.
+		 */
+		public long getSlowTime(){
+			return slowTime.sum() / 1000000L;
+		}
+		/**
+		 * Summed time (ns) of calls above the threshold.
+		 */
+		public long getSlowTimeNanos(){
+			return slowTime.sum();
+		}
+		/**
+		 * Latencies of all calls, use it to get percentiles.
+		 */
+		public LatencyHistogram getHistogram(){
+			return histogram;
+		}
+
+		void reset(){
+			hits.reset();
+			time.reset();
+			slowHits.reset();
+			slowTime.reset();
+			histogram.reset();
+		}
+	}
+
+	/**
+	 * Create registry.
+	 * @param slowThreshold - ms after which an API call is counted as (possible) error
+	 */
+	public MetricsRegistry(long slowThreshold){
+		this.slowThreshold = slowThreshold;
+	}
+
+	/**
+	 * Get or create the metric of an API.
+	 */
+	public ApiMetric api(String name){
+		//get first, 'computeIfAbsent' locks even if the key exists (Java 8)
+		ApiMetric m = apis.get(name);
+		if (m == null){
+			m = apis.computeIfAbsent(name, k -> new ApiMetric(slowThreshold));
+		}
+		return m;
+	}
+	/**
+	 * Get or create a simple counter.
+	 */
+	public LongAdder counter(String name){
+		LongAdder c = counters.get(name);
+		if (c == null){
+			c = counters.computeIfAbsent(name, k -> new LongAdder());
+		}
+		return c;
+	}
+
+	/**
+	 * Record an API call.
+	 * @param name - API name, e.g. "DynamoDB:GetItem"
+	 * @param ms - duration of the call in milliseconds
+	 */
+	public void record(String name, long ms){
+		api(name).record(ms);
+	}
+	/**
+	 * Record an API call.
+	 * @param name - API name, e.g. "DynamoDB:GetItem"
+	 * @param nanos - duration of the call in nanoseconds
+	 */
+	public void recordNanos(String name, long nanos){
+		api(name).recordNanos(nanos);
+	}
+	/**
+	 * Increase a counter.
+	 * @param name - counter name, e.g. "cache:hit"
+	 * @param n - amount to add
+	 */
+	public void count(String name, long n){
+		counter(name).add(n);
+	}
+
+	/**
+	 * Read-only view of all API metrics.
+	 */
+	public Map<String, ApiMetric> getApis(){
+		return Collections.unmodifiableMap(apis);
+	}
+	/**
+	 * Read-only view of all counters.
+	 */
+	public Map<String, LongAdder> getCounters(){
+		return Collections.unmodifiableMap(counters);
+	}
+
+	public long getSlowThreshold(){
+		return slowThreshold;
+	}
+
+	/**
+	 * Set all metrics back to zero (names are kept).
+	 */
+	public void reset(){
+		for (ApiMetric m : apis.values()){
+			m.reset();
+		}
+		for (LongAdder c : counters.values()){
+			c.reset();
+		}
+	}
+
+}
@@ -0,0 +1,96 @@
+package de.bytemind.core.server;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import com.sun.net.httpserver.HttpServer;
+
+import de.bytemind.core.tools.Debugger;
+
+/**
+ * Tiny HTTP server that offers the {@link Statistics} at "/metrics" in Prometheus text format (see {@link PrometheusExporter}).
+ * Can be started via CoreSetup ("metrics_port") or manually.
+ *
+ * @author Florian Quirin
+ *
+ */
+public class MetricsServer {
+
+	public static final String PATH = "/metrics";
+
+	private static HttpServer server;
+	private static ExecutorService executor;
+
+	/**
+	 * Start the server on all interfaces. If it is already running it is restarted.
+	 * @param port - e.g. 9100
+	 */
+	public static void start(int port) throws IOException {
+		start(null, port);
+	}
+	/**
+	 * Start the server. If it is already running it is restarted.
+	 * @param host - interface to bind to, e.g. "localhost" or null for all
+	 * @param port - e.g. 9100
+	 */
+	public static synchronized void start(String host, int port) throws IOException {
+		stop();
+		InetSocketAddress address = (host == null || host.isEmpty())? new InetSocketAddress(port) : new InetSocketAddress(host, port);
+		HttpServer s = HttpServer.create(address, 0);
+		s.createContext(PATH, exchange -> {
+			try{
+				if (!"GET".equalsIgnoreCase(exchange.getRequestMethod()) && !"HEAD".equalsIgnoreCase(exchange.getRequestMethod())){
+					exchange.sendResponseHeaders(405, -1);
+					return;
+				}
+				byte[] body = PrometheusExporter.scrape().getBytes(StandardCharsets.UTF_8);
+				exchange.getResponseHeaders().set("Content-Type", PrometheusExporter.CONTENT_TYPE);
+				if ("HEAD".equalsIgnoreCase(exchange.getRequestMethod())){
+					exchange.sendResponseHeaders(200, -1);
+					return;
+				}
+				exchange.sendResponseHeaders(200, body.length);
+				try (OutputStream out = exchange.getResponseBody()){
+					out.write(body);
+				}
+			}finally{
+				exchange.close();
+			}
+		});
+		executor = Executors.newSingleThreadExecutor(r -> {
+			Thread t = new Thread(r, "metrics-server");
+			t.setDaemon(true);
+			return t;
+		});
+		s.setExecutor(executor);
+		s.start();
+		server = s;
+		Debugger.println("MetricsServer - started at port " + s.getAddress().getPort() + PATH, 2);
+	}
+
+	/**
+	 * Stop the server if it is running.
+	 */
+	public static synchronized void stop(){
+		if (server != null){
+			server.stop(0);
+			server = null;
+		}
+		if (executor != null){
+			executor.shutdownNow();
+			executor = null;
+		}
+	}
+
+	/**
+	 * Port the server is listening on or -1 if it is not running.
+	 */
+	public static synchronized int getPort(){
+		return (server == null)? -1 : server.getAddress().getPort();
+	}
+
+}
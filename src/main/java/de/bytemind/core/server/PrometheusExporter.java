@@ -0,0 +1,140 @@
+package de.bytemind.core.server;
+
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import de.bytemind.core.server.MetricsRegistry.ApiMetric;
+
+/**
+ * Renders the {@link Statistics} in the Prometheus text format (version 0.0.4), e.g. for {@link MetricsServer}.<br>
+ * API latencies are exported as histogram "bytemind_api_latency_seconds" with labels "kind" (internal/external) and "api",
+ * calls above the (possible) error threshold as counter "bytemind_api_slow_calls_total" and simple counters as "bytemind_count_total".
+ *
+ * @author Florian Quirin
+ *
+ */
+public class PrometheusExporter {
+
+	public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+	//histogram buckets in seconds ("le" labels) and the same values in ns
+	private static final String[] BUCKET_LABELS = {
+		"0.001", "0.0025", "0.005", "0.01", "0.025", "0.05", "0.1", "0.25", "0.5", "1", "2.5", "5", "10"
+	};
+	private static final long[] BUCKET_NANOS = new long[BUCKET_LABELS.length];
+	static {
+		for (int i=0; i<BUCKET_LABELS.length; i++){
+			BUCKET_NANOS[i] = Math.round(Double.parseDouble(BUCKET_LABELS[i]) * 1e9);
+		}
+	}
+
+	/**
+	 * Get all metrics as Prometheus text.
+	 */
+	public static String scrape(){
+		StringBuilder sb = new StringBuilder(8192);
+		write(sb);
+		return sb.toString();
+	}
+
+	/**
+	 * Write all metrics as Prometheus text.
+	 * @param sb - target, e.g. a re-used StringBuilder
+	 */
+	public static void write(StringBuilder sb){
+		MetricsRegistry internal = Statistics.getInternalApis();
+		MetricsRegistry external = Statistics.getExternalApis();
+
+		sb.append("# HELP bytemind_api_latency_seconds Latency of API calls.\n");
+		sb.append("# TYPE bytemind_api_latency_seconds histogram\n");
+		writeHistograms(sb, "internal", internal);
+		writeHistograms(sb, "external", external);
+
+		sb.append("# HELP bytemind_api_slow_calls_total API calls above the (possible) error threshold.\n");
+		sb.append("# TYPE bytemind_api_slow_calls_total counter\n");
+		writeSlowCalls(sb, "internal", internal);
+		writeSlowCalls(sb, "external", external);
+
+		sb.append("# HELP bytemind_api_latency_max_seconds Max. latency of API calls since start.\n");
+		sb.append("# TYPE bytemind_api_latency_max_seconds gauge\n");
+		writeMax(sb, "internal", internal);
+		writeMax(sb, "external", external);
+
+		sb.append("# HELP bytemind_count_total Counters like cache hits.\n");
+		sb.append("# TYPE bytemind_count_total counter\n");
+		for (Map.Entry<String, LongAdder> e : internal.getCounters().entrySet()){
+			sb.append("bytemind_count_total{name=\"");
+			appendEscaped(sb, e.getKey());
+			sb.append("\"} ").append(e.getValue().sum()).append('\n');
+		}
+	}
+
+	private static void writeHistograms(StringBuilder sb, String kind, MetricsRegistry registry){
+		for (Map.Entry<String, ApiMetric> e : registry.getApis().entrySet()){
+			LatencyHistogram.Snapshot s = e.getValue().getHistogram().snapshot();
+			for (int i=0; i<BUCKET_NANOS.length; i++){
+				appendName(sb, "bytemind_api_latency_seconds_bucket", kind, e.getKey());
+				sb.append(",le=\"").append(BUCKET_LABELS[i]).append("\"} ").append(s.getCountAtOrBelow(BUCKET_NANOS[i])).append('\n');
+			}
+			appendName(sb, "bytemind_api_latency_seconds_bucket", kind, e.getKey());
+			sb.append(",le=\"+Inf\"} ").append(s.getCount()).append('\n');
+			appendName(sb, "bytemind_api_latency_seconds_sum", kind, e.getKey());
+			sb.append("} ");
+			appendSeconds(sb, s.getSum());
+			sb.append('\n');
+			appendName(sb, "bytemind_api_latency_seconds_count", kind, e.getKey());
+			sb.append("} ").append(s.getCount()).append('\n');
+		}
+	}
+
+	private static void writeSlowCalls(StringBuilder sb, String kind, MetricsRegistry registry){
+		for (Map.Entry<String, ApiMetric> e : registry.getApis().entrySet()){
+			appendName(sb, "bytemind_api_slow_calls_total", kind, e.getKey());
+			sb.append("} ").append(e.getValue().getSlowHits()).append('\n');
+		}
+	}
+
+	private static void writeMax(StringBuilder sb, String kind, MetricsRegistry registry){
+		for (Map.Entry<String, ApiMetric> e : registry.getApis().entrySet()){
+			appendName(sb, "bytemind_api_latency_max_seconds", kind, e.getKey());
+			sb.append("} ");
+			appendSeconds(sb, e.getValue().getHistogram().getMax());
+			sb.append('\n');
+		}
+	}
+
+	//metric name with open label set: name{kind="..",api=".."
+	private static void appendName(StringBuilder sb, String name, String kind, String api){
+		sb.append(name).append("{kind=\"").append(kind).append("\",api=\"");
+		appendEscaped(sb, api);
+		sb.append('"');
+	}
+
+	private static void appendSeconds(StringBuilder sb, long nanos){
+		sb.append(nanos / 1000000000L).append('.');
+		String frac = Long.toString(nanos % 1000000000L);
+		for (int i=frac.length(); i<9; i++){
+			sb.append('0');
+		}
+		sb.append(frac);
+	}
+
+	/**
+	 * Escape label values (backslash, double-quote and line feed).
+	 */
+	static void appendEscaped(StringBuilder sb, String value){
+		for (int i=0; i<value.length(); i++){
+			char c = value.charAt(i);
+			if (c == '\\'){
+				sb.append("\\\\");
+			}else if (c == '"'){
+				sb.append("\\\"");
+			}else if (c == '\n'){
+				sb.append("\\n");
+			}else{
+				sb.append(c);
+			}
+		}
+	}
+
+}
@@ -1,126 +1,153 @@
 package de.bytemind.core.server;
 
-import java.util.HashMap;
 import java.util.Map;
-import java.util.concurrent.atomic.AtomicInteger;
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import de.bytemind.core.server.MetricsRegistry.ApiMetric;
 
 /**
  * Capture all sorts of statistics about the server.
- * 
+ *
  * @author Florian Quirin
  *
  */
 public class Statistics {
-	
+
 	private static final long internalApiErrorThreshold = 2000;
 	private static final long externalApiErrorThreshold = 3000;
-	
-	private static HashMap<String, AtomicInteger> externalApiHits = new HashMap<>();
-	private static HashMap<String, AtomicLong> externalApiTime = new HashMap<>();
-	private static HashMap<String, AtomicInteger> externalApiErrorHits = new HashMap<>();
-	private static HashMap<String, AtomicLong> externalApiErrorTime = new HashMap<>();
-	
-	private static HashMap<String, AtomicInteger> internalApiHits = new HashMap<>();
-	private static HashMap<String, AtomicLong> internalApiTime = new HashMap<>();
-	private static HashMap<String, AtomicInteger> internalApiErrorHits = new HashMap<>();
-	private static HashMap<String, AtomicLong> internalApiErrorTime = new HashMap<>();
-	
+
+	private static final MetricsRegistry internalApis = new MetricsRegistry(internalApiErrorThreshold);
+	private static final MetricsRegistry externalApis = new MetricsRegistry(externalApiErrorThreshold);
+
+	/**
+	 * Metrics of internal APIs like databases.
+	 */
+	public static MetricsRegistry getInternalApis(){
+		return internalApis;
+	}
+	/**
+	 * Metrics of external APIs.
+	 */
+	public static MetricsRegistry getExternalApis(){
+		return externalApis;
+	}
+
 	//get info
 	public static String getInfoAsString(){
-		String msg = "Internal APIs:\n"; 
-		for (Map.Entry<String, AtomicInteger> entry : internalApiHits.entrySet()) {
-			int hit = entry.getValue().get();
-			String name = entry.getKey();
-			msg += ("- " + name + ": " + hit + " hits\n");
-			if (internalApiTime.containsKey(name)){
-				msg += ("- " + name + ": " + ((double)internalApiTime.get(name).get())/((double)hit) + " ms per call\n");
+		StringBuilder msg = new StringBuilder(1024);
+		msg.append("Internal APIs:\n");
+		appendApis(msg, internalApis, false);
+		msg.append("\n");
+		msg.append("Internal APIs (possible) errors:\n");
+		appendApis(msg, internalApis, true);
+		msg.append("\n");
+		msg.append("External APIs:\n");
+		appendApis(msg, externalApis, false);
+		msg.append("\n");
+		msg.append("External APIs (possible) errors:\n");
+		appendApis(msg, externalApis, true);
+		msg.append("\n");
+		if (!internalApis.getCounters().isEmpty()){
+			msg.append("Counters:\n");
+			for (Map.Entry<String, LongAdder> entry : internalApis.getCounters().entrySet()){
+				msg.append("- ").append(entry.getKey()).append(": ").append(entry.getValue().sum()).append("\n");
 			}
+			msg.append("\n");
 		}
-		msg += "\n";
-		msg += "Internal APIs (possible) errors:\n";
-		for (Map.Entry<String, AtomicInteger> entry : internalApiErrorHits.entrySet()) {
-			int hit = entry.getValue().get();
-			String name = entry.getKey();
-			msg += ("- " + name + ": " + hit + " hits\n");
-			if (internalApiErrorTime.containsKey(name)){
-				msg += ("- " + name + ": " + ((double)internalApiErrorTime.get(name).get())/((double)hit) + " ms per call\n");
+		return msg.toString();
+	}
+	private static void appendApis(StringBuilder msg, MetricsRegistry registry, boolean slow){
+		for (Map.Entry<String, ApiMetric> entry : registry.getApis().entrySet()){
+			ApiMetric m = entry.getValue();
+			long hit = slow? m.getSlowHits() : m.getHits();
+			if (hit == 0){
+				continue;
 			}
-		}
-		msg += "\n";
-		msg += "External APIs:\n";
-		for (Map.Entry<String, AtomicInteger> entry : externalApiHits.entrySet()) {
-			int hit = entry.getValue().get();
+			long time = slow? m.getSlowTimeNanos() : m.getTimeNanos();
 			String name = entry.getKey();
-			msg += ("- " + name + ": " + hit + " hits\n");
-			if (externalApiTime.containsKey(name)){
-				msg += ("- " + name + ": " + ((double)externalApiTime.get(name).get())/((double)hit) + " ms per call\n");
+			msg.append("- ").append(name).append(": ").append(hit).append(" hits\n");
+			msg.append("- ").append(name).append(": ").append(toMs(((double) time)/((double) hit))).append(" ms per call\n");
+			if (!slow){
+				LatencyHistogram.Snapshot s = m.getHistogram().snapshot();
+				msg.append("- ").append(name).append(": ")
+					.append("p50 ").append(toMs(s.getP50())).append(" ms, ")
+					.append("p90 ").append(toMs(s.getP90())).append(" ms, ")
+					.append("p99 ").append(toMs(s.getP99())).append(" ms, ")
+					.append("p999 ").append(toMs(s.getP999())).append(" ms, ")
+					.append("max ").append(toMs(s.getMax())).append(" ms (all calls)\n");
 			}
 		}
-		msg += "\n";
-		msg += "External APIs (possible) errors:\n";
-		for (Map.Entry<String, AtomicInteger> entry : externalApiErrorHits.entrySet()) {
-			int hit = entry.getValue().get();
-			String name = entry.getKey();
-			msg += ("- " + name + ": " + hit + " hits\n");
-			if (externalApiErrorTime.containsKey(name)){
-				msg += ("- " + name + ": " + ((double)externalApiErrorTime.get(name).get())/((double)hit) + " ms per call\n");
-			}
-		}
-		msg += "\n";
-		return msg;
 	}
-	
+	private static double toMs(double nanos){
+		return Math.round(nanos / 1000.0) / 1000.0;
+	}
+
 	//internal calls
 	public static void addInternalApiHit(String apiName, long tic){
-		long time = System.currentTimeMillis()-tic;
-		if (time > internalApiErrorThreshold){
-			if (internalApiErrorTime.containsKey(apiName)){
-				internalApiErrorHits.get(apiName).incrementAndGet();
-				internalApiErrorTime.get(apiName).addAndGet(time);
-			}else{
-				internalApiErrorHits.put(apiName, new AtomicInteger());
-				internalApiErrorHits.get(apiName).incrementAndGet();
-				internalApiErrorTime.put(apiName, new AtomicLong());
-				internalApiErrorTime.get(apiName).addAndGet(time);
-			}
-		}else{
-			if (internalApiTime.containsKey(apiName)){
-				internalApiHits.get(apiName).incrementAndGet();
-				internalApiTime.get(apiName).addAndGet(time);
-			}else{
-				internalApiHits.put(apiName, new AtomicInteger());
-				internalApiHits.get(apiName).incrementAndGet();
-				internalApiTime.put(apiName, new AtomicLong());
-				internalApiTime.get(apiName).addAndGet(time);
-			}
-		}
+		internalApis.record(apiName, System.currentTimeMillis()-tic);
+	}
+	/**
+	 * Record a call to an internal API with nanosecond precision.
+	 * @param apiName - name like "DynamoDB:GetItem"
+	 * @param ticNanos - System.nanoTime() at the start of the call
+	 */
+	public static void addInternalApiHitNanos(String apiName, long ticNanos){
+		internalApis.recordNanos(apiName, System.nanoTime()-ticNanos);
 	}
-		
+
 	//external APIs
 	public static void addExternalApiHit(String apiName, long tic){
-		long time = System.currentTimeMillis()-tic;
-		if (time > externalApiErrorThreshold){
-			if (externalApiErrorTime.containsKey(apiName)){
-				externalApiErrorHits.get(apiName).incrementAndGet();
-				externalApiErrorTime.get(apiName).addAndGet(time);
-			}else{
-				externalApiErrorHits.put(apiName, new AtomicInteger());
-				externalApiErrorHits.get(apiName).incrementAndGet();
-				externalApiErrorTime.put(apiName, new AtomicLong());
-				externalApiErrorTime.get(apiName).addAndGet(time);
-			}
-		}else{
-			if (externalApiTime.containsKey(apiName)){
-				externalApiHits.get(apiName).incrementAndGet();
-				externalApiTime.get(apiName).addAndGet(time);
-			}else{
-				externalApiHits.put(apiName, new AtomicInteger());
-				externalApiHits.get(apiName).incrementAndGet();
-				externalApiTime.put(apiName, new AtomicLong());
-				externalApiTime.get(apiName).addAndGet(time);
-			}
-		}
+		externalApis.record(apiName, System.currentTimeMillis()-tic);
+	}
+	/**
+	 * Record a call to an external API with nanosecond precision.
+	 * @param apiName - name of the API
+	 * @param ticNanos - System.nanoTime() at the start of the call
+	 */
+	public static void addExternalApiHitNanos(String apiName, long ticNanos){
+		externalApis.recordNanos(apiName, System.nanoTime()-ticNanos);
+	}
+
+	/**
+	 * Latency percentiles etc. of an internal API since start (or reset), null if the API was never called.
+	 */
+	public static LatencyHistogram.Snapshot getInternalApiLatency(String apiName){
+		ApiMetric m = internalApis.getApis().get(apiName);
+		return (m == null)? null : m.getHistogram().snapshot();
+	}
+	/**
+	 * Latency percentiles etc. of an internal API since the last call of this method for the same API.
+	 */
+	public static LatencyHistogram.Snapshot getInternalApiLatencyInterval(String apiName){
+		ApiMetric m = internalApis.getApis().get(apiName);
+		return (m == null)? null : m.getHistogram().intervalSnapshot();
+	}
+	/**
+	 * Latency percentiles etc. of an external API since start (or reset), null if the API was never called.
+	 */
+	public static LatencyHistogram.Snapshot getExternalApiLatency(String apiName){
+		ApiMetric m = externalApis.getApis().get(apiName);
+		return (m == null)? null : m.getHistogram().snapshot();
+	}
+	/**
+	 * Latency percentiles etc. of an external API since the last call of this method for the same API.
+	 */
+	public static LatencyHistogram.Snapshot getExternalApiLatencyInterval(String apiName){
+		ApiMetric m = externalApis.getApis().get(apiName);
+		return (m == null)? null : m.getHistogram().intervalSnapshot();
+	}
+
+	//counters
+	public static void addCount(String name, long n){
+		internalApis.count(name, n);
+	}
+
+	/**
+	 * Set all statistics back to zero.
+	 */
+	public static void reset(){
+		internalApis.reset();
+		externalApis.reset();
 	}
 
 }
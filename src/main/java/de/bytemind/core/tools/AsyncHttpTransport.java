@@ -0,0 +1,45 @@
+package de.bytemind.core.tools;
+
+import java.io.Closeable;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Interface for the non-blocking HTTP layer used by the async methods of {@link Connectors}, e.g. {@code httpPOSTAsync}.
+ *
+ * @author Florian Quirin
+ *
+ */
+public interface AsyncHttpTransport extends Closeable {
+
+	/**
+	 * Send a request without blocking the calling thread. The future completes exceptionally on connection errors.
+	 * The returned response should be closed when done (though implementations may have buffered it already).
+	 * @param method - HTTP method like "GET", "POST", "PUT" or "DELETE"
+	 * @param url - full URL including parameters
+	 * @param headers - request headers or null. "Content-Length" is handled by the transport.
+	 * @param body - request body or null
+	 * @return future with the response
+	 */
+	public CompletableFuture<HttpTransport.Response> executeAsync(String method, String url, Map<String, String> headers, byte[] body);
+
+	/**
+	 * Same as {@link #executeAsync(String, String, Map, byte[])} but only the first 'length' bytes of 'body' are sent, e.g. from a pooled
+	 * buffer of {@link JsonBody}. The buffer must not change until the future completes. Transports should override this to avoid the copy.
+	 * @param body - request body or null
+	 * @param length - number of bytes of 'body' to send
+	 */
+	public default CompletableFuture<HttpTransport.Response> executeAsync(String method, String url, Map<String, String> headers, byte[] body, int length){
+		return executeAsync(method, url, headers, (body == null || body.length == length)? body : Arrays.copyOf(body, length));
+	}
+
+	/**
+	 * True if no request is in flight or queued. {@link Connectors} uses it to close a replaced transport as soon as its requests are done.
+	 * The default (false) means "unknown", the transport is then closed after 'ConnectorsConfig.transportCloseDelay'.
+	 */
+	public default boolean isIdle(){
+		return false;
+	}
+
+}
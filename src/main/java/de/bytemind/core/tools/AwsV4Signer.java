@@ -0,0 +1,246 @@
+package de.bytemind.core.tools;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDate;
+import java.util.HashMap;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Signs AWS API requests with signature version 4 (SigV4) for a fixed region and service, e.g. "eu-central-1" and "dynamodb".<br>
+ * The derived signing key only changes once per day so it is computed once and cached. Digest and Mac instances as well as
+ * the buffers for the canonical request are kept per thread.<br>
+ * See: http://docs.aws.amazon.com/general/latest/gr/sigv4-signed-request-examples.html
+ *
+ * @author Florian Quirin
+ *
+ */
+public class AwsV4Signer {
+
+	public static final String ALGORITHM = "AWS4-HMAC-SHA256";
+	private static final String HMAC = "HmacSHA256";
+	private static final String SIGNED_HEADERS = "content-length;content-type;host;x-amz-date;x-amz-target";
+
+	private final String region;
+	private final String service;
+	private final String scopeSuffix;		//"/region/service/aws4_request"
+
+	private volatile SigningKey signingKey;
+
+	/**
+	 * Everything a thread needs to sign requests without new allocations of engines and buffers.
+	 */
+	private static class ThreadState {
+		final MessageDigest sha256;
+		final Mac mac;
+		SecretKeySpec macKey;					//key the Mac is initialized with right now
+		final StringBuilder sb = new StringBuilder(512);
+		byte[] ascii = new byte[512];
+		ThreadState() throws NoSuchAlgorithmException {
+			sha256 = MessageDigest.getInstance("SHA-256");
+			mac = Mac.getInstance(HMAC);
+		}
+	}
+	private static final ThreadLocal<ThreadState> threadState = ThreadLocal.withInitial(() -> {
+		try{
+			return new ThreadState();
+		}catch (NoSuchAlgorithmException e){
+			throw new IllegalStateException("SHA-256 or HmacSHA256 not available", e);
+		}
+	});
+
+	/**
+	 * Derived key of one day. The secret is kept to notice credential changes.
+	 */
+	private static class SigningKey {
+		final String secret;
+		final String dateStamp;
+		final SecretKeySpec key;
+		SigningKey(String secret, String dateStamp, SecretKeySpec key){
+			this.secret = secret;
+			this.dateStamp = dateStamp;
+			this.key = key;
+		}
+	}
+
+	/**
+	 * Create signer for a region and service.
+	 * @param region - e.g. "eu-central-1"
+	 * @param service - e.g. "dynamodb"
+	 */
+	public AwsV4Signer(String region, String service){
+		this.region = region;
+		this.service = service;
+		this.scopeSuffix = "/" + region + "/" + service + "/aws4_request";
+	}
+
+	public String getRegion(){
+		return region;
+	}
+	public String getService(){
+		return service;
+	}
+
+	/**
+	 * Sign a POST request to "/" without query parameters, the way the JSON APIs (e.g. DynamoDB) are called.
+	 * @param accessKey - AWS access key ID
+	 * @param secretKey - AWS secret key
+	 * @param host - host header, e.g. "dynamodb.eu-central-1.amazonaws.com"
+	 * @param contentType - e.g. "application/x-amz-json-1.0"
+	 * @param amzTarget - e.g. "DynamoDB_20120810.GetItem"
+	 * @param payload - request body (UTF-8)
+	 * @param timeMillis - time of the request, usually System.currentTimeMillis()
+	 * @return headers to send: Content-Type, Content-Length, X-Amz-Date, X-Amz-Target and Authorization
+	 */
+	public HashMap<String, String> signPost(String accessKey, String secretKey, String host, String contentType, String amzTarget,
+				byte[] payload, long timeMillis){
+		ThreadState ts = threadState.get();
+		StringBuilder sb = ts.sb;
+
+		//time stamps
+		String amzDate = formatAmzDate(sb, timeMillis);
+		String dateStamp = amzDate.substring(0, 8);
+		String contentLength = Integer.toString(payload.length);
+
+		//canonical request
+		sb.setLength(0);
+		sb.append("POST\n/\n\n");
+		sb.append("content-length:").append(contentLength).append('\n');
+		sb.append("content-type:").append(contentType).append('\n');
+		sb.append("host:").append(host).append('\n');
+		sb.append("x-amz-date:").append(amzDate).append('\n');
+		sb.append("x-amz-target:").append(amzTarget).append('\n');
+		sb.append('\n').append(SIGNED_HEADERS).append('\n');
+		Security.appendHex(sb, ts.sha256.digest(payload));
+		byte[] canonicalHash = sha256(ts, sb);
+
+		//string to sign
+		sb.setLength(0);
+		sb.append(ALGORITHM).append('\n');
+		sb.append(amzDate).append('\n');
+		int scopeStart = sb.length();
+		sb.append(dateStamp).append(scopeSuffix);
+		String credentialScope = sb.substring(scopeStart);
+		sb.append('\n');
+		Security.appendHex(sb, canonicalHash);
+
+		//signature
+		Mac mac = ts.mac;
+		SecretKeySpec key = getSigningKey(ts, secretKey, dateStamp);
+		try{
+			if (ts.macKey != key){
+				mac.init(key);
+				ts.macKey = key;
+			}
+		}catch (Exception e){
+			throw new IllegalStateException("failed to init " + HMAC, e);
+		}
+		byte[] signature = hmac(ts, sb);
+
+		sb.setLength(0);
+		sb.append(ALGORITHM).append(" Credential=").append(accessKey).append('/').append(credentialScope);
+		sb.append(", SignedHeaders=").append(SIGNED_HEADERS);
+		sb.append(", Signature=");
+		Security.appendHex(sb, signature);
+
+		HashMap<String, String> headers = new HashMap<String, String>();
+		headers.put("Content-Type", contentType);
+		headers.put("Content-Length", contentLength);
+		headers.put("X-Amz-Date", amzDate);
+		headers.put("X-Amz-Target", amzTarget);
+		headers.put("Authorization", sb.toString());
+		return headers;
+	}
+
+	/**
+	 * Get cached signing key or derive a new one if the day or the secret changed.
+	 */
+	private SecretKeySpec getSigningKey(ThreadState ts, String secretKey, String dateStamp){
+		SigningKey sk = signingKey;
+		if (sk != null && sk.dateStamp.equals(dateStamp) && sk.secret.equals(secretKey)){
+			return sk.key;
+		}
+		//derive (races are harmless, the result is the same)
+		try{
+			byte[] k = ("AWS4" + secretKey).getBytes(StandardCharsets.UTF_8);
+			k = hmac(ts.mac, k, dateStamp);
+			k = hmac(ts.mac, k, region);
+			k = hmac(ts.mac, k, service);
+			k = hmac(ts.mac, k, "aws4_request");
+			ts.macKey = null;
+			sk = new SigningKey(secretKey, dateStamp, new SecretKeySpec(k, HMAC));
+			signingKey = sk;
+			return sk.key;
+		}catch (Exception e){
+			throw new IllegalStateException("failed to derive AWS signing key", e);
+		}
+	}
+
+	private static byte[] hmac(Mac mac, byte[] key, String data) throws Exception {
+		mac.init(new SecretKeySpec(key, HMAC));
+		return mac.doFinal(data.getBytes(StandardCharsets.UTF_8));
+	}
+
+	private static byte[] sha256(ThreadState ts, CharSequence cs){
+		int n = toAscii(ts, cs);
+		if (n < 0){
+			return ts.sha256.digest(cs.toString().getBytes(StandardCharsets.UTF_8));
+		}
+		ts.sha256.update(ts.ascii, 0, n);
+		return ts.sha256.digest();
+	}
+
+	private static byte[] hmac(ThreadState ts, CharSequence cs){
+		int n = toAscii(ts, cs);
+		if (n < 0){
+			return ts.mac.doFinal(cs.toString().getBytes(StandardCharsets.UTF_8));
+		}
+		ts.mac.update(ts.ascii, 0, n);
+		return ts.mac.doFinal();
+	}
+
+	/**
+	 * Copy chars to the thread's byte buffer if they are all ASCII (the usual case).
+	 * @return number of bytes or -1 if there was a non-ASCII char
+	 */
+	private static int toAscii(ThreadState ts, CharSequence cs){
+		int n = cs.length();
+		if (ts.ascii.length < n){
+			ts.ascii = new byte[Math.max(n, ts.ascii.length * 2)];
+		}
+		byte[] buf = ts.ascii;
+		for (int i=0; i<n; i++){
+			char c = cs.charAt(i);
+			if (c >= 0x80){
+				return -1;
+			}
+			buf[i] = (byte) c;
+		}
+		return n;
+	}
+
+	/**
+	 * Format UTC time as "yyyyMMdd'T'HHmmss'Z'" without a date formatter.
+	 */
+	static String formatAmzDate(StringBuilder sb, long timeMillis){
+		long secs = Math.floorDiv(timeMillis, 1000L);
+		long days = Math.floorDiv(secs, 86400L);
+		int secOfDay = (int) (secs - days * 86400L);
+		LocalDate d = LocalDate.ofEpochDay(days);
+		sb.setLength(0);
+		pad(sb, d.getYear(), 4); pad(sb, d.getMonthValue(), 2); pad(sb, d.getDayOfMonth(), 2);
+		sb.append('T');
+		pad(sb, secOfDay / 3600, 2); pad(sb, (secOfDay / 60) % 60, 2); pad(sb, secOfDay % 60, 2);
+		sb.append('Z');
+		return sb.toString();
+	}
+	private static void pad(StringBuilder sb, int v, int digits){
+		for (int p = (digits == 4)? 1000 : 10; p > 0; p /= 10){
+			sb.append((char) ('0' + (v / p) % 10));
+		}
+	}
+
+}
@@ -1,15 +1,41 @@
 package de.bytemind.core.tools;
 
-import java.lang.reflect.Constructor;
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
 
 /**
- * This class handles different operations on classes.
+ * This class handles different operations on classes.<br>
+ * Constructors are resolved once per class name and argument signature and then kept as factory (generated lambda or MethodHandle),
+ * so repeated calls (e.g. one per request) don't pay for reflection.
  * 
  * @author Florian Quirin
  *
  */
 public class ClassBuilder {
 	
+	/**
+	 * Creates new instances of one class with one constructor signature.
+	 */
+	private interface Factory {
+		Object create(Object[] arguments) throws Exception;
+	}
+	
+	//carries reflection errors out of 'computeIfAbsent'
+	private static class ResolveException extends RuntimeException {
+		private static final long serialVersionUID = 1L;
+		ResolveException(ReflectiveOperationException cause){
+			super(cause);
+		}
+	}
+	
+	//resolved constructors by class name and argument signature
+	private static final ConcurrentHashMap<String, Factory> factories = new ConcurrentHashMap<>();
+	
 	/**
 	 * Constructs a new instance of a class with arguments (if available) just by using the name of the class.<br>
 	 * NOTE! Because getClass always returns non-primitives like "Integer" instead of "int" but they are rarely used, all
@@ -25,41 +51,34 @@ public class ClassBuilder {
 		if (!package_name.isEmpty()){
 			module_name = package_name + "." + module_name;		//package_name and module_name are separated in case the package_name changes
 		}
+		if (arguments.length == 0){
+			return construct(module_name);
+		}
+		//key: class name and runtime classes of the arguments
+		StringBuilder sb = new StringBuilder(module_name.length() + 16 * arguments.length);
+		sb.append(module_name);
+		for (Object arg : arguments){
+			sb.append(',').append(arg.getClass().getName());
+		}
+		String key = sb.toString();
 		try{
-			Object clazz;
-			if (arguments.length > 0){
-				Class<?>[] arg_clazzes = new Class[arguments.length];
-				for (int i=0; i<arguments.length; i++){
-					arg_clazzes[i] = arguments[i].getClass();
-					if (arg_clazzes[i].isInstance(String.class)){
-						continue;
-					}else if (arg_clazzes[i].equals(Integer.class)){
-						arg_clazzes[i] = Integer.TYPE;
-					}else if (arg_clazzes[i].equals(Boolean.class)){
-						arg_clazzes[i] = Boolean.TYPE;
-					}else if (arg_clazzes[i].equals(Double.class)){
-						arg_clazzes[i] = Double.TYPE;
-					}else if (arg_clazzes[i].equals(Long.class)){
-						arg_clazzes[i] = Long.TYPE;
-					}else if (arg_clazzes[i].equals(Byte.class)){
-						arg_clazzes[i] = Byte.TYPE;
-					}else if (arg_clazzes[i].equals(Float.class)){
-						arg_clazzes[i] = Float.TYPE;
-					}else if (arg_clazzes[i].equals(Short.class)){
-						arg_clazzes[i] = Short.TYPE;
+			Factory factory = factories.get(key);
+			if (factory == null){
+				final String className = module_name;
+				factory = factories.computeIfAbsent(key, k -> {
+					Class<?>[] arg_clazzes = new Class<?>[arguments.length];
+					for (int i=0; i<arguments.length; i++){
+						arg_clazzes[i] = toPrimitive(arguments[i].getClass());
 					}
-				}
-				Constructor<?> conztructor = Class.forName(module_name).getConstructor(arg_clazzes);
-				clazz = conztructor.newInstance(arguments);
-			}else{
-				Constructor<?> conztructor = Class.forName(module_name).getConstructor();
-				clazz = conztructor.newInstance();
+					return makeFactory(className, arg_clazzes);
+				});
 			}
-			return clazz;
+			return factory.create(arguments);
 			
 		}catch (Exception e){
-			e.printStackTrace();
-			throw new RuntimeException(DateTime.getLogDate() + " ERROR - Class not found: " + module_name, e);
+			Throwable cause = (e instanceof ResolveException)? e.getCause() : e;
+			cause.printStackTrace();
+			throw new RuntimeException(DateTime.getLogDate() + " ERROR - Class not found: " + module_name, cause);
 		}
 	}
 	/**
@@ -70,14 +89,106 @@ public class ClassBuilder {
 	 */
 	public static Object construct(String module_name){
 		try{
-			Object clazz;
-			Constructor<?> conztructor = Class.forName(module_name).getConstructor();
-			clazz = conztructor.newInstance();
-			return clazz;
+			Factory factory = factories.get(module_name);
+			if (factory == null){
+				factory = factories.computeIfAbsent(module_name, k -> makeFactory(k, new Class<?>[0]));
+			}
+			return factory.create(null);
 			
 		}catch (Exception e){
-			e.printStackTrace();
-			throw new RuntimeException(DateTime.getLogDate() + " ERROR - Class not found: " + module_name, e);
+			Throwable cause = (e instanceof ResolveException)? e.getCause() : e;
+			cause.printStackTrace();
+			throw new RuntimeException(DateTime.getLogDate() + " ERROR - Class not found: " + module_name, cause);
+		}
+	}
+	
+	/**
+	 * Remove all resolved constructors, e.g. after classes were reloaded.
+	 */
+	public static void clearCache(){
+		factories.clear();
+	}
+	
+	//--- helpers ---
+	
+	private static Class<?> toPrimitive(Class<?> c){
+		if (c.equals(Integer.class)){
+			return Integer.TYPE;
+		}else if (c.equals(Boolean.class)){
+			return Boolean.TYPE;
+		}else if (c.equals(Double.class)){
+			return Double.TYPE;
+		}else if (c.equals(Long.class)){
+			return Long.TYPE;
+		}else if (c.equals(Byte.class)){
+			return Byte.TYPE;
+		}else if (c.equals(Float.class)){
+			return Float.TYPE;
+		}else if (c.equals(Short.class)){
+			return Short.TYPE;
+		}
+		return c;
+	}
+	
+	/**
+	 * Resolve the public constructor once. Errors are thrown unchecked and are not cached.
+	 */
+	private static Factory makeFactory(String className, Class<?>[] arg_clazzes){
+		try{
+			Class<?> clazz = Class.forName(className);
+			MethodHandle handle = MethodHandles.publicLookup().unreflectConstructor(clazz.getConstructor(arg_clazzes));
+			if (arg_clazzes.length == 0){
+				//default constructor: generated Supplier, as fast as 'new'
+				Supplier<?> supplier = makeSupplier(clazz, handle);
+				if (supplier != null){
+					return args -> supplier.get();
+				}
+				MethodHandle generic = handle.asType(MethodType.methodType(Object.class));
+				return args -> invoke(generic, null);
+			}
+			MethodHandle spreader = handle.asType(handle.type().changeReturnType(Object.class))
+					.asSpreader(Object[].class, arg_clazzes.length);
+			return args -> invoke(spreader, args);
+			
+		}catch (ReflectiveOperationException e){
+			throw new ResolveException(e);
+		}
+	}
+	
+	/**
+	 * Call a constructor handle, with 'arguments' null for the default constructor. Errors (e.g. OutOfMemoryError) are thrown as they are,
+	 * anything else the constructor throws as Exception.
+	 */
+	private static Object invoke(MethodHandle handle, Object[] arguments) throws Exception {
+		try{
+			return (arguments == null)? handle.invokeExact() : handle.invokeExact(arguments);
+		}catch (Error | Exception e){
+			throw e;
+		}catch (Throwable e){
+			//neither Error nor Exception, only possible with custom Throwables
+			throw new RuntimeException(e);
+		}
+	}
+	
+	/**
+	 * Supplier via LambdaMetafactory or null if the class is not accessible for the generated lambda (e.g. other class loader).
+	 */
+	private static Supplier<?> makeSupplier(Class<?> clazz, MethodHandle handle){
+		try{
+			MethodHandles.Lookup lookup = MethodHandles.lookup();
+			CallSite site = LambdaMetafactory.metafactory(lookup, "get",
+					MethodType.methodType(Supplier.class), MethodType.methodType(Object.class),
+					handle, MethodType.methodType(clazz));
+			return (Supplier<?>) site.getTarget().invoke();
+		}catch (Exception | LinkageError e){
+			//e.g. IllegalAccessError for classes of other class loaders - the MethodHandle works there, just a bit slower
+			Debugger.println("ClassBuilder - no generated constructor for '" + clazz.getName() + "', using MethodHandle - e: " + e, 2);
+			return null;
+		}catch (Error e){
+			throw e;
+		}catch (Throwable e){
+			Debugger.println("ClassBuilder - no generated constructor for '" + clazz.getName() + "', using MethodHandle - e: " + e, 2);
+			return null;
 		}
 	}
 
@@ -1,18 +1,25 @@
 package de.bytemind.core.tools;
 
-import java.io.DataOutputStream;
+import java.io.Closeable;
+import java.io.FilterInputStream;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.PushbackReader;
+import java.io.Reader;
 import java.net.HttpURLConnection;
-import java.net.URL;
 import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.BooleanSupplier;
 
 import com.google.common.base.Charsets;
 import com.google.common.io.CharStreams;
 import org.json.simple.JSONArray;
 import org.json.simple.JSONObject;
+import org.json.simple.parser.ContentHandler;
 import org.json.simple.parser.JSONParser;
 import org.json.simple.parser.ParseException;
 
@@ -26,6 +33,103 @@ public class Connectors {
 	
 	private static final String USER_AGENT = "Mozilla/5.0";
 	public static final String HTTP_REST_SUCCESS = "HTTP_REST_SUCCESS";
+	
+	//HTTP layer used by all methods, created on first use
+	private static volatile HttpTransport transport;
+	
+	/**
+	 * Get the HTTP transport used by all methods of this class. If none was set a {@link PooledHttpTransport} is created.
+	 */
+	public static HttpTransport getTransport(){
+		HttpTransport t = transport;
+		if (t == null){
+			synchronized (Connectors.class){
+				if (transport == null){
+					transport = new PooledHttpTransport();
+				}
+				t = transport;
+			}
+		}
+		return t;
+	}
+	/**
+	 * Replace the HTTP transport, e.g. after changing 'ConnectorsConfig'. New requests use the new transport right away,
+	 * the old one is closed in the background when its requests are done (or after 'ConnectorsConfig.transportCloseDelay').
+	 * Use null to create a new default transport on next use.
+	 */
+	public static void setTransport(HttpTransport newTransport){
+		HttpTransport old;
+		synchronized (Connectors.class){
+			old = transport;
+			transport = newTransport;
+		}
+		if (old != null && old != newTransport){
+			closeWhenIdle(old, old::isIdle, "setTransport");
+		}
+	}
+
+	//non-blocking HTTP layer used by the async methods, created on first use
+	private static volatile AsyncHttpTransport asyncTransport;
+	
+	/**
+	 * Get the HTTP transport used by the async methods of this class. If none was set a {@link NioHttpTransport} is created.
+	 */
+	public static AsyncHttpTransport getAsyncTransport(){
+		AsyncHttpTransport t = asyncTransport;
+		if (t == null){
+			synchronized (Connectors.class){
+				if (asyncTransport == null){
+					asyncTransport = new NioHttpTransport();
+				}
+				t = asyncTransport;
+			}
+		}
+		return t;
+	}
+	/**
+	 * Replace the async HTTP transport, e.g. after changing 'ConnectorsConfig'. New requests use the new transport right away,
+	 * the old one is closed in the background when its in-flight and queued requests are done (or after 'ConnectorsConfig.transportCloseDelay').
+	 * Use null to create a new default transport on next use.
+	 */
+	public static void setAsyncTransport(AsyncHttpTransport newTransport){
+		AsyncHttpTransport old;
+		synchronized (Connectors.class){
+			old = asyncTransport;
+			asyncTransport = newTransport;
+		}
+		if (old != null && old != newTransport){
+			closeWhenIdle(old, old::isIdle, "setAsyncTransport");
+		}
+	}
+	
+	//min. ms before a replaced transport is checked, requests that just got the old transport need a moment to show up as active
+	private static final long TRANSPORT_CLOSE_MIN_DELAY = 1000;
+	private static final long TRANSPORT_CLOSE_CHECK_INTERVAL = 250;
+	
+	/**
+	 * Close a replaced transport in a background thread as soon as it is idle, but at the latest after 'ConnectorsConfig.transportCloseDelay'.
+	 */
+	private static void closeWhenIdle(Closeable old, BooleanSupplier isIdle, String caller){
+		long maxDelay = ConnectorsConfig.getTransportCloseDelay();
+		Thread closer = new Thread(() -> {
+			long tic = System.currentTimeMillis();
+			try{
+				Thread.sleep(Math.min(TRANSPORT_CLOSE_MIN_DELAY, Math.max(0, maxDelay)));
+				while (!isIdle.getAsBoolean() && (System.currentTimeMillis() - tic) < maxDelay){
+					Thread.sleep(TRANSPORT_CLOSE_CHECK_INTERVAL);
+				}
+			}catch (InterruptedException e){
+				Thread.currentThread().interrupt();
+			}
+			try{
+				old.close();
+			}catch (Exception e){
+				Debugger.println("Connectors." + caller + " - failed to close old transport: " + e.getMessage(), 1);
+			}
+		}, "connectors-transport-closer");
+		closer.setDaemon(true);
+		closer.start();
+	}
 
 	/**
 	 * Sends a GET and parses the reply as JSON. Other than {@code httpGET_JSON},
@@ -33,19 +137,13 @@ public class Connectors {
 	 * Throws a RuntimeException on fail.
 	 */
 	public static JSONObject simpleJsonGet(String url) {
-		try {
-			URL urlObj = new URL(url);
-			HttpURLConnection con = (HttpURLConnection) urlObj.openConnection();
-			con.setRequestMethod("GET");
-			con.setRequestProperty("User-Agent", USER_AGENT);
-			//con.setRequestProperty("content-type", "text/html");
-			int responseCode = con.getResponseCode();
+		HashMap<String, String> headers = new HashMap<>();
+		headers.put("User-Agent", USER_AGENT);
+		try (HttpTransport.Response response = getTransport().execute("GET", url, headers, null)){
+			int responseCode = response.getStatusCode();
 			if (responseCode == HttpURLConnection.HTTP_OK){
-				try (InputStream stream = con.getInputStream();
-						InputStreamReader isr = new InputStreamReader(stream, Charsets.UTF_8)) {
-					String content = CharStreams.toString(isr);
-					return JSON.parseStringOrFail(content);
-				}
+				String content = readContent(response);
+				return JSON.parseStringOrFail(content);
 			} else {
 				throw new RuntimeException("Could not get '" + url + "': response code " + responseCode);
 			}
@@ -58,19 +156,14 @@ public class Connectors {
 	 * Throws a RuntimeException on fail.
 	 */
 	public static String simpleHtmlGet(String url) {
-		try {
-			URL urlObj = new URL(url);
-			HttpURLConnection con = (HttpURLConnection) urlObj.openConnection();
-			con.setRequestMethod("GET");
-			con.setRequestProperty("User-Agent", USER_AGENT);
-			con.setRequestProperty("content-type", "text/html");
-			int responseCode = con.getResponseCode();
+		HashMap<String, String> headers = new HashMap<>();
+		headers.put("User-Agent", USER_AGENT);
+		headers.put("content-type", "text/html");
+		try (HttpTransport.Response response = getTransport().execute("GET", url, headers, null)){
+			int responseCode = response.getStatusCode();
 			if (responseCode == HttpURLConnection.HTTP_OK){
-				try (InputStream stream = con.getInputStream();
-						 InputStreamReader isr = new InputStreamReader(stream, Charsets.UTF_8)) {
-					String content = CharStreams.toString(isr);
-					return content;
-				}
+				String content = readContent(response);
+				return content;
 			} else {
 				throw new RuntimeException(DateTime.getLogDate() + " ERROR - Could not get '" + url + "': response code " + responseCode);
 			}
@@ -94,63 +187,12 @@ public class Connectors {
 	 * @return
 	 */
 	public static JSONObject httpGET(String url, String[] params) {
-		int responseCode = -1;
-		String success_str = HTTP_REST_SUCCESS;
-		try{
-			for (String s : params){
-				url = url + s;
-			}
-			URL obj = new URL(url);
-			HttpURLConnection con = (HttpURLConnection) obj.openConnection();
-	
-			con.setRequestMethod("GET");
-			con.setRequestProperty("User-Agent", USER_AGENT);
-	
-			responseCode = con.getResponseCode();
-			//System.out.println("GET Response Code : " + responseCode);		//debug
-	
-			//success?
-			if (responseCode >= 200 && responseCode < 300){		//(responseCode == HttpURLConnection.HTTP_OK){
-				/*
-				BufferedReader in = new BufferedReader(new InputStreamReader(con.getInputStream()));
-				String inputLine;
-				StringBuffer response = new StringBuffer();
-	 
-				while ((inputLine = in.readLine()) != null) {
-					response.append(inputLine);
-				}
-				in.close();
-				
-				//result
-				//System.out.println(response.toString());						//debug
-				String res = response.toString();
-				JSONObject result = build(res, success_str);
-				return result;
-				*/
-				InputStream stream = con.getInputStream();
-				InputStreamReader isr = new InputStreamReader(stream, Charsets.UTF_8);
-				String content = CharStreams.toString(isr);
-				JSONObject result = build(content, success_str);
-				return result;
-		
-			}else{
-				//result
-				//System.out.println("GET request did not work");				//debug
-				JSONObject json = new JSONObject();
-				JSON.add(json, success_str, new Boolean(false));
-				JSON.add(json, "code", new Integer(responseCode));
-				return json;
-			}
-			
-		}catch (Exception e){
-			//result
-			//System.out.println("GET request did not work");					//debug
-			JSONObject json = new JSONObject();
-			JSON.add(json, success_str, new Boolean(false));
-			JSON.add(json, "error", e.toString());
-			JSON.add(json, "code", new Integer(responseCode));
-			return json;
+		for (String s : params){
+			url = url + s;
 		}
+		HashMap<String, String> headers = new HashMap<>();
+		headers.put("User-Agent", USER_AGENT);
+		return httpRequest("GET", url, null, headers, false);
 	}
 	
 	//--------------------------POST--------------------------------
@@ -178,82 +220,18 @@ public class Connectors {
 	 * @return JSONObject with response
 	 */
 	public static JSONObject httpPOST(String targetURL, String data, HashMap<String, String> headers) {
-		URL url;
-		HttpURLConnection connection = null;
-		int responseCode = -1;
-		String success_str = HTTP_REST_SUCCESS;
-		try {
-			
-			//Create connection
-			url = new URL(targetURL);
-			connection = (HttpURLConnection)url.openConnection();
-			connection.setRequestMethod("POST");
-			//System.out.println("---headers---");
-			for (Map.Entry<String, String> entry : headers.entrySet())
-			{
-				connection.setRequestProperty(entry.getKey(), entry.getValue());
-				//System.out.println(entry.getKey() +": "+ entry.getValue());
-			}			
-			connection.setUseCaches(false);
-			connection.setDoInput(true);
-			connection.setDoOutput(true);
-			
-			//Send request
-			DataOutputStream wr = new DataOutputStream(connection.getOutputStream());
-			wr.write(data.getBytes(StandardCharsets.UTF_8));
-			//wr.writeBytes(data);
-			wr.flush();
-			wr.close();
-			
-			responseCode = connection.getResponseCode();
-			//System.out.println("POST Response Code : " + responseCode);		//debug
-
-			//Get Response
-			InputStream is;
-			boolean success = false;
-			if (responseCode >= 200 && responseCode < 300){		//(responseCode == HttpURLConnection.HTTP_OK){
-				success = true;
-				is = connection.getInputStream();
-			}else{
-				is = connection.getErrorStream();
-			}
-			/*
-			BufferedReader rd = new BufferedReader(new InputStreamReader(is));
-			String line;
-			StringBuffer response = new StringBuffer(); 
-			while((line = rd.readLine()) != null) {
-				response.append(line);
-				//response.append('\r');	//line break messes it all up
-			}
-			rd.close();
-			String res = response.toString();
-			*/
-			InputStreamReader isr = new InputStreamReader(is, Charsets.UTF_8);
-			String res = CharStreams.toString(isr);
-			
-			if (success){
-				JSONObject result = build(res, success_str);
-				return result;
-			}else{
-				JSONObject json = new JSONObject();
-				JSON.add(json, success_str, new Boolean(false));
-				JSON.add(json, "code", new Integer(responseCode));
-				JSON.add(json, "error", res);
-				return json;
-			}
-
-	    }catch (Exception e) {
-	    	JSONObject json = new JSONObject();
-			JSON.add(json, success_str, new Boolean(false));
-			JSON.add(json, "code", new Integer(responseCode));
-			JSON.add(json, "error", e.toString());
-			return json;
-
-	    }finally {
-	    	if(connection != null) {
-	    		connection.disconnect(); 
-	    	}
-	    }
+		return httpRequest("POST", targetURL, data, headers, true);
+	}
+	/**
+	 * Make a HTTP POST request with a JSON body that is serialized only once, directly into a pooled UTF-8 buffer (see {@link JsonBody}).
+	 * Check {@code httpSuccess(...)} for status.
+	 * @param targetURL - URL of service
+	 * @param data - JSONObject, JSONArray or any other value the JSON codec can write
+	 * @param headers - HashMap with request properties (keys) and values, e.g. "Content-Type". "Content-Length" is set automatically.
+	 * @return JSONObject with response
+	 */
+	public static JSONObject httpPOSTJson(String targetURL, Object data, HashMap<String, String> headers) {
+		return httpRequestJson("POST", targetURL, JsonBody.of(data), headers, true);
 	}
 	
 	//----------------------PUT-------------------------
@@ -266,144 +244,436 @@ public class Connectors {
 	 * @return JSONObject with response
 	 */
 	public static JSONObject httpPUT(String targetURL, String data, HashMap<String, String> headers) {
-		URL url;
-		HttpURLConnection connection = null;
-		int responseCode = -1;
-		String success_str = HTTP_REST_SUCCESS;
-		try {
-			
-			//Create connection
-			url = new URL(targetURL);
-			connection = (HttpURLConnection)url.openConnection();
-			connection.setRequestMethod("PUT");
-			//System.out.println("---headers---");
-			for (Map.Entry<String, String> entry : headers.entrySet())
-			{
-				connection.setRequestProperty(entry.getKey(), entry.getValue());
-				//System.out.println(entry.getKey() +": "+ entry.getValue());
-			}			
-			connection.setUseCaches(false);
-			connection.setDoInput(true);
-			connection.setDoOutput(true);
-			
-			//Send request
-			DataOutputStream wr = new DataOutputStream(connection.getOutputStream());
-			wr.write(data.getBytes(StandardCharsets.UTF_8));
-			//wr.writeBytes(data);
-			wr.flush();
-			wr.close();
-			
-			responseCode = connection.getResponseCode();
-			//System.out.println("POST Response Code : " + responseCode);		//debug
+		return httpRequest("PUT", targetURL, data, headers, true);
+	}
+	/**
+	 * Make a HTTP PUT request with a JSON body that is serialized only once, directly into a pooled UTF-8 buffer (see {@link JsonBody}).
+	 * Check {@code httpSuccess(...)} for status.
+	 * @param targetURL - URL of service
+	 * @param data - JSONObject, JSONArray or any other value the JSON codec can write
+	 * @param headers - HashMap with request properties (keys) and values, e.g. "Content-Type". "Content-Length" is set automatically.
+	 * @return JSONObject with response
+	 */
+	public static JSONObject httpPUTJson(String targetURL, Object data, HashMap<String, String> headers) {
+		return httpRequestJson("PUT", targetURL, JsonBody.of(data), headers, true);
+	}
+	
+	//-------------DELETE--------------
+	
+	/**
+	 * HTTP DELETE method for JSON string. Use {@code httpSuccess(...)} for status.
+	 * @param url - URL address to call including all parameters
+	 * @return
+	 */
+	public static JSONObject httpDELETE(String url) {
+		HashMap<String, String> headers = new HashMap<>();
+		headers.put("User-Agent", USER_AGENT);
+		return httpRequest("DELETE", url, null, headers, false);
+	}
+	/**
+	 * HTTP DELETE with a body (e.g. to clear an Elasticsearch scroll) and custom headers. Use {@code httpSuccess(...)} for status.
+	 * @param url - URL address to call including all parameters
+	 * @param data - data in chosen content-type, e.g. JSON string
+	 * @param headers - HashMap with request properties (keys) and values.
+	 * @return JSONObject with response
+	 */
+	public static JSONObject httpDELETE(String url, String data, HashMap<String, String> headers) {
+		return httpRequest("DELETE", url, data, headers, true);
+	}
 
-			//Get Response
-			InputStream is;
-			boolean success = false;
-			if (responseCode >= 200 && responseCode < 300){		//(responseCode == HttpURLConnection.HTTP_OK){
-				success = true;
-				is = connection.getInputStream();
-			}else{
-				is = connection.getErrorStream();
-			}
-			/*
-			BufferedReader rd = new BufferedReader(new InputStreamReader(is));
-			String line;
-			StringBuffer response = new StringBuffer(); 
-			while((line = rd.readLine()) != null) {
-				response.append(line);
-				//response.append('\r');	//line break messes it all up
-			}
-			rd.close();
-			//String res = response.toString();
-			*/
-			InputStreamReader isr = new InputStreamReader(is, Charsets.UTF_8);
-			String res = CharStreams.toString(isr);
-			
-			if (success){
-				JSONObject result = build(res, success_str);
-				return result;
+	//-------------ASYNC--------------
+	
+	/**
+	 * Non-blocking version of {@link #httpGET(String)}. The future never fails, check the result with {@code httpSuccess(...)}.
+	 * @param url - URL address to call including all parameters
+	 * @return future with the JSONObject response
+	 */
+	public static CompletableFuture<JSONObject> httpGETAsync(String url) {
+		HashMap<String, String> headers = new HashMap<>();
+		headers.put("User-Agent", USER_AGENT);
+		return httpRequestAsync("GET", url, null, headers, false);
+	}
+	/**
+	 * Non-blocking version of {@link #httpPOST(String, String)}. The future never fails, check the result with {@code httpSuccess(...)}.
+	 * @param targetURL - URL of service
+	 * @param urlParameters - parameters for x-www-form-urlencoded content-type, e.g. "a=1&b=2&c=3..." 
+	 * @return future with the JSONObject response
+	 */
+	public static CompletableFuture<JSONObject> httpPOSTAsync(String targetURL, String urlParameters) {
+		HashMap<String, String> headers = new HashMap<>();
+		headers.put("Content-Type", "application/x-www-form-urlencoded");
+		headers.put("Content-Language", "en-US");
+		return httpPOSTAsync(targetURL, urlParameters, headers);
+	}
+	/**
+	 * Non-blocking version of {@link #httpPOST(String, String, HashMap)}. The future never fails, check the result with {@code httpSuccess(...)}.
+	 * @param targetURL - URL of service
+	 * @param data - data in chosen content-type, e.g. url parameter style or JSON string
+	 * @param headers - HashMap with request properties (keys) and values.
+	 * @return future with the JSONObject response
+	 */
+	public static CompletableFuture<JSONObject> httpPOSTAsync(String targetURL, String data, HashMap<String, String> headers) {
+		return httpRequestAsync("POST", targetURL, data, headers, true);
+	}
+	/**
+	 * Non-blocking version of {@link #httpPOSTJson(String, Object, HashMap)}. The future never fails, check the result with {@code httpSuccess(...)}.
+	 * @param targetURL - URL of service
+	 * @param data - JSONObject, JSONArray or any other value the JSON codec can write
+	 * @param headers - HashMap with request properties (keys) and values.
+	 * @return future with the JSONObject response
+	 */
+	public static CompletableFuture<JSONObject> httpPOSTJsonAsync(String targetURL, Object data, HashMap<String, String> headers) {
+		return httpRequestJsonAsync("POST", targetURL, JsonBody.of(data), headers, true);
+	}
+	/**
+	 * Non-blocking version of {@link #httpPUT(String, String, HashMap)}. The future never fails, check the result with {@code httpSuccess(...)}.
+	 * @param targetURL - URL of service
+	 * @param data - data in chosen content-type, e.g. url parameter style or JSON string
+	 * @param headers - HashMap with request properties (keys) and values.
+	 * @return future with the JSONObject response
+	 */
+	public static CompletableFuture<JSONObject> httpPUTAsync(String targetURL, String data, HashMap<String, String> headers) {
+		return httpRequestAsync("PUT", targetURL, data, headers, true);
+	}
+	/**
+	 * Non-blocking version of {@link #httpDELETE(String)}. The future never fails, check the result with {@code httpSuccess(...)}.
+	 * @param url - URL address to call including all parameters
+	 * @return future with the JSONObject response
+	 */
+	public static CompletableFuture<JSONObject> httpDELETEAsync(String url) {
+		HashMap<String, String> headers = new HashMap<>();
+		headers.put("User-Agent", USER_AGENT);
+		return httpRequestAsync("DELETE", url, null, headers, false);
+	}
+	
+	//-------------STREAMING--------------
+	
+	/**
+	 * HTTP GET that hands the JSON response to a 'ContentHandler' while it is read from the connection instead of building the
+	 * result object. Use this for very large responses, e.g. when you only need a few fields of every search hit.
+	 * The handler can stop early by returning false, the rest of the response is discarded.
+	 * @param url - URL address to call including all parameters
+	 * @param handler - json-simple SAX-like handler that receives the parser events
+	 * @return JSONObject with only the status, check with {@code httpSuccess(...)}
+	 */
+	public static JSONObject httpGETStreaming(String url, ContentHandler handler) {
+		HashMap<String, String> headers = new HashMap<>();
+		headers.put("User-Agent", USER_AGENT);
+		return httpRequestStreaming("GET", url, null, headers, handler);
+	}
+	/**
+	 * HTTP POST that hands the JSON response to a 'ContentHandler' while it is read from the connection instead of building the
+	 * result object. Use this for very large responses, e.g. when you only need a few fields of every search hit.
+	 * The handler can stop early by returning false, the rest of the response is discarded.
+	 * @param targetURL - URL of service
+	 * @param data - data in chosen content-type, e.g. url parameter style or JSON string
+	 * @param headers - HashMap with request properties (keys) and values.
+	 * @param handler - json-simple SAX-like handler that receives the parser events
+	 * @return JSONObject with only the status (and "error" on fail), check with {@code httpSuccess(...)}
+	 */
+	public static JSONObject httpPOSTStreaming(String targetURL, String data, HashMap<String, String> headers, ContentHandler handler) {
+		return httpRequestStreaming("POST", targetURL, data, headers, handler);
+	}
+	
+	/**
+	 * Send a request and push the response through the handler.
+	 */
+	private static JSONObject httpRequestStreaming(String method, String url, String data, Map<String, String> headers, ContentHandler handler){
+		byte[] body = (data == null)? null : data.getBytes(StandardCharsets.UTF_8);
+		HttpTransport.Response response;
+		try{
+			response = getTransport().execute(method, url, headers, body);
+		}catch (Exception e){
+			return buildError(e, -1);
+		}
+		int responseCode = -1;
+		boolean abort = false;
+		try{
+			responseCode = response.getStatusCode();
+			if (responseCode >= 200 && responseCode < 300){
+				Reader reader = new InputStreamReader(limit(response.getContent()), Charsets.UTF_8);
+				JSONParser parser = new JSONParser();
+				StopAwareHandler stopAware = new StopAwareHandler(handler);
+				parser.parse(skipBom(reader), stopAware);
+				//no need to read the rest if the handler is done
+				abort = stopAware.stopped;
 				
+				JSONObject json = new JSONObject();
+				JSON.add(json, HTTP_REST_SUCCESS, new Boolean(true));
+				JSON.add(json, "code", new Integer(responseCode));
+				return json;
 			}else{
 				JSONObject json = new JSONObject();
-				JSON.add(json, success_str, new Boolean(false));
+				JSON.add(json, HTTP_REST_SUCCESS, new Boolean(false));
 				JSON.add(json, "code", new Integer(responseCode));
-				JSON.add(json, "error", res);
+				JSON.add(json, "error", readContent(response));
 				return json;
 			}
-
-	    }catch (Exception e) {
-	    	JSONObject json = new JSONObject();
-			JSON.add(json, success_str, new Boolean(false));
-			JSON.add(json, "code", new Integer(responseCode));
-			JSON.add(json, "error", e.toString());
-			return json;
-
-	    }finally {
-	    	if(connection != null) {
-	    		connection.disconnect(); 
-	    	}
-	    }
+		}catch (ResponseTooLargeException e){
+			abort = true;
+			return buildError(e, responseCode);
+		}catch (Exception e){
+			return buildError(e, responseCode);
+		}finally{
+			release(response, abort);
+		}
 	}
 	
-	//-------------DELETE--------------
+	/**
+	 * Remembers if the wrapped handler asked to stop.
+	 */
+	private static class StopAwareHandler implements ContentHandler {
+		private final ContentHandler handler;
+		boolean stopped = false;
+		
+		StopAwareHandler(ContentHandler handler){
+			this.handler = handler;
+		}
+		private boolean check(boolean goOn){
+			if (!goOn) stopped = true;
+			return goOn;
+		}
+		@Override
+		public void startJSON() throws ParseException, IOException {
+			handler.startJSON();
+		}
+		@Override
+		public void endJSON() throws ParseException, IOException {
+			handler.endJSON();
+		}
+		@Override
+		public boolean startObject() throws ParseException, IOException {
+			return check(handler.startObject());
+		}
+		@Override
+		public boolean endObject() throws ParseException, IOException {
+			return check(handler.endObject());
+		}
+		@Override
+		public boolean startObjectEntry(String key) throws ParseException, IOException {
+			return check(handler.startObjectEntry(key));
+		}
+		@Override
+		public boolean endObjectEntry() throws ParseException, IOException {
+			return check(handler.endObjectEntry());
+		}
+		@Override
+		public boolean startArray() throws ParseException, IOException {
+			return check(handler.startArray());
+		}
+		@Override
+		public boolean endArray() throws ParseException, IOException {
+			return check(handler.endArray());
+		}
+		@Override
+		public boolean primitive(Object value) throws ParseException, IOException {
+			return check(handler.primitive(value));
+		}
+	}
+	
+	//-------------- REQUEST ------------------
 	
 	/**
-	 * HTTP GET method for JSON string. Use {@code httpSuccess(...)} for status.
-	 * @param url - URL address to call including none or only some parameters
-	 * @param params - additional parameters added to URL (use e.g. "?q=search_term" or "&type=json" etc.)
-	 * @return
+	 * Send a request via the transport and build the JSON result. The connection is released (not disconnected) afterwards so it can be re-used.
+	 * @param method - HTTP method
+	 * @param url - full URL
+	 * @param data - body or null
+	 * @param headers - request headers
+	 * @param addErrorContent - add the response body as "error" when the response code indicates a fail
+	 * @return JSONObject with response, check {@code httpSuccess(...)} for status
 	 */
-	public static JSONObject httpDELETE(String url) {
+	private static JSONObject httpRequest(String method, String url, String data, Map<String, String> headers, boolean addErrorContent){
+		byte[] body = (data == null)? null : data.getBytes(StandardCharsets.UTF_8);
+		return httpRequest(method, url, body, (body == null)? 0 : body.length, headers, addErrorContent);
+	}
+	/**
+	 * Send a request with a JSON body and return the buffer of the body to the pool when it was sent.
+	 */
+	private static JSONObject httpRequestJson(String method, String url, JsonBody body, Map<String, String> headers, boolean addErrorContent){
+		try{
+			return httpRequest(method, url, body.getBuffer(), body.getLength(), headers, addErrorContent);
+		}finally{
+			body.close();
+		}
+	}
+	private static JSONObject httpRequest(String method, String url, byte[] body, int length, Map<String, String> headers, boolean addErrorContent){
+		HttpTransport.Response response;
+		try{
+			response = getTransport().execute(method, url, headers, body, length);
+		}catch (Exception e){
+			return buildError(e, -1);
+		}
+		return buildResult(response, addErrorContent);
+	}
+	/**
+	 * Send a request via the async transport and build the JSON result in a pool thread (not in the I/O thread).
+	 * The future always completes normally, errors are reported the same way as in {@link #httpRequest}.
+	 */
+	private static CompletableFuture<JSONObject> httpRequestAsync(String method, String url, String data, Map<String, String> headers, boolean addErrorContent){
+		byte[] body = (data == null)? null : data.getBytes(StandardCharsets.UTF_8);
+		CompletableFuture<HttpTransport.Response> future;
+		try{
+			future = getAsyncTransport().executeAsync(method, url, headers, body);
+		}catch (Exception e){
+			return CompletableFuture.completedFuture(buildError(e, -1));
+		}
+		return buildResultAsync(future, addErrorContent);
+	}
+	/**
+	 * Send a request with a JSON body via the async transport, the buffer of the body goes back to the pool when the request is done.
+	 */
+	private static CompletableFuture<JSONObject> httpRequestJsonAsync(String method, String url, JsonBody body, Map<String, String> headers, boolean addErrorContent){
+		CompletableFuture<HttpTransport.Response> future;
+		try{
+			future = getAsyncTransport().executeAsync(method, url, headers, body.getBuffer(), body.getLength());
+		}catch (Exception e){
+			body.close();
+			return CompletableFuture.completedFuture(buildError(e, -1));
+		}
+		future.whenComplete((response, ex) -> body.close());
+		return buildResultAsync(future, addErrorContent);
+	}
+	/**
+	 * Build the JSON result of an async request in a pool thread (not in the I/O thread).
+	 */
+	private static CompletableFuture<JSONObject> buildResultAsync(CompletableFuture<HttpTransport.Response> future, boolean addErrorContent){
+		return future.handleAsync((response, ex) -> {
+			if (ex != null){
+				Throwable cause = (ex instanceof CompletionException && ex.getCause() != null)? ex.getCause() : ex;
+				return buildError(cause, -1);
+			}
+			return buildResult(response, addErrorContent);
+		});
+	}
+	
+	/**
+	 * Build the JSON result of a response and close it.
+	 * @param response - response of the transport
+	 * @param addErrorContent - add the response body as "error" when the response code indicates a fail
+	 */
+	private static JSONObject buildResult(HttpTransport.Response response, boolean addErrorContent){
 		int responseCode = -1;
 		String success_str = HTTP_REST_SUCCESS;
+		boolean abort = false;
 		try{
-			URL obj = new URL(url);
-			HttpURLConnection con = (HttpURLConnection) obj.openConnection();
-	
-			con.setRequestMethod("DELETE");
-			con.setRequestProperty("User-Agent", USER_AGENT);
-	
-			responseCode = con.getResponseCode();
-			//System.out.println("GET Response Code : " + responseCode);		//debug
-	
+			responseCode = response.getStatusCode();
+			
 			//success?
-			if (responseCode >= 200 && responseCode < 300){		//(responseCode == HttpURLConnection.HTTP_OK){
-				/*
-				BufferedReader in = new BufferedReader(new InputStreamReader(con.getInputStream()));
-				String inputLine;
-				StringBuffer response = new StringBuffer();
-	 
-				while ((inputLine = in.readLine()) != null) {
-					response.append(inputLine);
-				}
-				in.close();
-	
-				//result
-				//System.out.println(response.toString());						//debug
-				String res = response.toString();
-				*/
-				InputStreamReader isr = new InputStreamReader(con.getInputStream(), Charsets.UTF_8);
-				String res = CharStreams.toString(isr);
-				JSONObject result = build(res, success_str);
+			if (responseCode >= 200 && responseCode < 300){
+				//parse directly from the stream, the body is never held as string
+				Reader reader = new InputStreamReader(limit(response.getContent()), Charsets.UTF_8);
+				JSONObject result = build(reader, success_str);
 				return result;
-		
+				
 			}else{
-				//result
-				//System.out.println("GET request did not work");				//debug
 				JSONObject json = new JSONObject();
 				JSON.add(json, success_str, new Boolean(false));
 				JSON.add(json, "code", new Integer(responseCode));
+				if (addErrorContent){
+					JSON.add(json, "error", readContent(response));
+				}
 				return json;
 			}
 			
+		}catch (ResponseTooLargeException e){
+			abort = true;
+			return buildError(e, responseCode);
+		}catch (Exception e){
+			return buildError(e, responseCode);
+		}finally{
+			release(response, abort);
+		}
+	}
+	/**
+	 * Build the JSON result for a failed request.
+	 */
+	private static JSONObject buildError(Throwable e, int responseCode){
+		JSONObject json = new JSONObject();
+		JSON.add(json, HTTP_REST_SUCCESS, new Boolean(false));
+		JSON.add(json, "error", e.toString());
+		JSON.add(json, "code", new Integer(responseCode));
+		return json;
+	}
+	
+	/**
+	 * Read the whole response content as UTF-8 string.
+	 */
+	private static String readContent(HttpTransport.Response response) throws IOException {
+		//the stream is closed together with the response
+		InputStreamReader isr = new InputStreamReader(limit(response.getContent()), Charsets.UTF_8);
+		return CharStreams.toString(isr);
+	}
+	
+	/**
+	 * Apply the max. response size of 'ConnectorsConfig' to the stream (if any).
+	 */
+	private static InputStream limit(InputStream is){
+		long max = ConnectorsConfig.getMaxResponseSize();
+		return (max > 0)? new SizeLimitedInputStream(is, max) : is;
+	}
+	/**
+	 * Close the response. With 'abort' the connection is closed without reading the rest of the response (which would happen otherwise
+	 * to re-use the connection).
+	 */
+	private static void release(HttpTransport.Response response, boolean abort){
+		try{
+			if (abort){
+				response.abort();
+			}else{
+				response.close();
+			}
 		}catch (Exception e){
-			//result
-			//System.out.println("GET request did not work");					//debug
-			JSONObject json = new JSONObject();
-			JSON.add(json, success_str, new Boolean(false));
-			JSON.add(json, "error", e.toString());
-			JSON.add(json, "code", new Integer(responseCode));
-			return json;
+			Debugger.println("Connectors - failed to release response: " + e.getMessage(), 1);
+		}
+	}
+	
+	/**
+	 * Thrown when a response is bigger than 'ConnectorsConfig.maxResponseSize'. Used by the transports as well if they buffer the response.
+	 */
+	static class ResponseTooLargeException extends IOException {
+		private static final long serialVersionUID = 1L;
+		ResponseTooLargeException(long max){
+			super("response exceeds max. size of " + max + " bytes");
+		}
+	}
+	/**
+	 * Stream that fails as soon as more than 'max' bytes are read.
+	 */
+	private static class SizeLimitedInputStream extends FilterInputStream {
+		private final long max;
+		private long count = 0;
+		
+		SizeLimitedInputStream(InputStream in, long max){
+			super(in);
+			this.max = max;
+		}
+		@Override
+		public int read() throws IOException {
+			int b = super.read();
+			if (b != -1){
+				count(1);
+			}
+			return b;
+		}
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			int n = super.read(b, off, len);
+			if (n > 0){
+				count(n);
+			}
+			return n;
+		}
+		@Override
+		public long skip(long n) throws IOException {
+			long skipped = super.skip(n);
+			count(skipped);
+			return skipped;
+		}
+		private void count(long n) throws IOException {
+			count += n;
+			if (count > max){
+				throw new ResponseTooLargeException(max);
+			}
 		}
 	}
 	
@@ -433,46 +703,54 @@ public class Connectors {
 	
 	/**
 	 * Build result depending on type of reply (JSON string, JSON array, simple string).
-	 * Adds the "success" tag as well.
-	 * @param res - result received from HTTP connection as string
+	 * Adds the "success" tag as well. JSON is parsed directly from the reader, only simple strings are collected as a whole.
+	 * @param reader - result received from HTTP connection
 	 * @param successTag - field to add indicating the success
 	 */
-	private static JSONObject build(String res, String successTag){
-		//System.out.println(res);						//debug
-		res = res.charAt(0) == '\uFEFF' ? res.substring(1) : res;
-		res = res.replaceAll("^(\\r+|\\n+|\\t+)", "").trim();
-		//debug:
-		/*
-		System.out.println(res.substring(0, 1));
-		for (char c : res.toCharArray()) {
-		    System.out.printf("U+%04x ", (int) c);
-		    break;
-		}
-		*/
+	private static JSONObject build(Reader reader, String successTag) throws IOException {
+		PushbackReader in = new PushbackReader(reader, 2);
+		int c = in.read();
+		if (c == -1){
+			throw new IOException("empty response");
+		}
+		if (c == '\uFEFF'){
+			c = in.read();
+		}
+		//skip leading white-space
+		while (c != -1 && c <= ' '){
+			c = in.read();
+		}
 		JSONObject result;
 		try{
-			if (res.startsWith("{")){
+			if (c == '{'){
 				//parse JSONObject
-				JSONParser parser = new JSONParser();
-				result = (JSONObject) parser.parse(res);
+				in.unread(c);
+				result = (JSONObject) JSON.getCodec().parse(in);
 				JSON.add(result, successTag, new Boolean(true));
-			}else if (res.startsWith("[{")){
+				return result;
+			}
+			int c2 = (c == '[')? in.read() : -1;
+			if (c2 == '{'){
 				//parse JSONArray
-				JSONParser parser = new JSONParser();
-				JSONArray arr = (JSONArray) parser.parse(res);
+				in.unread(c2);
+				in.unread(c);
+				JSONArray arr = (JSONArray) JSON.getCodec().parse(in);
 				result = new JSONObject();
 				JSON.add(result, "JSONARRAY", arr);
 				JSON.add(result, successTag, new Boolean(true));
 			}else{
 				//save String only
+				StringBuilder sb = new StringBuilder();
+				if (c != -1) sb.append((char) c);
+				if (c2 != -1) sb.append((char) c2);
+				CharStreams.copy(in, sb);
 				result = new JSONObject();
-				JSON.add(result, "STRING", res);
+				JSON.add(result, "STRING", sb.toString().trim());
 				JSON.add(result, successTag, new Boolean(true));
 			}
-			//System.out.println(result.toString());						//debug
 			return result;
 		}catch (ParseException e){
-			System.err.println(DateTime.getLogDate() + " ERROR - Connectors.java / build() - Failed to parse JSON string: " + res);
+			System.err.println(DateTime.getLogDate() + " ERROR - Connectors.java / build() - Failed to parse JSON response: " + e);
 			result = new JSONObject();
 			JSON.add(result, successTag, new Boolean(false));
 			JSON.add(result, "error", "result could not be parsed");
@@ -480,5 +758,16 @@ public class Connectors {
 			return result;
 		}
 	}
+	/**
+	 * Skip the byte order mark of a stream if there is one.
+	 */
+	private static Reader skipBom(Reader reader) throws IOException {
+		PushbackReader in = new PushbackReader(reader, 1);
+		int c = in.read();
+		if (c != -1 && c != '\uFEFF'){
+			in.unread(c);
+		}
+		return in;
+	}
 
-}
+}
\ No newline at end of file
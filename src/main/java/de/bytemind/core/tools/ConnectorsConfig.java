@@ -0,0 +1,121 @@
+package de.bytemind.core.tools;
+
+/**
+ * Configuration for the HTTP connection pool used by {@link Connectors}. This is usually set during server start (e.g. via CoreSetup).
+ * Changes take effect when a new transport is created, e.g. via {@code Connectors.setTransport(new PooledHttpTransport())}
+ * or {@code Connectors.setAsyncTransport(new NioHttpTransport())}.
+ *
+ * @author Florian Quirin
+ *
+ */
+public class ConnectorsConfig {
+
+	//Pool
+	public static int maxConnections = 200;					//all routes together
+	public static int maxConnectionsPerRoute = 50;			//route is basically scheme + host + port
+	public static long idleConnectionTimeout = 30000;		//ms until an unused connection is closed
+
+	//Timeouts (-1 is system default, 0 is infinite)
+	public static int connectTimeout = -1;					//ms to establish the connection
+	public static int socketTimeout = -1;					//ms of inactivity while waiting for data
+	public static int poolTimeout = 30000;					//ms to wait for a free connection of the pool
+	
+	//Responses
+	public static long maxResponseSize = -1;					//bytes of a response body before the request fails, -1 is no limit
+	
+	//Compression
+	public static boolean acceptCompression = true;			//ask for gzip/deflate responses ("Accept-Encoding") and decode them
+	public static int requestCompressionThreshold = 2048;	//min. bytes of a body to gzip it (-1 never), only for requests with header "Content-Encoding: gzip"
+	
+	//Async requests
+	public static int maxAsyncInFlight = 200;				//requests sent at the same time, more have to wait in the queue
+	public static int maxAsyncQueued = 10000;				//requests waiting for a slot, more will fail immediately
+	
+	//Replaced transports
+	public static long transportCloseDelay = 60000;			//max. ms a replaced transport stays open to finish its requests
+
+	public static int getMaxConnections(){
+		return maxConnections;
+	}
+	public static void setMaxConnections(int max){
+		maxConnections = max;
+	}
+
+	public static int getMaxConnectionsPerRoute(){
+		return maxConnectionsPerRoute;
+	}
+	public static void setMaxConnectionsPerRoute(int max){
+		maxConnectionsPerRoute = max;
+	}
+
+	public static long getIdleConnectionTimeout(){
+		return idleConnectionTimeout;
+	}
+	public static void setIdleConnectionTimeout(long ms){
+		idleConnectionTimeout = ms;
+	}
+
+	public static int getConnectTimeout(){
+		return connectTimeout;
+	}
+	public static void setConnectTimeout(int ms){
+		connectTimeout = ms;
+	}
+
+	public static int getSocketTimeout(){
+		return socketTimeout;
+	}
+	public static void setSocketTimeout(int ms){
+		socketTimeout = ms;
+	}
+
+	public static int getPoolTimeout(){
+		return poolTimeout;
+	}
+	public static void setPoolTimeout(int ms){
+		poolTimeout = ms;
+	}
+
+	public static long getMaxResponseSize(){
+		return maxResponseSize;
+	}
+	public static void setMaxResponseSize(long bytes){
+		maxResponseSize = bytes;
+	}
+
+	public static boolean isAcceptCompression(){
+		return acceptCompression;
+	}
+	public static void setAcceptCompression(boolean accept){
+		acceptCompression = accept;
+	}
+
+	public static int getRequestCompressionThreshold(){
+		return requestCompressionThreshold;
+	}
+	public static void setRequestCompressionThreshold(int bytes){
+		requestCompressionThreshold = bytes;
+	}
+
+	public static int getMaxAsyncInFlight(){
+		return maxAsyncInFlight;
+	}
+	public static void setMaxAsyncInFlight(int max){
+		maxAsyncInFlight = max;
+	}
+
+	public static int getMaxAsyncQueued(){
+		return maxAsyncQueued;
+	}
+	public static void setMaxAsyncQueued(int max){
+		maxAsyncQueued = max;
+	}
+
+	public static long getTransportCloseDelay(){
+		return transportCloseDelay;
+	}
+	public static void setTransportCloseDelay(long ms){
+		transportCloseDelay = ms;
+	}
+
+}
@@ -10,7 +10,6 @@ import java.util.Map;
 
 import org.json.simple.JSONArray;
 import org.json.simple.JSONObject;
-import org.json.simple.parser.JSONParser;
 import org.json.simple.parser.ParseException;
 
 /**
@@ -167,10 +166,9 @@ public class Converters {
 	 * @return JSONObject or null when parsing fails
 	 */
 	public static JSONObject str2Json(String s){
-		JSONParser parser = new JSONParser();
 		JSONObject result;
 		try {
-			result = (JSONObject) parser.parse(s);
+			result = (JSONObject) JSON.getCodec().parse(s);
 			return result;
 		} catch (ParseException e) {
 			return null;
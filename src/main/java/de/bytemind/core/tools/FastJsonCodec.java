@@ -0,0 +1,609 @@
+package de.bytemind.core.tools;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.json.simple.JSONArray;
+import org.json.simple.JSONAware;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.ParseException;
+
+/**
+ * Fast JSON codec that creates the same objects and strings as json-simple with a lot less work: the parser reads directly from a
+ * char buffer that is reused per thread (strings without escapes are created with one copy, small integers are never parsed from text)
+ * and the writer appends everything to one StringBuilder per thread instead of building a string for each nested value.<br>
+ * Differences to json-simple: invalid input that json-simple accepts (e.g. trailing commas like "[1,]") fails,
+ * integers that don't fit into a Long become Doubles instead of failing and positions in ParseExceptions are counted in chars (json-simple counts tokens).<br>
+ * Like json-simple the parser has no nesting limit, the writer (like json-simple's) is recursive though.
+ *
+ * @author Florian Quirin
+ *
+ */
+public class FastJsonCodec implements JsonCodec {
+
+	public static final String NAME = "fast";
+
+	//parse buffer size and max. size of reused buffers (larger ones are dropped after use)
+	private static final int BUFFER_SIZE = 8192;
+	private static final int MAX_STRING_BUFFER = 65536;
+	private static final int MAX_WRITE_BUFFER = 1048576;
+	private static final int MAX_STACK = 1024;
+
+	private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+
+	private static final ThreadLocal<Parser> parsers = ThreadLocal.withInitial(Parser::new);
+	private static final ThreadLocal<StringBuilder> writeBuffers = ThreadLocal.withInitial(() -> new StringBuilder(1024));
+
+	@Override
+	public String getName(){
+		return NAME;
+	}
+
+	@Override
+	public Object parse(String json) throws ParseException{
+		Parser parser = getParser();
+		try{
+			return parser.parse(json);
+		}catch (IOException e){
+			//no reader, can't happen
+			throw new ParseException(-1, ParseException.ERROR_UNEXPECTED_EXCEPTION, e);
+		}finally{
+			parser.release();
+		}
+	}
+
+	@Override
+	public Object parse(Reader reader) throws IOException, ParseException{
+		Parser parser = getParser();
+		try{
+			return parser.parse(reader);
+		}finally{
+			parser.release();
+		}
+	}
+
+	@Override
+	public String write(Object value){
+		StringBuilder sb = writeBuffers.get();
+		if (sb.length() > 0){
+			//in use, e.g. a toJSONString() of a custom object that calls the codec again
+			sb = new StringBuilder(256);
+			writeValue(value, sb);
+			return sb.toString();
+		}
+		try{
+			writeValue(value, sb);
+			return sb.toString();
+		}finally{
+			if (sb.capacity() > MAX_WRITE_BUFFER){
+				writeBuffers.set(new StringBuilder(1024));
+			}else{
+				sb.setLength(0);
+			}
+		}
+	}
+
+	@Override
+	public void write(Object value, Appendable out) throws IOException{
+		if (out instanceof StringBuilder){
+			writeValue(value, (StringBuilder) out);
+		}else{
+			out.append(write(value));
+		}
+	}
+
+	//--- writer (same format as JSONValue.toJSONString) ---
+
+	@SuppressWarnings("rawtypes")
+	private static void writeValue(Object value, StringBuilder sb){
+		if (value == null){
+			sb.append("null");
+			return;
+		}
+		Class<?> c = value.getClass();
+		if (c == String.class){
+			writeString((String) value, sb);
+		}else if (c == JSONObject.class){
+			writeMap((Map) value, sb);
+		}else if (c == JSONArray.class){
+			writeList((List) value, sb);
+		}else if (c == Long.class){
+			sb.append(((Long) value).longValue());
+		}else if (c == Integer.class){
+			sb.append(((Integer) value).intValue());
+		}else if (c == Double.class){
+			Double d = (Double) value;
+			if (d.isInfinite() || d.isNaN()){
+				sb.append("null");
+			}else{
+				sb.append(d.toString());
+			}
+		}else if (c == Float.class){
+			Float f = (Float) value;
+			if (f.isInfinite() || f.isNaN()){
+				sb.append("null");
+			}else{
+				sb.append(f.toString());
+			}
+		}else if (value instanceof Number || value instanceof Boolean){
+			sb.append(value.toString());
+		}else if (value instanceof JSONAware){
+			sb.append(((JSONAware) value).toJSONString());
+		}else if (value instanceof Map){
+			writeMap((Map) value, sb);
+		}else if (value instanceof List){
+			writeList((List) value, sb);
+		}else{
+			sb.append(value.toString());
+		}
+	}
+
+	@SuppressWarnings("rawtypes")
+	private static void writeMap(Map map, StringBuilder sb){
+		boolean first = true;
+		sb.append('{');
+		for (Object o : map.entrySet()){
+			Map.Entry entry = (Map.Entry) o;
+			if (first){
+				first = false;
+			}else{
+				sb.append(',');
+			}
+			Object key = entry.getKey();
+			if (key == null){
+				sb.append("\"null\"");
+			}else{
+				writeString(key.toString(), sb);
+			}
+			sb.append(':');
+			writeValue(entry.getValue(), sb);
+		}
+		sb.append('}');
+	}
+
+	@SuppressWarnings("rawtypes")
+	private static void writeList(List list, StringBuilder sb){
+		boolean first = true;
+		sb.append('[');
+		for (Object o : list){
+			if (first){
+				first = false;
+			}else{
+				sb.append(',');
+			}
+			writeValue(o, sb);
+		}
+		sb.append(']');
+	}
+
+	//escapes the same chars as json-simple (including '/')
+	private static void writeString(String s, StringBuilder sb){
+		sb.append('"');
+		int n = s.length();
+		int start = 0;
+		for (int i=0; i<n; i++){
+			char ch = s.charAt(i);
+			String esc;
+			switch (ch){
+				case '"':	esc = "\\\""; break;
+				case '\\':	esc = "\\\\"; break;
+				case '\b':	esc = "\\b"; break;
+				case '\f':	esc = "\\f"; break;
+				case '\n':	esc = "\\n"; break;
+				case '\r':	esc = "\\r"; break;
+				case '\t':	esc = "\\t"; break;
+				case '/':	esc = "\\/"; break;
+				default:
+					if (ch <= '\u001F' || (ch >= '\u007F' && ch <= '\u009F') || (ch >= '\u2000' && ch <= '\u20FF')){
+						esc = null;
+					}else{
+						continue;
+					}
+			}
+			//copy the plain part in one go
+			if (i > start){
+				sb.append(s, start, i);
+			}
+			start = i + 1;
+			if (esc != null){
+				sb.append(esc);
+			}else{
+				sb.append("\\u").append(HEX[(ch >> 12) & 0xF]).append(HEX[(ch >> 8) & 0xF]).append(HEX[(ch >> 4) & 0xF]).append(HEX[ch & 0xF]);
+			}
+		}
+		if (start == 0){
+			sb.append(s);
+		}else if (start < n){
+			sb.append(s, start, n);
+		}
+		sb.append('"');
+	}
+
+	//--- parser ---
+
+	private static Parser getParser(){
+		Parser parser = parsers.get();
+		if (parser.inUse){
+			//e.g. a reader that parses JSON itself
+			return new Parser();
+		}
+		parser.inUse = true;
+		return parser;
+	}
+
+	private static class Parser {
+		final char[] ownBuffer = new char[BUFFER_SIZE];
+		StringBuilder sb = new StringBuilder(128);
+		Object[] stack = new Object[32];
+		boolean inUse = false;
+
+		char[] buf;
+		int pos;
+		int limit;
+		Reader reader;
+		int consumed;		//chars that were in the buffer before the current fill
+
+		Object parse(String json) throws IOException, ParseException{
+			int n = json.length();
+			if (n <= ownBuffer.length){
+				json.getChars(0, n, ownBuffer, 0);
+				buf = ownBuffer;
+			}else{
+				buf = json.toCharArray();
+			}
+			pos = 0;
+			limit = n;
+			reader = null;
+			consumed = 0;
+			return parseDocument();
+		}
+
+		Object parse(Reader reader) throws IOException, ParseException{
+			this.buf = ownBuffer;
+			this.pos = 0;
+			this.limit = 0;
+			this.reader = reader;
+			this.consumed = 0;
+			return parseDocument();
+		}
+
+		void release(){
+			buf = null;
+			reader = null;
+			if (sb.capacity() > MAX_STRING_BUFFER){
+				sb = new StringBuilder(128);
+			}
+			//a failed parse can leave containers on the stack
+			if (stack.length > MAX_STACK){
+				stack = new Object[32];
+			}else{
+				Arrays.fill(stack, null);
+			}
+			inUse = false;
+		}
+
+		private Object parseDocument() throws IOException, ParseException{
+			int c = skipWhiteSpace();
+			if (c < 0){
+				throw error(ParseException.ERROR_UNEXPECTED_TOKEN, null);
+			}
+			Object value = parseValue(c);
+			c = skipWhiteSpace();
+			if (c >= 0){
+				throw error(ParseException.ERROR_UNEXPECTED_CHAR, (char) c);
+			}
+			return value;
+		}
+
+		//next buffer, false if there is no more data
+		private boolean fill() throws IOException{
+			if (reader == null){
+				return false;
+			}
+			int n;
+			do {
+				n = reader.read(buf, 0, buf.length);
+			}while (n == 0);
+			consumed += limit;
+			pos = 0;
+			if (n < 0){
+				limit = 0;
+				reader = null;
+				return false;
+			}
+			limit = n;
+			return true;
+		}
+
+		//next char that is no white-space (not consumed) or -1 at the end
+		private int skipWhiteSpace() throws IOException{
+			for (;;){
+				while (pos < limit){
+					char c = buf[pos];
+					if (c == ' ' || c == '\n' || c == '\r' || c == '\t' || c == '\f'){
+						pos++;
+					}else{
+						return c;
+					}
+				}
+				if (!fill()){
+					return -1;
+				}
+			}
+		}
+
+		private int peek() throws IOException{
+			if (pos >= limit && !fill()){
+				return -1;
+			}
+			return buf[pos];
+		}
+
+		private int read() throws IOException{
+			if (pos >= limit && !fill()){
+				return -1;
+			}
+			return buf[pos++];
+		}
+
+		private ParseException error(int type, Object unexpected){
+			return new ParseException(consumed + pos, type, unexpected);
+		}
+
+		//containers are kept on an explicit stack (no recursion), so deeply nested input can't overflow the thread stack
+		@SuppressWarnings("unchecked")
+		private Object parseValue(int c) throws IOException, ParseException{
+			if (c != '{' && c != '['){
+				return parseScalar(c);
+			}
+			pos++;
+			Object root = (c == '{')? new JSONObject() : new JSONArray();
+			Object[] stack = this.stack;
+			int depth = 0;
+			stack[depth++] = root;
+			boolean opened = true;		//top of the stack has no element yet
+			for (;;){
+				Object current = stack[depth - 1];
+				boolean isObject = (current instanceof JSONObject);
+				char close = isObject? '}' : ']';
+				c = skipWhiteSpace();
+				if (c == close){
+					//empty container or end after the last element
+					pos++;
+					opened = false;
+					stack[--depth] = null;
+					if (depth == 0){
+						return root;
+					}
+					continue;
+				}
+				if (!opened){
+					if (c != ','){
+						throw error(ParseException.ERROR_UNEXPECTED_TOKEN, (c < 0)? null : (char) c);
+					}
+					pos++;
+					c = skipWhiteSpace();
+				}
+				opened = false;
+				String key = null;
+				if (isObject){
+					if (c != '"'){
+						throw error(ParseException.ERROR_UNEXPECTED_TOKEN, (c < 0)? null : (char) c);
+					}
+					pos++;
+					key = parseString();
+					c = skipWhiteSpace();
+					if (c != ':'){
+						throw error(ParseException.ERROR_UNEXPECTED_TOKEN, (c < 0)? null : (char) c);
+					}
+					pos++;
+					c = skipWhiteSpace();
+				}
+				if (c < 0){
+					throw error(ParseException.ERROR_UNEXPECTED_TOKEN, null);
+				}
+				Object value;
+				boolean container = (c == '{' || c == '[');
+				if (container){
+					pos++;
+					value = (c == '{')? new JSONObject() : new JSONArray();
+				}else{
+					value = parseScalar(c);
+				}
+				if (isObject){
+					((JSONObject) current).put(key, value);
+				}else{
+					((JSONArray) current).add(value);
+				}
+				if (container){
+					if (depth == stack.length){
+						stack = Arrays.copyOf(stack, depth * 2);
+						this.stack = stack;
+					}
+					stack[depth++] = value;
+					opened = true;
+				}
+			}
+		}
+
+		private Object parseScalar(int c) throws IOException, ParseException{
+			switch (c){
+				case '"':
+					pos++;
+					return parseString();
+				case 't':
+					expect("true");
+					return Boolean.TRUE;
+				case 'f':
+					expect("false");
+					return Boolean.FALSE;
+				case 'n':
+					expect("null");
+					return null;
+				default:
+					if (c == '-' || (c >= '0' && c <= '9')){
+						return parseNumber();
+					}
+					throw error(ParseException.ERROR_UNEXPECTED_CHAR, (char) c);
+			}
+		}
+
+		//after the opening quote
+		private String parseString() throws IOException, ParseException{
+			//fast path: no escapes and the whole string in the buffer
+			int start = pos;
+			while (pos < limit){
+				char c = buf[pos];
+				if (c == '"'){
+					String s = new String(buf, start, pos - start);
+					pos++;
+					return s;
+				}else if (c == '\\'){
+					break;
+				}
+				pos++;
+			}
+			sb.setLength(0);
+			sb.append(buf, start, pos - start);
+			for (;;){
+				int c = read();
+				if (c < 0){
+					throw error(ParseException.ERROR_UNEXPECTED_TOKEN, null);
+				}else if (c == '"'){
+					return sb.toString();
+				}else if (c == '\\'){
+					int e = read();
+					switch (e){
+						case '"':	sb.append('"'); break;
+						case '\\':	sb.append('\\'); break;
+						case '/':	sb.append('/'); break;
+						case 'b':	sb.append('\b'); break;
+						case 'f':	sb.append('\f'); break;
+						case 'n':	sb.append('\n'); break;
+						case 'r':	sb.append('\r'); break;
+						case 't':	sb.append('\t'); break;
+						case 'u':
+							int u = 0;
+							for (int i=0; i<4; i++){
+								int h = Character.digit(read(), 16);
+								if (h < 0){
+									throw error(ParseException.ERROR_UNEXPECTED_CHAR, "\\u");
+								}
+								u = (u << 4) | h;
+							}
+							sb.append((char) u);
+							break;
+						default:
+							throw error(ParseException.ERROR_UNEXPECTED_CHAR, (e < 0)? null : (char) e);
+					}
+				}else{
+					//copy everything up to the next special char
+					int from = pos - 1;
+					while (pos < limit && buf[pos] != '"' && buf[pos] != '\\'){
+						pos++;
+					}
+					sb.append(buf, from, pos - from);
+				}
+			}
+		}
+
+		private Object parseNumber() throws IOException, ParseException{
+			//fast path: integer with up to 18 digits in the buffer
+			int p = pos;
+			boolean negative = false;
+			if (buf[p] == '-'){
+				negative = true;
+				p++;
+			}
+			int digits = p;
+			long v = 0;
+			while (p < limit && p - digits < 18){
+				char c = buf[p];
+				if (c < '0' || c > '9'){
+					break;
+				}
+				v = v * 10 + (c - '0');
+				p++;
+			}
+			if (p > digits && p < limit){
+				char c = buf[p];
+				if ((c < '0' || c > '9') && c != '.' && c != 'e' && c != 'E'){
+					pos = p;
+					return negative? -v : v;
+				}
+			}
+			//slow path via text
+			sb.setLength(0);
+			boolean isDouble = false;
+			if (peek() == '-'){
+				sb.append('-');
+				pos++;
+			}
+			if (readDigits() == 0){
+				throw error(ParseException.ERROR_UNEXPECTED_CHAR, sb.toString());
+			}
+			if (peek() == '.'){
+				isDouble = true;
+				sb.append('.');
+				pos++;
+				if (readDigits() == 0){
+					throw error(ParseException.ERROR_UNEXPECTED_CHAR, sb.toString());
+				}
+			}
+			int c = peek();
+			if (c == 'e' || c == 'E'){
+				isDouble = true;
+				sb.append((char) c);
+				pos++;
+				c = peek();
+				if (c == '+' || c == '-'){
+					sb.append((char) c);
+					pos++;
+				}
+				if (readDigits() == 0){
+					throw error(ParseException.ERROR_UNEXPECTED_CHAR, sb.toString());
+				}
+			}
+			String text = sb.toString();
+			if (!isDouble){
+				try{
+					return Long.valueOf(text);
+				}catch (NumberFormatException e){
+					//too large for a Long
+				}
+			}
+			return Double.valueOf(text);
+		}
+
+		private int readDigits() throws IOException{
+			int n = 0;
+			for (;;){
+				int c = peek();
+				if (c < '0' || c > '9'){
+					return n;
+				}
+				sb.append((char) c);
+				pos++;
+				n++;
+			}
+		}
+
+		private void expect(String word) throws IOException, ParseException{
+			for (int i=0; i<word.length(); i++){
+				int c = read();
+				if (c != word.charAt(i)){
+					throw error(ParseException.ERROR_UNEXPECTED_CHAR, (c < 0)? null : (char) c);
+				}
+			}
+			//e.g. "trueX"
+			int c = peek();
+			if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')){
+				throw error(ParseException.ERROR_UNEXPECTED_CHAR, (char) c);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,77 @@
+package de.bytemind.core.tools;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Interface for the HTTP layer used by {@link Connectors}. Implementations decide how connections are opened and
+ * (re-)used, the {@code Connectors} methods take care of building the JSON results.
+ *
+ * @author Florian Quirin
+ *
+ */
+public interface HttpTransport extends Closeable {
+
+	/**
+	 * Send a request and return the response. The response MUST be closed by the caller, this is what releases the
+	 * connection (e.g. back to a pool).
+	 * @param method - HTTP method like "GET", "POST", "PUT" or "DELETE"
+	 * @param url - full URL including parameters
+	 * @param headers - request headers or null. "Content-Length" is handled by the transport.
+	 * @param body - request body or null
+	 * @return response with status code and content stream
+	 * @throws IOException on connection errors
+	 */
+	public Response execute(String method, String url, Map<String, String> headers, byte[] body) throws IOException;
+
+	/**
+	 * Same as {@link #execute(String, String, Map, byte[])} but only the first 'length' bytes of 'body' are sent, e.g. from a pooled
+	 * buffer of {@link JsonBody}. The buffer must not change until this method returns. Transports should override this to avoid the copy.
+	 * @param body - request body or null
+	 * @param length - number of bytes of 'body' to send
+	 */
+	public default Response execute(String method, String url, Map<String, String> headers, byte[] body, int length) throws IOException {
+		return execute(method, url, headers, (body == null || body.length == length)? body : Arrays.copyOf(body, length));
+	}
+
+	/**
+	 * True if no request is in progress, i.e. no response is open. {@link Connectors} uses it to close a replaced transport as soon
+	 * as its requests are done. The default (false) means "unknown", the transport is then closed after 'ConnectorsConfig.transportCloseDelay'.
+	 */
+	public default boolean isIdle(){
+		return false;
+	}
+
+	/**
+	 * Response of a HTTP call. Close it when done to free the connection.
+	 */
+	public interface Response extends Closeable {
+
+		/**
+		 * HTTP status code, e.g. 200.
+		 */
+		public int getStatusCode();
+
+		/**
+		 * Value of the first response header with this name or null.
+		 */
+		public String getHeader(String name);
+
+		/**
+		 * Response body as stream. Is never null (but can be empty).
+		 */
+		public InputStream getContent() throws IOException;
+
+		/**
+		 * Close the response without reading the rest of the content, e.g. when it is too big. This usually means the connection
+		 * cannot be re-used. Calling close() afterwards is allowed.
+		 */
+		public default void abort() throws IOException {
+			close();
+		}
+	}
+
+}
@@ -4,11 +4,9 @@ import java.io.FileReader;
 import java.io.FileWriter;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
-import java.util.Iterator;
+import java.util.Map;
 import org.json.simple.JSONArray;
 import org.json.simple.JSONObject;
-import org.json.simple.parser.JSONParser;
 
 /**
  * This class is supposed to make life easier handling JSON data ^^.
@@ -18,6 +16,42 @@ import org.json.simple.parser.JSONParser;
  */
 public final class JSON {
 	
+	private static volatile JsonCodec codec = new JsonSimpleCodec();
+	
+	/**
+	 * Set the codec that parses and writes JSON in this class, {@link Converters}, {@link Connectors} and the databases.
+	 * @param newCodec - e.g. {@link FastJsonCodec} or {@link JsonSimpleCodec} (default)
+	 */
+	public static void setCodec(JsonCodec newCodec){
+		codec = (newCodec == null)? new JsonSimpleCodec() : newCodec;
+	}
+	/**
+	 * Get the codec that parses and writes JSON.
+	 */
+	public static JsonCodec getCodec(){
+		return codec;
+	}
+	/**
+	 * Get a codec by name, "fast" or "simple".
+	 * @return codec or null if the name is unknown
+	 */
+	public static JsonCodec getCodecByName(String name){
+		if (FastJsonCodec.NAME.equalsIgnoreCase(name)){
+			return new FastJsonCodec();
+		}else if (JsonSimpleCodec.NAME.equalsIgnoreCase(name)){
+			return new JsonSimpleCodec();
+		}else{
+			return null;
+		}
+	}
+	/**
+	 * Write JSONObject, JSONArray or any other value to a JSON string using the current codec.
+	 * Use this instead of obj.toJSONString() for request bodies etc.
+	 */
+	public static String toJSONString(Object value){
+		return codec.write(value);
+	}
+	
 	/**
 	 * Make a JSONObject by simply giving "key" and "value".
 	 */
@@ -99,8 +133,7 @@ public final class JSON {
 	 */
 	public static JSONObject parseStringOrFail(String response){
 		try {
-			JSONParser parser = new JSONParser();
-			JSONObject result = (JSONObject) parser.parse(response);
+			JSONObject result = (JSONObject) codec.parse(response);
 			return result;
 		} catch (Exception e) {
 			throw new RuntimeException(DateTime.getLogDate() + " WARNING - JSON.parseStringOrFail() - Failed to parse JSON string: " + response, e);
@@ -112,8 +145,7 @@ public final class JSON {
 	 */
 	public static JSONArray parseStringToArrayOrFail(String response){
 		try {
-			JSONParser parser = new JSONParser();
-			JSONArray result = (JSONArray) parser.parse(response);
+			JSONArray result = (JSONArray) codec.parse(response);
 			return result;
 		} catch (Exception e) {
 			throw new RuntimeException(DateTime.getLogDate() + " WARNING - JSON.parseStringToArrayOrFail() - Failed to parse JSON string: " + response, e);
@@ -336,10 +368,8 @@ public final class JSON {
 	 * @param primaryKey - primary sort key
 	 * @param secondaryKey - secondary sort key or empty string
 	 */
-	@SuppressWarnings("unchecked")
 	public static JSONArray sortArrayByString(JSONArray jArray, String primaryKey, String secondaryKey){
-		Collections.sort(jArray, new Comparators.JsonStringValues(primaryKey, secondaryKey));
-		return jArray;
+		return sorter(primaryKey, secondaryKey, JsonArraySorter.Type.STRING, false).sort(jArray);
 	}
 	/**
 	 * Inverse sorting of an JSONArray by a primary and secondary key. Values should be strings in this case.
@@ -347,10 +377,8 @@ public final class JSON {
 	 * @param primaryKey - primary sort key
 	 * @param secondaryKey - secondary sort key or empty string
 	 */
-	@SuppressWarnings("unchecked")
 	public static JSONArray sortArrayInverseByString(JSONArray jArray, String primaryKey, String secondaryKey){
-		Collections.sort(jArray, Collections.reverseOrder(new Comparators.JsonStringValues(primaryKey, secondaryKey)));
-		return jArray;
+		return sorter(primaryKey, secondaryKey, JsonArraySorter.Type.STRING, true).sort(jArray);
 	}
 	/**
 	 * Sort an JSONArray by a primary and secondary key. Values should be long in this case.
@@ -358,10 +386,8 @@ public final class JSON {
 	 * @param primaryKey - primary sort key
 	 * @param secondaryKey - secondary sort key or empty string
 	 */
-	@SuppressWarnings("unchecked")
 	public static JSONArray sortArrayByLong(JSONArray jArray, String primaryKey, String secondaryKey){
-		Collections.sort(jArray, new Comparators.JsonLongValues(primaryKey, secondaryKey));
-		return jArray;
+		return sorter(primaryKey, secondaryKey, JsonArraySorter.Type.LONG, false).sort(jArray);
 	}
 	/**
 	 * Inverse sorting of an JSONArray by a primary and secondary key. Values should be long in this case.
@@ -369,10 +395,29 @@ public final class JSON {
 	 * @param primaryKey - primary sort key
 	 * @param secondaryKey - secondary sort key or empty string
 	 */
-	@SuppressWarnings("unchecked")
 	public static JSONArray sortArrayInverseByLong(JSONArray jArray, String primaryKey, String secondaryKey){
-		Collections.sort(jArray, Collections.reverseOrder(new Comparators.JsonLongValues(primaryKey, secondaryKey)));
-		return jArray;
+		return sorter(primaryKey, secondaryKey, JsonArraySorter.Type.LONG, true).sort(jArray);
+	}
+	
+	private static JsonArraySorter sorter(String primaryKey, String secondaryKey, JsonArraySorter.Type type, boolean descending){
+		JsonArraySorter sorter = new JsonArraySorter().by(primaryKey, type, descending);
+		if (secondaryKey != null && !secondaryKey.isEmpty()){
+			sorter.by(secondaryKey, type, descending);
+		}
+		return sorter;
+	}
+	/**
+	 * Get the first 'k' elements of an JSONArray sorted by a primary and secondary key without sorting the whole array. 
+	 * Use {@link JsonArraySorter} for more keys or mixed types.
+	 * @param jArray - JSONArray to read (not modified)
+	 * @param primaryKey - primary sort key, values should be numbers
+	 * @param secondaryKey - secondary sort key or empty string
+	 * @param descending - largest values first
+	 * @param k - number of elements to keep
+	 * @return new JSONArray with up to 'k' elements
+	 */
+	public static JSONArray topOfArrayByLong(JSONArray jArray, String primaryKey, String secondaryKey, boolean descending, int k){
+		return sorter(primaryKey, secondaryKey, JsonArraySorter.Type.LONG, descending).top(jArray, k);
 	}
 	
 	/**
@@ -413,6 +458,17 @@ public final class JSON {
 		obj.put(key, add);
 		return obj;
 	}
+	/**
+	 * Put all fields of another JSONObject (or map) into 'obj' (shallow copy, existing keys are overwritten).
+	 * @param obj - JSONObject to add stuff to
+	 * @param values - fields to add
+	 * @return JSONObject with added fields
+	 */
+	@SuppressWarnings("unchecked")
+	public static JSONObject putAll(JSONObject obj, Map<?, ?> values){
+		obj.putAll(values);
+		return obj;
+	}
 	/**
 	 * Set the value of a certain field by following the path given with dots in 'key', e.g.<br>
 	 * level1.level2.key -> { "level1" : { "level2" : { "key" : value } } }.<br>
@@ -422,29 +478,71 @@ public final class JSON {
 	 * @param value - value to write at the end of the path
 	 * @return the given JSONObject with added data
 	 */
-	@SuppressWarnings("unchecked")
 	public static JSONObject putWithDotPath(JSONObject obj, String key, Object value){
-		if(key.contains(".")){
-			String[] path = key.split("\\.");
-			if (path.length == 2){
-				if (obj.containsKey(path[0])){
-					((JSONObject) obj.get(path[0])).put(path[1], value);
-				}else{
-					obj.put(path[0], make(path[1], value));
-				}
-			}else{
-				if (obj.containsKey(path[0])){
-					putWithPath((JSONObject) obj.get(path[0]), Arrays.copyOfRange(path, 1, path.length), value);
-				}else{
-					JSONObject nextObj = new JSONObject();
-					obj.put(path[0], nextObj);
-					putWithPath(nextObj, Arrays.copyOfRange(path, 1, path.length), value);
-				}
+		putWithDotPath(obj, key, value, false);
+		return obj;
+	}
+	/**
+	 * Walk along the dot path 'key' (creating objects as required) and set the value at the end. Shared by 'putWithDotPath' and
+	 * {@link JsonFlattener#unflatten(JSONObject)}.
+	 * @param obj - JSONObject to add data to
+	 * @param key - path given with dots or just a key
+	 * @param value - value to write at the end of the path
+	 * @param arrays - treat numbers in the path as array indices (creates JSONArrays, gaps are filled with null)
+	 */
+	@SuppressWarnings("unchecked")
+	static void putWithDotPath(JSONObject obj, String key, Object value, boolean arrays){
+		Object current = obj;
+		int start = 0;
+		int dot;
+		while ((dot = key.indexOf('.', start)) >= 0){
+			String part = key.substring(start, dot);
+			Object next = getPathElement(current, part, arrays);
+			if (next == null){
+				next = (arrays && isIndex(key, dot + 1, nextDot(key, dot + 1)))? new JSONArray() : new JSONObject();
+				setPathElement(current, part, next, arrays);
+			}
+			current = next;
+			start = dot + 1;
+		}
+		setPathElement(current, (start == 0)? key : key.substring(start), value, arrays);
+	}
+	private static int nextDot(String key, int start){
+		int dot = key.indexOf('.', start);
+		return (dot < 0)? key.length() : dot;
+	}
+	private static boolean isIndex(String key, int start, int end){
+		if (start >= end || end - start > 9){
+			return false;
+		}
+		for (int i=start; i<end; i++){
+			char c = key.charAt(i);
+			if (c < '0' || c > '9'){
+				return false;
+			}
+		}
+		return true;
+	}
+	private static Object getPathElement(Object container, String part, boolean arrays){
+		if (arrays && container instanceof JSONArray){
+			JSONArray a = (JSONArray) container;
+			int i = Integer.parseInt(part);
+			return (i < a.size())? a.get(i) : null;
+		}
+		return ((JSONObject) container).get(part);
+	}
+	@SuppressWarnings("unchecked")
+	private static void setPathElement(Object container, String part, Object value, boolean arrays){
+		if (arrays && container instanceof JSONArray){
+			JSONArray a = (JSONArray) container;
+			int i = Integer.parseInt(part);
+			while (a.size() <= i){
+				a.add(null);
 			}
+			a.set(i, value);
 		}else{
-			obj.put(key, value);
+			((JSONObject) container).put(part, value);
 		}
-		return obj;
 	}
 	/**
 	 * Set the value of a certain field by following the given 'path', e.g.<br>
@@ -542,40 +640,27 @@ public final class JSON {
 	/**
 	 * Makes a complex, deep JSONObject as flat as possible, saving all key-value-pairs on the top level by creating a string path for every key,
 	 * like a:{b:..{c:...}} = a.b.c
-	 * Best way to understand this is just try and see ^^. For 'null' values the keys are removed. 
+	 * Best way to understand this is just try and see ^^. For 'null' values the keys are removed. Arrays are kept as they are, 
+	 * use {@link JsonFlattener} for array indexing, max. depth or key interning.
 	 * @param obj - JSONObject to start with
-	 * @param key_prefix - as this method is recursive it has to pass down info about the top level. Start with "" or null.
-	 * @param result - the intermediate result is passed down too, start with null.
+	 * @param key_prefix - prefix for all keys (e.g. the path of 'obj' in a bigger document). Start with "" or null.
+	 * @param result - object to add the keys to, start with null.
 	 * @return Flat Eric :-)
 	 */
 	public static JSONObject makeFlat(JSONObject obj, String key_prefix, JSONObject result){
 		if (obj == null){		return null;		}
 		if (result == null){	result = new JSONObject();		}
-		if (obj.isEmpty()){		return result;		}
-		//start to iterate
-		Iterator<?> it = obj.keySet().iterator();
-		while( it.hasNext() ) {
-		    String key = (String) it.next();	key = key.trim();
-		    //System.out.println("key=" + key + " val=" + ((o==null)? "" : o.toString())); 	//debug
-		    Object o = obj.get(key);
-		    //is the entry a JSONObject itself?
-		    if (o!= null && o.getClass().equals(result.getClass())){
-		    	if (key_prefix !=null && !key_prefix.isEmpty()){
-		    		makeFlat((JSONObject) o, key_prefix + "." + key, result);
-		    	}else{
-		    		makeFlat((JSONObject) o, key, result);
-		    	}
-		    }
-		    //no then add it
-		    else if (o!=null){
-		    	if (key_prefix !=null && !key_prefix.isEmpty()){
-		    		JSON.add(result, key_prefix + "." + key, o);
-		    	}else{
-		    		JSON.add(result, key, o);
-		    	}
-		    }
-		}
-		return result;
+		return DEFAULT_FLATTENER.flatten(obj, key_prefix, result);
+	}
+	private static final JsonFlattener DEFAULT_FLATTENER = new JsonFlattener();
+	
+	/**
+	 * Inverse of {@link #makeFlat}, builds the nested object from keys like "a.b.c". Same path logic as 'putWithDotPath'.
+	 * @param flat - flat JSONObject
+	 * @return new nested JSONObject
+	 */
+	public static JSONObject unflatten(JSONObject flat){
+		return DEFAULT_FLATTENER.unflatten(flat);
 	}
 	
 	/**
@@ -589,7 +674,7 @@ public final class JSON {
 			return false;
 		}
 		try (FileWriter file = new FileWriter(filePath)) {
-			file.write(obj.toJSONString());
+			codec.write(obj, file);
 			return true;
 		}catch (Exception e){
 			System.err.println(DateTime.getLogDate() + " ERROR - JSON.writeJsonToFile() - Failed to write: " + filePath + " - MSG: " + e.getMessage());
@@ -603,9 +688,8 @@ public final class JSON {
 	 * @return JSONObject or null
 	 */
 	public static JSONObject readJsonFromFile(String filePath){
-		try {
-			JSONParser parser = new JSONParser();
-            Object obj = parser.parse(new FileReader(filePath));
+		try (FileReader reader = new FileReader(filePath)) {
+            Object obj = codec.parse(reader);
             JSONObject jsonObject = (JSONObject) obj;
             return jsonObject;
  
@@ -0,0 +1,363 @@
+package de.bytemind.core.tools;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+
+/**
+ * Sorts a JSONArray of JSONObjects by any number of keys, each with its own direction. The values are read only once per object
+ * into primitive arrays (long[], double[] or String[]) and a merge sort orders an int[] of indices, so no map look-ups or boxing happen
+ * during comparisons. Large arrays are sorted in parallel, 'top' keeps only the first K results using a heap.<br>
+ * Keys can be dot paths like "_source.name". Objects without a value for a key come last (in both directions),
+ * objects with identical keys keep their order (stable).<br>
+ * Example: {@code new JsonArraySorter().byDouble("_score", true).byString("_id", false).top(hits, 20)}
+ *
+ * @author Florian Quirin
+ *
+ */
+public class JsonArraySorter {
+
+	/**
+	 * Size from which arrays are sorted in parallel by default.
+	 */
+	public static final int DEFAULT_PARALLEL_THRESHOLD = 10000;
+
+	public enum Type {
+		LONG,
+		DOUBLE,
+		STRING
+	}
+
+	private static class Key {
+		final String name;
+		final String[] path;		//null if the key has no dot
+		final Type type;
+		final boolean descending;
+		Key(String name, Type type, boolean descending){
+			this.name = name;
+			this.path = (name.indexOf('.') > 0)? name.split("\\.") : null;
+			this.type = type;
+			this.descending = descending;
+		}
+	}
+
+	private final List<Key> keys = new ArrayList<>();
+	private int parallelThreshold = DEFAULT_PARALLEL_THRESHOLD;
+
+	/**
+	 * Add a sort key. Keys are compared in the order they were added.
+	 * @param key - field of the objects, e.g. "name" or a path like "_source.name"
+	 * @param type - type used to compare the values (numbers are converted, other values are treated as missing)
+	 * @param descending - true for largest value first
+	 * @return this
+	 */
+	public JsonArraySorter by(String key, Type type, boolean descending){
+		keys.add(new Key(key, type, descending));
+		return this;
+	}
+	public JsonArraySorter byLong(String key, boolean descending){
+		return by(key, Type.LONG, descending);
+	}
+	public JsonArraySorter byDouble(String key, boolean descending){
+		return by(key, Type.DOUBLE, descending);
+	}
+	public JsonArraySorter byString(String key, boolean descending){
+		return by(key, Type.STRING, descending);
+	}
+
+	/**
+	 * Arrays with at least this many elements are sorted in parallel (default {@link #DEFAULT_PARALLEL_THRESHOLD}).
+	 * Use Integer.MAX_VALUE to never sort in parallel.
+	 * @return this
+	 */
+	public JsonArraySorter setParallelThreshold(int size){
+		this.parallelThreshold = size;
+		return this;
+	}
+
+	/**
+	 * Sort the array in place.
+	 * @param jArray - array of JSONObjects
+	 * @return the same array
+	 */
+	@SuppressWarnings("unchecked")
+	public JSONArray sort(JSONArray jArray){
+		int n = jArray.size();
+		if (n < 2 || keys.isEmpty()){
+			return jArray;
+		}
+		IndexComparator comparator = makeComparator(jArray);
+		int[] order = new int[n];
+		for (int i=0; i<n; i++){
+			order[i] = i;
+		}
+		int[] tmp = new int[n];
+		if (n >= parallelThreshold){
+			ForkJoinPool.commonPool().invoke(new ParallelMergeSort(order, tmp, 0, n, comparator));
+		}else{
+			mergeSort(order, tmp, 0, n, comparator);
+		}
+		Object[] elements = jArray.toArray();
+		for (int i=0; i<n; i++){
+			jArray.set(i, elements[order[i]]);
+		}
+		return jArray;
+	}
+
+	/**
+	 * Get the first K elements of the sorted array without sorting all of it. The input is not changed.
+	 * @param jArray - array of JSONObjects
+	 * @param k - number of elements to keep
+	 * @return new array with min(k, size) elements in sort order
+	 */
+	@SuppressWarnings("unchecked")
+	public JSONArray top(JSONArray jArray, int k){
+		int n = jArray.size();
+		JSONArray result = new JSONArray();
+		if (k <= 0 || n == 0){
+			return result;
+		}
+		if (keys.isEmpty()){
+			result.addAll(jArray.subList(0, Math.min(k, n)));
+			return result;
+		}
+		if (k >= n){
+			result.addAll(jArray);
+			return sort(result);
+		}
+		IndexComparator comparator = makeComparator(jArray);
+		//max-heap of the best k, the worst of them on top
+		int[] heap = new int[k];
+		int size = 0;
+		for (int i=0; i<n; i++){
+			if (size < k){
+				heap[size] = i;
+				siftUp(heap, size++, comparator);
+			}else if (comparator.compare(i, heap[0]) < 0){
+				heap[0] = i;
+				siftDown(heap, size, comparator);
+			}
+		}
+		mergeSort(heap, new int[k], 0, k, comparator);
+		for (int i : heap){
+			result.add(jArray.get(i));
+		}
+		return result;
+	}
+
+	//--- helpers ---
+
+	/**
+	 * Compares two indices of the array (primitive version of Comparator, no boxing).
+	 */
+	private interface IndexComparator {
+		int compare(int a, int b);
+	}
+
+	//ranges up to this size are sorted by insertion sort
+	private static final int INSERTION_SORT_SIZE = 24;
+	//ranges up to this size are not split further by the parallel sort
+	private static final int PARALLEL_MIN_SIZE = 8192;
+
+	//sort a[from, to), 'tmp' has at least the size of 'a'
+	private static void mergeSort(int[] a, int[] tmp, int from, int to, IndexComparator c){
+		if (to - from <= INSERTION_SORT_SIZE){
+			insertionSort(a, from, to, c);
+			return;
+		}
+		int mid = (from + to) >>> 1;
+		mergeSort(a, tmp, from, mid, c);
+		mergeSort(a, tmp, mid, to, c);
+		merge(a, tmp, from, mid, to, c);
+	}
+
+	private static void insertionSort(int[] a, int from, int to, IndexComparator c){
+		for (int i=from + 1; i<to; i++){
+			int v = a[i];
+			int j = i - 1;
+			while (j >= from && c.compare(a[j], v) > 0){
+				a[j + 1] = a[j];
+				j--;
+			}
+			a[j + 1] = v;
+		}
+	}
+
+	//merge the sorted ranges a[from, mid) and a[mid, to)
+	private static void merge(int[] a, int[] tmp, int from, int mid, int to, IndexComparator c){
+		if (c.compare(a[mid - 1], a[mid]) <= 0){
+			return;		//already in order
+		}
+		System.arraycopy(a, from, tmp, from, to - from);
+		int i = from;
+		int j = mid;
+		int k = from;
+		while (i < mid && j < to){
+			a[k++] = (c.compare(tmp[j], tmp[i]) < 0)? tmp[j++] : tmp[i++];
+		}
+		while (i < mid){
+			a[k++] = tmp[i++];
+		}
+		while (j < to){
+			a[k++] = tmp[j++];
+		}
+	}
+
+	/**
+	 * Merge sort that sorts both halves in parallel (fork/join) down to {@link #PARALLEL_MIN_SIZE}.
+	 */
+	private static class ParallelMergeSort extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final int[] a;
+		private final int[] tmp;
+		private final int from;
+		private final int to;
+		private final IndexComparator c;
+
+		ParallelMergeSort(int[] a, int[] tmp, int from, int to, IndexComparator c){
+			this.a = a;
+			this.tmp = tmp;
+			this.from = from;
+			this.to = to;
+			this.c = c;
+		}
+
+		@Override
+		protected void compute(){
+			if (to - from <= PARALLEL_MIN_SIZE){
+				mergeSort(a, tmp, from, to, c);
+				return;
+			}
+			int mid = (from + to) >>> 1;
+			invokeAll(new ParallelMergeSort(a, tmp, from, mid, c), new ParallelMergeSort(a, tmp, mid, to, c));
+			merge(a, tmp, from, mid, to, c);
+		}
+	}
+
+	//heap with the "largest" index on top
+	private static void siftUp(int[] heap, int pos, IndexComparator c){
+		int v = heap[pos];
+		while (pos > 0){
+			int parent = (pos - 1) >>> 1;
+			if (c.compare(v, heap[parent]) <= 0){
+				break;
+			}
+			heap[pos] = heap[parent];
+			pos = parent;
+		}
+		heap[pos] = v;
+	}
+
+	private static void siftDown(int[] heap, int size, IndexComparator c){
+		int v = heap[0];
+		int pos = 0;
+		int half = size >>> 1;
+		while (pos < half){
+			int child = 2 * pos + 1;
+			if (child + 1 < size && c.compare(heap[child + 1], heap[child]) > 0){
+				child++;
+			}
+			if (c.compare(v, heap[child]) >= 0){
+				break;
+			}
+			heap[pos] = heap[child];
+			pos = child;
+		}
+		heap[pos] = v;
+	}
+
+	//read all keys once and compare indices, the index is the last key (stable)
+	private IndexComparator makeComparator(JSONArray jArray){
+		int n = jArray.size();
+		int m = keys.size();
+		Type[] types = new Type[m];
+		boolean[] descending = new boolean[m];
+		long[][] longs = new long[m][];
+		double[][] doubles = new double[m][];
+		String[][] strings = new String[m][];
+		boolean[][] missing = new boolean[m][];
+		for (int k=0; k<m; k++){
+			Key key = keys.get(k);
+			types[k] = key.type;
+			descending[k] = key.descending;
+			missing[k] = new boolean[n];
+			if (key.type == Type.LONG){
+				longs[k] = new long[n];
+			}else if (key.type == Type.DOUBLE){
+				doubles[k] = new double[n];
+			}else{
+				strings[k] = new String[n];
+			}
+			for (int i=0; i<n; i++){
+				Object v = getValue(jArray.get(i), key);
+				if (key.type == Type.STRING){
+					if (v == null){
+						missing[k][i] = true;
+					}else{
+						strings[k][i] = v.toString();
+					}
+				}else if (v instanceof Number){
+					if (key.type == Type.LONG){
+						longs[k][i] = ((Number) v).longValue();
+					}else{
+						doubles[k][i] = ((Number) v).doubleValue();
+					}
+				}else{
+					missing[k][i] = true;
+				}
+			}
+		}
+		return (ia, ib) -> {
+			for (int k=0; k<m; k++){
+				boolean ma = missing[k][ia];
+				boolean mb = missing[k][ib];
+				if (ma || mb){
+					if (ma != mb){
+						return ma? 1 : -1;
+					}
+					continue;
+				}
+				int c;
+				switch (types[k]){
+					case LONG:
+						c = Long.compare(longs[k][ia], longs[k][ib]);
+						break;
+					case DOUBLE:
+						c = Double.compare(doubles[k][ia], doubles[k][ib]);
+						break;
+					default:
+						c = strings[k][ia].compareTo(strings[k][ib]);
+						break;
+				}
+				if (c != 0){
+					return descending[k]? -c : c;
+				}
+			}
+			return Integer.compare(ia, ib);
+		};
+	}
+
+	private static Object getValue(Object element, Key key){
+		if (!(element instanceof JSONObject)){
+			return null;
+		}
+		JSONObject obj = (JSONObject) element;
+		Object v = obj.get(key.name);
+		if (v != null || key.path == null){
+			return v;
+		}
+		v = obj;
+		for (String p : key.path){
+			if (!(v instanceof JSONObject)){
+				return null;
+			}
+			v = ((JSONObject) v).get(p);
+		}
+		return v;
+	}
+
+}
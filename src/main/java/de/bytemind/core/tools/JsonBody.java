@@ -0,0 +1,185 @@
+package de.bytemind.core.tools;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Request body with a JSON value that is serialized only once (with the codec of {@link JSON}) and encoded directly into a pooled UTF-8 byte buffer.
+ * The buffer provides the length and is handed to the transport as it is, so there is no intermediate string and no copy via 'getBytes'.
+ * Use it with {@code Connectors.httpPOSTJson(...)} or {@code Connectors.httpPUTJson(...)}, they return the buffer to the pool when the request is done.<br>
+ * If you use it yourself: the buffer must not be used after 'close'.
+ *
+ * @author Florian Quirin
+ *
+ */
+public final class JsonBody implements Closeable {
+
+	//pool limits - larger buffers are not kept
+	private static final int MIN_BUFFER_SIZE = 8192;
+	private static final int MAX_POOLED_BUFFER_SIZE = 4194304;
+	private static final int MAX_POOLED_BUFFERS = 32;
+	private static final int MAX_CHAR_BUFFER = 1048576;
+
+	private static final ConcurrentLinkedQueue<byte[]> pool = new ConcurrentLinkedQueue<>();
+	private static final AtomicInteger pooled = new AtomicInteger();
+	private static final ThreadLocal<StringBuilder> charBuffers = ThreadLocal.withInitial(() -> new StringBuilder(1024));
+
+	private byte[] buffer;
+	private final int length;
+
+	private JsonBody(byte[] buffer, int length){
+		this.buffer = buffer;
+		this.length = length;
+	}
+
+	/**
+	 * Serialize a value (JSONObject, JSONArray, ...) into a pooled buffer.
+	 * @param value - any value the JSON codec can write
+	 * @return body, close it when the request is done
+	 */
+	public static JsonBody of(Object value){
+		StringBuilder sb = charBuffers.get();
+		boolean shared = (sb.length() == 0);
+		if (!shared){
+			//in use, e.g. a toJSONString() of a custom object that creates a body itself
+			sb = new StringBuilder(1024);
+		}
+		try{
+			try{
+				JSON.getCodec().write(value, sb);
+			}catch (IOException e){
+				//StringBuilder doesn't throw
+				throw new RuntimeException(e);
+			}
+			int length = utf8Length(sb);
+			byte[] buffer = acquire(length);
+			encode(sb, buffer);
+			return new JsonBody(buffer, length);
+		}finally{
+			if (shared){
+				if (sb.capacity() > MAX_CHAR_BUFFER){
+					charBuffers.set(new StringBuilder(1024));
+				}else{
+					sb.setLength(0);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Buffer with the UTF-8 data. Only the first {@link #getLength()} bytes are valid, the array can be larger.
+	 */
+	public byte[] getBuffer(){
+		if (buffer == null){
+			throw new IllegalStateException("JsonBody was already closed");
+		}
+		return buffer;
+	}
+
+	/**
+	 * Number of bytes, e.g. for the "Content-Length".
+	 */
+	public int getLength(){
+		return length;
+	}
+
+	/**
+	 * Body as string, e.g. for logs.
+	 */
+	@Override
+	public String toString(){
+		return (buffer == null)? "" : new String(buffer, 0, length, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Return the buffer to the pool. Calling it again does nothing.
+	 */
+	@Override
+	public void close(){
+		byte[] b = buffer;
+		buffer = null;
+		if (b != null){
+			release(b);
+		}
+	}
+
+	//--- pool ---
+
+	private static byte[] acquire(int length){
+		byte[] b = pool.poll();
+		if (b != null){
+			pooled.decrementAndGet();
+			if (b.length >= length){
+				return b;
+			}
+			//too small, keep it for the next one
+			release(b);
+		}
+		return new byte[Math.max(length, MIN_BUFFER_SIZE)];
+	}
+
+	private static void release(byte[] b){
+		if (b.length > MAX_POOLED_BUFFER_SIZE){
+			return;
+		}
+		if (pooled.incrementAndGet() > MAX_POOLED_BUFFERS){
+			pooled.decrementAndGet();
+			return;
+		}
+		pool.offer(b);
+	}
+
+	//--- UTF-8 (same result as String.getBytes(UTF_8), broken surrogates become '?') ---
+
+	private static int utf8Length(CharSequence cs){
+		int n = cs.length();
+		int length = n;
+		for (int i=0; i<n; i++){
+			char c = cs.charAt(i);
+			if (c < 0x80){
+				continue;
+			}else if (c < 0x800){
+				length += 1;
+			}else if (Character.isHighSurrogate(c) && i + 1 < n && Character.isLowSurrogate(cs.charAt(i + 1))){
+				//4 bytes for 2 chars
+				length += 2;
+				i++;
+			}else if (Character.isSurrogate(c)){
+				//'?'
+			}else{
+				length += 2;
+			}
+		}
+		return length;
+	}
+
+	private static void encode(CharSequence cs, byte[] b){
+		int n = cs.length();
+		int p = 0;
+		for (int i=0; i<n; i++){
+			char c = cs.charAt(i);
+			if (c < 0x80){
+				b[p++] = (byte) c;
+			}else if (c < 0x800){
+				b[p++] = (byte) (0xC0 | (c >> 6));
+				b[p++] = (byte) (0x80 | (c & 0x3F));
+			}else if (Character.isHighSurrogate(c) && i + 1 < n && Character.isLowSurrogate(cs.charAt(i + 1))){
+				int cp = Character.toCodePoint(c, cs.charAt(++i));
+				b[p++] = (byte) (0xF0 | (cp >> 18));
+				b[p++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+				b[p++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+				b[p++] = (byte) (0x80 | (cp & 0x3F));
+			}else if (Character.isSurrogate(c)){
+				b[p++] = '?';
+			}else{
+				b[p++] = (byte) (0xE0 | (c >> 12));
+				b[p++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+				b[p++] = (byte) (0x80 | (c & 0x3F));
+			}
+		}
+	}
+
+}
@@ -0,0 +1,52 @@
+package de.bytemind.core.tools;
+
+import java.io.IOException;
+import java.io.Reader;
+
+import org.json.simple.parser.ParseException;
+
+/**
+ * Parser and writer for JSON data. All implementations produce and accept the json-simple types (JSONObject, JSONArray, String, Long, Double, Boolean and null)
+ * so they can be exchanged without changes to the rest of the code. The codec used by {@link JSON}, {@link Connectors} and the databases is set
+ * with {@link JSON#setCodec(JsonCodec)} or the "json_codec" setting of CoreSetup.<br>
+ * Implementations must be thread-safe.
+ *
+ * @author Florian Quirin
+ *
+ */
+public interface JsonCodec {
+
+	/**
+	 * Name of the codec, e.g. for the settings.
+	 */
+	public String getName();
+
+	/**
+	 * Parse a JSON string.
+	 * @param json - any JSON value
+	 * @return JSONObject, JSONArray, String, Long, Double, Boolean or null
+	 * @throws ParseException if the string is no valid JSON
+	 */
+	public Object parse(String json) throws ParseException;
+
+	/**
+	 * Parse JSON from a reader. The reader is read until the end but not closed.
+	 * @param reader - any JSON value
+	 * @return JSONObject, JSONArray, String, Long, Double, Boolean or null
+	 * @throws IOException if reading fails
+	 * @throws ParseException if the data is no valid JSON
+	 */
+	public Object parse(Reader reader) throws IOException, ParseException;
+
+	/**
+	 * Write a value (JSONObject, JSONArray, Map, List, String, Number, ...) as JSON string.
+	 */
+	public String write(Object value);
+
+	/**
+	 * Write a value (JSONObject, JSONArray, Map, List, String, Number, ...) as JSON to 'out'.
+	 * @throws IOException if writing to 'out' fails
+	 */
+	public void write(Object value, Appendable out) throws IOException;
+
+}
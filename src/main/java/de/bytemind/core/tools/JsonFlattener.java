@@ -0,0 +1,174 @@
+package de.bytemind.core.tools;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+
+/**
+ * Turns nested JSONObjects into flat ones with dot-path keys (a:{b:{c:1}} -> "a.b.c":1) and back. Works without recursion using one
+ * key buffer per call, so deep or big documents don't create intermediate key strings. Options:<br>
+ * - array indexing: arrays are flattened too ("list.0", "list.1", ...), default is to keep arrays as values<br>
+ * - max. depth: objects deeper than this number of key levels are kept as values, default is no limit<br>
+ * - key interning: identical keys of many documents share one String instance (good if you keep many flat documents in memory)<br>
+ * 'null' values and empty objects/arrays are skipped (like in {@link JSON#makeFlat}). A configured flattener can be shared by threads.
+ *
+ * @author Florian Quirin
+ *
+ */
+public class JsonFlattener {
+
+	private static final Interner<String> KEYS = Interners.newWeakInterner();
+
+	private boolean arrayIndexing = false;
+	private int maxDepth = Integer.MAX_VALUE;
+	private boolean internKeys = false;
+
+	/**
+	 * Flatten arrays as well ("list.0", "list.1", ...). Default false (arrays are kept as values).
+	 * @return this
+	 */
+	public JsonFlattener setArrayIndexing(boolean arrayIndexing){
+		this.arrayIndexing = arrayIndexing;
+		return this;
+	}
+	/**
+	 * Keep objects (and indexed arrays) deeper than this number of key levels as values, e.g. 1 gives a copy of the top level.
+	 * Default no limit (0 or less means no limit too).
+	 * @return this
+	 */
+	public JsonFlattener setMaxDepth(int maxDepth){
+		this.maxDepth = (maxDepth <= 0)? Integer.MAX_VALUE : maxDepth;
+		return this;
+	}
+	/**
+	 * Intern keys so that identical keys of many documents share one String. Default false.
+	 * @return this
+	 */
+	public JsonFlattener setInternKeys(boolean internKeys){
+		this.internKeys = internKeys;
+		return this;
+	}
+
+	/**
+	 * Flatten an object into a new object.
+	 * @param obj - JSONObject to flatten
+	 * @return new flat JSONObject
+	 */
+	public JSONObject flatten(JSONObject obj){
+		return flatten(obj, null, new JSONObject());
+	}
+
+	/**
+	 * Flatten an object and add the keys to 'result'.
+	 * @param obj - JSONObject to flatten
+	 * @param keyPrefix - prefix for all keys (e.g. the path of 'obj' in a bigger document) or null
+	 * @param result - JSONObject to add the keys to
+	 * @return result
+	 */
+	@SuppressWarnings("unchecked")
+	public JSONObject flatten(JSONObject obj, String keyPrefix, JSONObject result){
+		if (obj == null || obj.isEmpty()){
+			return result;
+		}
+		StringBuilder key = new StringBuilder(64);
+		if (keyPrefix != null && !keyPrefix.isEmpty()){
+			key.append(keyPrefix);
+		}
+		//stack of the levels we are in: entries (Map.Entry of objects or values of arrays), key length and array index (-1 for objects)
+		Iterator<?>[] entries = new Iterator<?>[8];
+		int[] keyLength = new int[8];
+		int[] arrayIndex = new int[8];
+		int top = 0;
+		entries[0] = obj.entrySet().iterator();
+		keyLength[0] = key.length();
+		arrayIndex[0] = -1;
+		while (top >= 0){
+			Iterator<?> it = entries[top];
+			if (!it.hasNext()){
+				entries[top--] = null;
+				continue;
+			}
+			Object value;
+			String name = null;				//key of an object entry (trimmed)
+			int index = -1;					//index of an array element
+			if (arrayIndex[top] >= 0){
+				value = it.next();
+				index = arrayIndex[top]++;		//skipped nulls use up their index too, so unflatten puts later elements at the right position
+			}else{
+				Map.Entry<?, ?> entry = (Map.Entry<?, ?>) it.next();
+				value = entry.getValue();
+				name = trim((String) entry.getKey());
+			}
+			if (value == null){
+				continue;
+			}
+			//top level keys are used as they are, other keys are built in the buffer
+			boolean plain = (name != null && keyLength[top] == 0);
+			if (!plain){
+				key.setLength(keyLength[top]);
+				if (key.length() > 0){
+					key.append('.');
+				}
+				if (name != null){
+					key.append(name);
+				}else{
+					key.append(index);
+				}
+			}
+			int depth = top + 1;
+			if (depth < maxDepth && (value instanceof JSONObject || (arrayIndexing && value instanceof JSONArray))){
+				if (++top == entries.length){
+					entries = Arrays.copyOf(entries, top * 2);
+					keyLength = Arrays.copyOf(keyLength, top * 2);
+					arrayIndex = Arrays.copyOf(arrayIndex, top * 2);
+				}
+				boolean isObject = value instanceof JSONObject;
+				entries[top] = isObject? ((JSONObject) value).entrySet().iterator() : ((JSONArray) value).iterator();
+				if (plain){
+					key.setLength(0);
+					key.append(name);
+				}
+				keyLength[top] = key.length();
+				arrayIndex[top] = isObject? -1 : 0;
+				continue;
+			}
+			String k = plain? name : key.toString();
+			result.put(internKeys? KEYS.intern(k) : k, value);
+		}
+		return result;
+	}
+
+	/**
+	 * Build the nested object from a flat one (inverse of 'flatten'). With array indexing numeric path parts create arrays.
+	 * Uses the same path logic as {@link JSON#putWithDotPath}.
+	 * @param flat - flat JSONObject
+	 * @return new nested JSONObject
+	 */
+	public JSONObject unflatten(JSONObject flat){
+		JSONObject result = new JSONObject();
+		if (flat == null){
+			return result;
+		}
+		for (Object o : flat.entrySet()){
+			Map.Entry<?, ?> entry = (Map.Entry<?, ?>) o;
+			JSON.putWithDotPath(result, (String) entry.getKey(), entry.getValue(), arrayIndexing);
+		}
+		return result;
+	}
+
+	//keys are trimmed like in the original 'makeFlat' (returns the same string if there is nothing to trim)
+	private static String trim(String key){
+		int last = key.length() - 1;
+		if (last < 0 || (key.charAt(0) > ' ' && key.charAt(last) > ' ')){
+			return key;
+		}
+		return key.trim();
+	}
+
+}
@@ -0,0 +1,45 @@
+package de.bytemind.core.tools;
+
+import java.io.IOException;
+import java.io.Reader;
+
+import org.json.simple.JSONValue;
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
+
+/**
+ * Codec that uses the json-simple parser and writer, the behavior before codecs were introduced.
+ *
+ * @author Florian Quirin
+ *
+ */
+public class JsonSimpleCodec implements JsonCodec {
+
+	public static final String NAME = "simple";
+
+	@Override
+	public String getName(){
+		return NAME;
+	}
+
+	@Override
+	public Object parse(String json) throws ParseException{
+		return new JSONParser().parse(json);
+	}
+
+	@Override
+	public Object parse(Reader reader) throws IOException, ParseException{
+		return new JSONParser().parse(reader);
+	}
+
+	@Override
+	public String write(Object value){
+		return JSONValue.toJSONString(value);
+	}
+
+	@Override
+	public void write(Object value, Appendable out) throws IOException{
+		out.append(JSONValue.toJSONString(value));
+	}
+
+}
@@ -0,0 +1,349 @@
+package de.bytemind.core.tools;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpException;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.entity.DeflateDecompressingEntity;
+import org.apache.http.client.entity.GzipDecompressingEntity;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.entity.ContentType;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClients;
+import org.apache.http.impl.nio.conn.PoolingNHttpClientConnectionManager;
+import org.apache.http.impl.nio.reactor.DefaultConnectingIOReactor;
+import org.apache.http.impl.nio.reactor.IOReactorConfig;
+import org.apache.http.nio.ContentDecoder;
+import org.apache.http.nio.IOControl;
+import org.apache.http.nio.client.methods.HttpAsyncMethods;
+import org.apache.http.nio.entity.ContentBufferEntity;
+import org.apache.http.nio.protocol.AbstractAsyncResponseConsumer;
+import org.apache.http.nio.reactor.IOReactorException;
+import org.apache.http.nio.util.HeapByteBufferAllocator;
+import org.apache.http.nio.util.SimpleInputBuffer;
+import org.apache.http.protocol.HttpContext;
+
+/**
+ * Non-blocking HTTP transport based on the NIO client of Apache HttpComponents. A small number of I/O threads handles all
+ * connections, so waiting for a response does not pin a thread. The number of requests in flight is limited, additional
+ * requests wait in a queue (up to a limit as well) and are sent as soon as a slot is free. Responses are buffered in memory, 'ConnectorsConfig.maxResponseSize'
+ * limits the buffer (a bigger response fails the request).<br>
+ * Compression works like in {@link PooledHttpTransport}.
+ *
+ * @author Florian Quirin
+ *
+ */
+public class NioHttpTransport implements AsyncHttpTransport {
+
+	private final PoolingNHttpClientConnectionManager connectionManager;
+	private final CloseableHttpAsyncClient client;
+	private final ScheduledExecutorService evictor;
+
+	private final Semaphore inFlight;
+	private final int maxInFlight;
+	private final int maxQueued;
+	private final Queue<Runnable> queue = new ConcurrentLinkedQueue<>();
+	private final AtomicInteger queued = new AtomicInteger();
+	private final ThreadLocal<boolean[]> draining = ThreadLocal.withInitial(() -> new boolean[1]);	//'drain' is running on this thread
+	private final boolean acceptCompression;
+	private final int requestCompressionThreshold;
+
+	/**
+	 * Default constructor. Reads limits and timeouts from 'ConnectorsConfig'.
+	 */
+	public NioHttpTransport(){
+		this(ConnectorsConfig.getMaxConnections(), ConnectorsConfig.getMaxConnectionsPerRoute(), ConnectorsConfig.getIdleConnectionTimeout(),
+				ConnectorsConfig.getConnectTimeout(), ConnectorsConfig.getSocketTimeout(), ConnectorsConfig.getPoolTimeout(),
+				ConnectorsConfig.getMaxAsyncInFlight(), ConnectorsConfig.getMaxAsyncQueued());
+	}
+	/**
+	 * Manual constructor. Compression settings are taken from 'ConnectorsConfig'.
+	 * @param maxConnections - max. connections of the whole pool
+	 * @param maxConnectionsPerRoute - max. connections per route (scheme + host + port)
+	 * @param idleConnectionTimeout - ms until an unused connection is closed
+	 * @param connectTimeout - ms to establish a connection (-1 system default, 0 infinite)
+	 * @param socketTimeout - ms of inactivity while waiting for data (-1 system default, 0 infinite)
+	 * @param poolTimeout - ms to wait for a free connection from the pool (-1 system default, 0 infinite)
+	 * @param maxInFlight - max. number of requests sent at the same time
+	 * @param maxQueued - max. number of requests waiting for a free slot, more requests fail immediately
+	 */
+	public NioHttpTransport(int maxConnections, int maxConnectionsPerRoute, long idleConnectionTimeout,
+				int connectTimeout, int socketTimeout, int poolTimeout, int maxInFlight, int maxQueued){
+		try{
+			//daemon threads so that the transport does not keep a program alive (like the blocking transport)
+			connectionManager = new PoolingNHttpClientConnectionManager(new DefaultConnectingIOReactor(IOReactorConfig.DEFAULT, daemonThreads("nio-http-io")));
+		}catch (IOReactorException e){
+			throw new RuntimeException(DateTime.getLogDate() + " ERROR - NioHttpTransport - failed to create I/O reactor: " + e.getMessage(), e);
+		}
+		connectionManager.setMaxTotal(maxConnections);
+		connectionManager.setDefaultMaxPerRoute(maxConnectionsPerRoute);
+
+		RequestConfig requestConfig = RequestConfig.custom()
+				.setConnectTimeout(connectTimeout)
+				.setSocketTimeout(socketTimeout)
+				.setConnectionRequestTimeout(poolTimeout)
+				.build();
+
+		client = HttpAsyncClients.custom()
+				.setConnectionManager(connectionManager)
+				.setDefaultRequestConfig(requestConfig)
+				.disableCookieManagement()
+				.useSystemProperties()			//proxy settings of the JVM (http(s).proxyHost, http.nonProxyHosts, ...)
+				.setThreadFactory(daemonThreads("nio-http-dispatcher"))
+				.build();
+		client.start();
+
+		//the NIO client has no evictor of its own
+		evictor = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread t = new Thread(r, "nio-http-evictor");
+			t.setDaemon(true);
+			return t;
+		});
+		long period = Math.max(1000, idleConnectionTimeout / 2);
+		evictor.scheduleAtFixedRate(() -> {
+			connectionManager.closeExpiredConnections();
+			connectionManager.closeIdleConnections(idleConnectionTimeout, TimeUnit.MILLISECONDS);
+		}, period, period, TimeUnit.MILLISECONDS);
+
+		this.inFlight = new Semaphore(maxInFlight);
+		this.maxInFlight = maxInFlight;
+		this.maxQueued = maxQueued;
+		this.acceptCompression = ConnectorsConfig.isAcceptCompression();
+		this.requestCompressionThreshold = ConnectorsConfig.getRequestCompressionThreshold();
+	}
+
+	private static ThreadFactory daemonThreads(String name){
+		AtomicInteger count = new AtomicInteger();
+		return r -> {
+			Thread t = new Thread(r, name + "-" + count.incrementAndGet());
+			t.setDaemon(true);
+			return t;
+		};
+	}
+
+	@Override
+	public CompletableFuture<HttpTransport.Response> executeAsync(String method, String url, Map<String, String> headers, byte[] body) {
+		return executeAsync(method, url, headers, body, (body == null)? 0 : body.length);
+	}
+
+	@Override
+	public CompletableFuture<HttpTransport.Response> executeAsync(String method, String url, Map<String, String> headers, byte[] body, int length) {
+		CompletableFuture<HttpTransport.Response> future = new CompletableFuture<>();
+		HttpUriRequest request;
+		try{
+			request = PooledHttpTransport.buildRequest(method, url, headers, body, length, requestCompressionThreshold);
+			if (acceptCompression && !request.containsHeader("Accept-Encoding")){
+				//the NIO client has no content decoding of its own, see BufferedResponse
+				request.addHeader("Accept-Encoding", "gzip,deflate");
+			}
+		}catch (Exception e){
+			future.completeExceptionally(e);
+			return future;
+		}
+		if (queued.incrementAndGet() > maxQueued){
+			queued.decrementAndGet();
+			future.completeExceptionally(new IOException("Too many pending requests (max. " + maxQueued + " queued)"));
+			return future;
+		}
+		queue.add(() -> send(request, future));
+		drain();
+		return future;
+	}
+
+	/**
+	 * Start queued requests as long as there are free slots. Not re-entrant: if a request completes (or fails) right away inside 'send',
+	 * the nested call only releases its slot and the outer loop continues (no recursion per queued request, e.g. after 'close').
+	 */
+	private void drain(){
+		boolean[] active = draining.get();
+		if (active[0]){
+			return;
+		}
+		active[0] = true;
+		try{
+			while (!queue.isEmpty() && inFlight.tryAcquire()){
+				Runnable next = queue.poll();
+				if (next == null){
+					inFlight.release();
+					break;
+				}
+				queued.decrementAndGet();
+				next.run();
+			}
+		}finally{
+			active[0] = false;
+		}
+	}
+
+	private void send(HttpUriRequest request, CompletableFuture<HttpTransport.Response> future){
+		try{
+			client.execute(HttpAsyncMethods.create(request), new LimitedResponseConsumer(ConnectorsConfig.getMaxResponseSize()), new FutureCallback<HttpResponse>() {
+				@Override
+				public void completed(HttpResponse result) {
+					done();
+					future.complete(new BufferedResponse(result));
+				}
+				@Override
+				public void failed(Exception ex) {
+					done();
+					future.completeExceptionally(ex);
+				}
+				@Override
+				public void cancelled() {
+					done();
+					future.cancel(false);
+				}
+			});
+		}catch (Exception e){
+			done();
+			future.completeExceptionally(e);
+		}
+	}
+
+	private void done(){
+		inFlight.release();
+		drain();
+	}
+
+	@Override
+	public void close() throws IOException {
+		evictor.shutdownNow();
+		client.close();
+	}
+
+	@Override
+	public boolean isIdle(){
+		return queued.get() == 0 && inFlight.availablePermits() >= maxInFlight;
+	}
+
+	/**
+	 * Number of requests currently waiting for a free slot.
+	 */
+	public int getQueuedRequests(){
+		return queued.get();
+	}
+
+	/**
+	 * Buffers the response content like the default consumer of the NIO client, but fails as soon as the content (as received, i.e. before
+	 * decompression) gets bigger than 'ConnectorsConfig.maxResponseSize'. The connection is closed then, the rest is not read.
+	 */
+	private static class LimitedResponseConsumer extends AbstractAsyncResponseConsumer<HttpResponse> {
+		private static final int DEFAULT_BUFFER_SIZE = 4096;
+		
+		private final long max;
+		private volatile HttpResponse response;
+		private volatile SimpleInputBuffer buffer;
+
+		LimitedResponseConsumer(long max){
+			this.max = max;
+		}
+
+		@Override
+		protected void onResponseReceived(HttpResponse response) throws HttpException, IOException {
+			this.response = response;
+		}
+
+		@Override
+		protected void onEntityEnclosed(HttpEntity entity, ContentType contentType) throws IOException {
+			long length = entity.getContentLength();
+			if ((max > 0 && length > max) || length > Integer.MAX_VALUE){
+				throw new Connectors.ResponseTooLargeException((max > 0)? max : Integer.MAX_VALUE);
+			}
+			buffer = new SimpleInputBuffer((length < 0)? DEFAULT_BUFFER_SIZE : (int) length, HeapByteBufferAllocator.INSTANCE);
+			response.setEntity(new ContentBufferEntity(entity, buffer));
+		}
+
+		@Override
+		protected void onContentReceived(ContentDecoder decoder, IOControl ioControl) throws IOException {
+			buffer.consumeContent(decoder);
+			if (max > 0 && buffer.length() > max){
+				throw new Connectors.ResponseTooLargeException(max);
+			}
+		}
+
+		@Override
+		protected HttpResponse buildResult(HttpContext context) throws Exception {
+			return response;
+		}
+
+		@Override
+		protected void releaseResources() {
+			response = null;
+			buffer = null;
+		}
+	}
+
+	/**
+	 * The NIO client buffers the whole response before calling back, so there is nothing to release on close.
+	 */
+	private static class BufferedResponse implements HttpTransport.Response {
+		private final HttpResponse response;
+
+		BufferedResponse(HttpResponse response){
+			this.response = response;
+			decode(response);
+		}
+
+		//replace a compressed entity by one that decodes it while it is read
+		private static void decode(HttpResponse response){
+			HttpEntity entity = response.getEntity();
+			Header encoding = response.getFirstHeader("Content-Encoding");
+			if (entity == null || encoding == null || entity.getContentLength() == 0){
+				return;
+			}
+			String value = encoding.getValue().trim().toLowerCase();
+			if (value.equals("gzip") || value.equals("x-gzip")){
+				response.setEntity(new GzipDecompressingEntity(entity));
+			}else if (value.equals("deflate")){
+				response.setEntity(new DeflateDecompressingEntity(entity));
+			}else{
+				return;
+			}
+			//same as the blocking client: headers describe the decoded content
+			response.removeHeaders("Content-Encoding");
+			response.removeHeaders("Content-Length");
+			response.removeHeaders("Content-MD5");
+		}
+
+		@Override
+		public int getStatusCode() {
+			return response.getStatusLine().getStatusCode();
+		}
+
+		@Override
+		public String getHeader(String name) {
+			Header header = response.getFirstHeader(name);
+			return (header == null)? null : header.getValue();
+		}
+
+		@Override
+		public InputStream getContent() throws IOException {
+			HttpEntity entity = response.getEntity();
+			if (entity == null){
+				return new ByteArrayInputStream(new byte[0]);
+			}
+			return entity.getContent();
+		}
+
+		@Override
+		public void close() throws IOException {
+		}
+	}
+
+}
@@ -0,0 +1,246 @@
+package de.bytemind.core.tools;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.client.methods.RequestBuilder;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
+import org.apache.http.util.EntityUtils;
+
+/**
+ * HTTP transport with a per-host (per-route) connection pool. Connections are kept alive and re-used by subsequent calls
+ * to the same host, which saves the TCP (and TLS) handshake of every request. Idle connections are evicted in the background.<br>
+ * Compressed responses (gzip/deflate) are requested and decoded while they are read if 'ConnectorsConfig.acceptCompression' is set,
+ * request bodies are gzipped if the request has the header "Content-Encoding: gzip" (see {@link ConnectorsConfig#setRequestCompressionThreshold(int)}).
+ *
+ * @author Florian Quirin
+ *
+ */
+public class PooledHttpTransport implements HttpTransport {
+
+	private static final int VALIDATE_AFTER_INACTIVITY = 2000;		//ms after which a pooled connection is checked before re-use
+
+	private final PoolingHttpClientConnectionManager connectionManager;
+	private final CloseableHttpClient client;
+	private final int requestCompressionThreshold;
+
+	/**
+	 * Default constructor. Reads pool size and timeouts from 'ConnectorsConfig'.
+	 */
+	public PooledHttpTransport(){
+		this(ConnectorsConfig.getMaxConnections(), ConnectorsConfig.getMaxConnectionsPerRoute(), ConnectorsConfig.getIdleConnectionTimeout(),
+				ConnectorsConfig.getConnectTimeout(), ConnectorsConfig.getSocketTimeout(), ConnectorsConfig.getPoolTimeout());
+	}
+	/**
+	 * Manual constructor. Compression settings are taken from 'ConnectorsConfig'.
+	 * @param maxConnections - max. connections of the whole pool
+	 * @param maxConnectionsPerRoute - max. connections per route (scheme + host + port)
+	 * @param idleConnectionTimeout - ms until an unused connection is closed
+	 * @param connectTimeout - ms to establish a connection (-1 system default, 0 infinite)
+	 * @param socketTimeout - ms of inactivity while waiting for data (-1 system default, 0 infinite)
+	 * @param poolTimeout - ms to wait for a free connection from the pool (-1 system default, 0 infinite)
+	 */
+	public PooledHttpTransport(int maxConnections, int maxConnectionsPerRoute, long idleConnectionTimeout,
+				int connectTimeout, int socketTimeout, int poolTimeout){
+		connectionManager = new PoolingHttpClientConnectionManager();
+		connectionManager.setMaxTotal(maxConnections);
+		connectionManager.setDefaultMaxPerRoute(maxConnectionsPerRoute);
+		connectionManager.setValidateAfterInactivity(VALIDATE_AFTER_INACTIVITY);
+
+		RequestConfig requestConfig = RequestConfig.custom()
+				.setConnectTimeout(connectTimeout)
+				.setSocketTimeout(socketTimeout)
+				.setConnectionRequestTimeout(poolTimeout)
+				.build();
+
+		HttpClientBuilder builder = HttpClients.custom()
+				.setConnectionManager(connectionManager)
+				.setDefaultRequestConfig(requestConfig)
+				.evictExpiredConnections()
+				.evictIdleConnections(idleConnectionTimeout, TimeUnit.MILLISECONDS)
+				.disableCookieManagement()
+				.useSystemProperties();			//proxy settings of the JVM (http(s).proxyHost, http.nonProxyHosts, ...)
+		if (!ConnectorsConfig.isAcceptCompression()){
+			//else the client sends "Accept-Encoding: gzip,deflate" and decodes the content as it comes
+			builder.disableContentCompression();
+		}
+		client = builder.build();
+		this.requestCompressionThreshold = ConnectorsConfig.getRequestCompressionThreshold();
+	}
+
+	@Override
+	public Response execute(String method, String url, Map<String, String> headers, byte[] body) throws IOException {
+		return execute(method, url, headers, body, (body == null)? 0 : body.length);
+	}
+
+	@Override
+	public Response execute(String method, String url, Map<String, String> headers, byte[] body, int length) throws IOException {
+		return new PooledResponse(client.execute(buildRequest(method, url, headers, body, length, requestCompressionThreshold)));
+	}
+
+	@Override
+	public void close() throws IOException {
+		client.close();
+	}
+
+	@Override
+	public boolean isIdle(){
+		PoolStats stats = connectionManager.getTotalStats();
+		return stats.getLeased() == 0 && stats.getPending() == 0;
+	}
+
+	/**
+	 * Number of connections currently leased and available in the pool.
+	 */
+	public String getPoolStats(){
+		return connectionManager.getTotalStats().toString();
+	}
+
+	/**
+	 * Response wrapper that releases the connection back to the pool on close.
+	 */
+	private static class PooledResponse implements Response {
+		private final CloseableHttpResponse response;
+		private boolean aborted = false;
+
+		PooledResponse(CloseableHttpResponse response){
+			this.response = response;
+		}
+
+		@Override
+		public int getStatusCode() {
+			return response.getStatusLine().getStatusCode();
+		}
+
+		@Override
+		public String getHeader(String name) {
+			Header header = response.getFirstHeader(name);
+			return (header == null)? null : header.getValue();
+		}
+
+		@Override
+		public InputStream getContent() throws IOException {
+			HttpEntity entity = response.getEntity();
+			if (entity == null){
+				return new ByteArrayInputStream(new byte[0]);
+			}
+			return entity.getContent();
+		}
+
+		@Override
+		public void abort() throws IOException {
+			//closing before the content is consumed shuts down the connection
+			aborted = true;
+			response.close();
+		}
+
+		@Override
+		public void close() throws IOException {
+			if (aborted){
+				return;
+			}
+			try{
+				//read the rest so the connection can be re-used
+				EntityUtils.consume(response.getEntity());
+			}finally{
+				response.close();
+			}
+		}
+	}
+
+	/**
+	 * Build the request for the Apache client (shared with the async transport).
+	 */
+	static HttpUriRequest buildRequest(String method, String url, Map<String, String> headers, byte[] body, int length,
+				int compressionThreshold) throws IOException {
+		RequestBuilder request = RequestBuilder.create(method).setUri(toUri(url));
+		boolean gzip = false;
+		if (headers != null){
+			for (Map.Entry<String, String> entry : headers.entrySet()){
+				//length and transfer-encoding are set by the client according to the body
+				if (entry.getKey().equalsIgnoreCase("Content-Length") || entry.getKey().equalsIgnoreCase("Transfer-Encoding")){
+					continue;
+				}
+				//the caller says the server accepts gzip, we decide if it is worth it
+				if (entry.getKey().equalsIgnoreCase("Content-Encoding") && "gzip".equalsIgnoreCase(entry.getValue())){
+					gzip = true;
+					continue;
+				}
+				request.addHeader(entry.getKey(), entry.getValue());
+			}
+		}
+		if (body != null){
+			if (gzip && compressionThreshold >= 0 && length >= compressionThreshold){
+				request.addHeader("Content-Encoding", "gzip");
+				request.setEntity(new ByteArrayEntity(gzip(body, length)));
+			}else{
+				request.setEntity(new ByteArrayEntity(body, 0, length));
+			}
+		}
+		return request.build();
+	}
+
+	/**
+	 * Compress the first 'length' bytes with gzip. Uses the fastest level, JSON shrinks a lot anyway and we don't want to trade
+	 * bandwidth for a lot of CPU.
+	 */
+	static byte[] gzip(byte[] data, int length) throws IOException {
+		ByteArrayOutputStream bos = new ByteArrayOutputStream(Math.max(64, length / 4));
+		try (GZIPOutputStream gz = new GZIPOutputStream(bos, 8192){
+				{ def.setLevel(Deflater.BEST_SPEED); }
+			}){
+			gz.write(data, 0, length);
+		}
+		return bos.toByteArray();
+	}
+
+	/**
+	 * Build a URI from an URL string. HttpURLConnection used to accept some illegal characters like spaces,
+	 * so we escape them here instead of failing.
+	 */
+	static URI toUri(String url) throws IOException {
+		try{
+			return new URI(url);
+		}catch (URISyntaxException e){
+			StringBuilder sb = new StringBuilder(url.length() + 16);
+			for (int i=0; i<url.length(); i++){
+				char c = url.charAt(i);
+				if (c <= 0x20 || c >= 0x7f || "\"<>{}|\\^`".indexOf(c) >= 0){
+					int end = (Character.isHighSurrogate(c) && (i+1) < url.length())? (i+2) : (i+1);
+					for (byte b : url.substring(i, end).getBytes(StandardCharsets.UTF_8)){
+						sb.append('%').append(Character.toUpperCase(Character.forDigit((b >> 4) & 0xF, 16)))
+							.append(Character.toUpperCase(Character.forDigit(b & 0xF, 16)));
+					}
+					i = end - 1;
+				}else{
+					sb.append(c);
+				}
+			}
+			try{
+				return new URI(sb.toString());
+			}catch (URISyntaxException e2){
+				throw new IOException("Invalid URL: " + url, e2);
+			}
+		}
+	}
+
+}
@@ -1,9 +1,12 @@
 package de.bytemind.core.tools;
 
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
 import java.security.spec.KeySpec;
+import java.util.Arrays;
 import java.util.Random;
 import java.util.UUID;
 
@@ -13,8 +16,6 @@ import javax.crypto.spec.PBEKeySpec;
 import javax.crypto.spec.SecretKeySpec;
 import javax.xml.bind.DatatypeConverter;
 
-import org.apache.commons.codec.binary.Hex;
-
 /**
  * Methods to help encrypt stuff etc.
  * 
@@ -23,14 +24,77 @@ import org.apache.commons.codec.binary.Hex;
  */
 public class Security {
 	
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+	
+	//Hash engines are not thread-safe but expensive to look up, so every thread keeps its own
+	private static final ThreadLocal<MessageDigest> sha256 = ThreadLocal.withInitial(() -> newDigest("SHA-256"));
+	private static final ThreadLocal<MessageDigest> md5 = ThreadLocal.withInitial(() -> newDigest("MD5"));
+	private static final ThreadLocal<HmacState> hmacSha256 = ThreadLocal.withInitial(() -> new HmacState("HmacSHA256"));
+	
+	private static MessageDigest newDigest(String algorithm){
+		try{
+			return MessageDigest.getInstance(algorithm);
+		}catch (NoSuchAlgorithmException e){
+			throw new IllegalStateException(algorithm + " not available", e);
+		}
+	}
+	/**
+	 * Mac of a thread plus the key it was initialized with last time (re-init is skipped for the same key).
+	 */
+	private static class HmacState {
+		final String algorithm;
+		final Mac mac;
+		byte[] key;
+		HmacState(String algorithm){
+			this.algorithm = algorithm;
+			try{
+				this.mac = Mac.getInstance(algorithm);
+			}catch (NoSuchAlgorithmException e){
+				throw new IllegalStateException(algorithm + " not available", e);
+			}
+		}
+		Mac init(byte[] newKey) throws Exception {
+			if (key == null || !Arrays.equals(key, newKey)){
+				key = null;
+				mac.init(new SecretKeySpec(newKey, algorithm));
+				key = newKey.clone();
+			}
+			return mac;
+		}
+	}
+	
 	/**
 	 * Convert byte arrays like the generated md5 hashes etc to hex encoded string. 
 	 * @param hash - byte array hash
 	 * @return - hex encoded string
 	 */
 	public static String bytearrayToHexString(byte[] hash){
-		String check = Hex.encodeHexString(hash);
-		return check;
+		char[] out = new char[hash.length * 2];
+		writeHex(hash, out, 0);
+		return new String(out);
+	}
+	/**
+	 * Write lower-case hex of bytes into a char array, e.g. a re-used buffer.
+	 * @param bytes - data
+	 * @param out - target, needs space for 2*bytes.length chars starting at 'offset'
+	 * @param offset - start position in 'out'
+	 * @return position after the last written char
+	 */
+	public static int writeHex(byte[] bytes, char[] out, int offset){
+		for (byte b : bytes){
+			out[offset++] = HEX[(b >> 4) & 0x0f];
+			out[offset++] = HEX[b & 0x0f];
+		}
+		return offset;
+	}
+	/**
+	 * Append lower-case hex of bytes to a StringBuilder (e.g. when building a larger string anyway).
+	 */
+	public static StringBuilder appendHex(StringBuilder sb, byte[] bytes){
+		for (byte b : bytes){
+			sb.append(HEX[(b >> 4) & 0x0f]).append(HEX[b & 0x0f]);
+		}
+		return sb;
 	}
 	/**
 	 * Convert a hex encoded string of bytes to bytes again. 
@@ -56,11 +120,26 @@ public class Security {
 	 * @throws Exception 
 	 */
 	public static byte[] getMD5(String input) throws Exception {
-        MessageDigest md = MessageDigest.getInstance("MD5");
-        md.update(input.getBytes("UTF-8"));	// Change this to "UTF-16" if needed
-        byte[] digest = md.digest();
-		return digest;
-    }
+		return getMD5(input.getBytes(StandardCharsets.UTF_8));	// Change this to "UTF-16" if needed
+	}
+	/**
+	 * Hash bytes with md5 algorithm.
+	 * @param input - data to hash
+	 * @return hashed byte array
+	 */
+	public static byte[] getMD5(byte[] input){
+		return md5.get().digest(input);
+	}
+	/**
+	 * Hash the remaining bytes of a buffer (e.g. a direct buffer) with md5 algorithm. The buffer position is moved to its limit.
+	 * @param input - data to hash
+	 * @return hashed byte array
+	 */
+	public static byte[] getMD5(ByteBuffer input){
+		MessageDigest md = md5.get();
+		md.update(input);
+		return md.digest();
+	}
 	
 	/**
 	 * Simply hash a string with sha256 algorithm.
@@ -69,10 +148,25 @@ public class Security {
 	 * @throws Exception
 	 */
 	public static byte[] getSha256(String data) throws Exception  {
-		MessageDigest md = MessageDigest.getInstance("SHA-256");
-		md.update(data.getBytes(StandardCharsets.UTF_8)); 	//Change this to "UTF-16" if needed
-		byte[] digest = md.digest();
-		return digest;
+		return getSha256(data.getBytes(StandardCharsets.UTF_8)); 	//Change this to "UTF-16" if needed
+	}
+	/**
+	 * Hash bytes with sha256 algorithm.
+	 * @param data - input bytes
+	 * @return hashed byte array
+	 */
+	public static byte[] getSha256(byte[] data){
+		return sha256.get().digest(data);
+	}
+	/**
+	 * Hash the remaining bytes of a buffer (e.g. a direct buffer) with sha256 algorithm. The buffer position is moved to its limit.
+	 * @param data - input bytes
+	 * @return hashed byte array
+	 */
+	public static byte[] getSha256(ByteBuffer data){
+		MessageDigest md = sha256.get();
+		md.update(data);
+		return md.digest();
 	}
 	
 	/**
@@ -83,10 +177,29 @@ public class Security {
 	 * @throws Exception
 	 */
 	public static byte[] HmacSHA256(String data, byte[] key) throws Exception  {
-	     String algorithm="HmacSHA256";
-	     Mac mac = Mac.getInstance(algorithm);
-	     mac.init(new SecretKeySpec(key, algorithm));
-	     return mac.doFinal(data.getBytes("UTF-8"));
+		return HmacSHA256(data.getBytes(StandardCharsets.UTF_8), key);
+	}
+	/**
+	 * HmacSHA256 encryption.
+	 * @param data - input bytes 
+	 * @param key - secret key to hash
+	 * @return byte array with hashed data+key
+	 * @throws Exception
+	 */
+	public static byte[] HmacSHA256(byte[] data, byte[] key) throws Exception  {
+		return hmacSha256.get().init(key).doFinal(data);
+	}
+	/**
+	 * HmacSHA256 encryption of the remaining bytes of a buffer (e.g. a direct buffer). The buffer position is moved to its limit.
+	 * @param data - input bytes 
+	 * @param key - secret key to hash
+	 * @return byte array with hashed data+key
+	 * @throws Exception
+	 */
+	public static byte[] HmacSHA256(ByteBuffer data, byte[] key) throws Exception  {
+		Mac mac = hmacSha256.get().init(key);
+		mac.update(data);
+		return mac.doFinal();
 	}
 
 	
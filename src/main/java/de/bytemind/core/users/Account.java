@@ -19,8 +19,8 @@ import de.bytemind.core.tools.Security;
  */
 public class Account {
 
-	//service that is able to perform user authentication
-	private final Authentication authService = (Authentication) ClassBuilder.construct(ClientDefaults.authentication_module);
+	//service that is able to perform user authentication (built on first use, cached authentications don't need it)
+	private Authentication authService;
 	
 	//account basic user data
 	private String userId = "";				//unique ID of user
@@ -230,6 +230,13 @@ public class Account {
 		return name;
 	}
 	
+	private Authentication getAuthService(){
+		if (authService == null){
+			authService = (Authentication) ClassBuilder.construct(ClientDefaults.authentication_module);
+		}
+		return authService;
+	}
+	
 	/**
 	 * Authenticate the user. Copies basic user info to this class on successful authentication. 
 	 * @return true or false
@@ -253,21 +260,58 @@ public class Account {
 			if (up.length == 2){
 				String username = up[0].toLowerCase();
 				String password = up[1];
+				String type = (Is.nullOrEmpty(idType)? IdHandler.autodetectType(username) : idType);
+				
+				//cached?
+				String cacheKey = null;
+				long[] cacheVersion = null;
+				long logoutCount = 0;
+				if (AuthenticationCache.isActive()){
+					cacheKey = AuthenticationCache.makeKey(username, password, type, client);
+					AuthenticationCache.Entry cached = AuthenticationCache.get(cacheKey);
+					if (cached != null){
+						userId = cached.getUserId();
+						accessLevel = cached.getAccessLevel();
+						errorCode = 0;
+						AccountBasicInfo basicInfo = cached.getBasicInfo();
+						if (basicInfo != null){
+							mapBasicInfo(basicInfo);
+						}
+						return true;
+					}
+					cacheVersion = AuthenticationCache.getVersion(username, client);
+					logoutCount = AuthenticationCache.getLogoutCount();
+				}
+				
 				//call
+				Authentication auth = getAuthService();
 				JSONObject authInfo = JSON.make("userId", username,
 											"pwd", password,
-											"idType", (Is.nullOrEmpty(idType)? IdHandler.autodetectType(username) : idType),
+											"idType", type,
 											"client", client);
-				boolean success = authService.authenticate(authInfo);
-				errorCode = authService.getErrorCode();
+				boolean success = auth.authenticate(authInfo);
+				errorCode = auth.getErrorCode();
 				
 				//get basic info
 				if (success){
-					userId = authService.getUserID();
-					accessLevel = authService.getAccessLevel();
+					userId = auth.getUserID();
+					accessLevel = auth.getAccessLevel();
 					
-					AccountBasicInfo basicInfo = authService.upgradeBasicInfo(authService.getRawBasicInfo());
+					AccountBasicInfo basicInfo = auth.upgradeBasicInfo(auth.getRawBasicInfo());
 					mapBasicInfo(basicInfo);
+					
+					if (cacheKey != null && userId != null){
+						if (userId.equalsIgnoreCase(username)){
+							AuthenticationCache.put(cacheKey, client, userId, accessLevel, basicInfo, cacheVersion);
+						}else{
+							//logout versions are tracked per unique ID, if the login used e.g. the email we can only take them now.
+							//They are only valid if nobody logged out since the call started, else this login might be revoked already.
+							long[] userVersion = AuthenticationCache.getVersion(userId, client);
+							if (AuthenticationCache.getLogoutCount() == logoutCount){
+								AuthenticationCache.put(cacheKey, client, userId, accessLevel, basicInfo, userVersion);
+							}
+						}
+					}
 				}
 				return success;
 			
@@ -286,6 +330,23 @@ public class Account {
 		}
 	}
 	
+	/**
+	 * Log out the user from the current client. Removes cached authentications of this client.
+	 * @return true if the authentication service confirmed the logout
+	 */
+	public boolean logout(){
+		AuthenticationCache.invalidate(userId, client);
+		return getAuthService().logout(userId, client);
+	}
+	/**
+	 * Log out the user from all clients. Removes all cached authentications of the user.
+	 * @return true if the authentication service confirmed the logout
+	 */
+	public boolean logoutAllClients(){
+		AuthenticationCache.invalidateAllClients(userId);
+		return getAuthService().logoutAllClients(userId);
+	}
+	
 	/**
 	 * Error code passed down from authentication.
 	 * 0 - no errors <br>
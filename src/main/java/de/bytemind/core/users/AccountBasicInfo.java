@@ -65,6 +65,20 @@ public class AccountBasicInfo {
 		this.more = more;
 	}
 	
+	/**
+	 * Copy of this info. Name, roles and more are copied shallow.
+	 */
+	public AccountBasicInfo copy(){
+		AccountBasicInfo c = new AccountBasicInfo();
+		c.email = email;
+		c.phone = phone;
+		c.language = language;
+		if (userName != null) c.userName = (JSONObject) userName.clone();
+		if (userRoles != null) c.userRoles = (JSONArray) userRoles.clone();
+		if (more != null) c.more = (JSONObject) more.clone();
+		return c;
+	}
+	
 	public JSONObject exportJson(){
 		JSONObject json = new JSONObject();
 		
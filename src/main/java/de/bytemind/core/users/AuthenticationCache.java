@@ -0,0 +1,210 @@
+package de.bytemind.core.users;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import de.bytemind.core.client.ClientDefaults;
+import de.bytemind.core.server.Statistics;
+import de.bytemind.core.tools.Security;
+
+/**
+ * Short-lived cache of successful authentications so that repeated requests with the same credentials don't need to
+ * call the authentication service (e.g. a remote server) every time. Entries are keyed by a SHA-256 hash of user ID, password token,
+ * ID type and client, so no credentials are kept in memory. Entries of a user are dropped on logout (see {@link Account#logout()}).<br>
+ * TTL and size are set via ClientDefaults (or CoreSetup), a TTL of 0 switches the cache off.<br>
+ * Hits and misses are counted in {@link Statistics} as "AuthCache:hit" and "AuthCache:miss".
+ *
+ * @author Florian Quirin
+ *
+ */
+public class AuthenticationCache {
+
+	private static final String STATS_NAME = "AuthCache";
+
+	/**
+	 * Result of a successful authentication.
+	 */
+	public static class Entry {
+		final String userId;
+		final String client;
+		final int accessLevel;
+		final AccountBasicInfo basicInfo;
+		final long userVersion;
+		final long clientVersion;
+
+		Entry(String userId, String client, int accessLevel, AccountBasicInfo basicInfo, long userVersion, long clientVersion){
+			this.userId = userId;
+			this.client = client;
+			this.accessLevel = accessLevel;
+			this.basicInfo = basicInfo;
+			this.userVersion = userVersion;
+			this.clientVersion = clientVersion;
+		}
+		public String getUserId(){
+			return userId;
+		}
+		public int getAccessLevel(){
+			return accessLevel;
+		}
+		/**
+		 * Copy of the basic info (so accounts can modify it).
+		 */
+		public AccountBasicInfo getBasicInfo(){
+			return (basicInfo == null)? null : basicInfo.copy();
+		}
+	}
+
+	//all state in one object so re-configuration is a single swap
+	private static class State {
+		final long ttl;
+		final long maxSize;
+		final Cache<String, Entry> entries;
+		//versions bumped on logout, entries created with an older version are invalid. Entries are only stored if the version did not change
+		//during the authentication, so versions outlive the entries they protect (2*ttl leaves room for the store itself)
+		final Cache<String, Long> versions;
+		State(long ttl, long maxSize){
+			this.ttl = ttl;
+			this.maxSize = maxSize;
+			this.entries = CacheBuilder.newBuilder()
+					.maximumSize(Math.max(1, maxSize))
+					.expireAfterWrite(Math.max(1, ttl), TimeUnit.MILLISECONDS)
+					.build();
+			this.versions = CacheBuilder.newBuilder()
+					.expireAfterWrite(Math.max(1, 2 * ttl), TimeUnit.MILLISECONDS)
+					.build();
+		}
+	}
+	private static volatile State state;
+	private static final AtomicLong versionCounter = new AtomicLong();
+
+	private static State getState(){
+		State s = state;
+		if (s == null || s.ttl != ClientDefaults.auth_cache_ttl || s.maxSize != ClientDefaults.auth_cache_max_size){
+			synchronized (AuthenticationCache.class){
+				s = state;
+				if (s == null || s.ttl != ClientDefaults.auth_cache_ttl || s.maxSize != ClientDefaults.auth_cache_max_size){
+					s = new State(ClientDefaults.auth_cache_ttl, ClientDefaults.auth_cache_max_size);
+					state = s;
+				}
+			}
+		}
+		return s;
+	}
+
+	/**
+	 * Is the cache switched on (TTL > 0)?
+	 */
+	public static boolean isActive(){
+		return ClientDefaults.auth_cache_ttl > 0;
+	}
+
+	/**
+	 * Build the cache key for a set of credentials.
+	 */
+	public static String makeKey(String userId, String password, String idType, String client){
+		String raw = userId + '\u0000' + password + '\u0000' + idType + '\u0000' + client;
+		return Security.bytearrayToHexString(Security.getSha256(raw.getBytes(StandardCharsets.UTF_8)));
+	}
+
+	/**
+	 * Get a cached authentication or null.
+	 * @param key - key from {@link #makeKey}
+	 */
+	public static Entry get(String key){
+		if (!isActive()){
+			return null;
+		}
+		State s = getState();
+		Entry e = s.entries.getIfPresent(key);
+		if (e != null){
+			if (e.userVersion == currentVersion(s, userKey(e.userId)) && e.clientVersion == currentVersion(s, clientKey(e.userId, e.client))){
+				Statistics.addCount(STATS_NAME + ":hit", 1);
+				return e;
+			}
+			s.entries.invalidate(key);
+		}
+		Statistics.addCount(STATS_NAME + ":miss", 1);
+		return null;
+	}
+
+	/**
+	 * Remember a successful authentication. Nothing is stored if user or client logged out since 'versionAtStart' was taken.
+	 * @param key - key from {@link #makeKey}
+	 * @param client - client used to log in (required to log out single clients)
+	 * @param userId - unique user ID
+	 * @param accessLevel - access level
+	 * @param basicInfo - basic info of the user (a copy is stored)
+	 * @param versionAtStart - value of {@link #getVersion} taken before the authentication started
+	 */
+	public static void put(String key, String client, String userId, int accessLevel, AccountBasicInfo basicInfo, long[] versionAtStart){
+		if (!isActive() || userId == null){
+			return;
+		}
+		State s = getState();
+		if (versionAtStart[0] != currentVersion(s, userKey(userId)) || versionAtStart[1] != currentVersion(s, clientKey(userId, client))){
+			//logout during the authentication - the entry could outlive the version that invalidates it
+			return;
+		}
+		s.entries.put(key, new Entry(userId, client, accessLevel, (basicInfo == null)? null : basicInfo.copy(), versionAtStart[0], versionAtStart[1]));
+	}
+
+	/**
+	 * Get the current logout versions of user and client. Take this BEFORE calling the authentication service and hand it to 'put'
+	 * so that a logout during the authentication is not overwritten.
+	 */
+	public static long[] getVersion(String userId, String client){
+		State s = getState();
+		return new long[]{ currentVersion(s, userKey(userId)), currentVersion(s, clientKey(userId, client)) };
+	}
+
+	/**
+	 * Number of logouts (of any user) so far. Take it before the authentication if the unique user ID is not known yet (e.g. login via email)
+	 * and only call 'put' if it did not change, else a logout during the authentication could be missed.
+	 */
+	public static long getLogoutCount(){
+		return versionCounter.get();
+	}
+
+	/**
+	 * Drop cached authentications of a user for one client.
+	 */
+	public static void invalidate(String userId, String client){
+		if (userId == null){
+			return;
+		}
+		getState().versions.put(clientKey(userId, client), versionCounter.incrementAndGet());
+	}
+	/**
+	 * Drop all cached authentications of a user.
+	 */
+	public static void invalidateAllClients(String userId){
+		if (userId == null){
+			return;
+		}
+		getState().versions.put(userKey(userId), versionCounter.incrementAndGet());
+	}
+	/**
+	 * Drop everything.
+	 */
+	public static void invalidateAll(){
+		getState().entries.invalidateAll();
+	}
+
+	//--- helpers ---
+
+	private static String userKey(String userId){
+		return userId.toLowerCase();
+	}
+	private static String clientKey(String userId, String client){
+		return userId.toLowerCase() + '\u0000' + client;
+	}
+	private static long currentVersion(State s, String versionKey){
+		Long v = s.versions.getIfPresent(versionKey);
+		return (v == null)? 0 : v;
+	}
+
+}
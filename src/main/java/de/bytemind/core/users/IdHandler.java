@@ -1,5 +1,7 @@
 package de.bytemind.core.users;
 
+import java.util.regex.Pattern;
+
 import de.bytemind.core.tools.Debugger;
 
 /**
@@ -21,6 +23,41 @@ public class IdHandler {
 		public static final String email = "email";
 		public static final String phone = "phone";
 	}
+	
+	//Patterns - only used as fallback for non-ASCII IDs or a prefix with special characters
+	private static final Pattern EMAIL_PATTERN = Pattern.compile(".*\\w+\\@.*\\..*\\w+");
+	private static final Pattern PHONE_PATTERN = Pattern.compile("(\\+|\\-|)\\d+");
+	
+	//prefix dependent state, rebuilt when the prefix changes
+	private static class PrefixState {
+		final String prefix;
+		final boolean literal;		//prefix has no regex characters so 'startsWith' is enough
+		final Pattern uidPattern;
+		PrefixState(String prefix){
+			this.prefix = prefix;
+			this.literal = isLiteral(prefix);
+			this.uidPattern = Pattern.compile("^" + prefix + "\\d+");
+		}
+	}
+	private static volatile PrefixState prefixState = new PrefixState(user_id_prefix);
+	
+	/**
+	 * Set the user ID prefix and prepare the ID checks for it.
+	 */
+	public static void setUserIdPrefix(String prefix){
+		user_id_prefix = prefix;
+		prefixState = new PrefixState(prefix);
+	}
+	
+	private static PrefixState getPrefixState(){
+		PrefixState ps = prefixState;
+		if (!ps.prefix.equals(user_id_prefix)){
+			//field was changed directly
+			ps = new PrefixState(user_id_prefix);
+			prefixState = ps;
+		}
+		return ps;
+	}
 
 	/**
 	 * Auto-detect user id type (email, uid, phone?) 
@@ -28,14 +65,54 @@ public class IdHandler {
 	 */
 	public static String autodetectType(String id){
 		id = clean(id);
-		if (id.matches("^" + user_id_prefix + "\\d+")){
+		PrefixState ps = getPrefixState();
+		String type;
+		if (ps.literal && isAscii(id)){
+			type = classify(id, ps.prefix);
+		}else{
+			type = classifyByPattern(id, ps);
+		}
+		if (type.isEmpty()){
+			Debugger.println("ID type - autodetectType(...) failed! Id: " + id, 1);
+		}
+		return type;
+	}
+	
+	/**
+	 * Single pass check of a cleaned ASCII ID.
+	 */
+	private static String classify(String id, String prefix){
+		int n = id.length();
+		//uid: prefix followed by digits only
+		int p = prefix.length();
+		if (n > p && id.startsWith(prefix) && isDigits(id, p, n)){
 			return Type.uid;
-		}else if(id.matches(".*\\w+\\@.*\\..*\\w+")){
+		}
+		//email: word char + '@' somewhere before the last '.', and a word char at the end
+		if (isWordChar(id.charAt(n - 1))){
+			int lastDot = id.lastIndexOf('.');
+			for (int i=1; i<lastDot; i++){
+				if (id.charAt(i) == '@' && isWordChar(id.charAt(i - 1))){
+					return Type.email;
+				}
+			}
+		}
+		//phone: optional sign and digits
+		int start = (id.charAt(0) == '+' || id.charAt(0) == '-')? 1 : 0;
+		if (n > start && isDigits(id, start, n)){
+			return Type.phone;
+		}
+		return "";
+	}
+	
+	private static String classifyByPattern(String id, PrefixState ps){
+		if (ps.uidPattern.matcher(id).matches()){
+			return Type.uid;
+		}else if (EMAIL_PATTERN.matcher(id).matches()){
 			return Type.email;
-		}else if (id.matches("(\\+|\\-|)\\d+")){
+		}else if (PHONE_PATTERN.matcher(id).matches()){
 			return Type.phone;
 		}else{
-			Debugger.println("ID type - autodetectType(...) failed! Id: " + id, 1);
 			return "";
 		}
 	}
@@ -44,11 +121,70 @@ public class IdHandler {
 	 * Clean up the ID before trying to store or match it. Throws error on "-" and empty.
 	 */
 	public static String clean(String id){
-		id = id.replaceAll("\\s+", "").trim().toLowerCase().trim();
+		//remove white-spaces (same as regex "\s") in one pass, copy only if there are any
+		int n = id.length();
+		int firstSpace = -1;
+		for (int i=0; i<n; i++){
+			if (isSpace(id.charAt(i))){
+				firstSpace = i;
+				break;
+			}
+		}
+		if (firstSpace >= 0){
+			StringBuilder sb = new StringBuilder(n);
+			sb.append(id, 0, firstSpace);
+			for (int i=firstSpace+1; i<n; i++){
+				char c = id.charAt(i);
+				if (!isSpace(c)){
+					sb.append(c);
+				}
+			}
+			id = sb.toString();
+		}
+		//other control characters at the ends (rare)
+		if (!id.isEmpty() && (id.charAt(0) <= ' ' || id.charAt(id.length() - 1) <= ' ')){
+			id = id.trim();
+		}
+		id = id.toLowerCase();		//returns the same string if there is nothing to change
 		if (id.isEmpty() || id.equals("-")){
 			throw new RuntimeException("cleanID(..) reports invalid ID: " + id);
 		}else{
 			return id;
 		}
 	}
+	
+	//--- helpers ---
+	
+	private static boolean isSpace(char c){
+		return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+	}
+	private static boolean isWordChar(char c){
+		return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_';
+	}
+	private static boolean isDigits(String s, int start, int end){
+		for (int i=start; i<end; i++){
+			char c = s.charAt(i);
+			if (c < '0' || c > '9'){
+				return false;
+			}
+		}
+		return true;
+	}
+	private static boolean isAscii(String s){
+		for (int i=0; i<s.length(); i++){
+			if (s.charAt(i) > 127){
+				return false;
+			}
+		}
+		return true;
+	}
+	private static boolean isLiteral(String prefix){
+		for (int i=0; i<prefix.length(); i++){
+			char c = prefix.charAt(i);
+			if (!isWordChar(c) && c != '-'){
+				return false;
+			}
+		}
+		return true;
+	}
 }
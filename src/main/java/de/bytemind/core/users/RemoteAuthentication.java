@@ -116,12 +116,14 @@ public class RemoteAuthentication implements Authentication{
 
 	@Override
 	public boolean logout(String userid, String client) {
+		AuthenticationCache.invalidate(userid, client);
 		// TODO Auto-generated method stub
 		return false;
 	}
 
 	@Override
 	public boolean logoutAllClients(String userid) {
+		AuthenticationCache.invalidateAllClients(userid);
 		// TODO Auto-generated method stub
 		return false;
 	}
@@ -1,5 +1,6 @@
 package de.bytemind.core.databases;
 
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -11,9 +12,12 @@ import de.bytemind.core.tools.JSON;
 public class DynamoDbTestSequence {
 
 	//DynamoDB test sequence:
-	public static void main(String[] args) {
+	public static void main(String[] args) throws Exception {
 		
-		//Setup
+		//Setup - use argument "fake" to run against an in-process FakeDynamoDbServer
+		if (args.length > 0 && args[0].equals("fake")){
+			new FakeDynamoDbServer().start(21311);
+		}
 		DynamoDbConfig.setRegion("http://localhost:21311");
 		DynamoDbConfig.setAccess("EXAMPLEMDDBBTTRRXXYY");
 		DynamoDbConfig.setSecret("ExampleDefghIa1BcDeFghI2JkLm");
@@ -60,6 +64,11 @@ public class DynamoDbTestSequence {
 		res = DynamoDB.getItem(tableName, primaryKey, guuid, "Email", "name.first", "name.last");
 		JSON.printJSONpretty(res);		if (!Connectors.httpSuccess(res)){return;}
 		
+		//Get items - batch
+		System.out.println("\n---Get Items by primaryKey (batch)---");
+		res = DynamoDB.batchGetItem(tableName, primaryKey, Arrays.asList(guuid, "uid_unknown"), "Email", "name.first");
+		JSON.printJSONpretty(res);		if (!Connectors.httpSuccess(res)){return;}
+		
 		//Overwrite item
 		System.out.println("\n---Overwrite Item attribute---");
 		code = DynamoDB.writeAny(tableName, primaryKey, guuid, new String[]{"name.last"}, new Object[]{""});
@@ -85,6 +94,20 @@ public class DynamoDbTestSequence {
 		res = DynamoDB.getItem(tableName, primaryKey, guuid, "Email");
 		JSON.printJSONpretty(res);		if (!Connectors.httpSuccess(res)){return;}
 		
+		//Retry decisions of batch operations (real connection errors)
+		System.out.println("\n---Retry decisions---");
+		JSONObject refused = Connectors.httpPOST("http://localhost:1", "{}", null);
+		JSONObject unknownHost = Connectors.httpPOST("http://bytemind-test.invalid", "{}", null);
+		JSONObject badUri = Connectors.httpPOST("http://local host", "{}", null);
+		JSONObject throttled = JSON.make("code", 400, "error", "{\"__type\":\"com.amazonaws.dynamodb.v20120810#ProvisionedThroughputExceededException\"}");
+		JSONObject validation = JSON.make("code", 400, "error", "{\"__type\":\"com.amazon.coral.validate#ValidationException\"}");
+		boolean[] expected = { true, false, false, true, false, true, false };
+		boolean[] actual = { DynamoDB.isRetryable(refused), DynamoDB.isRetryable(unknownHost), DynamoDB.isRetryable(badUri),
+				DynamoDB.isRetryable(throttled), DynamoDB.isRetryable(validation), DynamoDB.isRetryable(JSON.make("code", 503)), 
+				DynamoDB.isRetryable(JSON.make("code", 400)) };
+		System.out.println("RETRY: " + Arrays.toString(actual) + " - " + JSON.getString(unknownHost, "error"));
+		if (!Arrays.equals(expected, actual)){ return; }
+		
 		//Clean
 		System.out.println("\n---Clean table---");
 		res = DynamoDB.deleteTable(tableName);
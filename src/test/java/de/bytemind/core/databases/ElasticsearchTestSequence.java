@@ -1,5 +1,11 @@
 package de.bytemind.core.databases;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import org.json.simple.JSONArray;
 import org.json.simple.JSONObject;
 
@@ -10,9 +16,13 @@ import de.bytemind.core.tools.Timer;
 
 public class ElasticsearchTestSequence {
 
-	public static void main(String[] args) {
+	public static void main(String[] args) throws Exception {
 
-		//Setup
+		//Setup - use argument "fake" to run against an in-process FakeElasticsearchServer
+		FakeServer fake = null;
+		if (args.length > 0 && args[0].equals("fake")){
+			fake = new FakeElasticsearchServer().start(21312);
+		}
 		String endpoint = "http://localhost:21312";
 		ElasticSearchConfig.setEndpoint(endpoint);
 		Elasticsearch elastic = new Elasticsearch();
@@ -60,6 +70,11 @@ public class ElasticsearchTestSequence {
 		res = elastic.getItem(index, type, id);
 		JSON.printJSONpretty(res);		if (!Connectors.httpSuccess(res)){return;}
 				
+		//Get many
+		System.out.println("\n---Get user1, missing and user1 data (filtered)---");
+		res = elastic.getItemsFiltered(index, type, Arrays.asList(id, "missingId", id), new String[]{"user", "map.type"});
+		JSON.printJSONpretty(res);		if (JSON.getIntegerOrDefault(res, "code", -1) != 0){return;}
+		
 		//Query data simple
 		System.out.println("\n---Query (simple) user1 data---");
 		res = elastic.searchSimple(index + "/" + type, "user:uid0815");
@@ -104,6 +119,22 @@ public class ElasticsearchTestSequence {
 		System.out.println("HITS: " + hits.size() + " - FIRST HIT: ");
 		JSON.printJSONpretty(print);		if (!Connectors.httpSuccess(res)){return;}
 		
+		//Query data json - batched via _msearch
+		System.out.println("\n---Query (json) batched user1 and user2 ---");
+		ElasticSearchConfig.setSearchBatchWindow(2);
+		List<CompletableFuture<JSONObject>> futures = new ArrayList<>();
+		for (String u : new String[]{userId1, userId2, userId1}){
+			futures.add(elastic.searchByJsonAsync(index + "/" + type, EsQueryBuilder.getBoolMustMatch(EsQueryBuilder.makeQueryList("user", u)).toJSONString()));
+		}
+		for (CompletableFuture<JSONObject> f : futures){
+			res = f.get();
+			hits = Elasticsearch.getHits(res);
+			System.out.println("HITS: " + hits.size() + " - USER: " + ((hits.size() > 0)? JSON.getJObject((JSONObject) hits.get(0), "_source").get("user") : ""));
+			if (!Connectors.httpSuccess(res)){ JSON.printJSONpretty(res); return; }
+		}
+		System.out.println("REQUESTS: " + Elasticsearch.getSearchBatcher(endpoint).getRequestCount() + " - SEARCHES: " + Elasticsearch.getSearchBatcher(endpoint).getQueryCount());
+		ElasticSearchConfig.setSearchBatchWindow(0);
+		
 		//Check size
 		System.out.println("\n---Check number of documents---");
 		res = Elasticsearch.customGET(endpoint, index + "/" + type, "_count", "");
@@ -116,6 +147,104 @@ public class ElasticsearchTestSequence {
 		res = elastic.deleteByJson(index + "/" + type, query);
 		JSON.printJSONpretty(res);		if (!Connectors.httpSuccess(res)){return;}
 		
+		//Bulk write and delete
+		System.out.println("\n---Bulk write and delete---");
+		res = elastic.bulk(Arrays.asList(
+				BulkOperation.index(index, type, "bulk1", JSON.make("user", "bulk1", "info", "Bulk user")),
+				BulkOperation.update(index, type, "bulk1", JSON.make("email", "bulk1@example.com")),
+				BulkOperation.delete(index, type, "bulk1")
+		));
+		JSON.printJSONpretty(res);		if (JSON.getIntegerOrDefault(res, "code", -1) != 0){return;}
+		
+		//Gzip - bulk body is compressed, search response too if the server supports it (default in ES 7, the fake does it)
+		System.out.println("\n---Bulk write and search with gzip---");
+		ElasticSearchConfig.setCompressRequests(true);
+		List<BulkOperation> gzipOps = new ArrayList<>();
+		for (int i=0; i<30; i++){
+			gzipOps.add(BulkOperation.index(index, type, "gzip" + i, JSON.make("user", "gzip" + i, "info", "Gzip user with a longer text to compress")));
+		}
+		res = elastic.bulk(gzipOps);
+		ElasticSearchConfig.setCompressRequests(false);
+		if (JSON.getIntegerOrDefault(res, "code", -1) != 0){ JSON.printJSONpretty(res); return; }
+		Timer.threadSleep(1500);
+		JSONObject gzipQuery = EsQueryBuilder.getBoolMustMatch(EsQueryBuilder.makeQueryList("info", "gzip"));
+		JSON.put(gzipQuery, "size", 30);
+		res = elastic.searchByJson(index + "/" + type, gzipQuery.toJSONString());
+		hits = Elasticsearch.getHits(res);
+		System.out.println("GZIP HITS: " + hits.size() + ((fake == null)? "" : 
+				(" - COMPRESSED REQUESTS: " + fake.getCompressedRequestCount() + " - COMPRESSED RESPONSES: " + fake.getCompressedResponseCount())));
+		if (hits.size() != 30){ JSON.printJSONpretty(res); return; }
+		res = elastic.deleteByJson(index + "/" + type, gzipQuery.toJSONString());
+		if (!Connectors.httpSuccess(res)){ JSON.printJSONpretty(res); return; }
+		
+		//Iterate over all hits page by page
+		System.out.println("\n---Scan many documents with scroll and search_after---");
+		List<BulkOperation> scanOps = new ArrayList<>();
+		for (int i=0; i<25; i++){
+			scanOps.add(BulkOperation.index(index, type, "scan" + i, JSON.make("user", "scan" + i, "info", "Scan user")));
+		}
+		res = elastic.bulk(scanOps);
+		if (JSON.getIntegerOrDefault(res, "code", -1) != 0){ JSON.printJSONpretty(res); return; }
+		Timer.threadSleep(1500);
+		query = EsQueryBuilder.getBoolMustMatch(EsQueryBuilder.makeQueryList("info", "scan")).toJSONString();
+		int scanned = 0;
+		try (SearchHitIterator it = elastic.searchIterator(index + "/" + type, query, 10, false)){
+			while (it.hasNext()){
+				it.next();
+				scanned++;
+			}
+		}
+		JSONObject sorted = EsQueryBuilder.getBoolMustMatch(EsQueryBuilder.makeQueryList("info", "scan"));
+		JSON.put(sorted, "sort", JSON.makeArray(JSON.make("_uid", "asc")));
+		String sortedQuery = sorted.toJSONString();
+		long scannedAfter;
+		try (SearchHitIterator it = elastic.searchIterator(index + "/" + type, sortedQuery, 10, true)){
+			scannedAfter = it.stream().count();
+		}
+		System.out.println("SCROLL HITS: " + scanned + " - SEARCH_AFTER HITS: " + scannedAfter);
+		if (scanned != 25 || scannedAfter != 25){ return; }
+		res = elastic.deleteByJson(index + "/" + type, query);
+		if (!Connectors.httpSuccess(res)){ JSON.printJSONpretty(res); return; }
+		
+		//Bulk processor - small limits so that 'add' has to wait for the sender (backpressure)
+		System.out.println("\n---Bulk processor with flush and backpressure---");
+		AtomicInteger processedItems = new AtomicInteger();
+		AtomicInteger failedItems = new AtomicInteger();
+		BulkProcessor processor = new BulkProcessor(elastic, 10, -1, 0, 20, (ops, result) -> {
+			for (Object o : (JSONArray) result.get("items")){
+				processedItems.incrementAndGet();
+				if (!Integer.valueOf(0).equals(((JSONObject) o).get("code"))){
+					failedItems.incrementAndGet();
+				}
+			}
+		});
+		for (int i=0; i<95; i++){
+			processor.add(BulkOperation.index(index, type, "proc" + i, JSON.make("user", "proc" + i, "info", "Processor user")));
+		}
+		processor.flush();
+		System.out.println("REQUESTS: " + processor.getRequests() + " - SENT: " + processor.getSentOperations() 
+				+ " - PROCESSED: " + processedItems.get() + " - FAILED: " + processor.getFailedOperations() + "/" + failedItems.get());
+		if (processor.getRequests() != 10 || processedItems.get() != 95 || failedItems.get() != 0){ return; }
+		processor.close();
+		try{
+			processor.add(BulkOperation.delete(index, type, "proc0"));
+			System.out.println("NO ERROR AFTER CLOSE");
+			return;
+		}catch (IllegalStateException e){
+			//expected
+		}
+		Timer.threadSleep(1500);
+		query = EsQueryBuilder.getBoolMustMatch(EsQueryBuilder.makeQueryList("info", "processor")).toJSONString();
+		res = elastic.deleteByJson(index + "/" + type, query);
+		if (!Connectors.httpSuccess(res)){ JSON.printJSONpretty(res); return; }
+		
+		//Bulk request that fails as a whole - every item reports the error
+		System.out.println("\n---Bulk request without connection---");
+		res = new Elasticsearch("http://localhost:1").bulk(Arrays.asList(BulkOperation.delete(index, type, "nothing")));
+		JSON.printJSONpretty(res);
+		JSONObject failedItem = (JSONObject) ((JSONArray) res.get("items")).get(0);
+		if (JSON.getIntegerOrDefault(res, "code", -1) != 1 || !Integer.valueOf(-1).equals(failedItem.get("status"))){ return; }
+		
 		//Delete data by id
 		System.out.println("\n---Delete user1 by id---");
 		res = elastic.deleteItem(index, type, id);
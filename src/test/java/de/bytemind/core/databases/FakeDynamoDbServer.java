@@ -0,0 +1,431 @@
+package de.bytemind.core.databases;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+
+import de.bytemind.core.tools.JSON;
+
+/**
+ * In-process stand-in for DynamoDB with the part of the JSON API that {@link DynamoDB} uses: CreateTable, DeleteTable, DescribeTable,
+ * ListTables, GetItem, BatchGetItem, Query (on attributes used as GSI), UpdateItem (SET/REMOVE), DeleteItem and BatchWriteItem.
+ * Signatures are not checked. Besides latency and server errors it can inject throttling and unprocessed keys/items of batch calls.<br>
+ * Use: {@code DynamoDbConfig.setRegion(server.getEndpoint())}.
+ *
+ * @author Florian Quirin
+ *
+ */
+public class FakeDynamoDbServer extends FakeServer {
+
+	private static final String CONTENT_TYPE = "application/x-amz-json-1.0";
+	private static final String ERROR_PREFIX = "com.amazonaws.dynamodb.v20120810#";
+
+	private static class Table {
+		final String name;
+		final String hashKey;
+		final JSONObject description;
+		final Map<String, JSONObject> items = new ConcurrentHashMap<>();
+		Table(String name, String hashKey, JSONObject description){
+			this.name = name;
+			this.hashKey = hashKey;
+			this.description = description;
+		}
+	}
+	private final Map<String, Table> tables = new ConcurrentHashMap<>();
+
+	private volatile double throttleRate = 0.0;
+	private volatile double unprocessedRate = 0.0;
+
+	/**
+	 * Start a server at the port of the DynamoDbTestSequence (21311) and keep it running.
+	 */
+	public static void main(String[] args) throws Exception {
+		int port = (args.length > 0)? Integer.parseInt(args[0]) : 21311;
+		FakeDynamoDbServer server = new FakeDynamoDbServer();
+		server.start(port);
+		System.out.println("Fake DynamoDB running at " + server.getEndpoint() + " - stop with CTRL+C");
+		Thread.currentThread().join();
+	}
+
+	/**
+	 * Share of requests answered with "ProvisionedThroughputExceededException" (HTTP 400).
+	 */
+	public FakeDynamoDbServer setThrottleRate(double rate){
+		this.throttleRate = rate;
+		return this;
+	}
+	/**
+	 * Share of keys (BatchGetItem) and write requests (BatchWriteItem) returned as unprocessed.
+	 */
+	public FakeDynamoDbServer setUnprocessedRate(double rate){
+		this.unprocessedRate = rate;
+		return this;
+	}
+
+	/**
+	 * Number of items in a table or -1 if it does not exist.
+	 */
+	public int getItemCount(String tableName){
+		Table t = tables.get(tableName);
+		return (t == null)? -1 : t.items.size();
+	}
+
+	@Override
+	protected String getName(){
+		return "DynamoDB";
+	}
+
+	@Override
+	protected Reply injectedError(){
+		return error(500, "InternalServerError", "injected error");
+	}
+
+	@Override
+	protected Reply handle(Request request) throws Exception {
+		String target = request.headers.get("x-amz-target");
+		if (!"POST".equals(request.method) || target == null || !target.contains(".")){
+			return error(400, "UnknownOperationException", "missing or invalid X-Amz-Target");
+		}
+		if (chance(throttleRate)){
+			return error(400, "ProvisionedThroughputExceededException", "injected throttling");
+		}
+		String operation = target.substring(target.indexOf('.') + 1);
+		JSONObject req = JSON.parseStringOrFail(request.body);
+		switch (operation){
+			case "ListTables":
+				JSONArray names = JSON.add(new JSONArray(), tables.keySet().toArray());
+				return ok(JSON.make("TableNames", names));
+			case "CreateTable":
+				return createTable(req);
+			case "DeleteTable":
+				return deleteTable(req);
+			case "DescribeTable":
+				Table t = getTable(req);
+				return (t == null)? notFound(req) : ok(JSON.make("Table", t.description));
+			case "GetItem":
+				return getItem(req);
+			case "BatchGetItem":
+				return batchGetItem(req);
+			case "Query":
+				return query(req);
+			case "UpdateItem":
+				return updateItem(req);
+			case "DeleteItem":
+				return deleteItem(req);
+			case "BatchWriteItem":
+				return batchWriteItem(req);
+			default:
+				return error(400, "UnknownOperationException", operation);
+		}
+	}
+
+	//--- operations ---
+
+	private Reply createTable(JSONObject req){
+		String name = JSON.getString(req, "TableName");
+		String hashKey = null;
+		for (Object o : JSON.getJArray(req, "KeySchema")){
+			JSONObject ks = (JSONObject) o;
+			if ("HASH".equals(ks.get("KeyType"))){
+				hashKey = (String) ks.get("AttributeName");
+			}
+		}
+		if (name.isEmpty() || hashKey == null){
+			return error(400, "ValidationException", "TableName and HASH key required");
+		}
+		JSONObject description = JSON.putAll(new JSONObject(), req);
+		JSON.put(description, "TableStatus", "ACTIVE");
+		JSON.put(description, "ItemCount", 0);
+		if (tables.putIfAbsent(name, new Table(name, hashKey, description)) != null){
+			return error(400, "ResourceInUseException", "Table already exists: " + name);
+		}
+		return ok(JSON.make("TableDescription", description));
+	}
+
+	private Reply deleteTable(JSONObject req){
+		Table t = tables.remove(JSON.getString(req, "TableName"));
+		if (t == null){
+			return notFound(req);
+		}
+		JSON.put(t.description, "TableStatus", "DELETING");
+		return ok(JSON.make("TableDescription", t.description));
+	}
+
+	private Reply getItem(JSONObject req){
+		Table t = getTable(req);
+		if (t == null){
+			return notFound(req);
+		}
+		JSONObject item = t.items.get(getKeyValue(t, JSON.getJObject(req, "Key")));
+		JSONObject res = new JSONObject();
+		if (item != null){
+			JSON.put(res, "Item", project(item, JSON.getString(req, "ProjectionExpression"), JSON.getJObject(req, "ExpressionAttributeNames")));
+		}
+		return ok(res);
+	}
+
+	private Reply batchGetItem(JSONObject req){
+		JSONObject responses = new JSONObject();
+		JSONObject unprocessed = new JSONObject();
+		JSONObject requestItems = JSON.getJObject(req, "RequestItems");
+		for (Object tn : requestItems.keySet()){
+			Table t = tables.get(tn);
+			if (t == null){
+				return notFound(JSON.make("TableName", tn));
+			}
+			JSONObject tableRequest = (JSONObject) requestItems.get(tn);
+			String projection = JSON.getString(tableRequest, "ProjectionExpression");
+			JSONObject names = JSON.getJObject(tableRequest, "ExpressionAttributeNames");
+			JSONArray found = new JSONArray();
+			JSONArray left = new JSONArray();
+			for (Object k : JSON.getJArray(tableRequest, "Keys")){
+				if (chance(unprocessedRate)){
+					JSON.add(left, k);
+					continue;
+				}
+				JSONObject item = t.items.get(getKeyValue(t, (JSONObject) k));
+				if (item != null){
+					JSON.add(found, project(item, projection, names));
+				}
+			}
+			JSON.put(responses, (String) tn, found);
+			if (!left.isEmpty()){
+				JSONObject leftRequest = JSON.putAll(new JSONObject(), tableRequest);
+				JSON.put(leftRequest, "Keys", left);
+				JSON.put(unprocessed, (String) tn, leftRequest);
+			}
+		}
+		return ok(JSON.make("Responses", responses, "UnprocessedKeys", unprocessed));
+	}
+
+	private Reply query(JSONObject req){
+		Table t = getTable(req);
+		if (t == null){
+			return notFound(req);
+		}
+		//only "attribute = :value" is supported
+		String condition = JSON.getString(req, "KeyConditionExpression");
+		String[] parts = condition.split("=");
+		if (parts.length != 2){
+			return error(400, "ValidationException", "unsupported KeyConditionExpression: " + condition);
+		}
+		String attribute = resolveName(parts[0].trim(), JSON.getJObject(req, "ExpressionAttributeNames"));
+		JSONObject value = JSON.getJObject(JSON.getJObject(req, "ExpressionAttributeValues"), parts[1].trim());
+		int limit = JSON.getIntegerOrDefault(req, "Limit", Integer.MAX_VALUE);
+		JSONArray found = new JSONArray();
+		for (JSONObject item : t.items.values()){
+			if (found.size() >= limit){
+				break;
+			}
+			if (value != null && value.equals(item.get(attribute))){
+				JSON.add(found, project(item, JSON.getString(req, "ProjectionExpression"), JSON.getJObject(req, "ExpressionAttributeNames")));
+			}
+		}
+		return ok(JSON.make("Items", found, "Count", found.size(), "ScannedCount", found.size()));
+	}
+
+	private Reply updateItem(JSONObject req){
+		Table t = getTable(req);
+		if (t == null){
+			return notFound(req);
+		}
+		String id = getKeyValue(t, JSON.getJObject(req, "Key"));
+		JSONObject names = JSON.getJObject(req, "ExpressionAttributeNames");
+		JSONObject values = JSON.getJObject(req, "ExpressionAttributeValues");
+		String expression = JSON.getString(req, "UpdateExpression");
+		String setPart = "";
+		String removePart = "";
+		int removeAt = expression.indexOf("REMOVE ");
+		if (removeAt >= 0){
+			removePart = expression.substring(removeAt + "REMOVE ".length());
+			expression = expression.substring(0, removeAt);
+		}
+		if (expression.trim().startsWith("SET ")){
+			setPart = expression.trim().substring("SET ".length());
+		}
+		synchronized (t){
+			JSONObject item = t.items.get(id);
+			JSONObject updated = new JSONObject();
+			if (item != null){
+				JSON.putAll(updated, deepCopy(item));
+			}else{
+				JSON.putAll(updated, JSON.getJObject(req, "Key"));
+			}
+			for (String assignment : setPart.split(",")){
+				if (assignment.trim().isEmpty()) continue;
+				String[] kv = assignment.split("=");
+				JSONObject v = JSON.getJObject(values, kv[1].trim());
+				if (!setPath(updated, resolvePath(kv[0].trim(), names), v)){
+					return error(400, "ValidationException", "The document path provided in the update expression is invalid for update");
+				}
+			}
+			for (String path : removePart.split(",")){
+				if (path.trim().isEmpty()) continue;
+				removePath(updated, resolvePath(path.trim(), names));
+			}
+			t.items.put(id, updated);
+		}
+		return ok(new JSONObject());
+	}
+
+	private Reply deleteItem(JSONObject req){
+		Table t = getTable(req);
+		if (t == null){
+			return notFound(req);
+		}
+		t.items.remove(getKeyValue(t, JSON.getJObject(req, "Key")));
+		return ok(new JSONObject());
+	}
+
+	private Reply batchWriteItem(JSONObject req){
+		JSONObject unprocessed = new JSONObject();
+		JSONObject requestItems = JSON.getJObject(req, "RequestItems");
+		for (Object tn : requestItems.keySet()){
+			Table t = tables.get(tn);
+			if (t == null){
+				return notFound(JSON.make("TableName", tn));
+			}
+			JSONArray left = new JSONArray();
+			for (Object o : (JSONArray) requestItems.get(tn)){
+				if (chance(unprocessedRate)){
+					JSON.add(left, o);
+					continue;
+				}
+				JSONObject wr = (JSONObject) o;
+				if (wr.containsKey("PutRequest")){
+					JSONObject item = JSON.getJObject(wr, new String[]{"PutRequest", "Item"});
+					t.items.put(getKeyValue(t, item), item);
+				}else{
+					t.items.remove(getKeyValue(t, JSON.getJObject(wr, new String[]{"DeleteRequest", "Key"})));
+				}
+			}
+			if (!left.isEmpty()){
+				JSON.put(unprocessed, (String) tn, left);
+			}
+		}
+		return ok(JSON.make("UnprocessedItems", unprocessed));
+	}
+
+	//--- helpers ---
+
+	private Table getTable(JSONObject req){
+		return tables.get(JSON.getString(req, "TableName"));
+	}
+
+	private static String getKeyValue(Table t, JSONObject key){
+		JSONObject k = child(key, t.hashKey);
+		if (k == null){
+			throw new IllegalArgumentException("missing key: " + t.hashKey);
+		}
+		return (String) k.get("S");
+	}
+
+	private static String resolveName(String name, JSONObject names){
+		if (name.startsWith("#") && names != null && names.containsKey(name)){
+			return (String) names.get(name);
+		}
+		return name;
+	}
+	private static List<String> resolvePath(String path, JSONObject names){
+		List<String> keys = new ArrayList<>();
+		for (String p : path.split("\\.")){
+			keys.add(resolveName(p.trim(), names));
+		}
+		return keys;
+	}
+
+	/**
+	 * Item with only the attributes of the projection (all if there is none).
+	 */
+	private static JSONObject project(JSONObject item, String projection, JSONObject names){
+		if (projection == null || projection.trim().isEmpty()){
+			return item;
+		}
+		JSONObject res = new JSONObject();
+		for (String p : projection.split(",")){
+			List<String> path = resolvePath(p.trim(), names);
+			JSONObject v = getPath(item, path);
+			if (v != null){
+				setPathCreate(res, path, v);
+			}
+		}
+		return res;
+	}
+
+	private static JSONObject getPath(JSONObject item, List<String> path){
+		JSONObject current = item;
+		for (int i=0; i<path.size(); i++){
+			JSONObject v = child(current, path.get(i));
+			if (v == null){
+				return null;
+			}
+			if (i == path.size() - 1){
+				return v;
+			}
+			current = child(v, "M");
+			if (current == null){
+				return null;
+			}
+		}
+		return null;
+	}
+
+	//set a nested value, parents must exist (like DynamoDB)
+	private static boolean setPath(JSONObject item, List<String> path, JSONObject value){
+		JSONObject parent = item;
+		for (int i=0; i<path.size()-1; i++){
+			parent = child(child(parent, path.get(i)), "M");
+			if (parent == null){
+				return false;
+			}
+		}
+		JSON.put(parent, path.get(path.size() - 1), value);
+		return true;
+	}
+	//set a nested value and create missing parents (for projections)
+	private static void setPathCreate(JSONObject item, List<String> path, JSONObject value){
+		JSONObject parent = item;
+		for (int i=0; i<path.size()-1; i++){
+			JSONObject next = child(parent, path.get(i));
+			if (next == null){
+				next = JSON.make("M", new JSONObject());
+				JSON.put(parent, path.get(i), next);
+			}
+			parent = child(next, "M");
+		}
+		JSON.put(parent, path.get(path.size() - 1), value);
+	}
+	private static void removePath(JSONObject item, List<String> path){
+		JSONObject parent = item;
+		for (int i=0; i<path.size()-1; i++){
+			parent = child(child(parent, path.get(i)), "M");
+			if (parent == null){
+				return;
+			}
+		}
+		parent.remove(path.get(path.size() - 1));
+	}
+
+	private static JSONObject child(JSONObject parent, String key){
+		return (parent == null)? null : (JSONObject) parent.get(key);
+	}
+
+	private static JSONObject deepCopy(JSONObject obj){
+		return JSON.parseString(obj.toJSONString());
+	}
+
+	private static Reply ok(JSONObject body){
+		return new Reply(200, body.toJSONString(), CONTENT_TYPE);
+	}
+	private static Reply notFound(JSONObject req){
+		return error(400, "ResourceNotFoundException", "Requested resource not found: Table: " + JSON.getString(req, "TableName") + " not found");
+	}
+	private static Reply error(int status, String type, String message){
+		return new Reply(status, JSON.make("__type", ERROR_PREFIX + type, "message", message).toJSONString(), CONTENT_TYPE);
+	}
+
+}
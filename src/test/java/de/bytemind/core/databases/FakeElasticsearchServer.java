@@ -0,0 +1,896 @@
+package de.bytemind.core.databases;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+
+import de.bytemind.core.tools.JSON;
+
+/**
+ * In-process stand-in for Elasticsearch with the REST calls that {@link Elasticsearch} uses: index create/delete, document
+ * put/post/get/delete/_update (doc, doc_as_upsert and the field remove script), _mget, _search and _msearch (URL "q" and JSON queries with match_all, match, term,
+ * terms, range, exists, ids, bool and nested, plus sort, search_after and scroll), _count, _delete_by_query and _bulk. Results are visible at once (no refresh delay).
+ * Scoring is simple (number of matched terms), so only rely on the set of hits, not on their order.<br>
+ * Use: {@code ElasticSearchConfig.setEndpoint(server.getEndpoint())}.
+ *
+ * @author Florian Quirin
+ *
+ */
+public class FakeElasticsearchServer extends FakeServer {
+
+	private static final String CONTENT_TYPE = "application/json; charset=UTF-8";
+
+	private static class Doc {
+		final String type;
+		final long version;
+		final JSONObject source;
+		Doc(String type, long version, JSONObject source){
+			this.type = type;
+			this.version = version;
+			this.source = source;
+		}
+	}
+	//index -> id -> document
+	private final Map<String, Map<String, Doc>> indices = new ConcurrentHashMap<>();
+	private final AtomicLong versions = new AtomicLong();
+
+	/**
+	 * Start a server at the port of the ElasticsearchTestSequence (21312) and keep it running.
+	 */
+	public static void main(String[] args) throws Exception {
+		int port = (args.length > 0)? Integer.parseInt(args[0]) : 21312;
+		FakeElasticsearchServer server = new FakeElasticsearchServer();
+		server.start(port);
+		System.out.println("Fake Elasticsearch running at " + server.getEndpoint() + " - stop with CTRL+C");
+		Thread.currentThread().join();
+	}
+
+	/**
+	 * Number of documents in an index or -1 if it does not exist.
+	 */
+	public int getDocumentCount(String index){
+		Map<String, Doc> docs = indices.get(index);
+		return (docs == null)? -1 : docs.size();
+	}
+
+	@Override
+	protected String getName(){
+		return "Elasticsearch";
+	}
+
+	@Override
+	protected Reply injectedError(){
+		return error(500, "injected_exception", "injected error");
+	}
+
+	@Override
+	protected Reply handle(Request request) throws Exception {
+		String path = request.path;
+		String method = request.method;
+		if (path.isEmpty()){
+			if ("GET".equals(method) || "HEAD".equals(method)){
+				return reply(200, JSON.make("name", "fake", "cluster_name", "fake", "cluster_uuid", "fake-cluster-uuid",
+						"version", JSON.make("number", "5.6.0"), "tagline", "You Know, for Search"));
+			}
+			return error(405, "method_not_allowed", method);
+		}
+		if (path.equals("_search/scroll")){
+			return scroll(request);
+		}
+		List<String> parts = new ArrayList<>(Arrays.asList(path.split("/")));
+		String api = parts.get(parts.size() - 1);
+		if (api.startsWith("_")){
+			parts.remove(parts.size() - 1);
+			switch (api){
+				case "_search":
+					return search(parts, request);
+				case "_count":
+					return count(parts, request);
+				case "_mget":
+					return mget(parts, request);
+				case "_msearch":
+					return msearch(parts, request);
+				case "_delete_by_query":
+					return deleteByQuery(parts, request);
+				case "_bulk":
+					return bulk(parts, request);
+				case "_update":
+					if (parts.size() != 3) break;
+					return update(parts.get(0), parts.get(1), parts.get(2), JSON.parseStringOrFail(request.body));
+				default:
+					break;
+			}
+			return error(400, "illegal_argument_exception", "unsupported API: " + path);
+		}
+		switch (parts.size()){
+			case 1:
+				return index(parts.get(0), request);
+			case 2:
+				if ("POST".equals(method)){
+					String id = UUID.randomUUID().toString().replace("-", "").substring(0, 20);
+					return putDocument(parts.get(0), parts.get(1), id, JSON.parseStringOrFail(request.body));
+				}
+				break;
+			case 3:
+				if ("PUT".equals(method) || "POST".equals(method)){
+					return putDocument(parts.get(0), parts.get(1), parts.get(2), JSON.parseStringOrFail(request.body));
+				}else if ("GET".equals(method)){
+					return getDocument(parts.get(0), parts.get(1), parts.get(2), request.params.get("_source"));
+				}else if ("DELETE".equals(method)){
+					return deleteDocument(parts.get(0), parts.get(1), parts.get(2));
+				}
+				break;
+			default:
+				break;
+		}
+		return error(400, "illegal_argument_exception", "unsupported request: " + method + " " + path);
+	}
+
+	//--- index ---
+
+	private Reply index(String index, Request request){
+		switch (request.method){
+			case "PUT":
+				if (indices.putIfAbsent(index, new ConcurrentHashMap<>()) != null){
+					return error(400, "index_already_exists_exception", "index [" + index + "] already exists");
+				}
+				return reply(200, JSON.make("acknowledged", true, "shards_acknowledged", true, "index", index));
+			case "DELETE":
+				boolean any = false;
+				for (String i : resolveIndices(index)){
+					any |= (indices.remove(i) != null);
+				}
+				if (!any){
+					return indexNotFound(index);
+				}
+				return reply(200, JSON.make("acknowledged", true));
+			case "GET":
+			case "HEAD":
+				if (!indices.containsKey(index)){
+					return indexNotFound(index);
+				}
+				return reply(200, JSON.make(index, JSON.make("settings", new JSONObject())));
+			default:
+				return error(405, "method_not_allowed", request.method);
+		}
+	}
+
+	//--- documents ---
+
+	private Reply putDocument(String index, String type, String id, JSONObject source){
+		Map<String, Doc> docs = indices.computeIfAbsent(index, k -> new ConcurrentHashMap<>());
+		Doc old = docs.put(id, new Doc(type, versions.incrementAndGet(), source));
+		return reply((old == null)? 201 : 200, docResult(index, type, id, (old == null)? "created" : "updated"));
+	}
+
+	private Reply getDocument(String index, String type, String id, String sourceFilter){
+		Map<String, Doc> docs = indices.get(index);
+		if (docs == null){
+			return indexNotFound(index);
+		}
+		Doc doc = docs.get(id);
+		if (doc == null || !matchesType(doc, type)){
+			return reply(404, JSON.make("_index", index, "_type", type, "_id", id, "found", false));
+		}
+		JSONObject res = JSON.make("_index", index, "_type", doc.type, "_id", id, "_version", doc.version);
+		JSON.put(res, "found", true);
+		JSONObject source = filterSource(doc.source, sourceFilter);
+		if (source != null){
+			JSON.put(res, "_source", source);
+		}
+		return reply(200, res);
+	}
+
+	//docs of "docs" (with _index, _type, _id, _source) or "ids", in request order
+	private Reply mget(List<String> parts, Request request){
+		JSONObject body = JSON.parseStringOrFail(request.body);
+		String defaultIndex = (parts.size() > 0)? parts.get(0) : null;
+		String defaultType = (parts.size() > 1)? parts.get(1) : null;
+		Object defaultFilter = request.params.get("_source");
+		List<JSONObject> requested = new ArrayList<>();
+		if (body.get("ids") instanceof JSONArray){
+			for (Object id : (JSONArray) body.get("ids")){
+				requested.add(JSON.make("_id", String.valueOf(id)));
+			}
+		}else if (body.get("docs") instanceof JSONArray){
+			for (Object d : (JSONArray) body.get("docs")){
+				requested.add((JSONObject) d);
+			}
+		}else{
+			return error(400, "action_request_validation_exception", "Validation Failed: 1: no documents to get;");
+		}
+		JSONArray resDocs = new JSONArray();
+		for (JSONObject r : requested){
+			String index = r.containsKey("_index")? (String) r.get("_index") : defaultIndex;
+			String type = r.containsKey("_type")? (String) r.get("_type") : defaultType;
+			String id = String.valueOf(r.get("_id"));
+			Object filter = r.containsKey("_source")? r.get("_source") : defaultFilter;
+			if (index == null){
+				return error(400, "action_request_validation_exception", "Validation Failed: 1: index is missing for doc 0;");
+			}
+			Map<String, Doc> docs = indices.get(index);
+			if (docs == null){
+				JSON.add(resDocs, JSON.make("_index", index, "_type", type, "_id", id,
+						"error", JSON.make("type", "index_not_found_exception", "reason", "no such index")));
+				continue;
+			}
+			Doc doc = docs.get(id);
+			if (doc == null || !matchesType(doc, type)){
+				JSON.add(resDocs, JSON.make("_index", index, "_type", type, "_id", id, "found", false));
+				continue;
+			}
+			JSONObject res = JSON.make("_index", index, "_type", doc.type, "_id", id, "_version", doc.version, "found", true);
+			JSONObject source = filterSource(doc.source, filter);
+			if (source != null){
+				JSON.put(res, "_source", source);
+			}
+			JSON.add(resDocs, res);
+		}
+		return reply(200, JSON.make("docs", resDocs));
+	}
+
+	private Reply deleteDocument(String index, String type, String id){
+		Map<String, Doc> docs = indices.get(index);
+		Doc old = (docs == null)? null : docs.remove(id);
+		JSONObject res = docResult(index, type, id, (old == null)? "not_found" : "deleted");
+		JSON.put(res, "found", old != null);
+		return reply((old == null)? 404 : 200, res);
+	}
+
+	private Reply update(String index, String type, String id, JSONObject body){
+		Map<String, Doc> docs = indices.computeIfAbsent(index, k -> new ConcurrentHashMap<>());
+		synchronized (docs){
+			Doc doc = docs.get(id);
+			JSONObject source;
+			if (body.containsKey("doc")){
+				if (doc == null && !Boolean.TRUE.equals(body.get("doc_as_upsert"))){
+					return error(404, "document_missing_exception", "[" + type + "][" + id + "]: document missing");
+				}
+				source = (doc == null)? new JSONObject() : deepCopy(doc.source);
+				merge(source, (JSONObject) body.get("doc"));
+			}else if (body.containsKey("script")){
+				if (doc == null){
+					return error(404, "document_missing_exception", "[" + type + "][" + id + "]: document missing");
+				}
+				source = deepCopy(doc.source);
+				if (!runScript(source, (JSONObject) body.get("script"))){
+					return error(400, "illegal_argument_exception", "unsupported script: " + body.get("script"));
+				}
+			}else{
+				return error(400, "action_request_validation_exception", "script or doc is missing");
+			}
+			docs.put(id, new Doc(type, versions.incrementAndGet(), source));
+			return reply(200, docResult(index, type, id, "updated"));
+		}
+	}
+
+	//only the script of 'Elasticsearch.deleteFromDocument': ctx._source[.path].remove(params.remField)
+	private static boolean runScript(JSONObject source, JSONObject script){
+		String inline = JSON.getString(script, "inline");
+		if (inline.isEmpty()){
+			inline = JSON.getString(script, "source");
+		}
+		if (!inline.startsWith("ctx._source") || !inline.endsWith(".remove(params.remField)")){
+			return false;
+		}
+		String path = inline.substring("ctx._source".length(), inline.length() - ".remove(params.remField)".length());
+		JSONObject target = source;
+		for (String p : path.split("\\.")){
+			if (p.isEmpty()) continue;
+			Object o = target.get(p);
+			if (!(o instanceof JSONObject)){
+				return true;
+			}
+			target = (JSONObject) o;
+		}
+		target.remove(JSON.getString(JSON.getJObject(script, "params"), "remField"));
+		return true;
+	}
+
+	//--- search ---
+
+	private static class Hit {
+		final String index;
+		final String id;
+		final Doc doc;
+		final double score;
+		Hit(String index, String id, Doc doc, double score){
+			this.index = index;
+			this.id = id;
+			this.doc = doc;
+			this.score = score;
+		}
+	}
+
+	private List<Hit> findAll(List<String> parts, JSONObject query){
+		String type = (parts.size() > 1)? parts.get(1) : null;
+		List<Hit> hits = new ArrayList<>();
+		for (String index : resolveIndices((parts.isEmpty())? "_all" : parts.get(0))){
+			Map<String, Doc> docs = indices.get(index);
+			if (docs == null) continue;
+			for (Map.Entry<String, Doc> e : docs.entrySet()){
+				if (!matchesType(e.getValue(), type)) continue;
+				double score = (query == null)? 1.0 : score(e.getKey(), e.getValue().source, query);
+				if (score > 0){
+					hits.add(new Hit(index, e.getKey(), e.getValue(), score));
+				}
+			}
+		}
+		//best first, then by ID to get a stable order
+		hits.sort((a, b) -> (a.score != b.score)? Double.compare(b.score, a.score) : a.id.compareTo(b.id));
+		return hits;
+	}
+
+	private Reply search(List<String> parts, Request request){
+		JSONObject body = (request.body == null || request.body.trim().isEmpty())? new JSONObject() : JSON.parseStringOrFail(request.body);
+		JSONObject query = getQuery(body, request);
+		List<Hit> hits = findAll(parts, query);
+		List<SortKey> sort = parseSort(body.get("sort"));
+		if (!sort.isEmpty()){
+			hits.sort((a, b) -> compareHits(a, b, sort));
+		}
+
+		int from = JSON.getIntegerOrDefault(body, "from", parseInt(request.params.get("from"), 0));
+		int size = JSON.getIntegerOrDefault(body, "size", parseInt(request.params.get("size"), 10));
+		Object sourceFilter = body.containsKey("_source")? body.get("_source") : request.params.get("_source");
+
+		//search_after - only hits behind the given sort values
+		JSONArray after = (JSONArray) body.get("search_after");
+		if (after != null){
+			if (sort.isEmpty()){
+				return error(400, "illegal_argument_exception", "sort must be specified when [search_after] is used");
+			}
+			List<Hit> behind = new ArrayList<>();
+			for (Hit h : hits){
+				if (compareValues(sortValues(h, sort), after, sort) > 0){
+					behind.add(h);
+				}
+			}
+			hits = behind;
+		}
+
+		JSONObject res = JSON.make("took", 1, "timed_out", false, "_shards", JSON.make("total", 1, "successful", 1, "failed", 0));
+		//scroll - keep the result list and hand out pages on '_search/scroll'
+		if (request.params.containsKey("scroll")){
+			List<Hit> rest = hits.subList(Math.min(from, hits.size()), hits.size());
+			Scroll scroll = new Scroll(new ArrayList<>(rest), size, sourceFilter, sort);
+			String scrollId = UUID.randomUUID().toString().replace("-", "");
+			scrolls.put(scrollId, scroll);
+			JSON.put(res, "_scroll_id", scrollId);
+			JSON.put(res, "hits", renderHits(scroll.nextPage(), hits.size(), sourceFilter, sort));
+			return reply(200, res);
+		}
+		List<Hit> page = hits.subList(Math.min(from, hits.size()), Math.min(hits.size(), from + size));
+		JSON.put(res, "hits", renderHits(page, hits.size(), sourceFilter, sort));
+		return reply(200, res);
+	}
+
+	//pairs of header and query lines, every search is answered on its own (with "status" like ES 6+)
+	private Reply msearch(List<String> parts, Request request){
+		String[] lines = request.body.split("\n");
+		JSONArray responses = new JSONArray();
+		for (int i=0; i+1<lines.length; i+=2){
+			if (lines[i].trim().isEmpty()){
+				i--;
+				continue;
+			}
+			JSONObject header = JSON.parseStringOrFail(lines[i]);
+			List<String> searchParts = new ArrayList<>();
+			String index = header.containsKey("index")? String.valueOf(header.get("index")) : ((parts.size() > 0)? parts.get(0) : null);
+			String type = header.containsKey("type")? String.valueOf(header.get("type")) : ((parts.size() > 1)? parts.get(1) : null);
+			if (index != null){
+				searchParts.add(index);
+				if (type != null) searchParts.add(type);
+			}
+			Reply reply;
+			try{
+				reply = search(searchParts, new Request("POST", String.join("/", searchParts), new HashMap<>(), request.headers, lines[i + 1]));
+			}catch (Exception e){
+				reply = error(500, "exception", e.toString());
+			}
+			JSONObject res = JSON.parseStringOrFail(reply.body);
+			JSON.put(res, "status", reply.status);
+			JSON.add(responses, res);
+		}
+		return reply(200, JSON.make("took", 1, "responses", responses));
+	}
+
+	private static JSONObject renderHits(List<Hit> page, int total, Object sourceFilter, List<SortKey> sort){
+		JSONArray resHits = new JSONArray();
+		double maxScore = 0;
+		for (Hit h : page){
+			JSONObject hit = JSON.make("_index", h.index, "_type", h.doc.type, "_id", h.id, "_score", h.score);
+			JSONObject source = filterSource(h.doc.source, sourceFilter);
+			if (source != null){
+				JSON.put(hit, "_source", source);
+			}
+			if (!sort.isEmpty()){
+				JSON.put(hit, "sort", sortValues(h, sort));
+			}
+			JSON.add(resHits, hit);
+			maxScore = Math.max(maxScore, h.score);
+		}
+		return JSON.make("total", total, "max_score", maxScore, "hits", resHits);
+	}
+
+	//--- scroll ---
+
+	private static class Scroll {
+		final List<Hit> hits;
+		final int size;
+		final Object sourceFilter;
+		final List<SortKey> sort;
+		int pos = 0;
+		Scroll(List<Hit> hits, int size, Object sourceFilter, List<SortKey> sort){
+			this.hits = hits;
+			this.size = size;
+			this.sourceFilter = sourceFilter;
+			this.sort = sort;
+		}
+		synchronized List<Hit> nextPage(){
+			List<Hit> page = hits.subList(pos, Math.min(hits.size(), pos + size));
+			pos += page.size();
+			return page;
+		}
+	}
+	private final Map<String, Scroll> scrolls = new ConcurrentHashMap<>();
+
+	/**
+	 * Number of scroll contexts that were not cleared yet.
+	 */
+	public int getOpenScrollCount(){
+		return scrolls.size();
+	}
+
+	private Reply scroll(Request request){
+		JSONObject body = (request.body == null || request.body.trim().isEmpty())? new JSONObject() : JSON.parseStringOrFail(request.body);
+		if ("DELETE".equals(request.method)){
+			Object ids = body.get("scroll_id");
+			List<?> idList = (ids instanceof JSONArray)? (JSONArray) ids : Arrays.asList(ids);
+			int freed = 0;
+			for (Object id : idList){
+				if (id != null && scrolls.remove(id.toString()) != null){
+					freed++;
+				}
+			}
+			return reply((freed > 0)? 200 : 404, JSON.make("succeeded", true, "num_freed", freed));
+		}
+		String scrollId = JSON.getString(body, "scroll_id");
+		Scroll scroll = scrolls.get(scrollId);
+		if (scroll == null){
+			return error(404, "search_context_missing_exception", "No search context found for id [" + scrollId + "]");
+		}
+		JSONObject res = JSON.make("_scroll_id", scrollId, "took", 1, "timed_out", false, "_shards", JSON.make("total", 1, "successful", 1, "failed", 0));
+		JSON.put(res, "hits", renderHits(scroll.nextPage(), scroll.hits.size(), scroll.sourceFilter, scroll.sort));
+		return reply(200, res);
+	}
+
+	//--- sort ---
+
+	private static class SortKey {
+		final String field;
+		final boolean desc;
+		SortKey(String field, boolean desc){
+			this.field = field;
+			this.desc = desc;
+		}
+	}
+
+	//"field", {"field":"desc"}, {"field":{"order":"desc"}} or an array of these
+	private static List<SortKey> parseSort(Object sort){
+		List<SortKey> keys = new ArrayList<>();
+		if (sort == null){
+			return keys;
+		}
+		List<?> entries = (sort instanceof JSONArray)? (JSONArray) sort : Arrays.asList(sort);
+		for (Object e : entries){
+			if (e instanceof String){
+				keys.add(new SortKey((String) e, e.equals("_score")));
+			}else if (e instanceof JSONObject){
+				for (Object o : ((JSONObject) e).entrySet()){
+					Map.Entry<?, ?> entry = (Map.Entry<?, ?>) o;
+					Object order = entry.getValue();
+					if (order instanceof JSONObject){
+						order = ((JSONObject) order).get("order");
+					}
+					keys.add(new SortKey(entry.getKey().toString(), "desc".equals(order)));
+				}
+			}
+		}
+		return keys;
+	}
+
+	//"_doc" is the ID here (stable order)
+	@SuppressWarnings("unchecked")
+	private static JSONArray sortValues(Hit h, List<SortKey> sort){
+		JSONArray values = new JSONArray();
+		for (SortKey k : sort){
+			if (k.field.equals("_id") || k.field.equals("_uid") || k.field.equals("_doc")){
+				values.add(h.id);
+			}else if (k.field.equals("_score")){
+				values.add(h.score);
+			}else{
+				List<Object> v = getValues(h.doc.source, k.field);
+				values.add(v.isEmpty()? null : v.get(0));
+			}
+		}
+		return values;
+	}
+
+	private static int compareHits(Hit a, Hit b, List<SortKey> sort){
+		return compareValues(sortValues(a, sort), sortValues(b, sort), sort);
+	}
+
+	private static int compareValues(List<?> a, List<?> b, List<SortKey> sort){
+		for (int i=0; i<sort.size(); i++){
+			Object va = (i < a.size())? a.get(i) : null;
+			Object vb = (i < b.size())? b.get(i) : null;
+			int c;
+			if (va == null || vb == null){
+				//missing values last in both directions
+				c = (va == vb)? 0 : ((va == null)? 1 : -1);
+				if (c != 0) return c;
+				continue;
+			}else if (va instanceof Number && vb instanceof Number){
+				c = Double.compare(((Number) va).doubleValue(), ((Number) vb).doubleValue());
+			}else{
+				c = va.toString().compareTo(vb.toString());
+			}
+			if (c != 0){
+				return sort.get(i).desc? -c : c;
+			}
+		}
+		return 0;
+	}
+
+	private Reply count(List<String> parts, Request request){
+		JSONObject body = (request.body == null || request.body.trim().isEmpty())? new JSONObject() : JSON.parseStringOrFail(request.body);
+		return reply(200, JSON.make("count", findAll(parts, getQuery(body, request)).size(),
+				"_shards", JSON.make("total", 1, "successful", 1, "failed", 0)));
+	}
+
+	private Reply deleteByQuery(List<String> parts, Request request){
+		JSONObject body = JSON.parseStringOrFail(request.body);
+		List<Hit> hits = findAll(parts, getQuery(body, request));
+		int deleted = 0;
+		for (Hit h : hits){
+			Map<String, Doc> docs = indices.get(h.index);
+			if (docs != null && docs.remove(h.id) != null){
+				deleted++;
+			}
+		}
+		return reply(200, JSON.make("took", 1, "timed_out", false, "total", hits.size(), "deleted", deleted,
+				"failures", new JSONArray()));
+	}
+
+	//query from body or from URL parameter 'q' (null means all)
+	private static JSONObject getQuery(JSONObject body, Request request){
+		if (body.containsKey("query")){
+			return (JSONObject) body.get("query");
+		}
+		String q = request.params.get("q");
+		if (q == null || q.isEmpty() || q.equals("*")){
+			return null;
+		}
+		int colon = q.indexOf(':');
+		if (colon > 0){
+			return JSON.make("match", JSON.make(q.substring(0, colon), q.substring(colon + 1)));
+		}
+		return JSON.make("match", JSON.make("_all", q));
+	}
+
+	/**
+	 * Score of a document for a query, 0 means no match. Unknown query types throw an exception (HTTP 500).
+	 */
+	@SuppressWarnings("unchecked")
+	private static double score(String id, JSONObject source, JSONObject query){
+		if (query.containsKey("match_all")){
+			return 1.0;
+		}else if (query.containsKey("match") || query.containsKey("match_phrase")){
+			JSONObject m = (JSONObject) (query.containsKey("match")? query.get("match") : query.get("match_phrase"));
+			String field = (String) m.keySet().iterator().next();
+			Object value = m.get(field);
+			boolean and = false;
+			if (value instanceof JSONObject){
+				and = "and".equalsIgnoreCase(JSON.getString((JSONObject) value, "operator"));
+				value = ((JSONObject) value).get("query");
+			}
+			Set<String> queryTerms = tokens(String.valueOf(value));
+			Set<String> docTerms = new HashSet<>();
+			for (Object v : getValues(source, field)){
+				docTerms.addAll(tokens(String.valueOf(v)));
+			}
+			int matched = 0;
+			for (String t : queryTerms){
+				if (docTerms.contains(t)) matched++;
+			}
+			if (matched == 0 || (and && matched < queryTerms.size())){
+				return 0;
+			}
+			return matched;
+		}else if (query.containsKey("term") || query.containsKey("terms")){
+			boolean single = query.containsKey("term");
+			JSONObject m = (JSONObject) (single? query.get("term") : query.get("terms"));
+			String field = (String) m.keySet().iterator().next();
+			Object value = m.get(field);
+			Collection<Object> wanted;
+			if (single){
+				if (value instanceof JSONObject) value = ((JSONObject) value).get("value");
+				wanted = Arrays.asList(value);
+			}else{
+				wanted = (JSONArray) value;
+			}
+			for (Object v : getValues(source, field)){
+				for (Object w : wanted){
+					if (String.valueOf(v).equals(String.valueOf(w))) return 1.0;
+				}
+			}
+			return 0;
+		}else if (query.containsKey("ids")){
+			JSONArray values = JSON.getJArray(JSON.getJObject(query, "ids"), "values");
+			return (values != null && values.contains(id))? 1.0 : 0;
+		}else if (query.containsKey("exists")){
+			return getValues(source, JSON.getString(JSON.getJObject(query, "exists"), "field")).isEmpty()? 0 : 1.0;
+		}else if (query.containsKey("range")){
+			JSONObject m = JSON.getJObject(query, "range");
+			String field = (String) m.keySet().iterator().next();
+			JSONObject r = (JSONObject) m.get(field);
+			for (Object v : getValues(source, field)){
+				if (inRange(v, r)) return 1.0;
+			}
+			return 0;
+		}else if (query.containsKey("nested")){
+			return score(id, source, JSON.getJObject(JSON.getJObject(query, "nested"), "query"));
+		}else if (query.containsKey("bool")){
+			JSONObject b = JSON.getJObject(query, "bool");
+			double total = 0;
+			List<JSONObject> must = clauses(b.get("must"));
+			must.addAll(clauses(b.get("filter")));
+			for (JSONObject q : must){
+				double s = score(id, source, q);
+				if (s <= 0) return 0;
+				total += s;
+			}
+			for (JSONObject q : clauses(b.get("must_not"))){
+				if (score(id, source, q) > 0) return 0;
+			}
+			List<JSONObject> should = clauses(b.get("should"));
+			int minShould = JSON.getIntegerOrDefault(b, "minimum_should_match", (must.isEmpty() && !should.isEmpty())? 1 : 0);
+			int matchedShould = 0;
+			for (JSONObject q : should){
+				double s = score(id, source, q);
+				if (s > 0){
+					matchedShould++;
+					total += s;
+				}
+			}
+			if (matchedShould < minShould){
+				return 0;
+			}
+			return Math.max(total, 1.0);
+		}
+		throw new IllegalArgumentException("unsupported query: " + query.toJSONString());
+	}
+
+	private static List<JSONObject> clauses(Object o){
+		List<JSONObject> list = new ArrayList<>();
+		if (o instanceof JSONObject){
+			list.add((JSONObject) o);
+		}else if (o instanceof JSONArray){
+			for (Object q : (JSONArray) o){
+				list.add((JSONObject) q);
+			}
+		}
+		return list;
+	}
+
+	private static boolean inRange(Object v, JSONObject r){
+		if (!(v instanceof Number)){
+			return false;
+		}
+		double d = ((Number) v).doubleValue();
+		if (r.get("gt") instanceof Number && !(d > ((Number) r.get("gt")).doubleValue())) return false;
+		if (r.get("gte") instanceof Number && !(d >= ((Number) r.get("gte")).doubleValue())) return false;
+		if (r.get("lt") instanceof Number && !(d < ((Number) r.get("lt")).doubleValue())) return false;
+		if (r.get("lte") instanceof Number && !(d <= ((Number) r.get("lte")).doubleValue())) return false;
+		return true;
+	}
+
+	//splits at everything but letters, digits, '_' and dots inside words
+	private static final Pattern TOKEN_SPLIT = Pattern.compile("[^\\p{L}\\p{N}_.]+|(?<![\\p{L}\\p{N}])\\.|\\.(?![\\p{L}\\p{N}])");
+
+	//lower-case words (like the standard analyzer, roughly)
+	private static Set<String> tokens(String text){
+		Set<String> tokens = new HashSet<>();
+		for (String t : TOKEN_SPLIT.split(text.toLowerCase())){
+			if (!t.isEmpty()){
+				tokens.add(t);
+			}
+		}
+		return tokens;
+	}
+
+	/**
+	 * All leaf values at a dotted path (arrays are flattened). "_all" gives all values of the document.
+	 */
+	private static List<Object> getValues(Object source, String field){
+		List<Object> values = new ArrayList<>();
+		if (field.equals("_all")){
+			collectAll(source, values);
+		}else{
+			collect(source, field.split("\\."), 0, values);
+		}
+		return values;
+	}
+	private static void collect(Object o, String[] path, int i, List<Object> values){
+		if (o == null){
+			return;
+		}
+		if (o instanceof JSONArray){
+			for (Object e : (JSONArray) o){
+				collect(e, path, i, values);
+			}
+		}else if (i == path.length){
+			values.add(o);
+		}else if (o instanceof JSONObject){
+			collect(((JSONObject) o).get(path[i]), path, i + 1, values);
+		}
+	}
+	private static void collectAll(Object o, List<Object> values){
+		if (o instanceof JSONObject){
+			for (Object v : ((JSONObject) o).values()) collectAll(v, values);
+		}else if (o instanceof JSONArray){
+			for (Object v : (JSONArray) o) collectAll(v, values);
+		}else if (o != null){
+			values.add(o);
+		}
+	}
+
+	//--- bulk ---
+
+	private Reply bulk(List<String> parts, Request request){
+		String[] lines = request.body.split("\n");
+		JSONArray items = new JSONArray();
+		boolean errors = false;
+		for (int i=0; i<lines.length; i++){
+			if (lines[i].trim().isEmpty()) continue;
+			JSONObject actionLine = JSON.parseStringOrFail(lines[i]);
+			String action = (String) actionLine.keySet().iterator().next();
+			JSONObject meta = (JSONObject) actionLine.get(action);
+			String index = meta.containsKey("_index")? JSON.getString(meta, "_index") : (parts.isEmpty()? "" : parts.get(0));
+			String type = meta.containsKey("_type")? JSON.getString(meta, "_type") : ((parts.size() > 1)? parts.get(1) : "doc");
+			String id = meta.containsKey("_id")? JSON.getString(meta, "_id") : UUID.randomUUID().toString().replace("-", "").substring(0, 20);
+			Reply r;
+			switch (action){
+				case "index":
+				case "create":
+					r = putDocument(index, type, id, JSON.parseStringOrFail(lines[++i]));
+					break;
+				case "update":
+					r = update(index, type, id, JSON.parseStringOrFail(lines[++i]));
+					break;
+				case "delete":
+					r = deleteDocument(index, type, id);
+					break;
+				default:
+					return error(400, "illegal_argument_exception", "unknown bulk action: " + action);
+			}
+			JSONObject item = JSON.parseStringOrFail(r.body);
+			if (!item.containsKey("_id")){
+				JSON.put(item, "_index", index);
+				JSON.put(item, "_type", type);
+				JSON.put(item, "_id", id);
+			}
+			JSON.put(item, "status", r.status);
+			if (r.status >= 300 && !(r.status == 404 && action.equals("delete"))){
+				errors = true;
+			}
+			JSON.add(items, JSON.make(action, item));
+		}
+		return reply(200, JSON.make("took", 1, "errors", errors, "items", items));
+	}
+
+	//--- helpers ---
+
+	private Collection<String> resolveIndices(String index){
+		if (index.equals("_all") || index.equals("*")){
+			return new ArrayList<>(indices.keySet());
+		}
+		return Arrays.asList(index.split(","));
+	}
+
+	private static boolean matchesType(Doc doc, String type){
+		return type == null || type.isEmpty() || type.equals("_all") || type.equals(doc.type);
+	}
+
+	/**
+	 * Apply a "_source" filter: null/true for all, false for none, "a,b" or ["a","b"] or {"includes":[..]} for some fields.
+	 */
+	private static JSONObject filterSource(JSONObject source, Object filter){
+		if (filter == null || Boolean.TRUE.equals(filter) || "true".equals(filter)){
+			return source;
+		}
+		if (Boolean.FALSE.equals(filter) || "false".equals(filter)){
+			return null;
+		}
+		List<String> fields = new ArrayList<>();
+		if (filter instanceof String){
+			fields.addAll(Arrays.asList(((String) filter).split(",")));
+		}else if (filter instanceof JSONArray){
+			for (Object f : (JSONArray) filter) fields.add((String) f);
+		}else if (filter instanceof JSONObject){
+			Object inc = ((JSONObject) filter).get("includes");
+			if (inc == null){
+				return source;
+			}
+			return filterSource(source, inc);
+		}
+		JSONObject res = new JSONObject();
+		for (String f : fields){
+			String[] path = f.trim().split("\\.");
+			Object v = source;
+			for (String p : path){
+				v = (v instanceof JSONObject)? ((JSONObject) v).get(p) : null;
+			}
+			if (v != null){
+				JSON.putWithDotPath(res, f.trim(), v);
+			}
+		}
+		return res;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static void merge(JSONObject target, JSONObject changes){
+		for (Object k : changes.keySet()){
+			Object v = changes.get(k);
+			Object old = target.get(k);
+			if (v instanceof JSONObject && old instanceof JSONObject){
+				merge((JSONObject) old, (JSONObject) v);
+			}else{
+				target.put(k, v);
+			}
+		}
+	}
+
+	private static JSONObject deepCopy(JSONObject obj){
+		return JSON.parseString(obj.toJSONString());
+	}
+
+	private static int parseInt(String s, int defaultValue){
+		try{
+			return (s == null)? defaultValue : Integer.parseInt(s);
+		}catch (NumberFormatException e){
+			return defaultValue;
+		}
+	}
+
+	private static JSONObject docResult(String index, String type, String id, String result){
+		JSONObject res = JSON.make("_index", index, "_type", type, "_id", id, "result", result);
+		JSON.put(res, "_shards", JSON.make("total", 1, "successful", 1, "failed", 0));
+		return res;
+	}
+
+	private static Reply reply(int status, JSONObject body){
+		return new Reply(status, body.toJSONString(), CONTENT_TYPE);
+	}
+	private static Reply indexNotFound(String index){
+		return error(404, "index_not_found_exception", "no such index [" + index + "]");
+	}
+	private static Reply error(int status, String type, String reason){
+		JSONObject cause = JSON.make("type", type, "reason", reason);
+		return reply(status, JSON.make("error", JSON.make("root_cause", JSON.makeArray(cause), "type", type, "reason", reason), "status", status));
+	}
+
+}
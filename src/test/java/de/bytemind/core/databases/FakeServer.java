@@ -0,0 +1,316 @@
+package de.bytemind.core.databases;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import de.bytemind.core.tools.Debugger;
+import de.bytemind.core.tools.Timer;
+
+/**
+ * Base of the in-process stand-in servers for DynamoDB and Elasticsearch. Handles HTTP, injected latency and injected errors,
+ * the subclasses only implement the API. Data is kept in memory and is lost on stop.<br>
+ * Like Elasticsearch it accepts gzipped request bodies and gzips responses of 1KB or more if the client asks for it.
+ *
+ * @author Florian Quirin
+ *
+ */
+public abstract class FakeServer implements Closeable {
+
+	static {
+		//without this the JDK server waits for delayed ACKs (~40ms) between headers and body, must be set before the first server is created
+		if (System.getProperty("sun.net.httpserver.nodelay") == null){
+			System.setProperty("sun.net.httpserver.nodelay", "true");
+		}
+	}
+
+	private HttpServer server;
+	private ExecutorService executor;
+	private int threads = 64;
+
+	//fault injection
+	private volatile long minLatency = 0;
+	private volatile long maxLatency = 0;
+	private volatile double errorRate = 0.0;
+
+	//counters
+	private final LongAdder requests = new LongAdder();
+	private final LongAdder injectedErrors = new LongAdder();
+	private final LongAdder compressedRequests = new LongAdder();
+	private final LongAdder compressedResponses = new LongAdder();
+
+	private static final int COMPRESS_MIN_SIZE = 1024;
+
+	/**
+	 * Reply of the API implementation.
+	 */
+	protected static class Reply {
+		final int status;
+		final String body;
+		final String contentType;
+		protected Reply(int status, String body, String contentType){
+			this.status = status;
+			this.body = body;
+			this.contentType = contentType;
+		}
+	}
+
+	/**
+	 * Request as seen by the API implementation.
+	 */
+	protected static class Request {
+		final String method;
+		final String path;						//without leading and trailing "/"
+		final Map<String, String> params;		//URL parameters
+		final Map<String, String> headers;		//lower-case names
+		final String body;
+		Request(String method, String path, Map<String, String> params, Map<String, String> headers, String body){
+			this.method = method;
+			this.path = path;
+			this.params = params;
+			this.headers = headers;
+			this.body = body;
+		}
+	}
+
+	/**
+	 * Answer a request.
+	 */
+	protected abstract Reply handle(Request request) throws Exception;
+
+	/**
+	 * Reply used for injected errors (e.g. HTTP 500 in the format of the API).
+	 */
+	protected abstract Reply injectedError();
+
+	/**
+	 * Name used in logs.
+	 */
+	protected abstract String getName();
+
+	/**
+	 * Start the server on localhost.
+	 * @param port - port or 0 for any free one (see {@link #getPort()})
+	 * @return this
+	 */
+	public synchronized FakeServer start(int port) throws IOException {
+		stop();
+		HttpServer s = HttpServer.create(new InetSocketAddress("localhost", port), 0);
+		s.createContext("/", this::exchange);
+		executor = Executors.newFixedThreadPool(threads, r -> {
+			Thread t = new Thread(r, getName() + "-fake");
+			t.setDaemon(true);
+			return t;
+		});
+		s.setExecutor(executor);
+		//the dispatcher thread inherits the daemon flag of the thread that starts it, daemon so test programs can just end
+		Thread starter = new Thread(s::start);
+		starter.setDaemon(true);
+		starter.start();
+		try{
+			starter.join();
+		}catch (InterruptedException e){
+			Thread.currentThread().interrupt();
+		}
+		server = s;
+		Debugger.println(getName() + " fake server - started at " + getEndpoint(), 3);
+		return this;
+	}
+
+	/**
+	 * Stop the server if it is running.
+	 */
+	public synchronized void stop(){
+		if (server != null){
+			server.stop(0);
+			server = null;
+		}
+		if (executor != null){
+			executor.shutdownNow();
+			executor = null;
+		}
+	}
+	@Override
+	public void close(){
+		stop();
+	}
+
+	/**
+	 * Port the server is listening on or -1.
+	 */
+	public synchronized int getPort(){
+		return (server == null)? -1 : server.getAddress().getPort();
+	}
+	/**
+	 * URL of the server, e.g. "http://localhost:21312".
+	 */
+	public String getEndpoint(){
+		return "http://localhost:" + getPort();
+	}
+
+	/**
+	 * Number of threads handling requests (default 64), must be set before start. With injected latency this limits the concurrency
+	 * like a real server would.
+	 */
+	public FakeServer setThreads(int threads){
+		this.threads = threads;
+		return this;
+	}
+	/**
+	 * Add latency to every request, a random value between min and max.
+	 * @param minMs - min. latency in ms
+	 * @param maxMs - max. latency in ms
+	 */
+	public FakeServer setLatency(long minMs, long maxMs){
+		this.minLatency = minMs;
+		this.maxLatency = Math.max(minMs, maxMs);
+		return this;
+	}
+	/**
+	 * Share of requests that fail with a server error.
+	 * @param rate - 0.0 (never) to 1.0 (always)
+	 */
+	public FakeServer setErrorRate(double rate){
+		this.errorRate = rate;
+		return this;
+	}
+
+	public long getRequestCount(){
+		return requests.sum();
+	}
+	public long getInjectedErrorCount(){
+		return injectedErrors.sum();
+	}
+	/**
+	 * Requests with a gzipped body.
+	 */
+	public long getCompressedRequestCount(){
+		return compressedRequests.sum();
+	}
+	/**
+	 * Responses that were sent gzipped.
+	 */
+	public long getCompressedResponseCount(){
+		return compressedResponses.sum();
+	}
+
+	/**
+	 * True with the given probability.
+	 */
+	protected static boolean chance(double rate){
+		return rate > 0.0 && ThreadLocalRandom.current().nextDouble() < rate;
+	}
+
+	//--- HTTP ---
+
+	private void exchange(HttpExchange exchange) throws IOException {
+		try{
+			requests.increment();
+			InputStream in = exchange.getRequestBody();
+			if ("gzip".equalsIgnoreCase(exchange.getRequestHeaders().getFirst("Content-Encoding"))){
+				compressedRequests.increment();
+				in = new GZIPInputStream(in);
+			}
+			String body = readBody(in);
+
+			//latency
+			long min = minLatency;
+			long max = maxLatency;
+			if (max > 0){
+				Timer.threadSleep((max > min)? ThreadLocalRandom.current().nextLong(min, max + 1) : min);
+			}
+
+			Reply reply;
+			if (chance(errorRate)){
+				injectedErrors.increment();
+				reply = injectedError();
+			}else{
+				Map<String, String> headers = new HashMap<>();
+				for (Map.Entry<String, List<String>> h : exchange.getRequestHeaders().entrySet()){
+					if (!h.getValue().isEmpty()){
+						headers.put(h.getKey().toLowerCase(), h.getValue().get(0));
+					}
+				}
+				String path = exchange.getRequestURI().getRawPath();
+				path = URLDecoder.decode(path.replaceAll("^/+|/+$", ""), "UTF-8");
+				Request request = new Request(exchange.getRequestMethod(), path, parseParams(exchange.getRequestURI().getRawQuery()), headers, body);
+				try{
+					reply = handle(request);
+				}catch (Exception e){
+					reply = new Reply(500, "{\"error\":\"" + e.toString().replace("\"", "'") + "\"}", "application/json");
+				}
+			}
+
+			byte[] out = (reply.body == null)? new byte[0] : reply.body.getBytes(StandardCharsets.UTF_8);
+			exchange.getResponseHeaders().set("Content-Type", reply.contentType);
+			String accept = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+			if (out.length >= COMPRESS_MIN_SIZE && accept != null && accept.toLowerCase().contains("gzip")){
+				compressedResponses.increment();
+				out = gzip(out);
+				exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+			}
+			if ("HEAD".equals(exchange.getRequestMethod()) || out.length == 0){
+				exchange.sendResponseHeaders(reply.status, -1);
+			}else{
+				exchange.sendResponseHeaders(reply.status, out.length);
+				try (OutputStream os = exchange.getResponseBody()){
+					os.write(out);
+				}
+			}
+		}finally{
+			exchange.close();
+		}
+	}
+
+	private static String readBody(InputStream in) throws IOException {
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		byte[] buffer = new byte[8192];
+		int n;
+		while ((n = in.read(buffer)) != -1){
+			bos.write(buffer, 0, n);
+		}
+		return new String(bos.toByteArray(), StandardCharsets.UTF_8);
+	}
+
+	private static byte[] gzip(byte[] data) throws IOException {
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		try (GZIPOutputStream gz = new GZIPOutputStream(bos)){
+			gz.write(data);
+		}
+		return bos.toByteArray();
+	}
+
+	private static Map<String, String> parseParams(String rawQuery) throws IOException {
+		Map<String, String> params = new HashMap<>();
+		if (rawQuery == null || rawQuery.isEmpty()){
+			return params;
+		}
+		for (String p : rawQuery.split("&")){
+			int eq = p.indexOf('=');
+			if (eq < 0){
+				params.put(URLDecoder.decode(p, "UTF-8"), "");
+			}else{
+				params.put(URLDecoder.decode(p.substring(0, eq), "UTF-8"), URLDecoder.decode(p.substring(eq + 1), "UTF-8"));
+			}
+		}
+		return params;
+	}
+
+}
@@ -0,0 +1,103 @@
+package de.bytemind.core.databases;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.json.simple.JSONObject;
+
+import de.bytemind.core.server.Statistics;
+import de.bytemind.core.tools.Connectors;
+import de.bytemind.core.tools.EsQueryBuilder;
+import de.bytemind.core.tools.JSON;
+
+/**
+ * Throughput and latency of the client stack against the fake DynamoDB and Elasticsearch servers (no network or real database needed).
+ * Arguments (all optional): threads, operations per thread, min. latency ms, max. latency ms, error rate, search batch window ms.
+ */
+public class FakeServerLoadTestSequence {
+
+	public static void main(String[] args) throws Exception {
+		int threads = (args.length > 0)? Integer.parseInt(args[0]) : 16;
+		int opsPerThread = (args.length > 1)? Integer.parseInt(args[1]) : 500;
+		long minLatency = (args.length > 2)? Long.parseLong(args[2]) : 2;
+		long maxLatency = (args.length > 3)? Long.parseLong(args[3]) : 10;
+		double errorRate = (args.length > 4)? Double.parseDouble(args[4]) : 0.01;
+		long searchBatchWindow = (args.length > 5)? Long.parseLong(args[5]) : 0;
+
+		//Setup
+		FakeDynamoDbServer dynamo = new FakeDynamoDbServer();
+		dynamo.start(0);
+		FakeElasticsearchServer elastic = new FakeElasticsearchServer();
+		elastic.start(0);
+		DynamoDbConfig.setRegion(dynamo.getEndpoint());
+		DynamoDbConfig.setAccess("EXAMPLEMDDBBTTRRXXYY");
+		DynamoDbConfig.setSecret("ExampleDefghIa1BcDeFghI2JkLm");
+		ElasticSearchConfig.setEndpoint(elastic.getEndpoint());
+		ElasticSearchConfig.setSearchBatchWindow(searchBatchWindow);
+
+		String tableName = "users";
+		String primaryKey = "Guuid";
+		String index = "storage";
+		String type = "userData";
+		System.out.println("---Create table---");
+		JSONObject res = DynamoDB.createSimpleTable(tableName, primaryKey, "Email");
+		if (!Connectors.httpSuccess(res)){ JSON.printJSONpretty(res); return; }
+
+		//now add faults
+		dynamo.setLatency(minLatency, maxLatency).setErrorRate(errorRate);
+		elastic.setLatency(minLatency, maxLatency).setErrorRate(errorRate);
+		Statistics.reset();
+
+		System.out.println("\n---Run " + threads + " threads x " + opsPerThread + " operations, latency "
+				+ minLatency + "-" + maxLatency + "ms, error rate " + errorRate + ", search batch window " + searchBatchWindow + "ms---");
+		LongAdder failed = new LongAdder();
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		long tic = System.currentTimeMillis();
+		for (int t=0; t<threads; t++){
+			final int thread = t;
+			pool.execute(() -> {
+				Elasticsearch es = new Elasticsearch();
+				for (int i=0; i<opsPerThread; i++){
+					String id = "uid" + thread + "_" + (i % 50);
+					boolean ok;
+					switch (i % 4){
+						case 0:
+							ok = DynamoDB.writeAny(tableName, primaryKey, id, new String[]{"Email", "count"}, new Object[]{id + "@example.com", i}) == 0;
+							break;
+						case 1:
+							ok = Connectors.httpSuccess(DynamoDB.getItem(tableName, primaryKey, id, "Email", "count"));
+							break;
+						case 2:
+							ok = es.writeDocument(index, type, id, JSON.make("user", id, "info", "Load test user " + i)) == 0;
+							break;
+						default:
+							String query = EsQueryBuilder.getBoolMustMatch(EsQueryBuilder.makeQueryList("user", id)).toJSONString();
+							ok = Connectors.httpSuccess(es.searchByJson(index + "/" + type, query));
+							break;
+					}
+					if (!ok){
+						failed.increment();
+					}
+				}
+			});
+		}
+		pool.shutdown();
+		pool.awaitTermination(1, TimeUnit.HOURS);
+		long took = System.currentTimeMillis() - tic;
+		long total = (long) threads * opsPerThread;
+
+		System.out.println("\n---Result---");
+		System.out.println("Operations: " + total + " in " + took + "ms - " + (total * 1000 / Math.max(1, took)) + " ops/s");
+		System.out.println("Failed: " + failed.sum() + " - injected server errors: " + (dynamo.getInjectedErrorCount() + elastic.getInjectedErrorCount()));
+		System.out.println("Items: " + dynamo.getItemCount(tableName) + " - documents: " + elastic.getDocumentCount(index));
+		System.out.println("Requests - DynamoDB: " + dynamo.getRequestCount() + " - Elasticsearch: " + elastic.getRequestCount());
+		System.out.println(Statistics.getInfoAsString());
+
+		dynamo.stop();
+		elastic.stop();
+		System.out.println("\n--- ALL DONE :-) ---");
+	}
+
+}
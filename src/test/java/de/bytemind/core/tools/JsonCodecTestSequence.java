@@ -0,0 +1,190 @@
+package de.bytemind.core.tools;
+
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.Objects;
+import java.util.Random;
+
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.ParseException;
+
+/**
+ * Compares {@link FastJsonCodec} with {@link JsonSimpleCodec}: same objects when parsing (from strings and from readers that deliver
+ * the data in small pieces), same strings when writing, errors for invalid input and deeply nested input.
+ * Arguments (optional): number of random documents, random seed.
+ */
+public class JsonCodecTestSequence {
+
+	public static void main(String[] args) throws Exception {
+		int docs = (args.length > 0)? Integer.parseInt(args[0]) : 20000;
+		long seed = (args.length > 1)? Long.parseLong(args[1]) : 7;
+		Random random = new Random(seed);
+		JsonCodec fast = new FastJsonCodec();
+		JsonCodec simple = new JsonSimpleCodec();
+
+		//Random documents
+		System.out.println("---Parse and write " + docs + " random documents---");
+		for (int i=0; i<docs; i++){
+			Object value = randomValue(random, 0);
+			String expected = simple.write(value);
+			String written = fast.write(value);
+			if (!expected.equals(written)){
+				System.out.println("WRITE MISMATCH:\n" + expected + "\n" + written);
+				return;
+			}
+			//some documents with extra white-space
+			String json = (i % 3 == 0)? expected.replace(",", " ,\n ").replace(":", " : ") : expected;
+			Object parsed;
+			try{
+				parsed = simple.parse(json);
+			}catch (ParseException e){
+				//white-space replaced inside a string, json-simple is the reference
+				json = expected;
+				parsed = simple.parse(json);
+			}
+			Object fromString = fast.parse(json);
+			Object fromReader = fast.parse(new ChunkedReader(json, random));
+			if (!Objects.equals(parsed, fromString) || !Objects.equals(parsed, fromReader)){
+				System.out.println("PARSE MISMATCH:\n" + json + "\n" + parsed + "\n" + fromString + "\n" + fromReader);
+				return;
+			}
+		}
+		System.out.println("OK");
+
+		//Large document (more than one buffer)
+		System.out.println("\n---Parse large document---");
+		JSONArray big = new JSONArray();
+		for (int i=0; i<3000; i++){
+			JSON.add(big, randomValue(random, 0));
+		}
+		String bigJson = simple.write(big);
+		if (!simple.parse(bigJson).equals(fast.parse(bigJson)) || !simple.parse(bigJson).equals(fast.parse(new StringReader(bigJson)))){
+			System.out.println("PARSE MISMATCH");
+			return;
+		}
+		System.out.println("OK - " + bigJson.length() + " chars");
+
+		//Invalid input
+		System.out.println("\n---Invalid input---");
+		String[] invalid = {"", "{", "{\"a\"}", "{\"a\":1,}", "[1,]", "[1 2]", "[,1]", "tru", "truex", "\"abc", "01x", "-", "1.", "1e",
+				"{\"a\":1}x", "{a:1}", "[\"\\x\"]", "nul", "1.5e+", "[[[]]"};
+		for (String json : invalid){
+			try{
+				fast.parse(json);
+				System.out.println("NO ERROR FOR: " + json);
+				return;
+			}catch (ParseException e){
+				//expected
+			}
+		}
+		System.out.println("OK - " + invalid.length + " errors");
+
+		//Deep nesting
+		System.out.println("\n---Parse deeply nested arrays and objects---");
+		int depth = 20000;
+		StringBuilder deepArray = new StringBuilder();
+		StringBuilder deepObject = new StringBuilder();
+		for (int i=0; i<depth; i++){
+			deepArray.append('[');
+			deepObject.append("{\"a\":");
+		}
+		deepObject.append("1");
+		for (int i=0; i<depth; i++){
+			deepArray.append(']');
+			deepObject.append('}');
+		}
+		Object arr = fast.parse(deepArray.toString());
+		Object obj = fast.parse(new StringReader(deepObject.toString()));
+		int arrDepth = 0;
+		while (arr instanceof JSONArray && !((JSONArray) arr).isEmpty()){
+			arr = ((JSONArray) arr).get(0);
+			arrDepth++;
+		}
+		int objDepth = 0;
+		while (obj instanceof JSONObject){
+			obj = ((JSONObject) obj).get("a");
+			objDepth++;
+		}
+		System.out.println("ARRAY DEPTH: " + (arrDepth + 1) + " - OBJECT DEPTH: " + objDepth + " - VALUE: " + obj);
+		if (arrDepth + 1 != depth || objDepth != depth){
+			return;
+		}
+		try{
+			fast.parse(deepArray.substring(0, deepArray.length() - 1));
+			System.out.println("NO ERROR FOR UNCLOSED ARRAY");
+			return;
+		}catch (ParseException e){
+			//expected
+		}
+		System.out.println("OK");
+
+		System.out.println("\n--- ALL DONE :-) ---");
+	}
+
+	//--- helpers ---
+
+	private static String randomString(Random random){
+		String chars = "abc\"\\/\n\t\u0001\u00e4\u2013\u20ac\u007f x{}[],:";
+		int n = random.nextInt(12);
+		StringBuilder sb = new StringBuilder();
+		for (int i=0; i<n; i++){
+			sb.append((random.nextInt(3) == 0)? (char) random.nextInt(0x3000) : chars.charAt(random.nextInt(chars.length())));
+		}
+		return sb.toString();
+	}
+
+	private static Object randomValue(Random random, int depth){
+		int type = random.nextInt((depth > 4)? 6 : 9);
+		switch (type){
+			case 0:	return randomString(random);
+			case 1:	return (long) (random.nextGaussian() * 1e6);
+			case 2:	return random.nextLong();
+			case 3:	return random.nextGaussian() * Math.pow(10, random.nextInt(40) - 20);
+			case 4:	return random.nextBoolean();
+			case 5:	return null;
+			case 6:
+			case 7:
+				JSONObject obj = new JSONObject();
+				int n = random.nextInt(6);
+				for (int i=0; i<n; i++){
+					JSON.put(obj, randomString(random), randomValue(random, depth + 1));
+				}
+				return obj;
+			default:
+				JSONArray arr = new JSONArray();
+				int m = random.nextInt(6);
+				for (int i=0; i<m; i++){
+					JSON.add(arr, randomValue(random, depth + 1));
+				}
+				return arr;
+		}
+	}
+
+	/**
+	 * Reader that returns only a few chars per call to test values across buffer boundaries.
+	 */
+	private static class ChunkedReader extends Reader {
+		private final String data;
+		private final Random random;
+		private int pos = 0;
+		ChunkedReader(String data, Random random){
+			this.data = data;
+			this.random = random;
+		}
+		@Override
+		public int read(char[] cbuf, int off, int len){
+			if (pos >= data.length()){
+				return -1;
+			}
+			int n = Math.min(Math.min(len, 1 + random.nextInt(7)), data.length() - pos);
+			data.getChars(pos, pos + n, cbuf, off);
+			pos += n;
+			return n;
+		}
+		@Override
+		public void close(){
+		}
+	}
+
+}
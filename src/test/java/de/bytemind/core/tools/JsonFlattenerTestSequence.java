@@ -0,0 +1,62 @@
+package de.bytemind.core.tools;
+
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+
+/**
+ * Checks {@link JsonFlattener}: flatten and unflatten with and without array indexing, including 'null' values inside arrays
+ * (they are skipped but must not shift the index of later elements).
+ */
+public class JsonFlattenerTestSequence {
+
+	public static void main(String[] args) throws Exception {
+		JsonFlattener indexing = new JsonFlattener().setArrayIndexing(true);
+		JsonFlattener plain = new JsonFlattener();
+
+		//Nested objects, arrays kept as values
+		System.out.println("---Flatten and unflatten objects---");
+		JSONObject doc = JSON.make("a", JSON.make("b", JSON.make("c", 1L), "d", "x"), "list", JSON.makeArray("1", "2"), "e", true);
+		if (!check(plain, doc, doc)){
+			return;
+		}
+		System.out.println("OK");
+
+		//Arrays with nulls - later elements keep their position
+		System.out.println("\n---Flatten and unflatten arrays with null---");
+		JSONArray list = JSON.add(new JSONArray(), 1L, null, 3L);
+		JSONArray objects = JSON.add(new JSONArray(), null, JSON.make("v", 2L), null, JSON.make("v", 4L, "w", JSON.add(new JSONArray(), null, "z")));
+		JSONObject withNulls = JSON.make("list", list, "objects", objects, "n", null);
+		JSONObject flat = indexing.flatten(withNulls);
+		System.out.println("FLAT: " + flat.toJSONString());
+		if (!flat.containsKey("list.2") || flat.containsKey("list.1") || !flat.containsKey("objects.3.w.1")){
+			return;
+		}
+		//top level 'null' is skipped, nulls inside arrays come back (gaps are filled with null)
+		JSONObject expected = JSON.make("list", list, "objects", objects);
+		if (!check(indexing, withNulls, expected)){
+			return;
+		}
+		System.out.println("OK");
+
+		//Trailing nulls can't be restored (nothing is written for them)
+		System.out.println("\n---Trailing null---");
+		JSONObject trailing = JSON.make("list", JSON.add(new JSONArray(), 1L, 2L, null));
+		if (!check(indexing, trailing, JSON.make("list", JSON.add(new JSONArray(), 1L, 2L)))){
+			return;
+		}
+		System.out.println("OK");
+
+		System.out.println("\n--- ALL DONE :-) ---");
+	}
+
+	private static boolean check(JsonFlattener flattener, JSONObject input, JSONObject expected){
+		JSONObject flat = flattener.flatten(input);
+		JSONObject back = flattener.unflatten(flat);
+		if (!expected.equals(back)){
+			System.out.println("ROUND TRIP MISMATCH:\n" + input.toJSONString() + "\n" + flat.toJSONString() + "\n" + back.toJSONString());
+			return false;
+		}
+		return true;
+	}
+
+}